@@ -0,0 +1,272 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * This query matches documents containing any of the given terms and scores them by the position of the term in
+ * the given order.
+ *
+ * The first of n terms scores 1, the last one 1/n. A document containing several of the terms gets the score of
+ * the best ranked one. All terms are matched by a single scorer, so the query does not need a clause per term and
+ * is not limited by the maximum number of boolean clauses. If scores are not needed, it runs as a
+ * {@link TermInSetQuery}.
+ *
+ * @author prog
+ */
+public final class RankedTermsQuery extends Query {
+
+  /**
+   * Field the terms are looked up in
+   */
+  private final String field;
+
+  /**
+   * Distinct terms, best ranked first
+   */
+  private final BytesRef[] terms;
+
+  /**
+   * Indices of the terms in ascending term order, used to seek the terms dictionary in order
+   */
+  private final int[] sortedOrder;
+
+  /**
+   * Ranked terms query gets the field and the terms in rank order. Repeated terms keep their best rank.
+   *
+   * @param field Field the terms are looked up in
+   * @param rankedTerms Terms, best ranked first
+   */
+  public RankedTermsQuery(final String field, final List<BytesRef> rankedTerms) {
+    this.field = field;
+
+    final Set<BytesRef> seen = new HashSet<>();
+    final List<BytesRef> distinct = new ArrayList<>(rankedTerms.size());
+    for (final BytesRef term : rankedTerms) {
+      if (seen.add(term)) {
+        distinct.add(BytesRef.deepCopyOf(term));
+      }
+    }
+    this.terms = distinct.toArray(new BytesRef[0]);
+
+    this.sortedOrder = TermsDisjunction.sortedOrder(terms);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * @return Number of distinct terms
+   */
+  public int size() {
+    return terms.length;
+  }
+
+  @Override
+  public Query rewrite(final IndexReader reader) throws IOException {
+    if (terms.length == 0) {
+      return new MatchNoDocsQuery("No terms to rank");
+    }
+    return super.rewrite(reader);
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
+      throws IOException {
+    if (!scoreMode.needsScores()) {
+      // Ranks only matter for scoring, plain term set filtering is cheaper
+      return searcher.createWeight(searcher.rewrite(new TermInSetQuery(field, terms)), scoreMode, boost);
+    }
+
+    return new RankedTermsWeight(this, boost);
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (!visitor.acceptField(field)) {
+      return;
+    }
+
+    final Term[] fieldTerms = new Term[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      fieldTerms[i] = new Term(field, terms[i]);
+    }
+    visitor.getSubVisitor(BooleanClause.Occur.SHOULD, this).consumeTerms(this, fieldTerms);
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(field).append(":RANKED(");
+    for (int i = 0; i < terms.length; i++) {
+      if (i > 0) {
+        builder.append(' ');
+      }
+      builder.append(terms[i].utf8ToString());
+    }
+    return builder.append(')').toString();
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * classHash() + field.hashCode()) + Arrays.hashCode(terms);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final RankedTermsQuery other = (RankedTermsQuery) obj;
+    return field.equals(other.field) && Arrays.equals(terms, other.terms);
+  }
+
+  /**
+   * @param rank Rank of a term, 0 for the best ranked term
+   * @return Score of the rank before boosting
+   */
+  private float scoreOfRank(final int rank) {
+    return (float) (terms.length - rank) / terms.length;
+  }
+
+  /**
+   * Weight looking up all terms of a segment and scoring by the best rank found in a document.
+   */
+  private static final class RankedTermsWeight extends Weight {
+    /**
+     * Query of the weight
+     */
+    private final RankedTermsQuery query;
+
+    /**
+     * Boost applied to the scores
+     */
+    private final float boost;
+
+    /**
+     * @param query Query of the weight
+     * @param boost Boost applied to the scores
+     */
+    private RankedTermsWeight(final RankedTermsQuery query, final float boost) {
+      super(query);
+      this.query = query;
+      this.boost = boost;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void extractTerms(final Set<Term> extractedTerms) {
+      for (final BytesRef term : query.terms) {
+        extractedTerms.add(new Term(query.field, term));
+      }
+    }
+
+    @Override
+    public Explanation explain(final LeafReaderContext context, final int doc) throws IOException {
+      final RankedTermsScorer scorer = scorer(context);
+      if (scorer != null && scorer.iterator().advance(doc) == doc) {
+        final int rank = bestRank(scorer.disjunction);
+        return Explanation.match(scorer.score(), "rank " + (rank + 1) + " of " + query.terms.length + " for term "
+            + query.field + ":" + query.terms[rank].utf8ToString() + ", boost " + boost);
+      }
+      return Explanation.noMatch("no ranked term matched");
+    }
+
+    @Override
+    public RankedTermsScorer scorer(final LeafReaderContext context) throws IOException {
+      final Terms fieldTerms = context.reader().terms(query.field);
+      if (fieldTerms == null) {
+        return null;
+      }
+
+      final TermsEnum termsEnum = fieldTerms.iterator();
+      final TermsDisjunction disjunction = new TermsDisjunction(query.terms.length);
+      for (final int rank : query.sortedOrder) {
+        if (termsEnum.seekExact(query.terms[rank])) {
+          disjunction.add(termsEnum.postings(null, PostingsEnum.NONE), rank);
+        }
+      }
+
+      return disjunction.isEmpty() ? null : new RankedTermsScorer(this, disjunction);
+    }
+
+    @Override
+    public boolean isCacheable(final LeafReaderContext context) {
+      return true;
+    }
+
+    /**
+     * Scorer of a segment.
+     */
+    private final class RankedTermsScorer extends Scorer {
+      /**
+       * Postings of the matched terms
+       */
+      private final TermsDisjunction disjunction;
+
+      /**
+       * @param weight Weight of the scorer
+       * @param disjunction Postings of the matched terms
+       */
+      private RankedTermsScorer(final Weight weight, final TermsDisjunction disjunction) {
+        super(weight);
+        this.disjunction = disjunction;
+      }
+
+      @Override
+      public int docID() {
+        return disjunction.docID();
+      }
+
+      @Override
+      public DocIdSetIterator iterator() {
+        return disjunction;
+      }
+
+      @Override
+      public float getMaxScore(final int upTo) {
+        return boost;
+      }
+
+      @Override
+      public float score() {
+        return boost * query.scoreOfRank(bestRank(disjunction));
+      }
+    }
+  }
+
+  /**
+   * @param disjunction Postings positioned on a document
+   * @return Best rank of the terms contained in the current document
+   */
+  private static int bestRank(final TermsDisjunction disjunction) {
+    int best = Integer.MAX_VALUE;
+    for (int i = disjunction.matches() - 1; i >= 0; i--) {
+      best = Math.min(best, disjunction.index(i));
+    }
+    return best;
+  }
+}
@@ -0,0 +1,234 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Union of the postings of several terms of one segment. The postings are kept in a binary heap ordered by their
+ * current document, so the terms contained in the current document are found by only visiting the heap entries on
+ * it. Each postings carries the index of its term in the query.
+ *
+ * @author prog
+ */
+final class TermsDisjunction extends DocIdSetIterator {
+  /**
+   * Postings of the terms, ordered as a heap by their current document
+   */
+  private final PostingsEnum[] heap;
+
+  /**
+   * Index of the term of each heap entry
+   */
+  private final int[] indices;
+
+  /**
+   * Heap entries on the current document, filled by {@link #matches()}
+   */
+  private final int[] matched;
+
+  /**
+   * Number of entries in the heap
+   */
+  private int size;
+
+  /**
+   * Current document
+   */
+  private int doc = -1;
+
+  /**
+   * Sum of the costs of all postings
+   */
+  private long cost;
+
+  /**
+   * @param capacity Maximum number of postings
+   */
+  TermsDisjunction(final int capacity) {
+    heap = new PostingsEnum[capacity];
+    indices = new int[capacity];
+    matched = new int[capacity];
+  }
+
+  /**
+   * @param terms Terms of a query
+   * @return Indices of the terms in ascending term order, used to seek the terms dictionary in order
+   */
+  static int[] sortedOrder(final BytesRef[] terms) {
+    final Integer[] order = new Integer[terms.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> terms[a].compareTo(terms[b]));
+
+    final int[] sortedOrder = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedOrder[i] = order[i];
+    }
+    return sortedOrder;
+  }
+
+  /**
+   * Adds the postings of a term.
+   *
+   * @param postings Postings of the term
+   * @param index Index of the term
+   * @throws IOException If reading the postings fails
+   */
+  void add(final PostingsEnum postings, final int index) throws IOException {
+    cost += postings.cost();
+    if (postings.nextDoc() == NO_MORE_DOCS) {
+      return;
+    }
+
+    heap[size] = postings;
+    indices[size] = index;
+    siftUp(size++);
+  }
+
+  /**
+   * @return Whether no postings have been added
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Collects the terms contained in the current document.
+   *
+   * @return Number of terms contained in the current document
+   */
+  int matches() {
+    if (size == 0 || heap[0].docID() != doc) {
+      return 0;
+    }
+
+    // The heap entries on the current document form a subtree at the root, matched doubles as the queue
+    int count = 0;
+    matched[count++] = 0;
+    for (int i = 0; i < count; i++) {
+      final int left = 2 * matched[i] + 1;
+      if (left < size && heap[left].docID() == doc) {
+        matched[count++] = left;
+      }
+      if (left + 1 < size && heap[left + 1].docID() == doc) {
+        matched[count++] = left + 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param match Match collected by the last call to {@link #matches()}
+   * @return Index of the term of the match
+   */
+  int index(final int match) {
+    return indices[matched[match]];
+  }
+
+  /**
+   * @param match Match collected by the last call to {@link #matches()}
+   * @return Postings of the term of the match, positioned on the current document
+   */
+  PostingsEnum postings(final int match) {
+    return heap[matched[match]];
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    while (size > 0 && heap[0].docID() == doc) {
+      if (heap[0].nextDoc() == NO_MORE_DOCS) {
+        pop();
+      } else {
+        siftDown(0);
+      }
+    }
+    doc = size == 0 ? NO_MORE_DOCS : heap[0].docID();
+    return doc;
+  }
+
+  @Override
+  public int advance(final int target) throws IOException {
+    while (size > 0 && heap[0].docID() < target) {
+      if (heap[0].advance(target) == NO_MORE_DOCS) {
+        pop();
+      } else {
+        siftDown(0);
+      }
+    }
+    doc = size == 0 ? NO_MORE_DOCS : heap[0].docID();
+    return doc;
+  }
+
+  @Override
+  public long cost() {
+    return cost;
+  }
+
+  /**
+   * Removes the top entry.
+   */
+  private void pop() {
+    size--;
+    heap[0] = heap[size];
+    indices[0] = indices[size];
+    heap[size] = null;
+    siftDown(0);
+  }
+
+  /**
+   * @param node Entry to move up until its parent is on an earlier document
+   */
+  private void siftUp(final int node) {
+    int child = node;
+    while (child > 0) {
+      final int parent = (child - 1) / 2;
+      if (heap[parent].docID() <= heap[child].docID()) {
+        return;
+      }
+      swap(parent, child);
+      child = parent;
+    }
+  }
+
+  /**
+   * @param node Entry to move down until its children are on later documents
+   */
+  private void siftDown(final int node) {
+    int parent = node;
+    while (true) {
+      final int left = 2 * parent + 1;
+      if (left >= size) {
+        return;
+      }
+      final int right = left + 1;
+      final int child = right < size && heap[right].docID() < heap[left].docID() ? right : left;
+      if (heap[parent].docID() <= heap[child].docID()) {
+        return;
+      }
+      swap(parent, child);
+      parent = child;
+    }
+  }
+
+  /**
+   * @param i First entry
+   * @param j Second entry
+   */
+  private void swap(final int i, final int j) {
+    final PostingsEnum postings = heap[i];
+    heap[i] = heap[j];
+    heap[j] = postings;
+    final int index = indices[i];
+    indices[i] = indices[j];
+    indices[j] = index;
+  }
+}
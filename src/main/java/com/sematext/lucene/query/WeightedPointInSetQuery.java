@@ -0,0 +1,429 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * This query matches documents having any of the given one dimensional point values and scores them by the sum of the
+ * weights of the values they have.
+ *
+ * The values are walked through the points tree of each segment in a single pass, like a {@link PointInSetQuery}, so
+ * the query does not need a clause per value and is not limited by the maximum number of boolean clauses. If scores
+ * are not needed, it runs as a {@link PointInSetQuery}.
+ *
+ * @author prog
+ */
+public final class WeightedPointInSetQuery extends Query {
+
+  /**
+   * Field the points are read from
+   */
+  private final String field;
+
+  /**
+   * Number of bytes of an encoded value
+   */
+  private final int bytesPerDim;
+
+  /**
+   * Distinct encoded values in ascending order, one after the other
+   */
+  private final byte[] packedValues;
+
+  /**
+   * Weight of each value
+   */
+  private final float[] weights;
+
+  /**
+   * Sum of the weights of all values, the highest score of a document
+   */
+  private final float weightSum;
+
+  /**
+   * Weighted point set query gets the field, the encoded values and their weights. Weights of repeated values add up.
+   *
+   * @param field Field the points are read from
+   * @param bytesPerDim Number of bytes of an encoded value
+   * @param values Values encoded like the points of the field, e.g. by {@code IntPoint.encodeDimension}
+   * @param weights Weight of each value, finite and not negative
+   */
+  public WeightedPointInSetQuery(final String field, final int bytesPerDim, final byte[][] values,
+      final float[] weights) {
+    if (values.length != weights.length) {
+      throw new IllegalArgumentException("Got " + values.length + " values but " + weights.length + " weights");
+    }
+
+    final Integer[] order = new Integer[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (values[i].length != bytesPerDim) {
+        throw new IllegalArgumentException("Value must have " + bytesPerDim + " bytes, got " + values[i].length);
+      }
+      if (!Float.isFinite(weights[i]) || weights[i] < 0) {
+        throw new IllegalArgumentException("Weight must be finite and not negative, got " + weights[i]);
+      }
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(values[a], values[b]));
+
+    final byte[] packed = new byte[values.length * bytesPerDim];
+    final float[] distinctWeights = new float[values.length];
+    int count = 0;
+    for (final int index : order) {
+      if (count > 0 && Arrays.equals(values[index], 0, bytesPerDim, packed, (count - 1) * bytesPerDim,
+          count * bytesPerDim)) {
+        distinctWeights[count - 1] += weights[index];
+      } else {
+        System.arraycopy(values[index], 0, packed, count * bytesPerDim, bytesPerDim);
+        distinctWeights[count++] = weights[index];
+      }
+    }
+
+    this.field = field;
+    this.bytesPerDim = bytesPerDim;
+    this.packedValues = Arrays.copyOf(packed, count * bytesPerDim);
+    this.weights = Arrays.copyOf(distinctWeights, count);
+    float sum = 0;
+    for (final float weight : this.weights) {
+      sum += weight;
+    }
+    this.weightSum = sum;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * @return Number of distinct values
+   */
+  public int size() {
+    return weights.length;
+  }
+
+  @Override
+  public Query rewrite(final IndexReader reader) throws IOException {
+    if (weights.length == 0) {
+      return new MatchNoDocsQuery("No values to weight");
+    }
+    return super.rewrite(reader);
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
+      throws IOException {
+    if (!scoreMode.needsScores()) {
+      // Weights only matter for scoring, plain point set filtering is cheaper
+      return searcher.createWeight(toPointInSetQuery(), scoreMode, boost);
+    }
+    return new WeightedPointsWeight(this, boost);
+  }
+
+  /**
+   * @return Query matching the same values without weighting them
+   */
+  private Query toPointInSetQuery() {
+    final BytesRef value = new BytesRef(packedValues, 0, bytesPerDim);
+    return new PointInSetQuery(field, 1, bytesPerDim, new PointInSetQuery.Stream() {
+      /**
+       * Index of the next value
+       */
+      private int next;
+
+      @Override
+      public BytesRef next() {
+        if (next == weights.length) {
+          return null;
+        }
+        value.offset = next++ * bytesPerDim;
+        return value;
+      }
+    }) {
+      @Override
+      protected String toString(final byte[] point) {
+        return new BytesRef(point).toString();
+      }
+    };
+  }
+
+  /**
+   * @param packedValue Encoded value
+   * @param offset Start of the value
+   * @return Index of the first value not smaller than the given one, the number of values if there is none
+   */
+  private int lowerBound(final byte[] packedValue, final int offset) {
+    int low = 0;
+    int high = weights.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (Arrays.compareUnsigned(packedValues, middle * bytesPerDim, (middle + 1) * bytesPerDim, packedValue,
+          offset, offset + bytesPerDim) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param packedValue Encoded value
+   * @return Index of the value, -1 if it is not one of the values
+   */
+  private int indexOf(final byte[] packedValue) {
+    final int index = lowerBound(packedValue, 0);
+    return index < weights.length && Arrays.equals(packedValues, index * bytesPerDim,
+        (index + 1) * bytesPerDim, packedValue, 0, bytesPerDim) ? index : -1;
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    return field + ":WEIGHTED_POINTS(" + weights.length + " values)";
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * classHash() + field.hashCode();
+    hash = 31 * hash + Arrays.hashCode(packedValues);
+    return 31 * hash + Arrays.hashCode(weights);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final WeightedPointInSetQuery other = (WeightedPointInSetQuery) obj;
+    return field.equals(other.field) && bytesPerDim == other.bytesPerDim
+        && Arrays.equals(packedValues, other.packedValues) && Arrays.equals(weights, other.weights);
+  }
+
+  /**
+   * Weight collecting the matching documents of a segment with the sum of the weights of their values.
+   */
+  private static final class WeightedPointsWeight extends Weight {
+    /**
+     * Query of the weight
+     */
+    private final WeightedPointInSetQuery query;
+
+    /**
+     * Boost applied to the scores
+     */
+    private final float boost;
+
+    /**
+     * @param query Query of the weight
+     * @param boost Boost applied to the scores
+     */
+    private WeightedPointsWeight(final WeightedPointInSetQuery query, final float boost) {
+      super(query);
+      this.query = query;
+      this.boost = boost;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void extractTerms(final Set<Term> extractedTerms) {
+      // Points have no terms
+    }
+
+    @Override
+    public Explanation explain(final LeafReaderContext context, final int doc) throws IOException {
+      final Scorer scorer = scorer(context);
+      if (scorer == null || scorer.iterator().advance(doc) != doc) {
+        return Explanation.noMatch("no weighted value matched");
+      }
+      return Explanation.match(scorer.score(), "sum of weights of matched values of " + query.field + ", boost "
+          + boost);
+    }
+
+    @Override
+    public Scorer scorer(final LeafReaderContext context) throws IOException {
+      final LeafReader reader = context.reader();
+      final PointValues values = reader.getPointValues(query.field);
+      if (values == null) {
+        return null;
+      }
+      if (values.getNumIndexDimensions() != 1 || values.getBytesPerDimension() != query.bytesPerDim) {
+        throw new IllegalArgumentException("Field " + query.field + " is not indexed as one dimensional points of "
+            + query.bytesPerDim + " bytes");
+      }
+
+      // Each matching value of a document is a pair of the document in the upper and the bits of the weight in the
+      // lower half, so memory grows with the matches instead of the documents of the segment
+      final long[][] pairs = {new long[0]};
+      final int[] count = new int[1];
+      values.intersect(new PointValues.IntersectVisitor() {
+        @Override
+        public void grow(final int added) {
+          pairs[0] = ArrayUtil.grow(pairs[0], count[0] + added);
+        }
+
+        @Override
+        public void visit(final int docID) {
+          // Cells are never inside the query, each value of a cell is checked
+          throw new IllegalStateException("Cell unexpectedly inside the query");
+        }
+
+        @Override
+        public void visit(final int docID, final byte[] packedValue) {
+          final int index = query.indexOf(packedValue);
+          if (index >= 0) {
+            pairs[0] = ArrayUtil.grow(pairs[0], count[0] + 1);
+            pairs[0][count[0]++] = (long) docID << 32
+                | Float.floatToIntBits(query.weights[index]) & 0xFFFFFFFFL;
+          }
+        }
+
+        @Override
+        public PointValues.Relation compare(final byte[] minPackedValue, final byte[] maxPackedValue) {
+          final int index = query.lowerBound(minPackedValue, 0);
+          if (index < query.weights.length && Arrays.compareUnsigned(query.packedValues,
+              index * query.bytesPerDim, (index + 1) * query.bytesPerDim, maxPackedValue, 0,
+              query.bytesPerDim) <= 0) {
+            return PointValues.Relation.CELL_CROSSES_QUERY;
+          }
+          return PointValues.Relation.CELL_OUTSIDE_QUERY;
+        }
+      });
+      if (count[0] == 0) {
+        return null;
+      }
+
+      // Weights are not negative, so their bits sort like the weights and pairs sort by document first
+      final long[] sorted = pairs[0];
+      Arrays.sort(sorted, 0, count[0]);
+      final int[] docs = new int[count[0]];
+      final float[] scores = new float[count[0]];
+      int matches = 0;
+      for (int i = 0; i < count[0]; i++) {
+        final int doc = (int) (sorted[i] >>> 32);
+        final float weight = Float.intBitsToFloat((int) sorted[i]);
+        if (matches > 0 && docs[matches - 1] == doc) {
+          scores[matches - 1] += weight;
+        } else {
+          docs[matches] = doc;
+          scores[matches++] = weight;
+        }
+      }
+      return new WeightedPointsScorer(this, docs, scores, matches);
+    }
+
+    @Override
+    public boolean isCacheable(final LeafReaderContext context) {
+      return true;
+    }
+
+    /**
+     * Scorer of a segment, iterating the matching documents in ascending order along with their scores
+     */
+    private final class WeightedPointsScorer extends Scorer {
+      /**
+       * Matching documents in ascending order
+       */
+      private final int[] docs;
+
+      /**
+       * Sum of the weights of the values of each matching document
+       */
+      private final float[] scores;
+
+      /**
+       * Number of matching documents
+       */
+      private final int count;
+
+      /**
+       * Index of the current document
+       */
+      private int index = -1;
+
+      /**
+       * Iterator of the matching documents
+       */
+      private final DocIdSetIterator iterator = new DocIdSetIterator() {
+        @Override
+        public int docID() {
+          return index < 0 ? -1 : index < count ? docs[index] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int nextDoc() {
+          index = Math.min(index + 1, count);
+          return docID();
+        }
+
+        @Override
+        public int advance(final int target) {
+          final int found = Arrays.binarySearch(docs, index + 1, count, target);
+          index = found >= 0 ? found : -found - 1;
+          return docID();
+        }
+
+        @Override
+        public long cost() {
+          return count;
+        }
+      };
+
+      /**
+       * @param weight Weight of the scorer
+       * @param docs Matching documents in ascending order
+       * @param scores Sum of the weights of the values of each matching document
+       * @param count Number of matching documents
+       */
+      private WeightedPointsScorer(final Weight weight, final int[] docs, final float[] scores, final int count) {
+        super(weight);
+        this.docs = docs;
+        this.scores = scores;
+        this.count = count;
+      }
+
+      @Override
+      public int docID() {
+        return iterator.docID();
+      }
+
+      @Override
+      public DocIdSetIterator iterator() {
+        return iterator;
+      }
+
+      @Override
+      public float getMaxScore(final int upTo) {
+        return boost * query.weightSum;
+      }
+
+      @Override
+      public float score() {
+        return boost * scores[index];
+      }
+    }
+  }
+}
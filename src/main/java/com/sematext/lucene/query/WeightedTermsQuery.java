@@ -0,0 +1,400 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * This query matches documents containing any of the given terms and scores them by the sum of the weights of the
+ * terms they contain.
+ *
+ * With index statistics the weight of a term boosts its similarity score, so the query scores like a boolean query of
+ * boosted optional term queries. Without them a matching term adds just its weight. All terms are matched by a single
+ * scorer, so the query does not need a clause per term and is not limited by the maximum number of boolean clauses.
+ * If scores are not needed, it runs as a {@link TermInSetQuery}.
+ *
+ * @author prog
+ */
+public final class WeightedTermsQuery extends Query {
+
+  /**
+   * Field the terms are looked up in
+   */
+  private final String field;
+
+  /**
+   * Distinct terms
+   */
+  private final BytesRef[] terms;
+
+  /**
+   * Weight of each term
+   */
+  private final float[] weights;
+
+  /**
+   * Sum of the weights of all terms, the highest score of a document without index statistics
+   */
+  private final float weightSum;
+
+  /**
+   * Whether the weights boost the similarity score of the terms or are the scores themselves
+   */
+  private final boolean useIndexStatistics;
+
+  /**
+   * Indices of the terms in ascending term order, used to seek the terms dictionary in order
+   */
+  private final int[] sortedOrder;
+
+  /**
+   * Weighted terms query gets the field, the terms and their weights. Weights of repeated terms add up.
+   *
+   * @param field Field the terms are looked up in
+   * @param terms Terms
+   * @param weights Weight of each term, finite and not negative
+   * @param useIndexStatistics Whether the weights boost the similarity score of the terms or are the scores themselves
+   */
+  public WeightedTermsQuery(final String field, final List<BytesRef> terms, final float[] weights,
+      final boolean useIndexStatistics) {
+    if (terms.size() != weights.length) {
+      throw new IllegalArgumentException("Got " + terms.size() + " terms but " + weights.length + " weights");
+    }
+
+    this.field = field;
+    this.useIndexStatistics = useIndexStatistics;
+
+    final Map<BytesRef, Integer> positions = new HashMap<>();
+    final List<BytesRef> distinct = new ArrayList<>(terms.size());
+    final float[] distinctWeights = new float[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      if (!Float.isFinite(weights[i]) || weights[i] < 0) {
+        throw new IllegalArgumentException("Weight must be finite and not negative, got " + weights[i]);
+      }
+
+      final Integer position = positions.get(terms.get(i));
+      if (position == null) {
+        positions.put(terms.get(i), distinct.size());
+        distinctWeights[distinct.size()] = weights[i];
+        distinct.add(BytesRef.deepCopyOf(terms.get(i)));
+      } else {
+        distinctWeights[position] += weights[i];
+      }
+    }
+    this.terms = distinct.toArray(new BytesRef[0]);
+    this.weights = Arrays.copyOf(distinctWeights, this.terms.length);
+    float sum = 0;
+    for (final float weight : this.weights) {
+      sum += weight;
+    }
+    this.weightSum = sum;
+
+    this.sortedOrder = TermsDisjunction.sortedOrder(this.terms);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * @return Number of distinct terms
+   */
+  public int size() {
+    return terms.length;
+  }
+
+  /**
+   * @return Whether the weights boost the similarity score of the terms or are the scores themselves
+   */
+  public boolean isUseIndexStatistics() {
+    return useIndexStatistics;
+  }
+
+  @Override
+  public Query rewrite(final IndexReader reader) throws IOException {
+    if (terms.length == 0) {
+      return new MatchNoDocsQuery("No terms to weight");
+    }
+    return super.rewrite(reader);
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
+      throws IOException {
+    if (!scoreMode.needsScores()) {
+      // Weights only matter for scoring, plain term set filtering is cheaper
+      return searcher.createWeight(searcher.rewrite(new TermInSetQuery(field, terms)), scoreMode, boost);
+    }
+
+    if (!useIndexStatistics) {
+      return new WeightedTermsWeight(this, boost, null, null);
+    }
+
+    final TermStates[] termStates = new TermStates[terms.length];
+    final Similarity.SimScorer[] simScorers = new Similarity.SimScorer[terms.length];
+    final CollectionStatistics collectionStatistics = searcher.collectionStatistics(field);
+    if (collectionStatistics != null) {
+      for (int i = 0; i < terms.length; i++) {
+        final Term term = new Term(field, terms[i]);
+        termStates[i] = TermStates.build(searcher.getTopReaderContext(), term, true);
+        // Terms missing from the index have no statistics and are never scored
+        if (termStates[i].docFreq() > 0) {
+          final TermStatistics termStatistics = searcher.termStatistics(term, termStates[i].docFreq(),
+              termStates[i].totalTermFreq());
+          simScorers[i] = searcher.getSimilarity().scorer(boost * weights[i], collectionStatistics, termStatistics);
+        }
+      }
+    }
+    return new WeightedTermsWeight(this, boost, termStates, simScorers);
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (!visitor.acceptField(field)) {
+      return;
+    }
+
+    final Term[] fieldTerms = new Term[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      fieldTerms[i] = new Term(field, terms[i]);
+    }
+    visitor.getSubVisitor(BooleanClause.Occur.SHOULD, this).consumeTerms(this, fieldTerms);
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(field).append(useIndexStatistics ? ":WEIGHTED(" : ":WEIGHTS(");
+    for (int i = 0; i < terms.length; i++) {
+      if (i > 0) {
+        builder.append(' ');
+      }
+      builder.append(terms[i].utf8ToString()).append('^').append(weights[i]);
+    }
+    return builder.append(')').toString();
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * classHash() + field.hashCode();
+    hash = 31 * hash + Arrays.hashCode(terms);
+    hash = 31 * hash + Arrays.hashCode(weights);
+    return 31 * hash + Boolean.hashCode(useIndexStatistics);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final WeightedTermsQuery other = (WeightedTermsQuery) obj;
+    return field.equals(other.field) && useIndexStatistics == other.useIndexStatistics
+        && Arrays.equals(terms, other.terms) && Arrays.equals(weights, other.weights);
+  }
+
+  /**
+   * Weight looking up all terms of a segment and scoring by the weights of the terms found in a document.
+   */
+  private static final class WeightedTermsWeight extends Weight {
+    /**
+     * Query of the weight
+     */
+    private final WeightedTermsQuery query;
+
+    /**
+     * Boost applied to the scores
+     */
+    private final float boost;
+
+    /**
+     * States of the terms in the segments, null without index statistics
+     */
+    private final TermStates[] termStates;
+
+    /**
+     * Similarity scorer of each term, null without index statistics or for terms missing from the index
+     */
+    private final Similarity.SimScorer[] simScorers;
+
+    /**
+     * @param query Query of the weight
+     * @param boost Boost applied to the scores
+     * @param termStates States of the terms in the segments, null without index statistics
+     * @param simScorers Similarity scorer of each term, null without index statistics
+     */
+    private WeightedTermsWeight(final WeightedTermsQuery query, final float boost, final TermStates[] termStates,
+        final Similarity.SimScorer[] simScorers) {
+      super(query);
+      this.query = query;
+      this.boost = boost;
+      this.termStates = termStates;
+      this.simScorers = simScorers;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void extractTerms(final Set<Term> extractedTerms) {
+      for (final BytesRef term : query.terms) {
+        extractedTerms.add(new Term(query.field, term));
+      }
+    }
+
+    @Override
+    public Explanation explain(final LeafReaderContext context, final int doc) throws IOException {
+      final WeightedTermsScorer scorer = scorer(context);
+      if (scorer == null || scorer.iterator().advance(doc) != doc) {
+        return Explanation.noMatch("no weighted term matched");
+      }
+
+      final TermsDisjunction disjunction = scorer.disjunction;
+      final List<Explanation> details = new ArrayList<>();
+      for (int i = disjunction.matches() - 1; i >= 0; i--) {
+        final int index = disjunction.index(i);
+        final String description = "weight(" + query.field + ":" + query.terms[index].utf8ToString() + ")";
+        if (simScorers == null) {
+          details.add(Explanation.match(boost * query.weights[index], description + ", boost " + boost));
+        } else {
+          final int freq = disjunction.postings(i).freq();
+          final Explanation freqExplanation = Explanation.match(freq, "freq, occurrences of term within document");
+          details.add(Explanation.match(simScorers[index].score(freq, scorer.norm()), description,
+              simScorers[index].explain(freqExplanation, scorer.norm())));
+        }
+      }
+      return Explanation.match(scorer.score(), "sum of:", details);
+    }
+
+    @Override
+    public WeightedTermsScorer scorer(final LeafReaderContext context) throws IOException {
+      final Terms fieldTerms = context.reader().terms(query.field);
+      if (fieldTerms == null) {
+        return null;
+      }
+
+      final TermsEnum termsEnum = fieldTerms.iterator();
+      final TermsDisjunction disjunction = new TermsDisjunction(query.terms.length);
+      for (final int index : query.sortedOrder) {
+        if (simScorers == null) {
+          if (termsEnum.seekExact(query.terms[index])) {
+            disjunction.add(termsEnum.postings(null, PostingsEnum.NONE), index);
+          }
+        } else if (simScorers[index] != null) {
+          final TermState state = termStates[index].get(context);
+          if (state != null) {
+            termsEnum.seekExact(query.terms[index], state);
+            disjunction.add(termsEnum.postings(null, PostingsEnum.FREQS), index);
+          }
+        }
+      }
+
+      if (disjunction.isEmpty()) {
+        return null;
+      }
+      final NumericDocValues norms = simScorers == null ? null : context.reader().getNormValues(query.field);
+      return new WeightedTermsScorer(this, disjunction, norms);
+    }
+
+    @Override
+    public boolean isCacheable(final LeafReaderContext context) {
+      return true;
+    }
+
+    /**
+     * Scorer of a segment.
+     */
+    private final class WeightedTermsScorer extends Scorer {
+      /**
+       * Postings of the matched terms
+       */
+      private final TermsDisjunction disjunction;
+
+      /**
+       * Norms of the field, null if the field omits norms or index statistics are not used
+       */
+      private final NumericDocValues norms;
+
+      /**
+       * @param weight Weight of the scorer
+       * @param disjunction Postings of the matched terms
+       * @param norms Norms of the field, null if the field omits norms or index statistics are not used
+       */
+      private WeightedTermsScorer(final Weight weight, final TermsDisjunction disjunction,
+          final NumericDocValues norms) {
+        super(weight);
+        this.disjunction = disjunction;
+        this.norms = norms;
+      }
+
+      @Override
+      public int docID() {
+        return disjunction.docID();
+      }
+
+      @Override
+      public DocIdSetIterator iterator() {
+        return disjunction;
+      }
+
+      @Override
+      public float getMaxScore(final int upTo) {
+        if (simScorers != null) {
+          return Float.POSITIVE_INFINITY;
+        }
+        return boost * query.weightSum;
+      }
+
+      @Override
+      public float score() throws IOException {
+        final int matches = disjunction.matches();
+        float score = 0;
+        if (simScorers == null) {
+          for (int i = 0; i < matches; i++) {
+            score += query.weights[disjunction.index(i)];
+          }
+          return boost * score;
+        }
+
+        final long norm = norm();
+        for (int i = 0; i < matches; i++) {
+          score += simScorers[disjunction.index(i)].score(disjunction.postings(i).freq(), norm);
+        }
+        return score;
+      }
+
+      /**
+       * @return Norm of the current document, 1 if the field omits norms
+       * @throws IOException If reading the norms fails
+       */
+      private long norm() throws IOException {
+        return norms != null && norms.advanceExact(disjunction.docID()) ? norms.longValue() : 1L;
+      }
+    }
+  }
+}
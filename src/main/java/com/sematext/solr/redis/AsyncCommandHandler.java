@@ -0,0 +1,71 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.solr.common.params.SolrParams;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles Redis command execution without blocking the calling thread
+ *
+ * @author prog
+ */
+interface AsyncCommandHandler extends AutoCloseable {
+  /**
+   * Starts executing a Redis command
+   *
+   * @param command The command to execute
+   * @param localParams Solr Local params of the tag
+   * @return Future terms and their scores. Scores may be NaN
+   */
+  CompletableFuture<ScoredTerms> executeCommandAsync(Command command, SolrParams localParams);
+
+  /**
+   * Starts executing a batch of Redis commands
+   *
+   * @param commands The commands to execute
+   * @param localParams Solr Local params of the tags, in the same order as the commands
+   * @return Future results in the same order as the commands. A single result may be null
+   */
+  CompletableFuture<List<ScoredTerms>> executeCommandsAsync(List<Command> commands,
+      List<SolrParams> localParams);
+
+  /**
+   * Starts executing a Redis command whose reply is decoded straight into a slab of terms
+   *
+   * @param command The command to execute
+   * @param localParams Solr Local params of the tag
+   * @return Future members of the reply, null if the reply can't be decoded into a slab
+   */
+  CompletableFuture<ScoredTerms> executeRespCommandAsync(RespCommand command, SolrParams localParams);
+
+  /**
+   * Starts checking which of the given members belong to a Redis object
+   *
+   * @param check Membership check of a redis clause
+   * @param members Members to check
+   * @return Future flags telling whether each member belongs to the object, in the same order as the members
+   */
+  CompletableFuture<boolean[]> executeMembershipCheckAsync(MembershipCheck check, BytesRefSlab members);
+
+  /**
+   * Starts fetching the ids of a clause in a compact form
+   *
+   * @param command Command fetching ids
+   * @param localParams Solr Local params of the tag
+   * @return Future ids, empty if the key does not exist
+   */
+  CompletableFuture<IdSet> executeIdsAsync(IdSetCommand command, SolrParams localParams);
+
+  /**
+   * Releases the threads and connections held by the handler
+   */
+  @Override
+  void close();
+}
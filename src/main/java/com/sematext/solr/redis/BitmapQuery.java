@@ -0,0 +1,198 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.IdSet;
+import java.io.IOException;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.schema.NumberType;
+
+/**
+ * Query matching the documents whose numeric docValues hold an id of a set fetched from Redis, e.g. a bitmap.
+ * <p> Each value of a candidate document is tested with a single lookup in the set. {@link #create} combines it with a
+ * point set query streaming the ids from the set, so selective sets go through the points index and dense ones are
+ * checked against the docValues of candidates. Neither turns an id into a String or a BytesRef of its own.
+ *
+ * @author prog
+ */
+final class BitmapQuery extends Query {
+  /**
+   * Field the docValues are read from
+   */
+  private final String field;
+
+  /**
+   * Set ids
+   */
+  private final IdSet bitmap;
+
+  /**
+   * @param field Field the docValues are read from, must have NUMERIC or SORTED_NUMERIC docValues
+   * @param bitmap Set ids
+   */
+  BitmapQuery(final String field, final IdSet bitmap) {
+    this.field = field;
+    this.bitmap = bitmap;
+  }
+
+  /**
+   * Creates the query matching the ids of a bitmap in a numeric field.
+   *
+   * @param field Field the ids are matched in
+   * @param type Type of the field, must be {@link NumberType#INTEGER} or {@link NumberType#LONG}
+   * @param indexed Whether the field is indexed as points
+   * @param docValues Whether the field has docValues
+   * @param bitmap Set ids
+   * @return Query matching the ids
+   */
+  static Query create(final String field, final NumberType type, final boolean indexed, final boolean docValues,
+      final IdSet bitmap) {
+    if (type != NumberType.INTEGER && type != NumberType.LONG) {
+      throw new IllegalArgumentException("Bitmap ids can't be matched in field " + field + " of type " + type);
+    }
+    if (!indexed && !docValues) {
+      throw new IllegalArgumentException("Field " + field + " is neither indexed nor has docValues");
+    }
+    if (bitmap.size() == 0) {
+      return new MatchNoDocsQuery("Empty bitmap");
+    }
+
+    final Query pointQuery = indexed ? createPointQuery(field, type, bitmap) : null;
+    if (!docValues) {
+      return pointQuery;
+    }
+    final Query docValuesQuery = new BitmapQuery(field, bitmap);
+    return pointQuery == null ? docValuesQuery : new IndexOrDocValuesQuery(pointQuery, docValuesQuery);
+  }
+
+  /**
+   * @param field Field the ids are matched in
+   * @param type Type of the field
+   * @param bitmap Set ids
+   * @return Point set query of the ids in ascending order, encoded into a single scratch
+   */
+  private static Query createPointQuery(final String field, final NumberType type, final IdSet bitmap) {
+    final boolean ints = type == NumberType.INTEGER;
+    final BytesRef scratch = new BytesRef(new byte[ints ? Integer.BYTES : Long.BYTES]);
+
+    return new PointInSetQuery(field, 1, scratch.length, new PointInSetQuery.Stream() {
+      /**
+       * Next id to look at
+       */
+      private long next;
+
+      @Override
+      public BytesRef next() {
+        final long id = bitmap.nextId(next);
+        if (id < 0 || ints && id > Integer.MAX_VALUE) {
+          // Ids beyond the range of the field can't match
+          return null;
+        }
+        next = id + 1;
+        if (ints) {
+          IntPoint.encodeDimension((int) id, scratch.bytes, 0);
+        } else {
+          LongPoint.encodeDimension(id, scratch.bytes, 0);
+        }
+        return scratch;
+      }
+    }) {
+      @Override
+      protected String toString(final byte[] point) {
+        return ints ? Integer.toString(IntPoint.decodeDimension(point, 0))
+            : Long.toString(LongPoint.decodeDimension(point, 0));
+      }
+    };
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) {
+    return new ConstantScoreWeight(this, boost) {
+      @Override
+      public Scorer scorer(final LeafReaderContext context) throws IOException {
+        final SortedNumericDocValues values = DocValues.getSortedNumeric(context.reader(), field);
+        final NumericDocValues singleValues = DocValues.unwrapSingleton(values);
+        final TwoPhaseIterator iterator;
+        if (singleValues != null) {
+          iterator = new TwoPhaseIterator(singleValues) {
+            @Override
+            public boolean matches() throws IOException {
+              return bitmap.contains(singleValues.longValue());
+            }
+
+            @Override
+            public float matchCost() {
+              return 1;
+            }
+          };
+        } else {
+          iterator = new TwoPhaseIterator(values) {
+            @Override
+            public boolean matches() throws IOException {
+              for (int i = 0, count = values.docValueCount(); i < count; i++) {
+                if (bitmap.contains(values.nextValue())) {
+                  return true;
+                }
+              }
+              return false;
+            }
+
+            @Override
+            public float matchCost() {
+              // Reading a few values
+              return 3;
+            }
+          };
+        }
+        return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+      }
+
+      @Override
+      public boolean isCacheable(final LeafReaderContext context) {
+        return DocValues.isCacheable(context, field);
+      }
+    };
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    return field + ":BITMAP(" + bitmap.size() + " ids)";
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * classHash() + field.hashCode()) + bitmap.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final BitmapQuery other = (BitmapQuery) obj;
+    return field.equals(other.field) && bitmap.equals(other.bitmap);
+  }
+}
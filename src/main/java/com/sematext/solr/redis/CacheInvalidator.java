@@ -0,0 +1,252 @@
+package com.sematext.solr.redis;
+
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evicts cached results as soon as Redis announces a change of one of their keys. A background thread keeps a
+ * dedicated connection listening for the announcements.
+ * <p> Announcements sent while no connection listens are lost, so all results are evicted whenever listening starts
+ * or ends. A connection which stops answering pings is dropped and replaced.
+ *
+ * @author prog
+ */
+abstract class CacheInvalidator implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+
+  /**
+   * Key of a chunk of a chunked value
+   */
+  private static final Pattern CHUNK_KEY = Pattern.compile("(.+):\\d+");
+
+  /**
+   * Default interval in milliseconds between attempts to connect
+   */
+  static final long DEFAULT_RETRY_INTERVAL = 1000;
+
+  /**
+   * Default interval in milliseconds between pings of the listening connection
+   */
+  static final long DEFAULT_PING_INTERVAL = 5000;
+
+  /**
+   * Results to evict
+   */
+  final ResultCache cache;
+
+  /**
+   * Opens a connection to the Redis primary
+   */
+  private final Supplier<Jedis> connector;
+
+  /**
+   * Interval in milliseconds between attempts to connect
+   */
+  private final long retryInterval;
+
+  /**
+   * Interval in milliseconds between pings
+   */
+  private final long pingInterval;
+
+  /**
+   * Thread holding the connection
+   */
+  private final Thread listener;
+
+  /**
+   * Pings the listening connection
+   */
+  private final ScheduledExecutorService pinger;
+
+  /**
+   * Listening connection, null while disconnected
+   */
+  private volatile Jedis connection;
+
+  /**
+   * Whether the connection listens for announcements
+   */
+  private volatile boolean listening;
+
+  /**
+   * Whether a ping was sent and not answered yet
+   */
+  private volatile boolean awaitingPong;
+
+  /**
+   * Whether the invalidator was closed
+   */
+  private volatile boolean closed;
+
+  /**
+   * @param cache Results to evict
+   * @param connector Opens a connection to the Redis primary
+   * @param name Name of the background threads
+   * @param retryInterval Interval in milliseconds between attempts to connect
+   * @param pingInterval Interval in milliseconds between pings of the listening connection
+   */
+  CacheInvalidator(final ResultCache cache, final Supplier<Jedis> connector, final String name,
+      final long retryInterval, final long pingInterval) {
+    this.cache = cache;
+    this.connector = connector;
+    this.retryInterval = retryInterval;
+    this.pingInterval = pingInterval;
+    this.listener = new SolrNamedThreadFactory(name).newThread(this::run);
+    this.listener.setDaemon(true);
+    this.pinger = Executors.newSingleThreadScheduledExecutor(new SolrNamedThreadFactory(name + "-ping"));
+  }
+
+  /**
+   * Starts listening in the background.
+   */
+  void start() {
+    listener.start();
+    pinger.scheduleWithFixedDelay(this::checkConnection, pingInterval, pingInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    pinger.shutdownNow();
+    disconnect(connection);
+    listener.interrupt();
+  }
+
+  /**
+   * Listens on a connection until it is lost. The connection is opened and closed by the invalidator.
+   *
+   * @param jedis Connection to listen on
+   * @throws IOException If reading or writing fails
+   */
+  abstract void listen(Jedis jedis) throws IOException;
+
+  /**
+   * Sends a ping over the listening connection, whose answer is reported with {@link #pong()}.
+   *
+   * @param jedis Listening connection
+   * @throws IOException If writing fails
+   */
+  abstract void ping(Jedis jedis) throws IOException;
+
+  /**
+   * Reports that the connection listens for announcements. All results are evicted, since changes before were
+   * missed.
+   */
+  final void listening() {
+    awaitingPong = false;
+    listening = true;
+    cache.invalidateAll();
+  }
+
+  /**
+   * Evicts the results of a changed key. A change of a chunk also evicts the results of its chunked value.
+   *
+   * @param key Changed key
+   */
+  final void invalidate(final String key) {
+    cache.invalidate(key);
+    final Matcher chunk = CHUNK_KEY.matcher(key);
+    if (chunk.matches()) {
+      cache.invalidate(chunk.group(1));
+    }
+  }
+
+  /**
+   * Reports the answer to a ping.
+   */
+  final void pong() {
+    awaitingPong = false;
+  }
+
+  /**
+   * @return Whether the invalidator was closed
+   */
+  final boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Listens until the invalidator is closed, waiting the retry interval after each lost connection.
+   */
+  private void run() {
+    while (!closed) {
+      subscribe();
+      try {
+        Thread.sleep(retryInterval);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Listens on a new connection until it is lost, then evicts all results.
+   */
+  void subscribe() {
+    try (Jedis jedis = connector.get()) {
+      connection = jedis;
+      if (!closed) {
+        listen(jedis);
+      }
+    } catch (final JedisException | IOException e) {
+      if (!closed) {
+        log.warn("Lost announcements of changed Redis keys, evicting all cached results", e);
+      }
+    } finally {
+      listening = false;
+      connection = null;
+    }
+    cache.invalidateAll();
+  }
+
+  /**
+   * Pings the listening connection, dropping it if the previous ping is still unanswered.
+   */
+  private void checkConnection() {
+    final Jedis jedis = connection;
+    if (jedis == null || !listening) {
+      return;
+    }
+
+    if (awaitingPong) {
+      log.warn("Connection announcing changed Redis keys doesn't answer pings, reconnecting");
+      disconnect(jedis);
+      return;
+    }
+    awaitingPong = true;
+    try {
+      ping(jedis);
+    } catch (final JedisException | IOException e) {
+      log.warn("Failed to ping connection announcing changed Redis keys, reconnecting", e);
+      disconnect(jedis);
+    }
+  }
+
+  /**
+   * Drops a connection, which ends listening on it.
+   *
+   * @param jedis Connection, ignored if null
+   */
+  private static void disconnect(final Jedis jedis) {
+    if (jedis == null) {
+      return;
+    }
+    try {
+      jedis.getClient().disconnect();
+    } catch (final JedisException e) {
+      log.debug("Failed to disconnect connection announcing changed Redis keys", e);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.solr.common.params.SolrParams;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Command handler answering redis clauses from a {@link ResultCache} and fetching only the missing results from the
+ * handler it wraps. Membership checks and id sets are not cached.
+ *
+ * @author prog
+ */
+class CachingCommandHandler implements CommandHandler {
+  /**
+   * Command handler fetching missing results
+   */
+  private final CommandHandler delegate;
+
+  /**
+   * Cached results
+   */
+  private final ResultCache cache;
+
+  /**
+   * @param delegate Command handler fetching missing results
+   * @param cache Cached results
+   */
+  CachingCommandHandler(final CommandHandler delegate, final ResultCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override
+  public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+    return cache.get(localParams, params -> delegate.executeCommand(command, params));
+  }
+
+  @Override
+  public List<ScoredTerms> executeCommands(final List<Command> commands, final List<SolrParams> localParams) {
+    final Lookup lookup = new Lookup(commands, localParams);
+    if (lookup.misses.isEmpty()) {
+      return lookup.results;
+    }
+
+    boolean completed = false;
+    try {
+      final List<ScoredTerms> results = lookup.complete(
+          delegate.executeCommands(lookup.missingCommands, lookup.missingParams));
+      completed = true;
+      return results;
+    } finally {
+      if (!completed) {
+        lookup.release();
+      }
+    }
+  }
+
+  @Override
+  public CompletableFuture<List<ScoredTerms>> submitCommands(final List<Command> commands,
+      final List<SolrParams> localParams) {
+    final Lookup lookup = new Lookup(commands, localParams);
+    return lookup.misses.isEmpty() ? CompletableFuture.completedFuture(lookup.results)
+        : delegate.submitCommands(lookup.missingCommands, lookup.missingParams).thenApply(lookup::complete)
+            .whenComplete((results, error) -> {
+              if (error != null) {
+                lookup.release();
+              }
+            });
+  }
+
+  @Override
+  public ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    return cache.get(localParams, params -> delegate.executeRespCommand(command, params));
+  }
+
+  @Override
+  public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    return delegate.executeMembershipCheck(check, members);
+  }
+
+  @Override
+  public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    return delegate.executeIds(command, localParams);
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Cached results of a batch and the commands still to be fetched
+   */
+  private final class Lookup {
+    /**
+     * Results in the same order as the commands, null where missing
+     */
+    private final List<ScoredTerms> results;
+
+    /**
+     * Index of each missing result
+     */
+    private final List<Integer> misses = new ArrayList<>();
+
+    /**
+     * Commands of the missing results
+     */
+    private final List<Command> missingCommands = new ArrayList<>();
+
+    /**
+     * Local params of the missing results
+     */
+    private final List<SolrParams> missingParams = new ArrayList<>();
+
+    /**
+     * Tickets of the missing results, null where they are not cached
+     */
+    private final List<ResultCache.Ticket> tickets = new ArrayList<>();
+
+    /**
+     * @param commands The commands of the batch
+     * @param localParams Solr Local params of the tags, in the same order as the commands
+     */
+    private Lookup(final List<Command> commands, final List<SolrParams> localParams) {
+      results = new ArrayList<>(commands.size());
+      for (int i = 0; i < commands.size(); i++) {
+        final ScoredTerms cached = cache.getIfPresent(localParams.get(i));
+        results.add(cached);
+        if (cached == null) {
+          misses.add(i);
+          missingCommands.add(commands.get(i));
+          missingParams.add(localParams.get(i));
+          tickets.add(cache.reserve(localParams.get(i)));
+        }
+      }
+    }
+
+    /**
+     * Caches fetched results and fills them in.
+     *
+     * @param fetched Results of the missing commands, in the same order as the commands
+     * @return Results of all commands
+     */
+    private List<ScoredTerms> complete(final List<ScoredTerms> fetched) {
+      for (int i = 0; i < misses.size(); i++) {
+        cache.put(tickets.get(i), fetched.get(i));
+        results.set(misses.get(i), fetched.get(i));
+      }
+      return results;
+    }
+
+    /**
+     * Stops tracking the missing results after their fetch failed.
+     */
+    private void release() {
+      tickets.forEach(cache::release);
+    }
+  }
+}
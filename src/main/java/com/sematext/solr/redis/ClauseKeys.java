@@ -0,0 +1,77 @@
+package com.sematext.solr.redis;
+
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.search.QueryParsing;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keys of redis clauses made of their local params sorted by name, so clauses which only differ in the order of their
+ * params or in params that don't matter share a key. The fetch key identifies what a clause fetches from Redis and
+ * keys the batch of a request and the result cache, the query key also covers how the query is built and keys the
+ * query cache.
+ *
+ * @author prog
+ */
+final class ClauseKeys {
+  /**
+   * Local params which only influence how the query is built and not what is fetched from Redis
+   */
+  private static final Set<String> QUERY_BUILDING_PARAMS = Set.of(QueryParsing.TYPE, QueryParsing.V, "tag", "cache",
+      "cost", "operator", "ignoreScore", "useAnalyzer", "useIndexStats", "strategy", "batchSize");
+
+  /**
+   * Local params which change neither what is fetched from Redis nor the built query
+   */
+  private static final Set<String> IGNORED_PARAMS = Set.of(QueryParsing.TYPE, "tag", "cache", "cost");
+
+  private ClauseKeys() {
+    super();
+  }
+
+  /**
+   * @param localParams Local params of a clause
+   * @return Key of what the clause fetches from Redis
+   */
+  static String fetchKey(final SolrParams localParams) {
+    return key(localParams, QUERY_BUILDING_PARAMS);
+  }
+
+  /**
+   * @param localParams Local params of a clause
+   * @return Key of what the clause fetches from Redis and how its query is built
+   */
+  static String queryKey(final SolrParams localParams) {
+    return key(localParams, IGNORED_PARAMS);
+  }
+
+  /**
+   * @param localParams Local params of a clause
+   * @param ignored Params left out of the key
+   * @return Key made of all other params sorted by name, the name of the command in upper case
+   */
+  private static String key(final SolrParams localParams, final Set<String> ignored) {
+    final Map<String, String[]> params = new TreeMap<>();
+    final Iterator<String> names = localParams.getParameterNamesIterator();
+    while (names != null && names.hasNext()) {
+      final String name = names.next();
+      if (!ignored.contains(name)) {
+        params.put(name, localParams.getParams(name));
+      }
+    }
+
+    final StringBuilder key = new StringBuilder();
+    for (final Map.Entry<String, String[]> param : params.entrySet()) {
+      key.append(param.getKey());
+      for (final String value : param.getValue()) {
+        key.append('\u0001').append("command".equals(param.getKey()) ? value.toUpperCase(Locale.ROOT) : value);
+      }
+      key.append('\u0000');
+    }
+    return key.toString();
+  }
+}
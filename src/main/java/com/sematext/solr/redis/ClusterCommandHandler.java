@@ -0,0 +1,555 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.MultiKeyCommand;
+import com.sematext.solr.redis.command.PipelinedCommand;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisCluster;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Executes commands against a Redis Cluster.
+ * <p> Commands are routed to the node serving the hash slot of their keys. Commands whose keys span several slots
+ * are split into one partial command per slot (see {@link MultiKeyCommand}). The partial commands are pipelined
+ * per node, the nodes are queried in parallel and the partial results are merged on the client side.
+ *
+ * @author prog
+ */
+class ClusterCommandHandler implements CommandHandler {
+  /**
+   * Logger
+   */
+  private static final Logger log = LoggerFactory.getLogger(ClusterCommandHandler.class);
+
+  /**
+   * Cluster connection handler keeping the slot cache and a pool per node
+   */
+  private final JedisSlotBasedConnectionHandler connectionHandler;
+
+  /**
+   * Executor running requests to several nodes in parallel. Once all its threads are busy further requests are run
+   * by the submitting thread, so a request fanning out from an executor thread never waits for a free thread
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Maximum number of retries after communication errors
+   */
+  private final int maxRetries;
+
+  /**
+   * Maximum number of MOVED and ASK redirections followed
+   */
+  private final int maxRedirections;
+
+  /**
+   * Whether replies of commands supporting it are decoded straight into a slab of terms
+   */
+  private final boolean respDecoding;
+
+  /**
+   * Primary node serving every hash slot, fetched with CLUSTER SLOTS on first use and dropped whenever the cluster
+   * layout changed
+   */
+  private volatile HostAndPort[] slotNodes;
+
+  /**
+   * Partial command executed on a single hash slot.
+   */
+  private static final class PartialCommand {
+    /**
+     * Hash slot of the accessed keys
+     */
+    private final int slot;
+
+    /**
+     * Command to execute
+     */
+    private final Command command;
+
+    /**
+     * Local params restricted to the keys of the slot
+     */
+    private final SolrParams params;
+
+    /**
+     * @param slot Hash slot of the accessed keys
+     * @param command Command to execute
+     * @param params Local params restricted to the keys of the slot
+     */
+    private PartialCommand(final int slot, final Command command, final SolrParams params) {
+      this.slot = slot;
+      this.command = command;
+      this.params = params;
+    }
+  }
+
+  /**
+   * @param connectionHandler Cluster connection handler
+   * @param maxRetries Maximum number of retries after communication errors
+   * @param maxRedirections Maximum number of MOVED and ASK redirections followed
+   * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+   * @param threads Maximum number of threads running requests to several nodes in parallel
+   */
+  ClusterCommandHandler(final JedisSlotBasedConnectionHandler connectionHandler, final int maxRetries,
+      final int maxRedirections, final boolean respDecoding, final int threads) {
+    this(connectionHandler, maxRetries, maxRedirections, respDecoding, new ExecutorUtil.MDCAwareThreadPoolExecutor(0,
+        threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), new SolrNamedThreadFactory("redis-cluster"),
+        new ThreadPoolExecutor.CallerRunsPolicy()));
+  }
+
+  /**
+   * @param connectionHandler Cluster connection handler
+   * @param maxRetries Maximum number of retries after communication errors
+   * @param maxRedirections Maximum number of MOVED and ASK redirections followed
+   * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+   * @param executor Executor running requests to several nodes in parallel
+   */
+  ClusterCommandHandler(final JedisSlotBasedConnectionHandler connectionHandler, final int maxRetries,
+      final int maxRedirections, final boolean respDecoding, final ExecutorService executor) {
+    this.connectionHandler = connectionHandler;
+    this.maxRetries = maxRetries;
+    this.maxRedirections = maxRedirections;
+    this.respDecoding = respDecoding;
+    this.executor = executor;
+  }
+
+  @Override
+  public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+    final String[] keys = command.getKeys(localParams);
+
+    if (keys == null) {
+      return executeOnAllNodes(command, localParams);
+    }
+
+    if (keys.length == 0) {
+      return executeOnSlot(-1, jedis -> command.execute(jedis, localParams), command.getClass().getName(), "");
+    }
+
+    final Map<Integer, List<String>> keysBySlot = groupBySlot(keys);
+    if (keysBySlot.size() == 1) {
+      return executeOnSlot(keysBySlot.keySet().iterator().next(), jedis -> command.execute(jedis, localParams),
+          command.getClass().getName(), Arrays.toString(keys));
+    }
+
+    if (!(command instanceof MultiKeyCommand)) {
+      throw new IllegalArgumentException(String.format("Keys %s of command %s span several hash slots",
+          Arrays.toString(keys), command.getClass().getName()));
+    }
+
+    final MultiKeyCommand multiKeyCommand = (MultiKeyCommand) command;
+    final List<PartialCommand> partialCommands = new ArrayList<>(keysBySlot.size());
+    int group = 0;
+    for (final Map.Entry<Integer, List<String>> slotKeys : keysBySlot.entrySet()) {
+      final String[] groupKeys = slotKeys.getValue().toArray(new String[0]);
+      partialCommands.add(new PartialCommand(slotKeys.getKey(), multiKeyCommand.getPartialCommand(group++),
+          multiKeyCommand.getPartialParams(localParams, groupKeys)));
+    }
+
+    log.debug("Keys {} of command {} span {} hash slots, fanning out", keys, command.getClass().getName(),
+        partialCommands.size());
+
+    return multiKeyCommand.merge(fanOut(partialCommands, command.getClass().getName(), Arrays.toString(keys)));
+  }
+
+  @Override
+  public List<ScoredTerms> executeCommands(final List<Command> commands, final List<SolrParams> localParams) {
+    final List<Future<ScoredTerms>> futures = new ArrayList<>(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      final Command command = commands.get(i);
+      final SolrParams params = localParams.get(i);
+      futures.add(executor.submit(() -> executeCommand(command, params)));
+    }
+
+    return await(futures);
+  }
+
+  @Override
+  public ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    final String[] keys = ((Command<?>) command).getKeys(localParams);
+    if (!respDecoding || keys == null || keys.length == 0) {
+      return null;
+    }
+
+    final Map<Integer, List<String>> keysBySlot = groupBySlot(keys);
+    if (keysBySlot.size() > 1) {
+      // Partial results are fetched and merged by fanning out
+      return null;
+    }
+
+    final byte[][] args = command.getRespArgs(localParams);
+    return executeOnSlot(keysBySlot.keySet().iterator().next(),
+        jedis -> ScoredTerms.of(new RespConnection(jedis).execute(args)), command.getClass().getName(),
+        Arrays.toString(keys));
+  }
+
+  @Override
+  public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    return executeOnSlot(JedisClusterCRC16.getSlot(check.getKey()),
+        jedis -> check.execute(new RespConnection(jedis), members), check.toString(), members.size() + " members");
+  }
+
+  @Override
+  public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    command.checkParams(localParams);
+    final String[] keys = ((Command<?>) command).getKeys(localParams);
+    final Map<Integer, List<String>> keysBySlot = groupBySlot(keys);
+    if (keysBySlot.size() == 1) {
+      return executeOnSlot(keysBySlot.keySet().iterator().next(),
+          jedis -> command.fetchIds(new RespConnection(jedis), localParams), command.getClass().getName(),
+          Arrays.toString(keys));
+    }
+
+    if (!(command instanceof MultiKeyCommand)) {
+      throw new IllegalArgumentException(String.format("Keys %s of command %s span several hash slots",
+          Arrays.toString(keys), command.getClass().getName()));
+    }
+
+    final MultiKeyCommand multiKeyCommand = (MultiKeyCommand) command;
+    final List<IdSet> ids = new ArrayList<>(keysBySlot.size());
+    for (final Map.Entry<Integer, List<String>> slotKeys : keysBySlot.entrySet()) {
+      final SolrParams params = multiKeyCommand.getPartialParams(localParams,
+          slotKeys.getValue().toArray(new String[0]));
+      ids.add(executeOnSlot(slotKeys.getKey(), jedis -> command.fetchIds(new RespConnection(jedis), params),
+          command.getClass().getName(), slotKeys.getValue().toString()));
+    }
+    return IdSet.union(ids);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    connectionHandler.close();
+  }
+
+  /**
+   * Executes a command which is not bound to keys on every primary node and merges the results.
+   *
+   * @param command Command to execute
+   * @param localParams Solr local params of the tag
+   * @return Merged result
+   */
+  private ScoredTerms executeOnAllNodes(final Command command, final SolrParams localParams) {
+    if (!(command instanceof MultiKeyCommand)) {
+      throw new IllegalArgumentException(String.format("Results of command %s executed on every node cannot be merged",
+          command.getClass().getName()));
+    }
+
+    final List<PartialCommand> partialCommands = new ArrayList<>();
+    for (final int slot : getFirstSlotOfEveryPrimary()) {
+      partialCommands.add(new PartialCommand(slot, command, localParams));
+    }
+
+    return ((MultiKeyCommand) command).merge(fanOut(partialCommands, command.getClass().getName(), "all nodes"));
+  }
+
+  /**
+   * Executes partial commands. The partial commands are pipelined per node and the nodes are queried in parallel.
+   * The whole fan-out is retried if the cluster layout changed or a node could not be reached.
+   *
+   * @param partialCommands Partial commands to execute
+   * @param description Description of the operation used for logging
+   * @param keys Redis key(s) used for logging
+   * @return Results in the same order as the partial commands
+   */
+  private List<ScoredTerms> fanOut(final List<PartialCommand> partialCommands, final String description,
+      final String keys) {
+    int retries = 0;
+    int redirections = 0;
+
+    while (true) {
+      try {
+        return tryFanOut(partialCommands);
+      } catch (final JedisMovedDataException | JedisAskDataException e) {
+        log.debug("Cluster layout changed during fan-out of command {} on {}: {}", description, keys, e.getMessage());
+        slotNodes = null;
+        connectionHandler.renewSlotCache();
+
+        if (++redirections > maxRedirections) {
+          throw new JedisClusterMaxRedirectionsException("Too many cluster redirections for " + description);
+        }
+      } catch (final JedisConnectionException e) {
+        log.warn("Redis communication error occurred during fan-out of command {} on {}: {}. Retry {} of {}",
+            description, keys, e.getMessage(), retries + 1, maxRetries);
+        slotNodes = null;
+        connectionHandler.renewSlotCache();
+
+        if (++retries > maxRetries) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Executes partial commands once. The partial commands are grouped by the node serving their slot and a single
+   * connection is borrowed per node.
+   *
+   * @param partialCommands Partial commands to execute
+   * @return Results in the same order as the partial commands
+   */
+  private List<ScoredTerms> tryFanOut(final List<PartialCommand> partialCommands) {
+    final HostAndPort[] nodes = getSlotNodes();
+    final Map<HostAndPort, List<Integer>> commandsByNode = new LinkedHashMap<>();
+    for (int i = 0; i < partialCommands.size(); i++) {
+      final int slot = partialCommands.get(i).slot;
+      if (nodes[slot] == null) {
+        throw new JedisConnectionException("No node serves hash slot " + slot);
+      }
+      commandsByNode.computeIfAbsent(nodes[slot], node -> new ArrayList<>()).add(i);
+    }
+
+    final List<Jedis> connections = new ArrayList<>(commandsByNode.size());
+    try {
+      final List<Future<List<ScoredTerms>>> futures = new ArrayList<>(commandsByNode.size());
+      for (final Map.Entry<HostAndPort, List<Integer>> node : commandsByNode.entrySet()) {
+        final Jedis jedis = connectionHandler.getConnectionFromNode(node.getKey());
+        connections.add(jedis);
+
+        final List<PartialCommand> nodeCommands = new ArrayList<>(node.getValue().size());
+        for (final int i : node.getValue()) {
+          nodeCommands.add(partialCommands.get(i));
+        }
+        futures.add(executor.submit(() -> executePipelined(jedis, nodeCommands)));
+      }
+
+      final List<ScoredTerms> results = new ArrayList<>(partialCommands.size());
+      for (int i = 0; i < partialCommands.size(); i++) {
+        results.add(null);
+      }
+
+      final List<List<ScoredTerms>> nodeResults = await(futures);
+      int node = 0;
+      for (final List<Integer> indices : commandsByNode.values()) {
+        final List<ScoredTerms> partialResults = nodeResults.get(node++);
+        for (int i = 0; i < indices.size(); i++) {
+          results.set(indices.get(i), partialResults.get(i));
+        }
+      }
+
+      return results;
+    } finally {
+      for (final Jedis jedis : connections) {
+        jedis.close();
+      }
+    }
+  }
+
+  /**
+   * Executes partial commands on a single node connection in one round trip.
+   *
+   * @param jedis Node connection
+   * @param partialCommands Partial commands to execute
+   * @return Results in the same order as the partial commands
+   */
+  private static List<ScoredTerms> executePipelined(final Jedis jedis,
+      final List<PartialCommand> partialCommands) {
+    final List<Supplier<ScoredTerms>> responses = new ArrayList<>(partialCommands.size());
+    final Pipeline pipeline = jedis.pipelined();
+
+    try {
+      for (final PartialCommand partialCommand : partialCommands) {
+        responses.add(partialCommand.command instanceof PipelinedCommand
+            ? ((PipelinedCommand) partialCommand.command).queue(pipeline, partialCommand.params) : null);
+      }
+    } finally {
+      pipeline.sync();
+    }
+
+    final List<ScoredTerms> results = new ArrayList<>(partialCommands.size());
+    for (int i = 0; i < partialCommands.size(); i++) {
+      final Supplier<ScoredTerms> response = responses.get(i);
+      results.add(response != null ? response.get()
+          : partialCommands.get(i).command.execute(jedis, partialCommands.get(i).params));
+    }
+
+    return results;
+  }
+
+  /**
+   * Runs an operation on the node serving a hash slot. MOVED and ASK redirections are followed and communication
+   * errors are retried.
+   *
+   * @param slot Hash slot, -1 for any node
+   * @param operation Operation to run
+   * @param description Description of the operation used for logging
+   * @param keys Redis key(s) used for logging
+   * @param <T> Result type
+   * @return Result of the operation
+   */
+  private <T> T executeOnSlot(final int slot, final Function<Jedis, T> operation, final String description,
+      final String keys) {
+    int retries = 0;
+    int redirections = 0;
+    HostAndPort askNode = null;
+
+    while (true) {
+      Jedis jedis = null;
+
+      try {
+        if (askNode != null) {
+          jedis = connectionHandler.getConnectionFromNode(askNode);
+          jedis.asking();
+        } else {
+          jedis = slot < 0 ? connectionHandler.getConnection() : connectionHandler.getConnectionFromSlot(slot);
+        }
+
+        return operation.apply(jedis);
+
+      } catch (final JedisAskDataException e) {
+        askNode = e.getTargetNode();
+        log.debug("Command {} on {} asked to be sent to {}", description, keys, askNode);
+
+        if (++redirections > maxRedirections) {
+          throw new JedisClusterMaxRedirectionsException("Too many cluster redirections for " + description);
+        }
+      } catch (final JedisMovedDataException e) {
+        askNode = null;
+        log.debug("Slot of command {} on {} moved to {}", description, keys, e.getTargetNode());
+        slotNodes = null;
+        connectionHandler.renewSlotCache(jedis);
+
+        if (++redirections > maxRedirections) {
+          throw new JedisClusterMaxRedirectionsException("Too many cluster redirections for " + description);
+        }
+      } catch (final JedisConnectionException e) {
+        askNode = null;
+        log.warn("Redis communication error occurred for command {} on {}: {}. Retry {} of {}", description, keys,
+            e.getMessage(), retries + 1, maxRetries);
+        slotNodes = null;
+        connectionHandler.renewSlotCache();
+
+        if (++retries > maxRetries) {
+          throw e;
+        }
+      } finally {
+        if (jedis != null) {
+          jedis.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return First hash slot of every primary node, used to address each primary once
+   */
+  private List<Integer> getFirstSlotOfEveryPrimary() {
+    final HostAndPort[] nodes = getSlotNodes();
+    final Map<HostAndPort, Integer> firstSlotByNode = new LinkedHashMap<>();
+    for (int slot = 0; slot < nodes.length; slot++) {
+      if (nodes[slot] != null) {
+        firstSlotByNode.putIfAbsent(nodes[slot], slot);
+      }
+    }
+    return new ArrayList<>(firstSlotByNode.values());
+  }
+
+  /**
+   * @return Primary node serving every hash slot, null for slots not served by any node
+   */
+  private HostAndPort[] getSlotNodes() {
+    HostAndPort[] nodes = slotNodes;
+    if (nodes == null) {
+      nodes = new HostAndPort[BinaryJedisCluster.HASHSLOTS];
+      for (final Object slotInfo : executeOnSlot(-1, Jedis::clusterSlots, "CLUSTER SLOTS", "")) {
+        final List<Object> slotRange = (List<Object>) slotInfo;
+        final List<Object> primary = (List<Object>) slotRange.get(2);
+        final HostAndPort node = new HostAndPort(SafeEncoder.encode((byte[]) primary.get(0)),
+            ((Long) primary.get(1)).intValue());
+        Arrays.fill(nodes, ((Long) slotRange.get(0)).intValue(), ((Long) slotRange.get(1)).intValue() + 1, node);
+      }
+      slotNodes = nodes;
+    }
+    return nodes;
+  }
+
+  /**
+   * Groups keys by their hash slot, keeping the order of first occurrence.
+   *
+   * @param keys Keys to group
+   * @return Keys by hash slot
+   */
+  static Map<Integer, List<String>> groupBySlot(final String[] keys) {
+    final Map<Integer, List<String>> keysBySlot = new LinkedHashMap<>();
+    for (final String key : keys) {
+      keysBySlot.computeIfAbsent(JedisClusterCRC16.getSlot(key), slot -> new ArrayList<>()).add(key);
+    }
+    return keysBySlot;
+  }
+
+  /**
+   * Waits for all futures. An interrupt doesn't stop the wait, it is only reported once all futures are done.
+   *
+   * @param futures Futures to wait for
+   * @param <T> Result type
+   * @return Results in the same order as the futures
+   */
+  static <T> List<T> await(final List<Future<T>> futures) {
+    final List<T> results = new ArrayList<>(futures.size());
+    RuntimeException failure = null;
+    boolean interrupted = false;
+
+    // All futures are awaited even after a failure or an interrupt, so no connection is returned to the pool while
+    // it is still in use
+    for (final Future<T> future : futures) {
+      while (true) {
+        try {
+          results.add(future.get());
+          break;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        } catch (final ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause() : new JedisException(e.getCause());
+          }
+          break;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      throw new JedisException("Interrupted while waiting for Redis");
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    return results;
+  }
+}
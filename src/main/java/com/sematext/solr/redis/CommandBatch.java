@@ -0,0 +1,187 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Request scoped batch of Redis commands.
+ * <p> When the first {!redis} clause of a request is created, all {!redis} clauses found in the q and fq
+ * parameters are collected and sent to Redis at once. The batch is kept in the request context, so the following
+ * parsers of the same request pick their results up without another round trip.
+ *
+ * @author prog
+ */
+final class CommandBatch {
+  /**
+   * Logger
+   */
+  private static final Logger log = LoggerFactory.getLogger(CommandBatch.class);
+
+  /**
+   * Key of the batch in the request context
+   */
+  private static final String CONTEXT_KEY = CommandBatch.class.getName();
+
+  /**
+   * Batch with no results, used when there is nothing to batch
+   */
+  private static final CommandBatch EMPTY = new CommandBatch(Collections.emptyMap(),
+      CompletableFuture.completedFuture(Collections.emptyList()));
+
+  /**
+   * Position of the clause results by clause key
+   */
+  private final Map<String, Integer> indices;
+
+  /**
+   * Results of the batch, possibly still being fetched
+   */
+  private final CompletableFuture<List<ScoredTerms>> results;
+
+  /**
+   * @param indices Position of the clause results by clause key
+   * @param results Results of the batch, possibly still being fetched
+   */
+  private CommandBatch(final Map<String, Integer> indices, final CompletableFuture<List<ScoredTerms>> results) {
+    this.indices = indices;
+    this.results = results;
+  }
+
+  /**
+   * Returns the batch of the request, submitting it to Redis if this is the first clause of the request. With an
+   * asynchronous command handler the batch is fetched in the background.
+   *
+   * @param req Request object
+   * @param parserType Name the redis query parser is registered with
+   * @param commands Known commands by name
+   * @param commandHandler Redis command handler
+   * @return Batch of the request
+   */
+  static CommandBatch forRequest(final SolrQueryRequest req, final String parserType,
+      final Map<String, Command<?>> commands, final CommandHandler commandHandler) {
+    final Map<Object, Object> context = req.getContext();
+    CommandBatch batch = (CommandBatch) context.get(CONTEXT_KEY);
+
+    if (batch == null) {
+      batch = submit(findClauses(req.getParams(), parserType), commands, commandHandler);
+      context.put(CONTEXT_KEY, batch);
+    }
+
+    return batch;
+  }
+
+  /**
+   * @param localParams Local params of a clause
+   * @return Whether the batch contains the clause
+   */
+  boolean contains(final SolrParams localParams) {
+    return indices.containsKey(ClauseKeys.fetchKey(localParams));
+  }
+
+  /**
+   * Returns the results of a clause, waiting for the batch if it is still being fetched.
+   *
+   * @param localParams Local params of a clause
+   * @return Results of the clause, may be null
+   */
+  ScoredTerms get(final SolrParams localParams) {
+    return SyncCommandHandler.await(results).get(indices.get(ClauseKeys.fetchKey(localParams)));
+  }
+
+  /**
+   * Submits all clauses of a request as a single batch.
+   *
+   * @param clauses Local params of the clauses by clause key
+   * @param commands Known commands by name
+   * @param commandHandler Redis command handler
+   * @return Batch holding the submitted clauses
+   */
+  private static CommandBatch submit(final Map<String, SolrParams> clauses, final Map<String, Command<?>> commands,
+      final CommandHandler commandHandler) {
+    final Map<String, Integer> indices = new HashMap<>();
+    final List<Command> batchCommands = new ArrayList<>(clauses.size());
+    final List<SolrParams> batchParams = new ArrayList<>(clauses.size());
+
+    for (final Map.Entry<String, SolrParams> clause : clauses.entrySet()) {
+      final String commandName = clause.getValue().get("command");
+      final Command<?> command = commandName == null ? null : commands.get(commandName.toUpperCase());
+      // Membership clauses never fetch their object, ids are fetched in a compact form by their own clause and
+      // version stamped clauses only fetch their object once its version changed
+      final boolean membership = "membership".equalsIgnoreCase(clause.getValue().get("strategy"));
+      final boolean ids = command instanceof IdSetCommand && ((IdSetCommand) command).fetchesIds(clause.getValue());
+      final boolean versioned = QueryCache.getVersionKey(clause.getValue()) != null
+          || QueryCache.isDigested(clause.getValue());
+      if (command != null && !membership && !ids && !versioned) {
+        indices.put(clause.getKey(), batchCommands.size());
+        batchCommands.add(command);
+        batchParams.add(clause.getValue());
+      }
+    }
+
+    if (batchCommands.isEmpty()) {
+      return EMPTY;
+    }
+
+    log.debug("Fetching {} redis clauses in a single batch", batchCommands.size());
+
+    return new CommandBatch(indices, commandHandler.submitCommands(batchCommands, batchParams));
+  }
+
+  /**
+   * Finds all clauses of the given parser type in the q and fq parameters of a request. Clauses nested in a
+   * query string, e.g. {@code foo:bar OR ({!redis command=smembers key=baz}field)}, are found as well.
+   *
+   * @param params Request parameters
+   * @param parserType Name the redis query parser is registered with
+   * @return Local params of the distinct clauses by clause key
+   */
+  static Map<String, SolrParams> findClauses(final SolrParams params, final String parserType) {
+    final Map<String, SolrParams> clauses = new LinkedHashMap<>();
+    if (params == null) {
+      return clauses;
+    }
+
+    final List<String> queryStrings = new ArrayList<>();
+    if (params.get(CommonParams.Q) != null) {
+      queryStrings.add(params.get(CommonParams.Q));
+    }
+    if (params.getParams(CommonParams.FQ) != null) {
+      Collections.addAll(queryStrings, params.getParams(CommonParams.FQ));
+    }
+
+    for (final String queryString : queryStrings) {
+      int start = queryString.indexOf(QueryParsing.LOCALPARAM_START);
+      while (start >= 0) {
+        final ModifiableSolrParams localParams = new ModifiableSolrParams();
+        int end = start + QueryParsing.LOCALPARAM_START.length();
+        try {
+          end = QueryParsing.parseLocalParams(queryString, start, localParams, params);
+          if (parserType.equals(localParams.get(QueryParsing.TYPE))) {
+            clauses.put(ClauseKeys.fetchKey(localParams), localParams);
+          }
+        } catch (final SyntaxError e) {
+          log.debug("Skipping unparsable local params in {}: {}", queryString, e.getMessage());
+        }
+        start = queryString.indexOf(QueryParsing.LOCALPARAM_START, Math.max(end, start + 1));
+      }
+    }
+
+    return clauses;
+  }
+}
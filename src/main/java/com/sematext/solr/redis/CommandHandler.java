@@ -1,21 +1,110 @@
 package com.sematext.solr.redis;
 
 import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
 import org.apache.solr.common.params.SolrParams;
+import redis.clients.jedis.exceptions.JedisException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles Redis command execution
  *
  * @author lstrojny
  */
-interface CommandHandler {
+interface CommandHandler extends AutoCloseable {
   /**
    * Executes a Redis command
    *
    * @param command The command to execute
    * @param localParams Solr Local params of the tag
-   * @return Map of value (string) and score (float). Score may be NaN
+   * @return Terms and their scores. Scores may be NaN
    */
-  Map<String, Float> executeCommand(final Command command, final SolrParams localParams);
+  ScoredTerms executeCommand(final Command command, final SolrParams localParams);
+
+  /**
+   * Executes a batch of Redis commands. Implementations should send the whole batch in as few round trips as
+   * possible; the default implementation executes the commands one by one.
+   *
+   * @param commands The commands to execute
+   * @param localParams Solr Local params of the tags, in the same order as the commands
+   * @return Results in the same order as the commands. A single result may be null
+   */
+  default List<ScoredTerms> executeCommands(final List<Command> commands,
+      final List<SolrParams> localParams) {
+    final List<ScoredTerms> results = new ArrayList<>(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      results.add(executeCommand(commands.get(i), localParams.get(i)));
+    }
+    return results;
+  }
+
+  /**
+   * Submits a batch of Redis commands. Asynchronous implementations return before the commands are executed; the
+   * default implementation executes them right away.
+   *
+   * @param commands The commands to execute
+   * @param localParams Solr Local params of the tags, in the same order as the commands
+   * @return Future results in the same order as the commands. A single result may be null
+   */
+  default CompletableFuture<List<ScoredTerms>> submitCommands(final List<Command> commands,
+      final List<SolrParams> localParams) {
+    final CompletableFuture<List<ScoredTerms>> results = new CompletableFuture<>();
+    try {
+      results.complete(executeCommands(commands, localParams));
+    } catch (final JedisException | IllegalArgumentException e) {
+      results.completeExceptionally(e);
+    }
+    return results;
+  }
+
+  /**
+   * Executes a Redis command and decodes its reply straight into a slab of terms, bypassing the string based
+   * decoding of Jedis. The default implementation does not support this.
+   *
+   * @param command The command to execute
+   * @param localParams Solr Local params of the tag
+   * @return Members of the reply, null if the handler can't decode the reply itself
+   */
+  default ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    return null;
+  }
+
+  /**
+   * Checks which of the given members belong to a Redis object, sending only the members instead of fetching the
+   * object. The default implementation does not support this.
+   *
+   * @param check Membership check of a redis clause
+   * @param members Members to check
+   * @return Whether each member belongs to the object, in the same order as the members
+   */
+  default boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    throw new UnsupportedOperationException("Membership checks are not supported by " + getClass().getName());
+  }
+
+  /**
+   * Fetches the ids of a clause in a compact form, e.g. the raw bitmap of a BITMAP clause. The default implementation
+   * does not support this.
+   *
+   * @param command Command fetching ids
+   * @param localParams Solr Local params of the tag
+   * @return Fetched ids, empty if the key does not exist
+   */
+  default IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    throw new UnsupportedOperationException("Id sets are not supported by " + getClass().getName());
+  }
+
+  /**
+   * Releases the connections held by the handler
+   */
+  @Override
+  default void close() {
+  }
 }
@@ -0,0 +1,152 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.resp.BytesRefSet;
+import java.io.IOException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.solr.search.DelegatingCollector;
+import org.apache.solr.search.ExtendedQueryBase;
+import org.apache.solr.search.PostFilter;
+
+/**
+ * Post filter passing the documents whose docValues contain any of the given terms.
+ * <p> The terms are held in a {@link BytesRefSet} and never expanded into a query, so the cost of the filter grows with
+ * the number of checked documents instead of the number of terms. Solr runs the filter after the main query and all
+ * other filters if it is not cached and its cost is at least {@link #POST_FILTER_COST}, which the cost local parameter
+ * overrides. Used as a main query or a cached filter it checks the docValues of every document having the field.
+ *
+ * @author prog
+ */
+final class DocValuesTermsPostFilter extends ExtendedQueryBase implements PostFilter {
+  /**
+   * Minimal cost Solr runs a non cached filter as a post filter with
+   */
+  static final int POST_FILTER_COST = 100;
+
+  /**
+   * Field the docValues are read from
+   */
+  private final String field;
+
+  /**
+   * Terms
+   */
+  private final BytesRefSet terms;
+
+  /**
+   * @param field Field the docValues are read from, must have SORTED or SORTED_SET docValues
+   * @param terms Terms
+   */
+  DocValuesTermsPostFilter(final String field, final BytesRefSet terms) {
+    this.field = field;
+    this.terms = terms;
+    setCache(false);
+    setCost(POST_FILTER_COST);
+  }
+
+  /**
+   * @return Filter of the same terms with the default cache and cost, sharing the terms with this filter
+   */
+  DocValuesTermsPostFilter copy() {
+    return new DocValuesTermsPostFilter(field, terms);
+  }
+
+  @Override
+  public DelegatingCollector getFilterCollector(final IndexSearcher searcher) {
+    return new DelegatingCollector() {
+      /**
+       * DocValues of the current segment
+       */
+      private SortedSetDocValues values;
+
+      @Override
+      protected void doSetNextReader(final LeafReaderContext readerContext) throws IOException {
+        super.doSetNextReader(readerContext);
+        values = DocValues.getSortedSet(readerContext.reader(), field);
+      }
+
+      @Override
+      public void collect(final int doc) throws IOException {
+        if (values.advanceExact(doc) && containsAny(values)) {
+          super.collect(doc);
+        }
+      }
+    };
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) {
+    return new ConstantScoreWeight(this, boost) {
+      @Override
+      public Scorer scorer(final LeafReaderContext context) throws IOException {
+        final SortedSetDocValues values = DocValues.getSortedSet(context.reader(), field);
+        return new ConstantScoreScorer(this, score(), scoreMode, new TwoPhaseIterator(values) {
+          @Override
+          public boolean matches() throws IOException {
+            return containsAny(values);
+          }
+
+          @Override
+          public float matchCost() {
+            // Looking an ordinal up and hashing its term
+            return 10;
+          }
+        });
+      }
+
+      @Override
+      public boolean isCacheable(final LeafReaderContext context) {
+        return DocValues.isCacheable(context, field);
+      }
+    };
+  }
+
+  /**
+   * @param values DocValues positioned on a document
+   * @return Whether any of the values of the document is one of the terms
+   * @throws IOException If reading the docValues fails
+   */
+  private boolean containsAny(final SortedSetDocValues values) throws IOException {
+    for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+      if (terms.contains(values.lookupOrd(ord))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    return super.toString(defaultField) + field + ":DOCVALUES_POSTFILTER(" + terms.size() + " terms)";
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * classHash() + field.hashCode()) + terms.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final DocValuesTermsPostFilter other = (DocValuesTermsPostFilter) obj;
+    return field.equals(other.field) && terms.equals(other.terms);
+  }
+}
@@ -0,0 +1,268 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.resp.BytesRefSet;
+import java.io.IOException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Query matching the documents whose docValues contain any of the given terms, for sets too large to seek every term
+ * in the terms dictionary of every segment.
+ * <p> In each segment the terms are mapped once to the ordinals of the segment, either by looking every term up or, if
+ * the set is large compared to the values of the segment, by walking all values and hashing them. Candidate documents
+ * are then matched by testing their ordinals in a bit set, without comparing any bytes. The ordinals are kept in an
+ * {@link OrdinalsCache}, so following requests fetching an equal set from Redis skip the mapping even though the set
+ * is a new object.
+ *
+ * @author prog
+ */
+final class DocValuesTermsSetQuery extends Query {
+  /**
+   * Sets smaller than the number of values of a segment divided by this are mapped by looking each term up
+   */
+  static final int LOOKUP_RATIO = 8;
+
+  /**
+   * Field the docValues are read from
+   */
+  private final String field;
+
+  /**
+   * Terms
+   */
+  private final BytesRefSet terms;
+
+  /**
+   * Cache of the ordinals of the terms in each segment, null to map them on every search
+   */
+  private final OrdinalsCache ordinalsCache;
+
+  /**
+   * @param field Field the docValues are read from, must have SORTED or SORTED_SET docValues
+   * @param terms Terms
+   * @param ordinalsCache Cache of the ordinals of the terms in each segment, null to map them on every search
+   */
+  DocValuesTermsSetQuery(final String field, final BytesRefSet terms, final OrdinalsCache ordinalsCache) {
+    this.field = field;
+    this.terms = terms;
+    this.ordinalsCache = ordinalsCache;
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) {
+    return new ConstantScoreWeight(this, boost) {
+      /**
+       * Cached set found equal to the terms. Looking it up is a reference check, so the content of an equal set
+       * fetched again is only compared once per search instead of once per segment.
+       */
+      private volatile BytesRefSet knownEqual = terms;
+
+      @Override
+      public Scorer scorer(final LeafReaderContext context) throws IOException {
+        final SortedSetDocValues values = DocValues.getSortedSet(context.reader(), field);
+        final SegmentOrdinals ordinals = getOrdinals(context, values);
+        if (ordinals.count == 0) {
+          return null;
+        }
+
+        final LongBitSet bits = ordinals.bits;
+        final SortedDocValues singleValues = DocValues.unwrapSingleton(values);
+        final TwoPhaseIterator iterator;
+        if (singleValues != null) {
+          iterator = new TwoPhaseIterator(singleValues) {
+            @Override
+            public boolean matches() throws IOException {
+              return bits.get(singleValues.ordValue());
+            }
+
+            @Override
+            public float matchCost() {
+              return 1;
+            }
+          };
+        } else {
+          iterator = new TwoPhaseIterator(values) {
+            @Override
+            public boolean matches() throws IOException {
+              for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                if (bits.get(ord)) {
+                  return true;
+                }
+              }
+              return false;
+            }
+
+            @Override
+            public float matchCost() {
+              // Reading a few ordinals
+              return 3;
+            }
+          };
+        }
+        return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+      }
+
+      @Override
+      public boolean isCacheable(final LeafReaderContext context) {
+        return DocValues.isCacheable(context, field);
+      }
+
+      /**
+       * @param context Segment
+       * @param values DocValues of the segment
+       * @return Ordinals of the terms in the segment, from the cache if an equal set has been mapped already
+       * @throws IOException If reading the docValues fails
+       */
+      private SegmentOrdinals getOrdinals(final LeafReaderContext context, final SortedSetDocValues values)
+          throws IOException {
+        final IndexReader.CacheHelper cacheHelper = context.reader().getReaderCacheHelper();
+        if (ordinalsCache == null || cacheHelper == null) {
+          return mapOrdinals(values);
+        }
+
+        SegmentOrdinals cached = ordinalsCache.get(cacheHelper.getKey(), field, knownEqual);
+        if (cached == null) {
+          cached = ordinalsCache.put(cacheHelper, field, mapOrdinals(values));
+        }
+        knownEqual = cached.getTerms();
+        return cached;
+      }
+    };
+  }
+
+  /**
+   * Maps the terms to the ordinals of a segment.
+   *
+   * @param values DocValues of the segment
+   * @return Ordinals of the terms
+   * @throws IOException If reading the docValues fails
+   */
+  private SegmentOrdinals mapOrdinals(final SortedSetDocValues values) throws IOException {
+    final long valueCount = values.getValueCount();
+    final LongBitSet bits = new LongBitSet(Math.max(valueCount, 1));
+    long count = 0;
+
+    if (terms.size() < valueCount / LOOKUP_RATIO) {
+      final BytesRefIterator iterator = terms.iterator();
+      for (BytesRef term = iterator.next(); term != null; term = iterator.next()) {
+        final long ord = values.lookupTerm(term);
+        if (ord >= 0) {
+          bits.set(ord);
+          count++;
+        }
+      }
+    } else if (valueCount > 0) {
+      final TermsEnum termsEnum = values.termsEnum();
+      for (BytesRef value = termsEnum.next(); value != null; value = termsEnum.next()) {
+        if (terms.contains(value)) {
+          bits.set(termsEnum.ord());
+          count++;
+        }
+      }
+    }
+
+    return new SegmentOrdinals(terms, bits, count);
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    return field + ":DOCVALUES(" + terms.size() + " terms)";
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * classHash() + field.hashCode()) + terms.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final DocValuesTermsSetQuery other = (DocValuesTermsSetQuery) obj;
+    return field.equals(other.field) && terms.equals(other.terms);
+  }
+
+  /**
+   * Ordinals of a set of terms in a segment.
+   */
+  static final class SegmentOrdinals {
+    /**
+     * Mapped terms
+     */
+    private final BytesRefSet terms;
+
+    /**
+     * Ordinals of the terms found in the segment
+     */
+    private final LongBitSet bits;
+
+    /**
+     * Number of terms found in the segment
+     */
+    private final long count;
+
+    /**
+     * @param terms Mapped terms
+     * @param bits Ordinals of the terms found in the segment
+     * @param count Number of terms found in the segment
+     */
+    SegmentOrdinals(final BytesRefSet terms, final LongBitSet bits, final long count) {
+      this.terms = terms;
+      this.bits = bits;
+      this.count = count;
+    }
+
+    /**
+     * @return Mapped terms
+     */
+    BytesRefSet getTerms() {
+      return terms;
+    }
+
+    /**
+     * @return Ordinals of the terms found in the segment
+     */
+    LongBitSet getBits() {
+      return bits;
+    }
+
+    /**
+     * @return Number of terms found in the segment
+     */
+    long getCount() {
+      return count;
+    }
+
+    /**
+     * @return Approximate size of the ordinals in bytes, without the terms
+     */
+    long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOfInstance(SegmentOrdinals.class) + RamUsageEstimator.sizeOf(bits.getBits());
+    }
+  }
+}
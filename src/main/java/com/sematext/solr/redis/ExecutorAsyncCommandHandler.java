@@ -0,0 +1,85 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs a blocking command handler on a small dedicated pool of threads, so waiting for Redis and retrying failed
+ * commands does not occupy the threads of the caller.
+ *
+ * @author prog
+ */
+class ExecutorAsyncCommandHandler implements AsyncCommandHandler {
+  /**
+   * Blocking command handler
+   */
+  private final CommandHandler delegate;
+
+  /**
+   * Executor running the blocking command handler
+   */
+  private final ExecutorService executor;
+
+  /**
+   * @param delegate Blocking command handler
+   * @param threads Number of threads executing commands
+   */
+  ExecutorAsyncCommandHandler(final CommandHandler delegate, final int threads) {
+    this(delegate, ExecutorUtil.newMDCAwareFixedThreadPool(threads, new SolrNamedThreadFactory("redis-async")));
+  }
+
+  /**
+   * @param delegate Blocking command handler
+   * @param executor Executor running the blocking command handler
+   */
+  ExecutorAsyncCommandHandler(final CommandHandler delegate, final ExecutorService executor) {
+    this.delegate = delegate;
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletableFuture<ScoredTerms> executeCommandAsync(final Command command,
+      final SolrParams localParams) {
+    return CompletableFuture.supplyAsync(() -> delegate.executeCommand(command, localParams), executor);
+  }
+
+  @Override
+  public CompletableFuture<List<ScoredTerms>> executeCommandsAsync(final List<Command> commands,
+      final List<SolrParams> localParams) {
+    return CompletableFuture.supplyAsync(() -> delegate.executeCommands(commands, localParams), executor);
+  }
+
+  @Override
+  public CompletableFuture<ScoredTerms> executeRespCommandAsync(final RespCommand command,
+      final SolrParams localParams) {
+    return CompletableFuture.supplyAsync(() -> delegate.executeRespCommand(command, localParams), executor);
+  }
+
+  @Override
+  public CompletableFuture<boolean[]> executeMembershipCheckAsync(final MembershipCheck check,
+      final BytesRefSlab members) {
+    return CompletableFuture.supplyAsync(() -> delegate.executeMembershipCheck(check, members), executor);
+  }
+
+  @Override
+  public CompletableFuture<IdSet> executeIdsAsync(final IdSetCommand command, final SolrParams localParams) {
+    return CompletableFuture.supplyAsync(() -> delegate.executeIds(command, localParams), executor);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    delegate.close();
+  }
+}
@@ -0,0 +1,127 @@
+package com.sematext.solr.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Evicts cached results on the keyspace notifications of a database, which Redis only publishes with
+ * {@code notify-keyspace-events} set, e.g. to {@code KA}.
+ * <p> Redis sends every notification matching a pattern to the subscriber, so subscribing to the whole keyspace
+ * means a message for every write to the database. With prefixes only the notifications of the keys starting with
+ * one of them are subscribed to, and the results of other keys expire by their time to live only.
+ *
+ * @author prog
+ */
+final class KeyspaceSubscriber extends CacheInvalidator {
+  private static final Logger log = LoggerFactory.getLogger(KeyspaceSubscriber.class);
+
+  /**
+   * Channel prefix of the keyspace notifications of the database
+   */
+  private final String prefix;
+
+  /**
+   * Patterns of the subscribed channels, one per prefix of the keys or one for all keys
+   */
+  private final String[] patterns;
+
+  /**
+   * Subscription of the connection, null while disconnected
+   */
+  private volatile Subscription subscription;
+
+  /**
+   * @param cache Results to evict
+   * @param connector Opens a connection to the Redis primary
+   * @param database Database whose keys are cached
+   * @param keyPrefixes Prefixes of the keys whose notifications are subscribed to, all keys if empty
+   * @param retryInterval Interval in milliseconds between attempts to subscribe
+   * @param pingInterval Interval in milliseconds between pings of the subscribed connection
+   */
+  KeyspaceSubscriber(final ResultCache cache, final Supplier<Jedis> connector, final int database,
+      final List<String> keyPrefixes, final long retryInterval, final long pingInterval) {
+    super(cache, connector, "redis-invalidation", retryInterval, pingInterval);
+    this.prefix = "__keyspace@" + database + "__:";
+    if (keyPrefixes.isEmpty()) {
+      this.patterns = new String[] {prefix + '*'};
+    } else {
+      this.patterns = new String[keyPrefixes.size()];
+      for (int i = 0; i < patterns.length; i++) {
+        patterns[i] = prefix + escape(keyPrefixes.get(i)) + '*';
+      }
+    }
+  }
+
+  @Override
+  void listen(final Jedis jedis) {
+    final Subscription current = new Subscription();
+    subscription = current;
+    try {
+      jedis.psubscribe(current, patterns);
+    } finally {
+      subscription = null;
+    }
+  }
+
+  @Override
+  void ping(final Jedis jedis) {
+    final Subscription current = subscription;
+    if (current != null) {
+      current.ping();
+    }
+  }
+
+  /**
+   * Evicts the results of the key a notification was published for.
+   *
+   * @param channel Keyspace notification channel of the key
+   */
+  void onChange(final String channel) {
+    if (channel.startsWith(prefix)) {
+      invalidate(channel.substring(prefix.length()));
+    }
+  }
+
+  /**
+   * @param keyPrefix Prefix of keys
+   * @return Prefix with the special characters of glob-style patterns escaped
+   */
+  private static String escape(final String keyPrefix) {
+    final StringBuilder escaped = new StringBuilder(keyPrefix.length());
+    for (int i = 0; i < keyPrefix.length(); i++) {
+      final char c = keyPrefix.charAt(i);
+      if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+        escaped.append('\\');
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  /**
+   * Subscription of a single connection
+   */
+  private final class Subscription extends JedisPubSub {
+    @Override
+    public void onPSubscribe(final String pattern, final int subscribedChannels) {
+      log.info("Subscribed to keyspace notifications: {}", pattern);
+      if (subscribedChannels == patterns.length) {
+        listening();
+      }
+    }
+
+    @Override
+    public void onPMessage(final String pattern, final String channel, final String message) {
+      onChange(channel);
+    }
+
+    @Override
+    public void onPong(final String pattern) {
+      pong();
+    }
+  }
+}
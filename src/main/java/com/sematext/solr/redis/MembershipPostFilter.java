@@ -0,0 +1,329 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import java.io.IOException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.search.DelegatingCollector;
+import org.apache.solr.search.ExtendedQueryBase;
+import org.apache.solr.search.PostFilter;
+
+/**
+ * Post filter asking Redis whether the docValues of the collected documents are members of a Redis object.
+ * <p> The object is never fetched. The collector buffers the documents surviving the main query and all other filters
+ * together with their docValues and their scores, and once the buffer holds {@code batchSize} values or the segment
+ * ends, the values are checked in pipelined membership commands over a single connection. Matching documents are then
+ * passed on in collection order with the scores they were collected with. So the data sent to and from Redis grows
+ * with the number of hits instead of the size of the object. Used as a main query or a cached filter it checks the
+ * docValues of every document having the field.
+ *
+ * @author prog
+ */
+final class MembershipPostFilter extends ExtendedQueryBase implements PostFilter {
+  /**
+   * Default number of values checked in one round trip
+   */
+  static final int DEFAULT_BATCH_SIZE = 10000;
+
+  /**
+   * Field the docValues are read from
+   */
+  private final String field;
+
+  /**
+   * Membership check of the redis clause
+   */
+  private final MembershipCheck check;
+
+  /**
+   * Redis command handler
+   */
+  private final CommandHandler commandHandler;
+
+  /**
+   * Number of values checked in one round trip
+   */
+  private final int batchSize;
+
+  /**
+   * @param field Field the docValues are read from, must have SORTED or SORTED_SET docValues
+   * @param check Membership check of the redis clause
+   * @param commandHandler Redis command handler
+   * @param batchSize Number of values checked in one round trip
+   */
+  MembershipPostFilter(final String field, final MembershipCheck check, final CommandHandler commandHandler,
+      final int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Membership batch size must be positive, got " + batchSize);
+    }
+    this.field = field;
+    this.check = check;
+    this.commandHandler = commandHandler;
+    this.batchSize = batchSize;
+    setCache(false);
+    setCost(DocValuesTermsPostFilter.POST_FILTER_COST);
+  }
+
+  @Override
+  public DelegatingCollector getFilterCollector(final IndexSearcher searcher) {
+    return new DelegatingCollector() {
+      /**
+       * Buffered documents of the current segment
+       */
+      private final Candidates candidates = new Candidates();
+
+      /**
+       * Scorer passed to the delegate, replaying the scores of buffered documents
+       */
+      private final ReplayScorable replay = new ReplayScorable();
+
+      /**
+       * DocValues of the current segment
+       */
+      private SortedSetDocValues values;
+
+      /**
+       * Whether scores are buffered
+       */
+      private boolean needsScores;
+
+      @Override
+      protected void doSetNextReader(final LeafReaderContext readerContext) throws IOException {
+        // Buffered documents go to the collector of the segment they were collected in
+        flush();
+        super.doSetNextReader(readerContext);
+        values = DocValues.getSortedSet(readerContext.reader(), field);
+        needsScores = scoreMode().needsScores();
+      }
+
+      @Override
+      public void setScorer(final Scorable scorable) throws IOException {
+        this.scorer = scorable;
+        if (leafDelegate != null) {
+          leafDelegate.setScorer(replay);
+        }
+      }
+
+      @Override
+      public void collect(final int doc) throws IOException {
+        if (values.advanceExact(doc)) {
+          candidates.add(doc, needsScores ? scorer.score() : 0, values);
+          if (candidates.valueCount() >= batchSize) {
+            flush();
+          }
+        }
+      }
+
+      @Override
+      public void finish() throws IOException {
+        flush();
+        super.finish();
+      }
+
+      /**
+       * Checks the buffered documents and passes the matching ones on.
+       *
+       * @throws IOException If the delegate fails
+       */
+      private void flush() throws IOException {
+        candidates.check((doc, score) -> {
+          replay.doc = doc;
+          replay.score = score;
+          leafDelegate.collect(doc);
+        });
+      }
+    };
+  }
+
+  @Override
+  public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) {
+    return new ConstantScoreWeight(this, boost) {
+      @Override
+      public Scorer scorer(final LeafReaderContext context) throws IOException {
+        final SortedSetDocValues values = DocValues.getSortedSet(context.reader(), field);
+        final FixedBitSet matches = new FixedBitSet(context.reader().maxDoc());
+        final Candidates candidates = new Candidates();
+
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+          candidates.add(doc, 0, values);
+          if (candidates.valueCount() >= batchSize) {
+            candidates.check((match, score) -> matches.set(match));
+          }
+        }
+        candidates.check((match, score) -> matches.set(match));
+
+        return new ConstantScoreScorer(this, score(), scoreMode, new BitSetIterator(matches, matches.cardinality()));
+      }
+
+      @Override
+      public boolean isCacheable(final LeafReaderContext context) {
+        // Matches depend on Redis, not only on the segment
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public void visit(final QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(final String defaultField) {
+    return super.toString(defaultField) + field + ":MEMBERSHIP_POSTFILTER(" + check + ")";
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * (31 * classHash() + field.hashCode()) + check.hashCode()) + batchSize;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (!sameClassAs(obj)) {
+      return false;
+    }
+    final MembershipPostFilter other = (MembershipPostFilter) obj;
+    return field.equals(other.field) && check.equals(other.check) && batchSize == other.batchSize;
+  }
+
+  /**
+   * Receives the documents whose values are members
+   */
+  @FunctionalInterface
+  private interface MatchConsumer {
+    /**
+     * @param doc Matching document
+     * @param score Score the document was collected with
+     * @throws IOException If passing the document on fails
+     */
+    void accept(int doc, float score) throws IOException;
+  }
+
+  /**
+   * Documents of a segment waiting to be checked, with their values and scores.
+   */
+  private final class Candidates {
+    /**
+     * Values of the documents
+     */
+    private final BytesRefSlab values = new BytesRefSlab();
+
+    /**
+     * Index of the document of each value
+     */
+    private int[] valueDocs = new int[16];
+
+    /**
+     * Documents in collection order
+     */
+    private int[] docs = new int[16];
+
+    /**
+     * Scores of the documents
+     */
+    private float[] scores = new float[16];
+
+    /**
+     * Number of documents
+     */
+    private int size;
+
+    /**
+     * Buffers a document with all its values.
+     *
+     * @param doc Document
+     * @param score Score of the document
+     * @param docValues DocValues positioned on the document
+     * @throws IOException If reading the docValues fails
+     */
+    void add(final int doc, final float score, final SortedSetDocValues docValues) throws IOException {
+      docs = ArrayUtil.grow(docs, size + 1);
+      scores = ArrayUtil.grow(scores, size + 1);
+      docs[size] = doc;
+      scores[size] = score;
+
+      for (long ord = docValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = docValues.nextOrd()) {
+        valueDocs = ArrayUtil.grow(valueDocs, values.size() + 1);
+        valueDocs[values.size()] = size;
+        values.append(docValues.lookupOrd(ord));
+      }
+      size++;
+    }
+
+    /**
+     * @return Number of buffered values
+     */
+    int valueCount() {
+      return values.size();
+    }
+
+    /**
+     * Checks the buffered values against Redis, passes on the documents having a member and empties the buffer.
+     *
+     * @param consumer Receives the matching documents in collection order
+     * @throws IOException If passing a document on fails
+     */
+    void check(final MatchConsumer consumer) throws IOException {
+      if (size == 0) {
+        return;
+      }
+
+      final boolean[] members = commandHandler.executeMembershipCheck(check, values);
+      final boolean[] matches = new boolean[size];
+      for (int i = 0; i < members.length; i++) {
+        matches[valueDocs[i]] |= members[i];
+      }
+
+      final int count = size;
+      size = 0;
+      values.clear();
+      for (int i = 0; i < count; i++) {
+        if (matches[i]) {
+          consumer.accept(docs[i], scores[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scorer replaying the score a buffered document was collected with.
+   */
+  private static final class ReplayScorable extends Scorable {
+    /**
+     * Current document
+     */
+    private int doc = -1;
+
+    /**
+     * Score of the current document
+     */
+    private float score;
+
+    @Override
+    public float score() {
+      return score;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+  }
+}
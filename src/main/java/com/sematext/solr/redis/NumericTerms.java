@@ -0,0 +1,206 @@
+package com.sematext.solr.redis;
+
+import com.sematext.lucene.query.WeightedPointInSetQuery;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.util.DateMathParser;
+
+/**
+ * Terms fetched from Redis parsed as the numbers of a point field.
+ * <p> Integral values are parsed straight from their UTF-8 bytes into a primitive array, without a String per value,
+ * and all values are matched by a single point set query instead of a boolean clause per value.
+ *
+ * @author prog
+ */
+final class NumericTerms {
+  /**
+   * Decimals with at most this many digits fit in a long
+   */
+  private static final int MAX_FAST_DIGITS = 18;
+
+  /**
+   * Field the values are matched in
+   */
+  private final String field;
+
+  /**
+   * Type of the values
+   */
+  private final NumberType type;
+
+  /**
+   * Values of integer, long and date fields, dates in milliseconds since the epoch
+   */
+  private final long[] longs;
+
+  /**
+   * Values of float and double fields
+   */
+  private final double[] doubles;
+
+  /**
+   * @param field Field the values are matched in
+   * @param type Type of the values
+   * @param longs Values of integer, long and date fields
+   * @param doubles Values of float and double fields
+   */
+  private NumericTerms(final String field, final NumberType type, final long[] longs, final double[] doubles) {
+    this.field = field;
+    this.type = type;
+    this.longs = longs;
+    this.doubles = doubles;
+  }
+
+  /**
+   * Parses terms as numbers of the given type.
+   *
+   * @param field Field the values are matched in
+   * @param type Type of the values
+   * @param terms Terms
+   * @return Parsed values
+   * @throws SyntaxError If a term is not a number of the type
+   */
+  static NumericTerms parse(final String field, final NumberType type, final ScoredTerms terms) throws SyntaxError {
+    final boolean integral = type == NumberType.INTEGER || type == NumberType.LONG || type == NumberType.DATE;
+    final long[] longs = integral ? new long[terms.size()] : null;
+    final double[] doubles = integral ? null : new double[terms.size()];
+    final BytesRef scratch = new BytesRef();
+
+    for (int i = 0; i < terms.size(); i++) {
+      final BytesRef term = terms.getTerm(i, scratch);
+      try {
+        switch (type) {
+          case INTEGER:
+            longs[i] = parseLong(term);
+            if (longs[i] != (int) longs[i]) {
+              throw new SyntaxError("Value " + term.utf8ToString() + " of field " + field + " is not an integer");
+            }
+            break;
+          case LONG:
+            longs[i] = parseLong(term);
+            break;
+          case DATE:
+            longs[i] = DateMathParser.parseMath(null, term.utf8ToString()).getTime();
+            break;
+          default:
+            doubles[i] = Double.parseDouble(term.utf8ToString());
+            break;
+        }
+      } catch (final NumberFormatException e) {
+        throw new SyntaxError("Value " + term.utf8ToString() + " of field " + field + " is not a number", e);
+      }
+    }
+
+    return new NumericTerms(field, type, longs, doubles);
+  }
+
+  /**
+   * @return Number of values
+   */
+  int size() {
+    return longs == null ? doubles.length : longs.length;
+  }
+
+  /**
+   * @return Query matching documents having any of the values
+   */
+  Query toSetQuery() {
+    switch (type) {
+      case INTEGER:
+        final int[] ints = new int[longs.length];
+        for (int i = 0; i < ints.length; i++) {
+          ints[i] = (int) longs[i];
+        }
+        return IntPoint.newSetQuery(field, ints);
+      case FLOAT:
+        final float[] floats = new float[doubles.length];
+        for (int i = 0; i < floats.length; i++) {
+          floats[i] = (float) doubles[i];
+        }
+        return FloatPoint.newSetQuery(field, floats);
+      case DOUBLE:
+        return DoublePoint.newSetQuery(field, doubles);
+      default:
+        return LongPoint.newSetQuery(field, longs);
+    }
+  }
+
+  /**
+   * @param weights Weight of each value
+   * @return Query matching documents having any of the values, scored by the sum of the weights of their values
+   */
+  Query toWeightedQuery(final float[] weights) {
+    final int bytesPerDim = type == NumberType.INTEGER || type == NumberType.FLOAT ? Integer.BYTES : Long.BYTES;
+    final byte[][] packed = new byte[size()][bytesPerDim];
+
+    for (int i = 0; i < packed.length; i++) {
+      switch (type) {
+        case INTEGER:
+          IntPoint.encodeDimension((int) longs[i], packed[i], 0);
+          break;
+        case FLOAT:
+          FloatPoint.encodeDimension((float) doubles[i], packed[i], 0);
+          break;
+        case DOUBLE:
+          DoublePoint.encodeDimension(doubles[i], packed[i], 0);
+          break;
+        default:
+          LongPoint.encodeDimension(longs[i], packed[i], 0);
+          break;
+      }
+    }
+
+    return new WeightedPointInSetQuery(field, bytesPerDim, packed, weights);
+  }
+
+  /**
+   * Parses a whole number from its UTF-8 bytes. Plain decimals are parsed in place, anything else the way Solr parses
+   * values of integral point fields.
+   *
+   * @param term Number
+   * @return Value
+   * @throws NumberFormatException If the term is not a number
+   */
+  static long parseLong(final BytesRef term) {
+    final int end = term.offset + term.length;
+    int position = term.offset;
+    final boolean negative = position < end && term.bytes[position] == '-';
+    if (negative || position < end && term.bytes[position] == '+') {
+      position++;
+    }
+    if (position == end || end - position > MAX_FAST_DIGITS) {
+      return parseLongSlowly(term);
+    }
+
+    long value = 0;
+    for (; position < end; position++) {
+      final int digit = term.bytes[position] - '0';
+      if (digit < 0 || digit > 9) {
+        return parseLongSlowly(term);
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * @param term Number that is not a plain decimal of a few digits
+   * @return Value, truncated if the number has a fraction
+   * @throws NumberFormatException If the term is not a number
+   */
+  private static long parseLongSlowly(final BytesRef term) {
+    final String value = term.utf8ToString().trim();
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException e) {
+      return (long) Double.parseDouble(value);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.sematext.solr.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sematext.solr.redis.DocValuesTermsSetQuery.SegmentOrdinals;
+import com.sematext.solr.redis.resp.BytesRefSet;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.RamUsageEstimator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local cache of the ordinals the sets of a {@link DocValuesTermsSetQuery} are mapped to in each segment.
+ * <p> Sets are keyed by their field, content hash and size, so any number of sets of a field stay cached side by side
+ * and an equal set fetched again hits even though it is a new object. A set only hits a cached set of the same key if
+ * their contents are equal, so sets with colliding hashes never share ordinals. Each entry holds a set and its
+ * ordinals in every segment it was mapped in; the ordinals of a segment go away when the segment is closed. Entries
+ * are evicted by the W-TinyLFU policy of Caffeine and bounded by the bytes of the set and all its ordinals.
+ *
+ * @author prog
+ */
+final class OrdinalsCache {
+  /**
+   * Default maximum size of the cached sets and ordinals in bytes
+   */
+  static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  /**
+   * Estimated size of the mapping of a segment to its ordinals in an entry
+   */
+  private static final long SEGMENT_BYTES_USED = 64;
+
+  /**
+   * Cached sets with their ordinals
+   */
+  private final Cache<Key, Entry> cache;
+
+  /**
+   * Segments which evict their ordinals when they are closed
+   */
+  private final Set<IndexReader.CacheKey> segments = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Number of lookups finding the ordinals of the segment
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * Number of lookups not finding the ordinals of the segment
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param maxBytes Maximum size of the cached sets and ordinals in bytes
+   */
+  OrdinalsCache(final long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Ordinals cache must hold at least one byte");
+    }
+
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((final Key key, final Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.ramBytesUsed()))
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param segment Key of the segment
+   * @param field Field the docValues are read from
+   * @param terms Terms
+   * @return Cached ordinals of the terms in the segment, null if missing. Their terms are the cached set, so passing
+   * them to following lookups compares the sets by reference
+   */
+  SegmentOrdinals get(final IndexReader.CacheKey segment, final String field, final BytesRefSet terms) {
+    final Entry entry = cache.getIfPresent(new Key(field, terms));
+    final SegmentOrdinals ordinals = entry != null && entry.terms.equals(terms) ? entry.ordinals.get(segment) : null;
+    if (ordinals == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return ordinals;
+  }
+
+  /**
+   * Caches the ordinals of a set in a segment. They replace a cached set of the same key whose contents differ.
+   *
+   * @param segment Cache helper of the segment
+   * @param field Field the docValues are read from
+   * @param ordinals Ordinals of the terms in the segment
+   * @return Cached ordinals, whose terms are the cached set if an equal set was cached already
+   */
+  SegmentOrdinals put(final IndexReader.CacheHelper segment, final String field, final SegmentOrdinals ordinals) {
+    final IndexReader.CacheKey segmentKey = segment.getKey();
+    if (segments.add(segmentKey)) {
+      segment.addClosedListener(this::evict);
+    }
+
+    final BytesRefSet terms = ordinals.getTerms();
+    final SegmentOrdinals[] cached = new SegmentOrdinals[1];
+    cache.asMap().compute(new Key(field, terms), (key, existing) -> {
+      if (existing == null || !existing.terms.equals(terms)) {
+        cached[0] = ordinals;
+        return new Entry(terms, Collections.singletonMap(segmentKey, ordinals));
+      }
+      cached[0] = existing.terms == terms ? ordinals
+          : new SegmentOrdinals(existing.terms, ordinals.getBits(), ordinals.getCount());
+      return existing.with(segmentKey, cached[0]);
+    });
+    return cached[0];
+  }
+
+  /**
+   * @return Lookups, hits, hit ratio, evictions, number of cached sets and weight in bytes of the entries
+   */
+  Map<String, Object> getStatistics() {
+    final long hitCount = hits.sum();
+    final long lookups = hitCount + misses.sum();
+    final Map<String, Object> statistics = new LinkedHashMap<>();
+    statistics.put("lookups", lookups);
+    statistics.put("hits", hitCount);
+    statistics.put("hitratio", lookups == 0 ? 1.0 : (double) hitCount / lookups);
+    statistics.put("evictions", cache.stats().evictionCount());
+    statistics.put("size", cache.estimatedSize());
+    statistics.put("weight", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+    return statistics;
+  }
+
+  /**
+   * Runs pending evictions right away
+   */
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
+  /**
+   * Drops the ordinals of a closed segment, and the sets without ordinals in any other segment.
+   *
+   * @param segment Key of the closed segment
+   */
+  private void evict(final IndexReader.CacheKey segment) {
+    segments.remove(segment);
+    for (final Key key : cache.asMap().keySet()) {
+      cache.asMap().computeIfPresent(key, (cachedKey, entry) -> entry.without(segment));
+    }
+  }
+
+  /**
+   * Field, content hash and size of a set
+   */
+  private static final class Key {
+    /**
+     * Field the docValues are read from
+     */
+    private final String field;
+
+    /**
+     * Content hash of the set
+     */
+    private final int hash;
+
+    /**
+     * Number of terms of the set
+     */
+    private final int size;
+
+    /**
+     * @param field Field the docValues are read from
+     * @param terms Terms
+     */
+    private Key(final String field, final BytesRefSet terms) {
+      this.field = field;
+      this.hash = terms.hashCode();
+      this.size = terms.size();
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * field.hashCode() + hash) + size;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return hash == other.hash && size == other.size && field.equals(other.field);
+    }
+  }
+
+  /**
+   * Set with its ordinals in each segment. Entries are never modified, so they are reweighed whenever they change.
+   */
+  private static final class Entry {
+    /**
+     * Terms
+     */
+    private final BytesRefSet terms;
+
+    /**
+     * Ordinals of the terms by segment
+     */
+    private final Map<IndexReader.CacheKey, SegmentOrdinals> ordinals;
+
+    /**
+     * @param terms Terms
+     * @param ordinals Ordinals of the terms by segment
+     */
+    private Entry(final BytesRefSet terms, final Map<IndexReader.CacheKey, SegmentOrdinals> ordinals) {
+      this.terms = terms;
+      this.ordinals = ordinals;
+    }
+
+    /**
+     * @param segment Key of a segment
+     * @param segmentOrdinals Ordinals of the terms in the segment
+     * @return Entry holding the ordinals of the segment as well
+     */
+    private Entry with(final IndexReader.CacheKey segment, final SegmentOrdinals segmentOrdinals) {
+      final Map<IndexReader.CacheKey, SegmentOrdinals> added = new HashMap<>(ordinals);
+      added.put(segment, segmentOrdinals);
+      return new Entry(terms, Collections.unmodifiableMap(added));
+    }
+
+    /**
+     * @param segment Key of a segment
+     * @return Entry without the ordinals of the segment, null if no ordinals are left
+     */
+    private Entry without(final IndexReader.CacheKey segment) {
+      if (!ordinals.containsKey(segment)) {
+        return this;
+      } else if (ordinals.size() == 1) {
+        return null;
+      }
+      final Map<IndexReader.CacheKey, SegmentOrdinals> removed = new HashMap<>(ordinals);
+      removed.remove(segment);
+      return new Entry(terms, Collections.unmodifiableMap(removed));
+    }
+
+    /**
+     * @return Approximate size of the set and its ordinals in bytes
+     */
+    private long ramBytesUsed() {
+      long bytes = terms.ramBytesUsed() + RamUsageEstimator.shallowSizeOfInstance(Entry.class);
+      for (final SegmentOrdinals segmentOrdinals : ordinals.values()) {
+        bytes += SEGMENT_BYTES_USED + segmentOrdinals.ramBytesUsed();
+      }
+      return bytes;
+    }
+  }
+}
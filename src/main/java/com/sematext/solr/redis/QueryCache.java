@@ -0,0 +1,168 @@
+package com.sematext.solr.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.params.SolrParams;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Local cache of the queries built for redis clauses with a {@code versionKey} local param, keyed by their local
+ * params. The version key holds a stamp, e.g. a counter, which the writers of the clause data change after every
+ * change. Clauses with {@code digest=true} are stamped with the digest of the contents of their keys instead. A cached
+ * query is reused as long as the stamp is unchanged, so neither the data is fetched nor the query
+ * built again, and the filter cache of Solr is hit by an equal query. Post filters are handed out as copies sharing
+ * their terms, so the cache and cost of one request never leak into another.
+ * <p> Each clause holds a single entry, replaced when the stamp changes. Entries are evicted by the W-TinyLFU policy of
+ * Caffeine and bounded by their estimated size; every entry weighs at least {@code maxBytes / maxEntries}.
+ *
+ * @author prog
+ */
+final class QueryCache {
+  /**
+   * Local param naming the key of the version stamp
+   */
+  static final String VERSION_KEY_PARAM = "versionKey";
+
+  /**
+   * Local param stamping a tag with the digest of the contents of its keys instead of a version key
+   */
+  static final String DIGEST_PARAM = "digest";
+
+  /**
+   * Default maximum number of cached queries
+   */
+  static final long DEFAULT_MAX_ENTRIES = 1000;
+
+  /**
+   * Default maximum size of the cached queries in bytes
+   */
+  static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  /**
+   * Cached queries by clause key
+   */
+  private final Cache<String, Versioned> cache;
+
+  /**
+   * @param maxEntries Maximum number of cached queries
+   * @param maxBytes Maximum size of the cached queries in bytes
+   */
+  QueryCache(final long maxEntries, final long maxBytes) {
+    if (maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Query cache must hold at least one entry and one byte");
+    }
+
+    final long minWeight = Math.max(maxBytes / maxEntries, 1);
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((final String key, final Versioned query) ->
+            (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, RamUsageEstimator.sizeOf(key) + query.bytes)))
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Key of the version stamp of the tag, null if its query is not cached
+   */
+  static String getVersionKey(final SolrParams localParams) {
+    return localParams.get(VERSION_KEY_PARAM);
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Whether the tag asks to be stamped with the digest of its contents, which is not known yet
+   */
+  static boolean isDigested(final SolrParams localParams) {
+    return "true".equalsIgnoreCase(localParams.get(DIGEST_PARAM));
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @param version Current version stamp of the tag
+   * @return Query built for the tag at this version, null if there is none
+   */
+  Query get(final SolrParams localParams, final String version) {
+    final Versioned cached = cache.getIfPresent(ClauseKeys.queryKey(localParams));
+    return cached != null && cached.version.equals(version) ? unshared(cached.query) : null;
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @param version Version stamp read before the data of the query was fetched
+   * @param query Query built for the tag
+   * @param dataBytes Size in bytes of the data the query was built from, in case the query underestimates its size
+   */
+  void put(final SolrParams localParams, final String version, final Query query, final long dataBytes) {
+    cache.put(ClauseKeys.queryKey(localParams), new Versioned(version, unshared(query),
+        Math.max(RamUsageEstimator.sizeOf(query), dataBytes) + RamUsageEstimator.sizeOf(version)));
+  }
+
+  /**
+   * Solr sets the {@code cache} and {@code cost} local params of each request on its query if the query is an
+   * {@link org.apache.solr.search.ExtendedQuery}, so such a query is copied whenever it enters or leaves the cache.
+   *
+   * @param query Query
+   * @return Query which no other request holds
+   */
+  private static Query unshared(final Query query) {
+    return query instanceof DocValuesTermsPostFilter ? ((DocValuesTermsPostFilter) query).copy() : query;
+  }
+
+  /**
+   * @return Lookups, hits, hit ratio, evictions, number of entries and weight in bytes of the entries
+   */
+  Map<String, Object> getStatistics() {
+    final CacheStats stats = cache.stats();
+    final Map<String, Object> statistics = new LinkedHashMap<>();
+    statistics.put("lookups", stats.requestCount());
+    statistics.put("hits", stats.hitCount());
+    statistics.put("hitratio", stats.hitRate());
+    statistics.put("evictions", stats.evictionCount());
+    statistics.put("size", cache.estimatedSize());
+    statistics.put("weight", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+    return statistics;
+  }
+
+  /**
+   * Runs pending evictions right away
+   */
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
+  /**
+   * Query built at a version stamp
+   */
+  private static final class Versioned {
+    /**
+     * Version stamp the query was built at
+     */
+    private final String version;
+
+    /**
+     * Built query
+     */
+    private final Query query;
+
+    /**
+     * Estimated size of the entry in bytes
+     */
+    private final long bytes;
+
+    /**
+     * @param version Version stamp the query was built at
+     * @param query Built query
+     * @param bytes Estimated size of the entry in bytes
+     */
+    private Versioned(final String version, final Query query, final long bytes) {
+      this.version = version;
+      this.query = query;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.sematext.solr.redis;
+
+import java.io.IOException;
+import java.util.Locale;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.solr.schema.SchemaField;
+
+/**
+ * Chooses how a redis clause which does not need scores matches the values fetched from Redis.
+ * <p> The planner only looks at metadata which is cheap to get: the number of values, whether the field is indexed
+ * and has sorted docValues, and the postings statistics of the field. From the average number of documents per term
+ * it estimates which fraction of the index the values match. Selective sets are matched through the terms dictionary,
+ * dense sets through docValues, and huge dense sets are checked as a post filter against the few documents which
+ * survive the main query and all other filters. Sets of at least {@code docValuesMinTerms} values are matched through
+ * docValues however selective they are, since seeking every value in every segment costs more than testing the
+ * ordinals of the candidate documents.
+ *
+ * @author prog
+ */
+final class QueryPlanner {
+  /**
+   * Estimated fraction of matched documents from which docValues are scanned instead of merging postings
+   */
+  static final double DOCVALUES_MIN_SELECTIVITY = 0.25;
+
+  /**
+   * Estimated fraction of matched documents from which a huge set is checked as a post filter
+   */
+  static final double POSTFILTER_MIN_SELECTIVITY = 0.5;
+
+  /**
+   * Number of values from which a set is huge
+   */
+  static final int POSTFILTER_MIN_TERMS = 10000;
+
+  /**
+   * Default number of values from which docValues are scanned whatever the estimated selectivity
+   */
+  static final int DEFAULT_DOCVALUES_MIN_TERMS = 100000;
+
+  /**
+   * Number of values from which docValues are scanned whatever the estimated selectivity
+   */
+  private final int docValuesMinTerms;
+
+  /**
+   * Creates a planner scanning docValues from {@link #DEFAULT_DOCVALUES_MIN_TERMS} values on.
+   */
+  QueryPlanner() {
+    this(DEFAULT_DOCVALUES_MIN_TERMS);
+  }
+
+  /**
+   * @param docValuesMinTerms Number of values from which docValues are scanned whatever the estimated selectivity
+   */
+  QueryPlanner(final int docValuesMinTerms) {
+    this.docValuesMinTerms = docValuesMinTerms;
+  }
+
+  /**
+   * Chooses a strategy.
+   *
+   * @param requested Strategy requested by the strategy parameter
+   * @param field Field the values are matched in, null if it is not in the schema
+   * @param termCount Number of values
+   * @param searcher Searcher providing the field statistics, may be null
+   * @return Plan with the chosen strategy
+   */
+  Plan plan(final QueryStrategy requested, final SchemaField field, final int termCount,
+      final IndexSearcher searcher) {
+    final boolean sortedDocValues = field != null && field.hasDocValues()
+        && (field.docValuesType() == DocValuesType.SORTED || field.docValuesType() == DocValuesType.SORTED_SET);
+    final boolean indexed = field == null || field.indexed();
+
+    if (requested != QueryStrategy.AUTO) {
+      if (requested != QueryStrategy.TERMS && !sortedDocValues) {
+        return new Plan(QueryStrategy.TERMS, "requested " + requested + " but the field has no sorted docValues");
+      }
+      return new Plan(requested, "requested");
+    }
+
+    if (!sortedDocValues) {
+      return new Plan(QueryStrategy.TERMS, "the field has no sorted docValues");
+    }
+    if (!indexed) {
+      return new Plan(QueryStrategy.DOCVALUES, "the field is not indexed");
+    }
+
+    final double selectivity;
+    try {
+      selectivity = estimateSelectivity(field.getName(), termCount, searcher);
+    } catch (final IOException ex) {
+      return new Plan(QueryStrategy.TERMS, "reading field statistics failed: " + ex.getMessage());
+    }
+    final String estimate = String.format(Locale.ROOT, "%d values estimated to match %.1f%% of the documents",
+        termCount, selectivity * 100);
+    if (termCount >= POSTFILTER_MIN_TERMS && selectivity >= POSTFILTER_MIN_SELECTIVITY) {
+      return new Plan(QueryStrategy.POSTFILTER, estimate);
+    }
+    if (termCount >= docValuesMinTerms) {
+      return new Plan(QueryStrategy.DOCVALUES, String.format(Locale.ROOT,
+          "%d values reach the docValues threshold of %d", termCount, docValuesMinTerms));
+    }
+    if (Double.isNaN(selectivity)) {
+      return new Plan(QueryStrategy.TERMS, "no field statistics");
+    }
+    if (selectivity >= DOCVALUES_MIN_SELECTIVITY) {
+      return new Plan(QueryStrategy.DOCVALUES, estimate);
+    }
+    return new Plan(QueryStrategy.TERMS, estimate);
+  }
+
+  /**
+   * Estimates the fraction of documents matching any of the values from the average number of documents per term.
+   *
+   * @param fieldName Name of the field
+   * @param termCount Number of values
+   * @param searcher Searcher providing the field statistics, may be null
+   * @return Estimated fraction of matched documents, NaN if there are no statistics
+   * @throws IOException If reading the field statistics fails
+   */
+  private static double estimateSelectivity(final String fieldName, final int termCount,
+      final IndexSearcher searcher) throws IOException {
+    if (searcher == null) {
+      return Double.NaN;
+    }
+
+    final IndexReader reader = searcher.getIndexReader();
+    long fieldTerms = 0;
+    long postings = 0;
+    for (final LeafReaderContext context : reader.leaves()) {
+      final Terms terms = context.reader().terms(fieldName);
+      if (terms != null && terms.size() > 0) {
+        // Terms repeated across segments are counted once per segment, like their postings
+        fieldTerms += terms.size();
+        postings += terms.getSumDocFreq();
+      }
+    }
+
+    if (fieldTerms == 0 || reader.maxDoc() == 0) {
+      return Double.NaN;
+    }
+    return Math.min(1.0, (double) termCount * postings / fieldTerms / reader.maxDoc());
+  }
+
+  /**
+   * Strategy chosen for a clause.
+   */
+  static final class Plan {
+    /**
+     * Chosen strategy, never {@link QueryStrategy#AUTO}
+     */
+    private final QueryStrategy strategy;
+
+    /**
+     * Why the strategy has been chosen
+     */
+    private final String reason;
+
+    /**
+     * @param strategy Chosen strategy
+     * @param reason Why the strategy has been chosen
+     */
+    Plan(final QueryStrategy strategy, final String reason) {
+      this.strategy = strategy;
+      this.reason = reason;
+    }
+
+    QueryStrategy getStrategy() {
+      return strategy;
+    }
+
+    String getReason() {
+      return reason;
+    }
+
+    @Override
+    public String toString() {
+      return strategy + " (" + reason + ")";
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.sematext.solr.redis;
+
+import java.util.Locale;
+
+/**
+ * How a redis clause matches the values fetched from Redis, set with the strategy parameter.
+ *
+ * @author prog
+ */
+enum QueryStrategy {
+  /**
+   * Let the {@link QueryPlanner} choose
+   */
+  AUTO,
+
+  /**
+   * Look the values up in the terms dictionary and merge their postings
+   */
+  TERMS,
+
+  /**
+   * Check the docValues of every candidate document against the values
+   */
+  DOCVALUES,
+
+  /**
+   * Check the docValues of the documents matching everything else against the values, after all other filters
+   */
+  POSTFILTER,
+
+  /**
+   * Ask Redis whether the docValues of the documents matching everything else are members, after all other filters,
+   * without fetching the values
+   */
+  MEMBERSHIP;
+
+  /**
+   * @param strategy Name of a strategy, may be null
+   * @return Strategy of the name, {@link #AUTO} if the name is null or empty
+   */
+  static QueryStrategy fromString(final String strategy) {
+    if (strategy == null || strategy.trim().isEmpty()) {
+      return AUTO;
+    }
+
+    try {
+      return valueOf(strategy.trim().toUpperCase(Locale.ROOT));
+    } catch (final IllegalArgumentException ex) {
+      throw new IllegalArgumentException(String.format(Locale.ROOT, "Wrong strategy '%s'.", strategy), ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
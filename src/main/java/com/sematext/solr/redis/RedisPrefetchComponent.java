@@ -0,0 +1,51 @@
+package com.sematext.solr.redis;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.search.QParserPlugin;
+
+/**
+ * SearchComponent which submits the redis clauses of a request before the query is parsed.
+ * <p> Registered as a first component of a search handler, together with an asynchronous and batching
+ * RedisQParserPlugin, the data of all redis clauses is fetched in the background while Solr parses the request and
+ * prepares the other components.
+ *
+ * @author prog
+ */
+public class RedisPrefetchComponent extends SearchComponent {
+  /**
+   * Parser name parameter name constant
+   */
+  private static final String PARSER_FIELD = "parser";
+
+  /**
+   * Name the redis query parser is registered with
+   */
+  private String parserName = RedisQParserPlugin.NAME;
+
+  @Override
+  public void init(final NamedList args) {
+    final Object parser = args != null ? args.get(PARSER_FIELD) : null;
+    if (parser instanceof String) {
+      parserName = (String) parser;
+    }
+  }
+
+  @Override
+  public void prepare(final ResponseBuilder rb) {
+    final QParserPlugin plugin = rb.req.getCore().getQueryPlugin(parserName);
+    if (plugin instanceof RedisQParserPlugin) {
+      ((RedisQParserPlugin) plugin).submitBatch(rb.req, parserName);
+    }
+  }
+
+  @Override
+  public void process(final ResponseBuilder rb) {
+  }
+
+  @Override
+  public String getDescription() {
+    return "Submits redis clauses before the query is parsed";
+  }
+}
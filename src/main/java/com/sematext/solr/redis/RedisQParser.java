@@ -1,7 +1,11 @@
 package com.sematext.solr.redis;
 
+import com.sematext.lucene.query.RankedTermsQuery;
 import com.sematext.lucene.query.TaggedQuery;
+import com.sematext.lucene.query.WeightedTermsQuery;
+import com.sematext.solr.redis.command.Bitmap;
 import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.Digest;
 import com.sematext.solr.redis.command.Eval;
 import com.sematext.solr.redis.command.EvalSha;
 import com.sematext.solr.redis.command.Get;
@@ -9,16 +13,22 @@ import com.sematext.solr.redis.command.HGet;
 import com.sematext.solr.redis.command.HKeys;
 import com.sematext.solr.redis.command.HMGet;
 import com.sematext.solr.redis.command.HVals;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
 import com.sematext.solr.redis.command.Keys;
 import com.sematext.solr.redis.command.LIndex;
 import com.sematext.solr.redis.command.LRange;
 import com.sematext.solr.redis.command.MGet;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
 import com.sematext.solr.redis.command.SDiff;
 import com.sematext.solr.redis.command.SInter;
 import com.sematext.solr.redis.command.SMembers;
 import com.sematext.solr.redis.command.SRandMember;
 import com.sematext.solr.redis.command.SUnion;
 import com.sematext.solr.redis.command.Sort;
+import com.sematext.solr.redis.command.ValueCodecs;
 import com.sematext.solr.redis.command.ValueFilter;
 import com.sematext.solr.redis.command.ZRange;
 import com.sematext.solr.redis.command.ZRangeByScore;
@@ -33,22 +43,34 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.PostFilter;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QueryParsing;
 import org.apache.solr.search.SyntaxError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.exceptions.JedisException;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import org.apache.lucene.search.BoostQuery;
-import org.apache.solr.common.util.Pair;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
 
 /**
  * RedisQParser is responsible for preparing a query based on data fetched from Redis.
@@ -63,46 +85,25 @@ final class RedisQParser extends QParser {
   private static final Logger log = LoggerFactory.getLogger(RedisQParser.class);
 
   /**
-   * Collection of commands
+   * Digest of the contents of the keys of a clause
    */
-  private static final Map<String, Command<?>> commands;
+  private static final Digest DIGEST = new Digest();
 
-  static {
-    commands = new HashMap<>();
-    commands.put("SDIFF", new SDiff());
-    commands.put("SINTER", new SInter());
-    commands.put("SMEMBERS", new SMembers());
-    commands.put("SRANDMEMBER", new SRandMember());
-    commands.put("SUNION", new SUnion());
-
-    commands.put("ZRANGE", new ZRange());
-    commands.put("ZREVRANGE", new ZRevRange());
-    commands.put("ZRANGEBYSCORE", new ZRangeByScore());
-    commands.put("ZREVRANGEBYSCORE", new ZRevrangeByScore());
-
-    commands.put("HGET", new HGet());
-    commands.put("HKEYS", new HKeys());
-    commands.put("HMGET", new HMGet());
-    commands.put("HVALS", new HVals());
-
-    commands.put("LRANGE", new LRange());
-    commands.put("LINDEX", new LIndex());
-
-    commands.put("GET", new Get(new ValueFilter()));
-    commands.put("MGET", new MGet());
-    commands.put("KEYS", new Keys());
-
-    commands.put("SORT", new Sort());
-
-    commands.put("EVAL", new Eval());
-    commands.put("EVALSHA", new EvalSha());
-  }
+  /**
+   * Commands whose results are not determined by the contents of their keys alone, so they can't be digested
+   */
+  private static final Set<String> UNDIGESTED_COMMANDS = Set.of("SRANDMEMBER", "KEYS", "SORT", "EVAL", "EVALSHA");
 
   /**
    * Jedis command handler
    */
   private final CommandHandler commandHandler;
 
+  /**
+   * Planner choosing how terms are matched when scores are not needed
+   */
+  private final QueryPlanner planner;
+
   /**
    * Operator used to build query.
    */
@@ -128,6 +129,52 @@ final class RedisQParser extends QParser {
    */
   private final boolean ignoreScore;
 
+  /**
+   * Parameter which determines whether scores from Redis boost the similarity score of a term or replace it.
+   */
+  private final boolean useIndexStats;
+
+  /**
+   * Strategy requested for matching the terms without scoring them.
+   */
+  private final QueryStrategy strategy;
+
+  /**
+   * Number of values checked in one round trip by the membership strategy.
+   */
+  private final int membershipBatchSize;
+
+  /**
+   * Parameter which determines whether all redis clauses of the request should be fetched in a single batch.
+   */
+  private final boolean batch;
+
+  /**
+   * Queries built for clauses with a version key or a digest, null if they are not cached
+   */
+  private final QueryCache queryCache;
+
+  /**
+   * Ordinals of the sets matched through docValues in each segment, null if they are not cached
+   */
+  private final OrdinalsCache ordinalsCache;
+
+  /**
+   * Commands by name
+   */
+  private final Map<String, Command<?>> commands;
+
+  /**
+   * Size in bytes of the data the query was built from
+   */
+  private long fetchedBytes;
+
+  /**
+   * Local params the data of this clause is fetched with. Digested clauses carry their digest, so their results are
+   * cached by their contents
+   */
+  private SolrParams fetchParams;
+
   /**
    *
    * @param qstr Query string
@@ -135,11 +182,22 @@ final class RedisQParser extends QParser {
    * @param params Parameters
    * @param req Request object
    * @param commandHandler Redis command handler
+   * @param batchByDefault Whether redis clauses are batched unless the redis.batch parameter says otherwise
+   * @param planner Planner choosing how terms are matched when scores are not needed
+   * @param queryCache Queries built for clauses with a version key or a digest, null to build them on every request
+   * @param ordinalsCache Ordinals of the sets matched through docValues in each segment, null to map them on every
+   * search
+   * @param commands Commands by name, see {@link #createCommands}
    */
   RedisQParser(final String qstr, final SolrParams localParams, final SolrParams params, final SolrQueryRequest req,
-          final CommandHandler commandHandler) {
+          final CommandHandler commandHandler, final boolean batchByDefault, final QueryPlanner planner,
+          final QueryCache queryCache, final OrdinalsCache ordinalsCache, final Map<String, Command<?>> commands) {
     super(qstr, localParams, params, req);
+    this.commands = commands;
     this.commandHandler = commandHandler;
+    this.planner = planner;
+    this.queryCache = queryCache;
+    this.ordinalsCache = ordinalsCache;
 
     redisCommand = localParams.get("command") == null ? null : localParams.get("command").toUpperCase();
     ignoreScore = localParams.get("ignoreScore") == null ? false : Boolean.parseBoolean(localParams.get("ignoreScore"));
@@ -159,106 +217,503 @@ final class RedisQParser extends QParser {
     operator = "AND".equalsIgnoreCase(operatorString) ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD;
 
     useQueryTimeAnalyzer = localParams.getBool("useAnalyzer", false);
+    useIndexStats = localParams.getBool("useIndexStats", true);
+    strategy = QueryStrategy.fromString(localParams.get("strategy"));
+    if (strategy != QueryStrategy.AUTO && !ignoreScore) {
+      // Only auto keeps scores, so an execution hint must not silently change relevance
+      throw new IllegalArgumentException(String.format("Strategy '%s' doesn't score and requires ignoreScore=true.",
+          localParams.get("strategy")));
+    }
+    membershipBatchSize = parseBatchSize(localParams);
+    batch = params == null ? batchByDefault : params.getBool("redis.batch", batchByDefault);
+    fetchParams = localParams;
+
+    if (QueryCache.isDigested(localParams)) {
+      if (QueryCache.getVersionKey(localParams) != null) {
+        throw new IllegalArgumentException("A clause can't be stamped with both a version key and a digest.");
+      }
+      if (UNDIGESTED_COMMANDS.contains(redisCommand) || localParams.getBool("chunked", false)) {
+        throw new IllegalArgumentException(String.format("Results of command '%s' can't be digested.", redisCommand));
+      }
+    }
+
+    if (batch && req != null && req.getContext() != null) {
+      // Submitted right away, so an asynchronous command handler fetches while the request is still being parsed
+      submitBatch(req, getParserType(), commandHandler, commands);
+    }
   }
 
   @Override
   public Query parse() throws SyntaxError {
     final String fieldName = localParams.get(QueryParsing.V);
-    final List<Pair<BytesRef, Float>> queryTerms = new ArrayList<>();
-    int booleanClausesTotal = 0;
-    boolean shouldUseTermsQuery = (this.operator == BooleanClause.Occur.SHOULD) && ignoreScore;
-    Float score = null;
-
-    final Map<String, Float> results = commandHandler.executeCommand(commands.get(redisCommand), localParams);
-
-    if (results != null) {
-      log.debug("Preparing a query for {} redis objects for field: {}", results.size(), fieldName);
-
-      for (final Map.Entry<String, Float> entry : results.entrySet()) {
-        try {
-          final String termString = entry.getKey();
-          if (termString == null) {
-            continue;
-          }
-
-          final Float newScore = entry.getValue();
-          if (score != null && newScore != score && !ignoreScore) {
-            shouldUseTermsQuery = false;
-          }
-          score = newScore;
-
-          if (useQueryTimeAnalyzer) {
-            log.trace("Term string {}", termString);
-            try (final TokenStream tokenStream =
-                req.getSchema().getQueryAnalyzer().tokenStream(fieldName, termString)) {
-              final CharTermAttribute charAttribute = tokenStream.addAttribute(CharTermAttribute.class);
-              tokenStream.reset();
-
-              int counter = 0;
-              while (tokenStream.incrementToken()) {
-                log.trace("Taking {} token {} with score {} from query string from {} for field: {}", ++counter,
-                    charAttribute, score, termString, fieldName);
-                queryTerms.add(new Pair<>(new BytesRef(charAttribute), score));
-                ++booleanClausesTotal;
-              }
-              tokenStream.end();
-            }
-          } else {
-            queryTerms.add(new Pair<>(new BytesRef(termString), score));
-            ++booleanClausesTotal;
-          }
-        } catch (final IOException ex) {
-          log.error("Error occurred during processing token stream.", ex);
-        }
+    final boolean filterOnly = this.operator == BooleanClause.Occur.SHOULD && ignoreScore;
+    final IndexSchema schema = req.getSchema();
+
+    if (filterOnly && strategy == QueryStrategy.MEMBERSHIP) {
+      final QueryPlanner.Plan plan = planner.plan(strategy, schema == null ? null : schema.getFieldOrNull(fieldName),
+          0, req.getSearcher());
+      if (plan.getStrategy() == QueryStrategy.MEMBERSHIP) {
+        log.trace("Using {} strategy (request params: {})", plan, req.getParamString());
+
+        // Nothing is fetched, the collected documents are checked against Redis
+        reportPlan(fieldName, 0, plan.getStrategy().toString(), "checks collected documents against redis");
+        return tag(new MembershipPostFilter(fieldName, MembershipCheck.forCommand(redisCommand, localParams),
+            commandHandler, membershipBatchSize));
+      }
+    }
+
+    final String versionKey = queryCache == null ? null : QueryCache.getVersionKey(localParams);
+    final boolean digested = queryCache != null && QueryCache.isDigested(localParams);
+    final String version = versionKey != null ? fetchVersion(versionKey) : digested ? fetchDigest() : null;
+    if (version != null) {
+      final Query cached = queryCache.get(localParams, version);
+      if (cached != null) {
+        log.trace("Using cached query (request params: {})", req.getParamString());
+
+        reportPlan(fieldName, 0, "cached", versionKey != null ? "version " + version + " of " + versionKey
+            + " is unchanged" : "digest of the contents is unchanged");
+        return tag(cached);
+      }
+      if (digested) {
+        // Decoded results are cached by the digest of their contents
+        final ModifiableSolrParams digestParams = new ModifiableSolrParams(localParams);
+        digestParams.set(QueryCache.DIGEST_PARAM, version);
+        fetchParams = digestParams;
+      }
+    }
+
+    final Query query = build(fieldName, filterOnly, schema);
+    if (version != null) {
+      queryCache.put(localParams, version, query, fetchedBytes);
+    }
+    return tag(query);
+  }
+
+  /**
+   * Fetches the data of this clause and builds its query.
+   *
+   * @param fieldName Field the terms are matched in
+   * @param filterOnly Whether the terms are matched without scoring them
+   * @param schema Index schema, may be null
+   * @return Query of this clause, not tagged yet
+   * @throws SyntaxError If the terms don't match the type of the field
+   */
+  private Query build(final String fieldName, final boolean filterOnly, final IndexSchema schema)
+      throws SyntaxError {
+    final Command<?> command = commands.get(redisCommand);
+    ScoredTerms queryTerms;
+    if (command instanceof IdSetCommand && ((IdSetCommand) command).fetchesIds(fetchParams)) {
+      final IdSet bitmap = commandHandler.executeIds((IdSetCommand) command, fetchParams);
+      fetchedBytes = bitmap.ramBytesUsed();
+      final SchemaField bitmapField = schema == null ? null : schema.getFieldOrNull(fieldName);
+      final NumberType idType = bitmapField == null || !bitmapField.getType().isPointField() ? null
+          : bitmapField.getType().getNumberType();
+      if ((idType == NumberType.INTEGER || idType == NumberType.LONG)
+          && (bitmapField.indexed() || bitmapField.hasDocValues())) {
+        log.trace("Using bitmap query (request params: {})", req.getParamString());
+
+        // Ids are matched straight from the bitmap, never turned into terms
+        reportPlan(fieldName, (int) Math.min(bitmap.size(), Integer.MAX_VALUE), "bitmap",
+            "numeric point field");
+        return BitmapQuery.create(fieldName, idType, bitmapField.indexed(), bitmapField.hasDocValues(), bitmap);
       }
+      queryTerms = bitmap.toTerms();
+    } else {
+      queryTerms = fetchTerms();
     }
 
-    Query termsQuery = null;
+    if (queryTerms != null) {
+      log.debug("Preparing a query for {} redis objects for field: {}", queryTerms.size(), fieldName);
+      fetchedBytes = queryTerms.ramBytesUsed();
+
+      if (!filterOnly) {
+        // Every clause of a boolean query adds to the score, term set queries skip repeated terms by themselves
+        queryTerms = queryTerms.distinct();
+      }
+      if (useQueryTimeAnalyzer) {
+        queryTerms = analyze(fieldName, queryTerms);
+      }
+    }
+
+    final int booleanClausesTotal = queryTerms == null ? 0 : queryTerms.size();
+    final Query termsQuery;
 
     FieldType ft = null;
-    final IndexSchema schema = req.getSchema();
     if (schema != null) {
       ft = schema.getFieldTypeNoEx(fieldName);
     }
 
-    if (ft != null && ft.isPointField()) {
+    final NumberType numberType = ft != null && ft.isPointField() ? ft.getNumberType() : null;
+    final SchemaField schemaField = numberType == null ? null : schema.getFieldOrNull(fieldName);
+
+    if (schemaField != null && schemaField.indexed() && this.operator == BooleanClause.Occur.SHOULD
+        && queryTerms != null) {
+      final NumericTerms values = NumericTerms.parse(fieldName, numberType, queryTerms);
+      if (filterOnly) {
+        log.trace("Using point set query (request params: {})", req.getParamString());
+
+        termsQuery = values.toSetQuery();
+        reportPlan(fieldName, booleanClausesTotal, "point set", "point field");
+      } else {
+        log.trace("Using WeightedPointInSetQuery (request params: {})", req.getParamString());
+
+        final float[] weights = new float[booleanClausesTotal];
+        for (int i = 0; i < booleanClausesTotal; i++) {
+          weights[i] = weightOf(queryTerms.getScore(i));
+        }
+        termsQuery = values.toWeightedQuery(weights);
+        reportPlan(fieldName, booleanClausesTotal, "weighted points", "point field scored by redis scores");
+      }
+    } else if (ft != null && ft.isPointField()) {
       log.trace("Using boolean query with numeric field subclauses (request params: {})", req.getParamString());
 
       final BooleanQuery.Builder booleanQueryBuilder = new BooleanQuery.Builder();
-      for (Pair<BytesRef, Float> pair : queryTerms) {
-        addNumericTermToQuery(booleanQueryBuilder, fieldName, pair.first(), pair.second(), ft);
+      final BytesRef scratch = new BytesRef();
+      for (int i = 0; i < booleanClausesTotal; i++) {
+        addNumericTermToQuery(booleanQueryBuilder, fieldName, queryTerms.getTerm(i, scratch),
+            queryTerms.getScore(i), ft);
       }
       termsQuery = booleanQueryBuilder.build();
+      reportPlan(fieldName, booleanClausesTotal, "boolean", "point field");
     } else {
-      if (shouldUseTermsQuery) {
-        log.trace("Using TermInSetQuery (request params: {})", req.getParamString());
-
-        final List<BytesRef> terms = new ArrayList<>(queryTerms.size());
-        for (Pair<BytesRef, Float> pair : queryTerms) {
-          terms.add(pair.first());
+      if (filterOnly) {
+        final QueryPlanner.Plan plan = planner.plan(strategy, schema == null ? null : schema.getFieldOrNull(fieldName),
+            booleanClausesTotal, req.getSearcher());
+        log.trace("Using {} strategy (request params: {})", plan, req.getParamString());
+
+        termsQuery = createFilterQuery(plan.getStrategy(), fieldName,
+            queryTerms == null ? new ScoredTerms.Builder(0).build() : queryTerms);
+        reportPlan(fieldName, booleanClausesTotal, plan.getStrategy().toString(), plan.getReason());
+      } else if (this.operator == BooleanClause.Occur.SHOULD && queryTerms != null && queryTerms.isOrdered()
+          && queryTerms.isAllNaN()) {
+        log.trace("Using RankedTermsQuery (request params: {})", req.getParamString());
+
+        final List<BytesRef> terms = new ArrayList<>(booleanClausesTotal);
+        for (int i = 0; i < booleanClausesTotal; i++) {
+          terms.add(queryTerms.getTerm(i));
         }
-        termsQuery = new TermInSetQuery(fieldName, terms);
+        termsQuery = new RankedTermsQuery(fieldName, terms);
+        reportPlan(fieldName, booleanClausesTotal, "ranked", "scores by position of ordered results");
+      } else if (this.operator == BooleanClause.Occur.SHOULD && queryTerms != null && !queryTerms.isAllNaN()) {
+        log.trace("Using WeightedTermsQuery (request params: {})", req.getParamString());
+
+        final List<BytesRef> terms = new ArrayList<>(booleanClausesTotal);
+        final float[] weights = new float[booleanClausesTotal];
+        for (int i = 0; i < booleanClausesTotal; i++) {
+          terms.add(queryTerms.getTerm(i));
+          weights[i] = weightOf(queryTerms.getScore(i));
+        }
+        termsQuery = new WeightedTermsQuery(fieldName, terms, weights, useIndexStats);
+        reportPlan(fieldName, booleanClausesTotal, "weighted", "scores by redis scores");
       } else {
         log.trace("Using boolean query with Terms clauses (request params: {})", req.getParamString());
 
         final BooleanQuery.Builder booleanQueryBuilder = new BooleanQuery.Builder();
-        for (Pair<BytesRef, Float> pair : queryTerms) {
-          addTermToQuery(booleanQueryBuilder, fieldName, pair.first(), pair.second());
+        for (int i = 0; i < booleanClausesTotal; i++) {
+          addTermToQuery(booleanQueryBuilder, fieldName, queryTerms.getTerm(i), queryTerms.getScore(i));
         }
         termsQuery = booleanQueryBuilder.build();
+        reportPlan(fieldName, booleanClausesTotal, "boolean",
+            this.operator == BooleanClause.Occur.MUST ? "operator AND" : "scores by index statistics");
       }
     }
 
     log.debug("Prepared a query for field {} with {} boolean clauses. (request params: {}}", fieldName,
         booleanClausesTotal, req.getParamString());
 
+    return termsQuery;
+  }
+
+  /**
+   * Fetches the version stamp of this clause, bypassing the result cache.
+   *
+   * @param versionKey Key holding the version stamp
+   * @return Version stamp, null if the key does not exist
+   */
+  private String fetchVersion(final String versionKey) {
+    final ModifiableSolrParams versionParams = new ModifiableSolrParams();
+    versionParams.set("command", "GET");
+    versionParams.set("key", versionKey);
+    // Version stamped clauses are never served from the result cache, neither is their version
+    versionParams.set(QueryCache.VERSION_KEY_PARAM, versionKey);
+
+    final ScoredTerms version = commandHandler.executeCommand(commands.get("GET"), versionParams);
+    return version == null || version.size() == 0 ? null : version.getTerm(0).utf8ToString();
+  }
+
+  /**
+   * Computes the digest of the contents of the keys of this clause in Redis, so the contents are only fetched once
+   * they changed.
+   *
+   * @return Digests and cardinalities of the keys joined by commas, null if Redis returned none
+   */
+  private String fetchDigest() {
+    final ScoredTerms digests = commandHandler.executeCommand(DIGEST, localParams);
+    if (digests == null || digests.size() == 0) {
+      return null;
+    }
+
+    final StringBuilder digest = new StringBuilder();
+    final BytesRef scratch = new BytesRef();
+    for (int i = 0; i < digests.size(); i++) {
+      digest.append(i == 0 ? "" : ",").append(digests.getTerm(i, scratch).utf8ToString());
+    }
+    return digest.toString();
+  }
+
+  /**
+   * @param localParams Local params of this clause
+   * @return Number of values the membership strategy checks in one round trip
+   */
+  private static int parseBatchSize(final SolrParams localParams) {
+    if (localParams.get("batchSize") == null) {
+      return MembershipPostFilter.DEFAULT_BATCH_SIZE;
+    }
+    final int batchSize;
+    try {
+      batchSize = localParams.getInt("batchSize", MembershipPostFilter.DEFAULT_BATCH_SIZE);
+    } catch (final SolrException e) {
+      throw new IllegalArgumentException(String.format("Batch size '%s' is not a number.",
+          localParams.get("batchSize")), e);
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException(String.format("Batch size must be positive, got %d.", batchSize));
+    }
+    return batchSize;
+  }
+
+  /**
+   * @param query Query of this clause
+   * @return The query tagged with the query tag, if there is one
+   */
+  private Query tag(final Query query) {
     if (queryTag == null || queryTag.isEmpty()) {
-      return termsQuery;
+      return query;
+    } else if (query instanceof PostFilter) {
+      // A tagged query is no post filter, so Solr would run it as a plain filter over every document
+      log.debug("Ignoring tag {} of post filter {}", queryTag, query);
+      return query;
     } else {
-      return new TaggedQuery(termsQuery, queryTag);
+      return new TaggedQuery(query, queryTag);
+    }
+  }
+
+  /**
+   * Creates a query matching any of the terms without scoring them.
+   *
+   * @param chosen Strategy chosen by the planner
+   * @param fieldName Field the terms are matched in
+   * @param queryTerms Terms
+   * @return Query matching the terms
+   */
+  private Query createFilterQuery(final QueryStrategy chosen, final String fieldName,
+      final ScoredTerms queryTerms) {
+    if (chosen == QueryStrategy.POSTFILTER) {
+      // Huge sets are only hashed, never expanded into a list of terms
+      return new DocValuesTermsPostFilter(fieldName, queryTerms.toSet());
+    }
+
+    if (chosen == QueryStrategy.DOCVALUES) {
+      return new DocValuesTermsSetQuery(fieldName, queryTerms.toSet(), ordinalsCache);
+    }
+
+    final List<BytesRef> terms = new ArrayList<>(queryTerms.size());
+    for (int i = 0; i < queryTerms.size(); i++) {
+      terms.add(queryTerms.getTerm(i));
+    }
+    return new TermInSetQuery(fieldName, terms);
+  }
+
+  /**
+   * Reports how the query of this clause has been built, in the debug output if the request asks for it.
+   *
+   * @param fieldName Field the terms are matched in
+   * @param termCount Number of terms
+   * @param chosen Name of the chosen strategy
+   * @param reason Why the strategy has been chosen
+   */
+  private void reportPlan(final String fieldName, final int termCount, final String chosen, final String reason) {
+    log.debug("Redis clause {} {} on field {} with {} terms uses {} strategy: {}", redisCommand,
+        localParams.get("key"), fieldName, termCount, chosen, reason);
+
+    final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    final ResponseBuilder responseBuilder = requestInfo == null ? null : requestInfo.getResponseBuilder();
+    if (responseBuilder != null && responseBuilder.isDebugQuery()) {
+      final NamedList<Object> plan = new SimpleOrderedMap<>();
+      plan.add("command", redisCommand);
+      plan.add("key", localParams.get("key"));
+      plan.add("field", fieldName);
+      plan.add("terms", termCount);
+      plan.add("strategy", chosen);
+      plan.add("reason", reason);
+      responseBuilder.addDebug(plan, "redis", "plan");
     }
   }
 
+  /**
+   * Submits the batch of all redis clauses of a request, unless it has been submitted already.
+   *
+   * @param req Request object
+   * @param parserType Name the redis query parser is registered with
+   * @param commandHandler Redis command handler
+   * @param commands Commands by name, see {@link #createCommands}
+   */
+  static void submitBatch(final SolrQueryRequest req, final String parserType, final CommandHandler commandHandler,
+      final Map<String, Command<?>> commands) {
+    CommandBatch.forRequest(req, parserType, commands, commandHandler);
+  }
+
+  /**
+   * @param codecs Codecs decompressing values fetched with GET and MGET
+   * @param chunkWorkers Workers decoding the chunks of chunked values fetched with GET
+   * @return Commands by name
+   */
+  static Map<String, Command<?>> createCommands(final ValueCodecs codecs, final Executor chunkWorkers) {
+    final Map<String, Command<?>> commands = new HashMap<>();
+    commands.put("SDIFF", new SDiff());
+    commands.put("SINTER", new SInter());
+    commands.put("SMEMBERS", new SMembers());
+    commands.put("SRANDMEMBER", new SRandMember());
+    commands.put("SUNION", new SUnion());
+
+    commands.put("ZRANGE", new ZRange());
+    commands.put("ZREVRANGE", new ZRevRange());
+    commands.put("ZRANGEBYSCORE", new ZRangeByScore());
+    commands.put("ZREVRANGEBYSCORE", new ZRevrangeByScore());
+
+    commands.put("HGET", new HGet());
+    commands.put("HKEYS", new HKeys());
+    commands.put("HMGET", new HMGet());
+    commands.put("HVALS", new HVals());
+
+    commands.put("LRANGE", new LRange());
+    commands.put("LINDEX", new LIndex());
+
+    commands.put("GET", new Get(new ValueFilter(codecs), chunkWorkers));
+    commands.put("BITMAP", new Bitmap());
+    commands.put("MGET", new MGet(new ValueFilter(codecs)));
+    commands.put("KEYS", new Keys());
+
+    commands.put("SORT", new Sort());
+
+    commands.put("EVAL", new Eval());
+    commands.put("EVALSHA", new EvalSha());
+    return Collections.unmodifiableMap(commands);
+  }
+
+  /**
+   * @return Batch of the request holding this clause, null if the clause is fetched separately
+   */
+  private CommandBatch getBatch() {
+    if (batch && req != null && req.getContext() != null) {
+      final CommandBatch commandBatch = CommandBatch.forRequest(req, getParserType(), commands, commandHandler);
+      if (commandBatch.contains(fetchParams)) {
+        return commandBatch;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Fetches the terms of this clause from Redis.
+   *
+   * @return Fetched terms, may be null
+   */
+  private ScoredTerms fetchTerms() {
+    final CommandBatch commandBatch = getBatch();
+    final ScoredTerms decoded = commandBatch == null ? fetchDecoded() : null;
+    return decoded != null ? decoded : fetchResults(commandBatch);
+  }
+
+  /**
+   * Fetches the members of this clause from Redis, decoding the reply straight into terms.
+   *
+   * @return Fetched members, null if the command or the command handler does not support decoding the reply
+   */
+  private ScoredTerms fetchDecoded() {
+    final Command<?> command = commands.get(redisCommand);
+    if (!(command instanceof RespCommand) || !((RespCommand) command).isRespDecodable(fetchParams)) {
+      return null;
+    }
+
+    return commandHandler.executeRespCommand((RespCommand) command, fetchParams);
+  }
+
+  /**
+   * Fetches data for this clause from Redis. With batching enabled the data is taken from the batch of the request
+   * and only fetched separately if the batch failed.
+   *
+   * @param commandBatch Batch of the request holding this clause, null if the clause is not batched
+   * @return Fetched data
+   */
+  private ScoredTerms fetchResults(final CommandBatch commandBatch) {
+    if (commandBatch != null) {
+      try {
+        log.debug("Taking results of {} from the request batch", redisCommand);
+        return commandBatch.get(fetchParams);
+      } catch (final JedisException | IllegalArgumentException e) {
+        log.warn("Batch of redis clauses failed, fetching {} separately: {}", redisCommand, e.getMessage());
+      }
+    }
+
+    return commandHandler.executeCommand(commands.get(redisCommand), fetchParams);
+  }
+
+  /**
+   * @return Name the redis query parser is registered with
+   */
+  private String getParserType() {
+    final String parserType = localParams.get(QueryParsing.TYPE);
+    return parserType == null ? RedisQParserPlugin.NAME : parserType;
+  }
+
+  /**
+   * Analyzes each term with the query analyzer of the field. Every token becomes a term with the score of the term
+   * it was taken from.
+   *
+   * @param fieldName Field name whose analyzer is used
+   * @param terms Terms to analyze
+   * @return Analyzed terms
+   */
+  private ScoredTerms analyze(final String fieldName, final ScoredTerms terms) {
+    final ScoredTerms.Builder analyzed = new ScoredTerms.Builder(terms.size()).ordered(terms.isOrdered());
+    final BytesRef scratch = new BytesRef();
+
+    for (int i = 0; i < terms.size(); i++) {
+      final String termString = terms.getTerm(i, scratch).utf8ToString();
+      final float score = terms.getScore(i);
+      log.trace("Term string {}", termString);
+
+      try (final TokenStream tokenStream = req.getSchema().getQueryAnalyzer().tokenStream(fieldName, termString)) {
+        final CharTermAttribute charAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+        tokenStream.reset();
+
+        int counter = 0;
+        while (tokenStream.incrementToken()) {
+          log.trace("Taking {} token {} with score {} from query string from {} for field: {}", ++counter,
+              charAttribute, score, termString, fieldName);
+          analyzed.add(charAttribute, score);
+        }
+        tokenStream.end();
+      } catch (final IOException ex) {
+        log.error("Error occurred during processing token stream.", ex);
+      }
+    }
+
+    return analyzed.build();
+  }
+
+  /**
+   * Turns a score from Redis into the weight of a term, the same way {@link #addTermToQuery} boosts a term.
+   *
+   * @param score Score from Redis, may be NaN or infinite
+   * @return Weight of the term
+   */
+  private static float weightOf(final float score) {
+    return !Float.isNaN(score) && score > 0 ? Math.min(score, Float.MAX_VALUE) : 1F;
+  }
+
   /**
    * Adds clause to query.
    *
@@ -268,9 +723,9 @@ final class RedisQParser extends QParser {
    * @param score Optional score
    */
   private void addTermToQuery(final BooleanQuery.Builder queryBuilder, final String fieldName, final BytesRef term,
-      final Float score) {
+      final float score) {
     Query termQuery = new TermQuery(new Term(fieldName, term));
-    if (!score.isNaN() && (score > 0)) {
+    if (!Float.isNaN(score) && (score > 0)) {
       termQuery = new BoostQuery(termQuery, score);
     }
 
@@ -287,12 +742,12 @@ final class RedisQParser extends QParser {
    * @param ft field type for the field we're using
    */
   private void addNumericTermToQuery(final BooleanQuery.Builder queryBuilder, final String fieldName,
-      final BytesRef term, final Float score, final FieldType ft) {
+      final BytesRef term, final float score, final FieldType ft) {
 
     final String value = term.utf8ToString();
     Query clause = ft.getFieldQuery(this, req.getSchema().getField(fieldName), value);
 
-    if (!score.isNaN() && (score > 0)) {
+    if (!Float.isNaN(score) && (score > 0)) {
       clause = new BoostQuery(clause, score);
     }
 
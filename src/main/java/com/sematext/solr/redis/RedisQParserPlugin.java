@@ -1,16 +1,34 @@
 package com.sematext.solr.redis;
 
+import com.sematext.solr.redis.command.ChunkedValue;
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.ValueCodecs;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
 import redis.clients.jedis.Protocol;
+import redis.clients.util.Pool;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * ParserPlugin which builds a query parser basing on data stored in Redis.
@@ -21,7 +39,7 @@ import redis.clients.jedis.Protocol;
  * @author prog
  * @author lstrojny
  */
-public class RedisQParserPlugin extends QParserPlugin {
+public class RedisQParserPlugin extends QParserPlugin implements SolrMetricProducer, AutoCloseable {
 
   /**
    * Redis parameter name constant.
@@ -63,6 +81,181 @@ public class RedisQParserPlugin extends QParserPlugin {
    */
   private static final String TIMEOUT_FIELD = "timeout";
 
+  /**
+   * Deployment mode parameter name constant
+   */
+  private static final String MODE_FIELD = "mode";
+
+  /**
+   * Maximum number of cluster redirections parameter name constant
+   */
+  private static final String MAX_REDIRECTIONS_FIELD = "maxRedirections";
+
+  /**
+   * Maximum number of threads querying cluster nodes in parallel parameter name constant
+   */
+  private static final String CLUSTER_THREADS_FIELD = "clusterThreads";
+
+  /**
+   * Name of the Sentinel monitored primary parameter name constant
+   */
+  private static final String MASTER_NAME_FIELD = "masterName";
+
+  /**
+   * Replica staleness tolerance parameter name constant
+   */
+  private static final String MAX_STALENESS_FIELD = "maxStaleness";
+
+  /**
+   * Replica replication lag tolerance parameter name constant
+   */
+  private static final String MAX_LAG_FIELD = "maxLag";
+
+  /**
+   * Replica discovery interval parameter name constant
+   */
+  private static final String REPLICA_REFRESH_INTERVAL_FIELD = "replicaRefreshInterval";
+
+  /**
+   * Redis Cluster deployment mode
+   */
+  private static final String CLUSTER_MODE = "cluster";
+
+  /**
+   * Redis Sentinel deployment mode
+   */
+  private static final String SENTINEL_MODE = "sentinel";
+
+  /**
+   * Default name of the Sentinel monitored primary
+   */
+  private static final String DEFAULT_MASTER_NAME = "mymaster";
+
+  /**
+   * Default replica staleness tolerance in milliseconds
+   */
+  private static final int DEFAULT_MAX_STALENESS = 0;
+
+  /**
+   * Default replica replication lag tolerance in bytes
+   */
+  private static final long DEFAULT_MAX_LAG = 1L << 20;
+
+  /**
+   * Default replica discovery interval in milliseconds
+   */
+  private static final int DEFAULT_REPLICA_REFRESH_INTERVAL = 5000;
+
+  /**
+   * Default maximum number of cluster redirections
+   */
+  private static final int DEFAULT_MAX_REDIRECTIONS = 5;
+
+  /**
+   * Default maximum number of threads querying cluster nodes in parallel
+   */
+  private static final int DEFAULT_CLUSTER_THREADS = 8;
+
+  /**
+   * Batching parameter name constant
+   */
+  private static final String BATCH_FIELD = "batch";
+
+  /**
+   * Asynchronous execution parameter name constant
+   */
+  private static final String ASYNC_FIELD = "async";
+
+  /**
+   * Number of asynchronous execution threads parameter name constant
+   */
+  private static final String ASYNC_THREADS_FIELD = "asyncThreads";
+
+  /**
+   * Default number of asynchronous execution threads
+   */
+  private static final int DEFAULT_ASYNC_THREADS = 4;
+
+  /**
+   * Decoding replies straight into terms parameter name constant
+   */
+  private static final String RESP_DECODING_FIELD = "respDecoding";
+
+  /**
+   * Codecs decompressing values parameter name constant
+   */
+  private static final String CODECS_FIELD = "codecs";
+
+  /**
+   * Size of the largest value the built in codecs decompress parameter name constant
+   */
+  private static final String MAX_DECOMPRESSED_BYTES_FIELD = ValueCodecs.MAX_DECOMPRESSED_BYTES_ARG;
+
+  /**
+   * Local cache of results parameter name constant
+   */
+  private static final String RESULT_CACHE_FIELD = "resultCache";
+
+  /**
+   * Local cache of queries of version stamped clauses parameter name constant
+   */
+  private static final String QUERY_CACHE_FIELD = "queryCache";
+
+  /**
+   * Local cache of the ordinals of sets matched through docValues parameter name constant
+   */
+  private static final String ORDINALS_CACHE_FIELD = "ordinalsCache";
+
+  /**
+   * Maximum number of cached results parameter name constant
+   */
+  private static final String MAX_ENTRIES_FIELD = "maxEntries";
+
+  /**
+   * Maximum size of cached results in bytes parameter name constant
+   */
+  private static final String MAX_BYTES_FIELD = "maxBytes";
+
+  /**
+   * Time to live of cached results parameter name constant
+   */
+  private static final String TTL_FIELD = "ttl";
+
+  /**
+   * Time to live of the cached results of each command parameter name constant
+   */
+  private static final String TTLS_FIELD = "ttls";
+
+  /**
+   * Eviction of cached results on keyspace notifications parameter name constant
+   */
+  private static final String KEYSPACE_INVALIDATION_FIELD = "keyspaceInvalidation";
+
+  /**
+   * Prefixes of the keys whose keyspace notifications are subscribed to parameter name constant
+   */
+  private static final String KEYSPACE_PREFIXES_FIELD = "keyspacePrefixes";
+
+  /**
+   * Eviction of cached results on invalidation messages of tracked keys parameter name constant
+   */
+  private static final String TRACKING_FIELD = "tracking";
+
+  /**
+   * Prefixes of the keys tracked in broadcast mode parameter name constant
+   */
+  private static final String TRACKING_PREFIXES_FIELD = "trackingPrefixes";
+
+  /**
+   * Tracking of all keys starting with the prefixes
+   */
+  private static final String BROADCAST_TRACKING = "bcast";
+
+  /**
+   * Tracking of the keys read by the connections of the plugin
+   */
+  private static final String DEFAULT_TRACKING = "default";
+
   /**
    * Default number of connections limit
    */
@@ -73,15 +266,81 @@ public class RedisQParserPlugin extends QParserPlugin {
    */
   private static final int DEFAULT_RETRIES = 1;
 
+  /**
+   * Configuration attribute name for the number of values from which docValues are scanned
+   */
+  private static final String DOCVALUES_THRESHOLD_FIELD = "docValuesThreshold";
+
   /**
    * Jedis connection handler
    */
   private CommandHandler connectionHandler;
 
+  /**
+   * Whether redis clauses of a request are fetched in a single batch by default
+   */
+  private boolean batch;
+
+  /**
+   * Whether replies of commands supporting it are decoded straight into terms instead of strings
+   */
+  private boolean respDecoding;
+
+  /**
+   * Local cache of results, null if disabled
+   */
+  private ResultCache resultCache;
+
+  /**
+   * Subscriber evicting cached results of changed keys, null if disabled
+   */
+  private KeyspaceSubscriber keyspaceSubscriber;
+
+  /**
+   * Subscriber evicting cached results of tracked keys, null if disabled
+   */
+  private TrackingSubscriber trackingSubscriber;
+
+  /**
+   * Local cache of the queries of clauses with a version key
+   */
+  private QueryCache queryCache = new QueryCache(QueryCache.DEFAULT_MAX_ENTRIES, QueryCache.DEFAULT_MAX_BYTES);
+
+  /**
+   * Local cache of the ordinals of the sets matched through docValues in each segment
+   */
+  private OrdinalsCache ordinalsCache = new OrdinalsCache(OrdinalsCache.DEFAULT_MAX_BYTES);
+
+  /**
+   * Codecs decompressing values fetched with GET and MGET, built in and configured
+   */
+  private final ValueCodecs codecs = new ValueCodecs();
+
+  /**
+   * Workers decoding the chunks of chunked values, one per processor at most
+   */
+  private final ExecutorService chunkWorkers = ChunkedValue.createWorkers(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Commands by name, decompressing values with the codecs and the chunk workers of the plugin
+   */
+  private final Map<String, Command<?>> commands = RedisQParser.createCommands(codecs, chunkWorkers);
+
+  /**
+   * Metrics context of the plugin
+   */
+  private SolrMetricsContext metricsContext;
+
+  /**
+   * Planner choosing how values are matched when scores are not needed
+   */
+  private QueryPlanner planner = new QueryPlanner();
+
   @Override
   public QParser createParser(final String qstr, final SolrParams localParams, final SolrParams params,
     final SolrQueryRequest req) {
-    return new RedisQParser(qstr, localParams, params, req, connectionHandler);
+    return new RedisQParser(qstr, localParams, params, req, connectionHandler, batch, planner, queryCache,
+        ordinalsCache, commands);
   }
 
   @Override
@@ -94,15 +353,222 @@ public class RedisQParserPlugin extends QParserPlugin {
     final String password = getString(args, PASSWORD_FIELD, null);
     final int database = getInt(args, DATABASE_FIELD, Protocol.DEFAULT_DATABASE);
     final int retries = getInt(args, RETRIES_FIELD, DEFAULT_RETRIES);
+    batch = Boolean.parseBoolean(getString(args, BATCH_FIELD, "false"));
+    respDecoding = Boolean.parseBoolean(getString(args, RESP_DECODING_FIELD, "true"));
+    planner = new QueryPlanner(getInt(args, DOCVALUES_THRESHOLD_FIELD, QueryPlanner.DEFAULT_DOCVALUES_MIN_TERMS));
+    configureCodecs(codecs, args);
+    queryCache = createQueryCache(args);
+    ordinalsCache = createOrdinalsCache(args);
 
-    final String[] hostAndPort = host.split(":");
-    final JedisPool jedisConnectionPool = createPool(poolConfig, hostAndPort[0],
-        hostAndPort.length == 2 ? Integer.parseInt(hostAndPort[1]) : Protocol.DEFAULT_PORT, timeout, password,
-        database);
+    final String mode = getString(args, MODE_FIELD, null);
+    final Supplier<Jedis> primaryConnector;
+    if (SENTINEL_MODE.equalsIgnoreCase(mode)) {
+      final Set<HostAndPort> sentinels = new LinkedHashSet<>();
+      for (final String sentinel : host.split(",")) {
+        sentinels.add(parseHostAndPort(sentinel.trim()));
+      }
+      final String masterName = getString(args, MASTER_NAME_FIELD, DEFAULT_MASTER_NAME);
+      final JedisSentinelPool primaryPool = createSentinelPool(masterName, sentinels, poolConfig, timeout, password,
+          database);
+      primaryConnector = () -> {
+        final HostAndPort primary = primaryPool.getCurrentHostMaster();
+        return createConnection(primary.getHost(), primary.getPort(), timeout, password);
+      };
+
+      connectionHandler = createSentinelCommandHandler(primaryPool, retries, masterName,
+          sentinels, sentinel -> new Jedis(sentinel.getHost(), sentinel.getPort(), timeout),
+          replica -> createPool(poolConfig, replica.getHost(), replica.getPort(), timeout, password, database),
+          getInt(args, MAX_STALENESS_FIELD, DEFAULT_MAX_STALENESS), getLong(args, MAX_LAG_FIELD, DEFAULT_MAX_LAG),
+          getInt(args, REPLICA_REFRESH_INTERVAL_FIELD, DEFAULT_REPLICA_REFRESH_INTERVAL));
+
+      log.info("Initialized RedisQParserPlugin with sentinels: " + sentinels + " for " + masterName);
+    } else if (CLUSTER_MODE.equalsIgnoreCase(mode)) {
+      final Set<HostAndPort> nodes = new LinkedHashSet<>();
+      for (final String node : host.split(",")) {
+        nodes.add(parseHostAndPort(node.trim()));
+      }
+
+      primaryConnector = null;
+      connectionHandler = createClusterCommandHandler(createClusterConnectionHandler(nodes, poolConfig, timeout,
+          password), retries, getInt(args, MAX_REDIRECTIONS_FIELD, DEFAULT_MAX_REDIRECTIONS),
+          getInt(args, CLUSTER_THREADS_FIELD, DEFAULT_CLUSTER_THREADS));
+
+      log.info("Initialized RedisQParserPlugin with cluster nodes: " + nodes);
+    } else {
+      final HostAndPort hostAndPort = parseHostAndPort(host);
+      final JedisPool jedisConnectionPool = createPool(poolConfig, hostAndPort.getHost(), hostAndPort.getPort(),
+          timeout, password, database);
+      primaryConnector = () -> createConnection(hostAndPort.getHost(), hostAndPort.getPort(), timeout, password);
+
+      connectionHandler = createCommandHandler(jedisConnectionPool, retries);
+
+      log.info("Initialized RedisQParserPlugin with host: " + host);
+    }
+
+    if (Boolean.parseBoolean(getString(args, ASYNC_FIELD, "false"))) {
+      connectionHandler = new SyncCommandHandler(createAsyncCommandHandler(connectionHandler,
+          getInt(args, ASYNC_THREADS_FIELD, DEFAULT_ASYNC_THREADS)));
+    }
+
+    resultCache = createResultCache(args);
+    if (resultCache != null) {
+      connectionHandler = new CachingCommandHandler(connectionHandler, resultCache);
+      if (isKeyspaceInvalidation(args)) {
+        startKeyspaceSubscriber(primaryConnector, database,
+            splitPrefixes(getResultCacheArg(args, KEYSPACE_PREFIXES_FIELD)));
+      }
+      final Object tracking = getResultCacheArg(args, TRACKING_FIELD);
+      if (tracking != null) {
+        startTrackingSubscriber(primaryConnector, tracking.toString(), getResultCacheArg(args, TRACKING_PREFIXES_FIELD),
+            !SENTINEL_MODE.equalsIgnoreCase(mode));
+      }
+    }
+  }
+
+  /**
+   * Starts evicting cached results on invalidation messages of keys tracked by the primary.
+   *
+   * @param primaryConnector Opens a connection to the primary, null if there is no single primary
+   * @param tracking Tracking mode, either bcast or default
+   * @param prefixes Comma separated prefixes of the keys tracked in broadcast mode, null for all keys
+   * @param redirectable Whether all keys are read from the primary, so its default tracking mode sees them
+   */
+  private void startTrackingSubscriber(final Supplier<Jedis> primaryConnector, final String tracking,
+    final Object prefixes, final boolean redirectable) {
+    if (!BROADCAST_TRACKING.equalsIgnoreCase(tracking) && !DEFAULT_TRACKING.equalsIgnoreCase(tracking)) {
+      throw new IllegalArgumentException("Parameter " + TRACKING_FIELD + " must be " + BROADCAST_TRACKING + " or "
+          + DEFAULT_TRACKING + ": " + tracking);
+    }
+    if (primaryConnector == null) {
+      log.warn("Client side caching is not supported by Redis Cluster, cached results expire by TTL only");
+      return;
+    }
+
+    boolean broadcast = BROADCAST_TRACKING.equalsIgnoreCase(tracking);
+    if (!broadcast && !redirectable) {
+      log.warn("Keys read from replicas are not tracked in default mode, tracking keys in broadcast mode");
+      broadcast = true;
+    }
+    trackingSubscriber = createTrackingSubscriber(resultCache, primaryConnector, broadcast, splitPrefixes(prefixes));
+    trackingSubscriber.start();
+    log.info("Evicting cached results on invalidation messages of keys tracked in " + (broadcast ? "broadcast"
+        : "default") + " mode");
+  }
+
+  /**
+   * Makes a connection track the keys it reads if the default tracking mode is enabled.
+   *
+   * @param jedis Connection about to read keys
+   */
+  private void trackConnection(final Jedis jedis) {
+    final TrackingSubscriber subscriber = trackingSubscriber;
+    if (subscriber != null) {
+      subscriber.track(jedis);
+    }
+  }
+
+  /**
+   * Starts evicting cached results on keyspace notifications of the primary.
+   *
+   * @param primaryConnector Opens a connection to the primary, null if there is no single primary
+   * @param database Database whose keys are cached
+   * @param prefixes Prefixes of the keys whose notifications are subscribed to, all keys if empty
+   */
+  private void startKeyspaceSubscriber(final Supplier<Jedis> primaryConnector, final int database,
+    final List<String> prefixes) {
+    if (primaryConnector == null) {
+      log.warn("Keyspace notifications are not supported by Redis Cluster, cached results expire by TTL only");
+      return;
+    }
+    if (prefixes.isEmpty()) {
+      log.warn("Subscribing to the keyspace notifications of all keys, every write to database " + database
+          + " is sent to Solr; set " + KEYSPACE_PREFIXES_FIELD + " to subscribe to the cached keys only");
+    }
+    keyspaceSubscriber = createKeyspaceSubscriber(resultCache, primaryConnector, database, prefixes);
+    keyspaceSubscriber.start();
+    log.info("Evicting cached results on keyspace notifications of database " + database
+        + (prefixes.isEmpty() ? "" : " for keys starting with " + prefixes));
+  }
+
+  @Override
+  public void initializeMetrics(final SolrMetricsContext parentContext, final String scope) {
+    metricsContext = parentContext.getChildContext(this);
+    if (resultCache != null) {
+      metricsContext.gauge(this, resultCache::getStatistics, true, RESULT_CACHE_FIELD, getCategory().toString(),
+          scope);
+    }
+    metricsContext.gauge(this, queryCache::getStatistics, true, QUERY_CACHE_FIELD, getCategory().toString(), scope);
+    metricsContext.gauge(this, ordinalsCache::getStatistics, true, ORDINALS_CACHE_FIELD, getCategory().toString(),
+        scope);
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return metricsContext;
+  }
+
+  /**
+   * Submits the batch of all redis clauses of a request, so it is fetched while the request is parsed.
+   *
+   * @param req Request object
+   * @param parserType Name the redis query parser is registered with
+   */
+  public void submitBatch(final SolrQueryRequest req, final String parserType) {
+    if (req.getParams().getBool("redis.batch", batch)) {
+      RedisQParser.submitBatch(req, parserType, connectionHandler, commands);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (keyspaceSubscriber != null) {
+      keyspaceSubscriber.close();
+    }
+    if (trackingSubscriber != null) {
+      trackingSubscriber.close();
+    }
+    if (connectionHandler != null) {
+      connectionHandler.close();
+    }
+    chunkWorkers.shutdown();
+    if (metricsContext != null) {
+      metricsContext.unregister();
+    }
+  }
+
+  /**
+   * @return Local cache of results, null if disabled
+   */
+  ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * @return Local cache of the queries of clauses with a version key
+   */
+  QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * @return Local cache of the ordinals of the sets matched through docValues
+   */
+  OrdinalsCache getOrdinalsCache() {
+    return ordinalsCache;
+  }
 
-    connectionHandler = createCommandHandler(jedisConnectionPool, retries);
+  /**
+   * @return Workers decoding the chunks of chunked values
+   */
+  ExecutorService getChunkWorkers() {
+    return chunkWorkers;
+  }
 
-    log.info("Initialized RedisQParserPlugin with host: " + host);
+  /**
+   * @return Codecs decompressing values fetched with GET and MGET
+   */
+  ValueCodecs getCodecs() {
+    return codecs;
   }
 
   /**
@@ -121,6 +587,135 @@ public class RedisQParserPlugin extends QParserPlugin {
     return new JedisPool(poolConfig, host, port, timeout, password, database);
   }
 
+  /**
+   * Opens a single connection, e.g. to subscribe to keyspace notifications.
+   *
+   * @param host Hostname
+   * @param port Port
+   * @param timeout Timeout value
+   * @param password Password optional
+   * @return Connection
+   */
+  Jedis createConnection(final String host, final int port, final int timeout, final String password) {
+    final Jedis jedis = new Jedis(host, port, timeout);
+    if (password != null) {
+      jedis.auth(password);
+    }
+    return jedis;
+  }
+
+  /**
+   * Create a new subscriber evicting cached results of changed keys
+   *
+   * @param cache Local cache of results
+   * @param primaryConnector Opens a connection to the primary
+   * @param database Database whose keys are cached
+   * @param prefixes Prefixes of the keys whose notifications are subscribed to, all keys if empty
+   * @return Subscriber, not started yet
+   */
+  KeyspaceSubscriber createKeyspaceSubscriber(final ResultCache cache, final Supplier<Jedis> primaryConnector,
+    final int database, final List<String> prefixes) {
+    return new KeyspaceSubscriber(cache, primaryConnector, database, prefixes, CacheInvalidator.DEFAULT_RETRY_INTERVAL,
+        CacheInvalidator.DEFAULT_PING_INTERVAL);
+  }
+
+  /**
+   * Create a new subscriber evicting cached results of keys tracked by Redis
+   *
+   * @param cache Local cache of results
+   * @param primaryConnector Opens a connection to the primary
+   * @param broadcast Whether all keys starting with the prefixes are tracked, instead of the keys read
+   * @param prefixes Prefixes of the keys tracked in broadcast mode, all keys if empty
+   * @return Subscriber, not started yet
+   */
+  TrackingSubscriber createTrackingSubscriber(final ResultCache cache, final Supplier<Jedis> primaryConnector,
+    final boolean broadcast, final List<String> prefixes) {
+    return new TrackingSubscriber(cache, primaryConnector, broadcast, prefixes, CacheInvalidator.DEFAULT_RETRY_INTERVAL,
+        CacheInvalidator.DEFAULT_PING_INTERVAL);
+  }
+
+  /**
+   * Creates redis cluster connection handler.
+   *
+   * @param nodes Cluster nodes used to discover the cluster
+   * @param poolConfig Pool configuration used for each node
+   * @param timeout Timeout value optional
+   * @param password Password optional
+   * @return Prepared cluster connection handler
+   */
+  JedisSlotBasedConnectionHandler createClusterConnectionHandler(final Set<HostAndPort> nodes,
+    final GenericObjectPoolConfig poolConfig, final int timeout, final String password) {
+    return new JedisSlotBasedConnectionHandler(nodes, poolConfig, timeout, timeout, password);
+  }
+
+  /**
+   * Create a new cluster command handler
+   *
+   * @param connectionHandler Redis cluster connection handler
+   * @param retries How often should a failed operation be retried
+   * @param maxRedirections How many MOVED and ASK redirections should be followed
+   * @param threads Maximum number of threads querying nodes in parallel
+   * @return Relevant command handler
+   */
+  CommandHandler createClusterCommandHandler(final JedisSlotBasedConnectionHandler connectionHandler,
+    final int retries, final int maxRedirections, final int threads) {
+    return new ClusterCommandHandler(connectionHandler, retries, maxRedirections, respDecoding, threads);
+  }
+
+  /**
+   * Creates Sentinel managed connection pool of the primary.
+   *
+   * @param masterName Name of the monitored primary
+   * @param sentinels Sentinels
+   * @param poolConfig Pool configuration
+   * @param timeout Timeout value optional
+   * @param password Password optional
+   * @param database Database name optional
+   * @return Prepared connection pool
+   */
+  JedisSentinelPool createSentinelPool(final String masterName, final Set<HostAndPort> sentinels,
+    final GenericObjectPoolConfig poolConfig, final int timeout, final String password, final int database) {
+    final Set<String> sentinelAddresses = new LinkedHashSet<>();
+    for (final HostAndPort sentinel : sentinels) {
+      sentinelAddresses.add(sentinel.toString());
+    }
+    return new JedisSentinelPool(masterName, sentinelAddresses, poolConfig, timeout, password, database);
+  }
+
+  /**
+   * Create a new Sentinel command handler
+   *
+   * @param primaryPool Sentinel managed pool of the primary
+   * @param retries How often should a failed operation be retried
+   * @param masterName Name of the monitored primary
+   * @param sentinels Sentinels used to discover the replicas
+   * @param sentinelConnector Opens a connection to a sentinel
+   * @param replicaPoolFactory Creates the connection pool of a replica
+   * @param maxStaleness How long in milliseconds a replica with a broken replication link is still read from
+   * @param maxLag How many bytes of the replication stream a replica may be behind the primary to be read from,
+   *               negative for any number
+   * @param refreshInterval Interval of the replica discovery in milliseconds
+   * @return Relevant command handler
+   */
+  CommandHandler createSentinelCommandHandler(final JedisSentinelPool primaryPool, final int retries,
+    final String masterName, final Set<HostAndPort> sentinels, final Function<HostAndPort, Jedis> sentinelConnector,
+    final Function<HostAndPort, Pool<Jedis>> replicaPoolFactory, final int maxStaleness, final long maxLag,
+    final int refreshInterval) {
+    return new SentinelCommandHandler(primaryPool, retries, masterName, sentinels, sentinelConnector,
+        replicaPoolFactory, maxStaleness, maxLag, refreshInterval, respDecoding);
+  }
+
+  /**
+   * Create a new asynchronous command handler
+   *
+   * @param commandHandler Blocking command handler
+   * @param threads Number of threads executing commands
+   * @return Relevant command handler
+   */
+  AsyncCommandHandler createAsyncCommandHandler(final CommandHandler commandHandler, final int threads) {
+    return new ExecutorAsyncCommandHandler(commandHandler, threads);
+  }
+
   /**
    * Create a new command handler
    *
@@ -129,7 +724,173 @@ public class RedisQParserPlugin extends QParserPlugin {
    * @return Relevant command handler
    */
   CommandHandler createCommandHandler(final JedisPool connectionPool, final int retries) {
-    return new RetryingCommandHandler(connectionPool, retries);
+    return new RetryingCommandHandler(connectionPool, retries, respDecoding, this::trackConnection);
+  }
+
+  /**
+   * Creates the local cache of results configured in the list of result cache arguments.
+   *
+   * @param args Arguments list
+   * @return Local cache of results, null if not configured
+   */
+  private static ResultCache createResultCache(final NamedList args) {
+    final Object cache = args != null ? args.get(RESULT_CACHE_FIELD) : null;
+    if (!(cache instanceof NamedList)) {
+      return null;
+    }
+
+    final NamedList<?> cacheArgs = (NamedList<?>) cache;
+    final Map<String, Long> ttls = new LinkedHashMap<>();
+    final Object commandTtls = cacheArgs.get(TTLS_FIELD);
+    if (commandTtls instanceof NamedList) {
+      for (final Map.Entry<String, ?> ttl : (NamedList<?>) commandTtls) {
+        ttls.put(ttl.getKey(), toLong(ttl.getKey(), ttl.getValue()));
+      }
+    }
+
+    final ResultCache resultCache = new ResultCache(
+        getLong(cacheArgs, MAX_ENTRIES_FIELD, ResultCache.DEFAULT_MAX_ENTRIES),
+        getLong(cacheArgs, MAX_BYTES_FIELD, ResultCache.DEFAULT_MAX_BYTES),
+        getLong(cacheArgs, TTL_FIELD, ResultCache.DEFAULT_TTL), ttls);
+    log.info("Initialized result cache with " + cacheArgs);
+    return resultCache;
+  }
+
+  /**
+   * Creates the local cache of the queries of version stamped clauses, bounded as configured in the list of query
+   * cache arguments.
+   *
+   * @param args Arguments list
+   * @return Local cache of queries
+   */
+  private static QueryCache createQueryCache(final NamedList args) {
+    final Object cache = args != null ? args.get(QUERY_CACHE_FIELD) : null;
+    if (!(cache instanceof NamedList)) {
+      return new QueryCache(QueryCache.DEFAULT_MAX_ENTRIES, QueryCache.DEFAULT_MAX_BYTES);
+    }
+
+    final NamedList<?> cacheArgs = (NamedList<?>) cache;
+    log.info("Initialized query cache with " + cacheArgs);
+    return new QueryCache(getLong(cacheArgs, MAX_ENTRIES_FIELD, QueryCache.DEFAULT_MAX_ENTRIES),
+        getLong(cacheArgs, MAX_BYTES_FIELD, QueryCache.DEFAULT_MAX_BYTES));
+  }
+
+  /**
+   * Creates the local cache of the ordinals of the sets matched through docValues, bounded as configured in the list
+   * of ordinals cache arguments.
+   *
+   * @param args Arguments list
+   * @return Local cache of ordinals
+   */
+  private static OrdinalsCache createOrdinalsCache(final NamedList args) {
+    final Object cache = args != null ? args.get(ORDINALS_CACHE_FIELD) : null;
+    if (!(cache instanceof NamedList)) {
+      return new OrdinalsCache(OrdinalsCache.DEFAULT_MAX_BYTES);
+    }
+
+    final NamedList<?> cacheArgs = (NamedList<?>) cache;
+    log.info("Initialized ordinals cache with " + cacheArgs);
+    return new OrdinalsCache(getLong(cacheArgs, MAX_BYTES_FIELD, OrdinalsCache.DEFAULT_MAX_BYTES));
+  }
+
+  /**
+   * @param prefixes Comma separated prefixes of keys, may be null
+   * @return Prefixes of keys, empty for all keys
+   */
+  private static List<String> splitPrefixes(final Object prefixes) {
+    final List<String> split = new ArrayList<>();
+    if (prefixes != null) {
+      for (final String prefix : prefixes.toString().split(",")) {
+        if (!prefix.trim().isEmpty()) {
+          split.add(prefix.trim());
+        }
+      }
+    }
+    return split;
+  }
+
+  /**
+   * @param args Arguments list
+   * @return Whether cached results are evicted on keyspace notifications
+   */
+  private static boolean isKeyspaceInvalidation(final NamedList args) {
+    return Boolean.parseBoolean(String.valueOf(getResultCacheArg(args, KEYSPACE_INVALIDATION_FIELD)));
+  }
+
+  /**
+   * @param args Arguments list holding a result cache list
+   * @param key Name of field
+   * @return Value of the field in the result cache list, null if missing
+   */
+  private static Object getResultCacheArg(final NamedList args, final String key) {
+    return ((NamedList<?>) args.get(RESULT_CACHE_FIELD)).get(key);
+  }
+
+  /**
+   * Extract long value from parameters list, given as a number or a string.
+   *
+   * @param args Arguments list
+   * @param key Name of field
+   * @param def Default value
+   * @return Long value of parameter with given name
+   */
+  private static long getLong(final NamedList<?> args, final String key, final long def) {
+    final Object value = args.get(key);
+    return value == null ? def : toLong(key, value);
+  }
+
+  /**
+   * @param key Name of field
+   * @param value Number or string
+   * @return Long value
+   */
+  private static long toLong(final String key, final Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    try {
+      return Long.parseLong(value.toString().trim());
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Parameter " + key + " must be a number: " + value, e);
+    }
+  }
+
+  /**
+   * Configures the codecs of the plugin: the built in codecs are limited to the configured size of a decompressed
+   * value and the codecs of a list of codec arguments by codec name are registered.
+   *
+   * @param codecs Codecs of the plugin
+   * @param args Arguments list
+   */
+  private static void configureCodecs(final ValueCodecs codecs, final NamedList args) {
+    final Object maxDecompressedBytes = args != null ? args.get(MAX_DECOMPRESSED_BYTES_FIELD) : null;
+    if (maxDecompressedBytes != null) {
+      codecs.registerBuiltIns(ValueCodecs.parseMaxDecompressedBytes(maxDecompressedBytes));
+    }
+    final Object configured = args != null ? args.get(CODECS_FIELD) : null;
+    if (!(configured instanceof NamedList)) {
+      return;
+    }
+
+    for (final Map.Entry<String, ?> codec : (NamedList<?>) configured) {
+      if (!(codec.getValue() instanceof NamedList)) {
+        throw new IllegalArgumentException("Codec " + codec.getKey() + " must be a list holding its class");
+      }
+      codecs.register(codec.getKey(), (NamedList<?>) codec.getValue());
+      log.info("Registered codec: " + codec.getKey());
+    }
+  }
+
+  /**
+   * Parses host and optional port.
+   *
+   * @param host Host name, optionally followed by a colon and the port
+   * @return Host and port
+   */
+  private static HostAndPort parseHostAndPort(final String host) {
+    final String[] hostAndPort = host.split(":");
+    return new HostAndPort(hostAndPort[0],
+        hostAndPort.length == 2 ? Integer.parseInt(hostAndPort[1]) : Protocol.DEFAULT_PORT);
   }
 
   /**
@@ -0,0 +1,496 @@
+package com.sematext.solr.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.params.SolrParams;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Local cache of the results of redis clauses, keyed by the command and the local params which reach the command.
+ * <p> Results are kept in the form the query is built from, so a hit costs neither a round trip nor decoding. Entries
+ * expire after the time to live of their command and are evicted by the W-TinyLFU policy of Caffeine, which admits a
+ * new result only if it is fetched more often than the result it would evict. The cache is bounded by the bytes of the
+ * results; every entry weighs at least {@code maxBytes / maxEntries}, which bounds the number of entries as well.
+ * <p> Entries are tracked by the Redis keys in their {@code key} params, so {@link #invalidate(String)} evicts the
+ * results of a changed key. A result fetched while its key changes is not cached, or evicted right after it was.
+ *
+ * @author prog
+ */
+final class ResultCache {
+  /**
+   * Default maximum number of cached results
+   */
+  static final long DEFAULT_MAX_ENTRIES = 10000;
+
+  /**
+   * Default maximum size of the cached results in bytes
+   */
+  static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  /**
+   * Default time to live of a result in milliseconds
+   */
+  static final long DEFAULT_TTL = 60000;
+
+  /**
+   * Cached results
+   */
+  private final Cache<Key, ScoredTerms> cache;
+
+  /**
+   * Time to live in milliseconds of the results of the commands with their own time to live, by upper case name
+   */
+  private final Map<String, Long> ttls;
+
+  /**
+   * Time to live in milliseconds of the results of all other commands
+   */
+  private final long defaultTtl;
+
+  /**
+   * Tracked entries by Redis key
+   */
+  private final ConcurrentMap<String, Tracking> tracking = new ConcurrentHashMap<>();
+
+  /**
+   * Number of times all entries were invalidated
+   */
+  private final AtomicLong flushes = new AtomicLong();
+
+  /**
+   * Number of entries invalidated by a changed key
+   */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * @param maxEntries Maximum number of cached results
+   * @param maxBytes Maximum size of the cached results in bytes
+   * @param defaultTtl Time to live in milliseconds of the results of commands without their own time to live
+   * @param ttls Time to live in milliseconds of the results of a command by command name, 0 to never cache them
+   */
+  ResultCache(final long maxEntries, final long maxBytes, final long defaultTtl, final Map<String, Long> ttls) {
+    this(maxEntries, maxBytes, defaultTtl, ttls, Ticker.systemTicker());
+  }
+
+  /**
+   * @param maxEntries Maximum number of cached results
+   * @param maxBytes Maximum size of the cached results in bytes
+   * @param defaultTtl Time to live in milliseconds of the results of commands without their own time to live
+   * @param ttls Time to live in milliseconds of the results of a command by command name, 0 to never cache them
+   * @param ticker Source of time
+   */
+  ResultCache(final long maxEntries, final long maxBytes, final long defaultTtl, final Map<String, Long> ttls,
+      final Ticker ticker) {
+    if (maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Result cache must hold at least one entry and one byte");
+    }
+    this.defaultTtl = defaultTtl;
+    this.ttls = new LinkedHashMap<>();
+    for (final Map.Entry<String, Long> ttl : ttls.entrySet()) {
+      this.ttls.put(ttl.getKey().toUpperCase(Locale.ROOT), ttl.getValue());
+    }
+
+    final long minWeight = Math.max(maxBytes / maxEntries, 1);
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((final Key key, final ScoredTerms terms) ->
+            (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, key.ramBytesUsed() + terms.ramBytesUsed())))
+        .expireAfter(new Expiry<Key, ScoredTerms>() {
+          @Override
+          public long expireAfterCreate(final Key key, final ScoredTerms terms, final long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(ttl(key.command));
+          }
+
+          @Override
+          public long expireAfterUpdate(final Key key, final ScoredTerms terms, final long currentTime,
+              final long currentDuration) {
+            return TimeUnit.MILLISECONDS.toNanos(ttl(key.command));
+          }
+
+          @Override
+          public long expireAfterRead(final Key key, final ScoredTerms terms, final long currentTime,
+              final long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .removalListener((final Key key, final ScoredTerms terms, final RemovalCause cause) -> untrack(key))
+        .ticker(ticker)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Whether the results of the command of the tag are cached. Tags with a version key are not, since their
+   * version stamp decides whether their query is up to date, nor are digested tags until their digest is known
+   */
+  boolean isCached(final SolrParams localParams) {
+    return localParams.get(QueryCache.VERSION_KEY_PARAM) == null && !QueryCache.isDigested(localParams)
+        && ttl(command(localParams)) > 0;
+  }
+
+  /**
+   * Returns the cached result of a tag, fetching and caching it if it is missing. Concurrent lookups of a missing
+   * result wait for a single fetch.
+   *
+   * @param localParams Solr local params of the tag
+   * @param fetch Fetches the result, may return null which is not cached
+   * @return Result of the tag
+   */
+  ScoredTerms get(final SolrParams localParams, final Function<SolrParams, ScoredTerms> fetch) {
+    if (!isCached(localParams)) {
+      return fetch.apply(localParams);
+    }
+
+    final Ticket[] loaded = new Ticket[1];
+    final ScoredTerms result = cache.get(key(localParams), missing -> {
+      loaded[0] = new Ticket(missing);
+      boolean fetched = false;
+      try {
+        final ScoredTerms terms = fetch.apply(localParams);
+        fetched = true;
+        return terms;
+      } finally {
+        if (!fetched) {
+          release(loaded[0]);
+        }
+      }
+    });
+    if (loaded[0] != null) {
+      if (result == null) {
+        release(loaded[0]);
+      } else {
+        promote(loaded[0]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts tracking the result of a tag which is fetched without {@link #get}, so a change of its keys while it is
+   * fetched keeps it from being cached.
+   *
+   * @param localParams Solr local params of the tag
+   * @return Ticket to pass to {@link #put} or {@link #release}, null if the result is not cached
+   */
+  Ticket reserve(final SolrParams localParams) {
+    return isCached(localParams) ? new Ticket(key(localParams)) : null;
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Cached result of the tag, null if it is missing
+   */
+  ScoredTerms getIfPresent(final SolrParams localParams) {
+    return isCached(localParams) ? cache.getIfPresent(key(localParams)) : null;
+  }
+
+  /**
+   * @param ticket Ticket of the tag, nothing is cached if null
+   * @param result Result of the tag, not cached if null or if a key of the tag changed since the ticket was reserved
+   */
+  void put(final Ticket ticket, final ScoredTerms result) {
+    if (ticket == null) {
+      return;
+    }
+    if (result == null || ticket.isStale()) {
+      release(ticket);
+      return;
+    }
+
+    cache.put(ticket.key, result);
+    promote(ticket);
+  }
+
+  /**
+   * Stops tracking a tag whose result is not cached, e.g. because it failed.
+   *
+   * @param ticket Ticket of the tag, ignored if null
+   */
+  void release(final Ticket ticket) {
+    if (ticket != null) {
+      untrack(ticket.key);
+    }
+  }
+
+  /**
+   * Evicts the results of the tags fetching a Redis key.
+   *
+   * @param redisKey Changed Redis key
+   * @return Whether any result was fetching the key
+   */
+  boolean invalidate(final String redisKey) {
+    final Tracking changed = tracking.remove(redisKey);
+    if (changed == null) {
+      return false;
+    }
+
+    changed.stale = true;
+    for (final Key key : changed.cached) {
+      cache.invalidate(key);
+      invalidations.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Evicts all results, e.g. because changes may have been missed. Results being fetched are not cached.
+   */
+  void invalidateAll() {
+    flushes.incrementAndGet();
+    for (final String redisKey : tracking.keySet()) {
+      final Tracking changed = tracking.remove(redisKey);
+      if (changed != null) {
+        changed.stale = true;
+      }
+    }
+    cache.invalidateAll();
+  }
+
+  /**
+   * @return Lookups, hits, hit ratio, evictions, invalidations, number of entries and weight in bytes of the entries
+   */
+  Map<String, Object> getStatistics() {
+    final CacheStats stats = cache.stats();
+    final Map<String, Object> statistics = new LinkedHashMap<>();
+    statistics.put("lookups", stats.requestCount());
+    statistics.put("hits", stats.hitCount());
+    statistics.put("misses", stats.missCount());
+    statistics.put("hitratio", stats.hitRate());
+    statistics.put("evictions", stats.evictionCount());
+    statistics.put("invalidations", invalidations.get());
+    statistics.put("size", cache.estimatedSize());
+    statistics.put("weight", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+    return statistics;
+  }
+
+  /**
+   * Runs pending evictions and expirations right away
+   */
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
+  /**
+   * Tracks a key being fetched by each of its Redis keys.
+   *
+   * @param key Key of a result being fetched, tracked by identity
+   * @return Tracking of each Redis key
+   */
+  private List<Tracking> track(final Key key) {
+    final List<Tracking> trackings = new ArrayList<>(key.redisKeys.length);
+    for (final String redisKey : key.redisKeys) {
+      trackings.add(tracking.compute(redisKey, (name, existing) -> {
+        final Tracking added = existing == null ? new Tracking() : existing;
+        added.loading.add(key);
+        return added;
+      }));
+    }
+    return trackings;
+  }
+
+  /**
+   * Tracks the key of a fetched result as cached, unless one of its Redis keys changed while it was fetched, in which
+   * case the result is evicted. A result being fetched is not evicted right away, since that would wait for the fetch.
+   *
+   * @param ticket Ticket of the cached result
+   */
+  private void promote(final Ticket ticket) {
+    for (int i = 0; i < ticket.trackings.size(); i++) {
+      final Tracking fetched = ticket.trackings.get(i);
+      tracking.computeIfPresent(ticket.key.redisKeys[i], (name, existing) -> {
+        if (existing == fetched && existing.loading.remove(ticket.key)) {
+          existing.cached.add(ticket.key);
+        }
+        return existing;
+      });
+    }
+    if (ticket.isStale()) {
+      cache.invalidate(ticket.key);
+    }
+  }
+
+  /**
+   * @param key Key which is neither fetched nor cached anymore
+   */
+  private void untrack(final Key key) {
+    for (final String redisKey : key.redisKeys) {
+      tracking.computeIfPresent(redisKey, (name, existing) -> {
+        existing.loading.remove(key);
+        existing.cached.remove(key);
+        return existing.loading.isEmpty() && existing.cached.isEmpty() ? null : existing;
+      });
+    }
+  }
+
+  /**
+   * @param command Upper case name of a command
+   * @return Time to live in milliseconds of the results of the command
+   */
+  private long ttl(final String command) {
+    return ttls.getOrDefault(command, defaultTtl);
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Upper case name of the command of the tag
+   */
+  private static String command(final SolrParams localParams) {
+    final String command = localParams.get("command");
+    return command == null ? "" : command.toUpperCase(Locale.ROOT);
+  }
+
+  /**
+   * @param localParams Solr local params of the tag
+   * @return Key of the tag, equal for params which only differ in their order or in params which only influence how
+   * the query is built
+   */
+  private static Key key(final SolrParams localParams) {
+    final Set<String> redisKeys = new LinkedHashSet<>();
+    final Iterator<String> names = localParams.getParameterNamesIterator();
+    while (names.hasNext()) {
+      final String name = names.next();
+      if (name.startsWith("key")) {
+        redisKeys.addAll(Arrays.asList(localParams.getParams(name)));
+      }
+    }
+    return new Key(command(localParams), ClauseKeys.fetchKey(localParams), redisKeys.toArray(new String[0]));
+  }
+
+  /**
+   * Result being fetched outside of {@link #get}
+   */
+  final class Ticket {
+    /**
+     * Key of the result, tracked by identity
+     */
+    private final Key key;
+
+    /**
+     * Tracking of each Redis key of the result
+     */
+    private final List<Tracking> trackings;
+
+    /**
+     * Number of flushes when the fetch started
+     */
+    private final long flushCount;
+
+    /**
+     * @param key Key of the result
+     */
+    private Ticket(final Key key) {
+      this.key = key;
+      this.flushCount = flushes.get();
+      this.trackings = track(key);
+    }
+
+    /**
+     * @return Whether a key of the result changed or all results were invalidated since the fetch started
+     */
+    private boolean isStale() {
+      if (flushes.get() != flushCount) {
+        return true;
+      }
+      for (final Tracking redisKey : trackings) {
+        if (redisKey.stale) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Keys of the results fetching a Redis key. It is replaced by a new tracking once the Redis key changes.
+   */
+  private static final class Tracking {
+    /**
+     * Keys of the results being fetched, by identity. Only modified while the tracking is computed in its map
+     */
+    private final Set<Key> loading = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Keys of the cached results, by identity. Only modified while the tracking is computed in its map
+     */
+    private final Set<Key> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Whether the Redis key changed
+     */
+    private volatile boolean stale;
+  }
+
+  /**
+   * Command and normalized local params of a tag
+   */
+  private static final class Key {
+    /**
+     * Upper case name of the command
+     */
+    private final String command;
+
+    /**
+     * Local params reaching the command, sorted by name
+     */
+    private final String params;
+
+    /**
+     * Redis keys the result is fetched from
+     */
+    private final String[] redisKeys;
+
+    /**
+     * @param command Upper case name of the command
+     * @param params Local params reaching the command, sorted by name
+     * @param redisKeys Redis keys the result is fetched from
+     */
+    private Key(final String command, final String params, final String[] redisKeys) {
+      this.command = command;
+      this.params = params;
+      this.redisKeys = redisKeys;
+    }
+
+    /**
+     * @return Approximate size of the key in bytes
+     */
+    private long ramBytesUsed() {
+      return RamUsageEstimator.sizeOf(command) + RamUsageEstimator.sizeOf(params);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * command.hashCode() + params.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return command.equals(other.command) && params.equals(other.params);
+    }
+  }
+}
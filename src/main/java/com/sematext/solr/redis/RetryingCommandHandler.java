@@ -1,13 +1,27 @@
 package com.sematext.solr.redis;
 
 import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.PipelinedCommand;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import com.sematext.solr.redis.resp.RespConnection;
 import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.exceptions.JedisException;
-import java.util.Map;
+import redis.clients.util.Pool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author lstrojny
@@ -21,66 +35,200 @@ class RetryingCommandHandler implements CommandHandler {
   /**
    * Redis connection pool
    */
-  private final JedisPool connectionPool;
+  private final Pool<Jedis> connectionPool;
 
   /**
    * Maximum number of retries
    */
   private final int maxRetries;
 
+  /**
+   * Whether replies of commands supporting it are decoded straight into a slab of terms
+   */
+  private final boolean respDecoding;
+
+  /**
+   * Prepares each borrowed connection before it is used
+   */
+  private final Consumer<Jedis> connectionPreparer;
+
+  /**
+   * Constructor
+   *
+   * @param connectionPool Redis connection pool
+   * @param maxRetries Maximum number of retries
+   */
+  public RetryingCommandHandler(final Pool<Jedis> connectionPool, final int maxRetries) {
+    this(connectionPool, maxRetries, false);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param connectionPool Redis connection pool
+   * @param maxRetries Maximum number of retries
+   * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+   */
+  public RetryingCommandHandler(final Pool<Jedis> connectionPool, final int maxRetries, final boolean respDecoding) {
+    this(connectionPool, maxRetries, respDecoding, jedis -> { });
+  }
+
   /**
    * Constructor
    *
    * @param connectionPool Redis connection pool
    * @param maxRetries Maximum number of retries
+   * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+   * @param connectionPreparer Prepares each borrowed connection before it is used, e.g. to track the keys it reads
    */
-  public RetryingCommandHandler(final JedisPool connectionPool, final int maxRetries) {
+  public RetryingCommandHandler(final Pool<Jedis> connectionPool, final int maxRetries, final boolean respDecoding,
+      final Consumer<Jedis> connectionPreparer) {
     this.connectionPool = connectionPool;
     this.maxRetries = maxRetries;
+    this.respDecoding = respDecoding;
+    this.connectionPreparer = connectionPreparer;
+  }
+
+  @Override
+  public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+    return executeWithRetries(jedis -> command.execute(jedis, localParams), command.getClass().getName(),
+        localParams.get("key"));
+  }
+
+  @Override
+  public List<ScoredTerms> executeCommands(final List<Command> commands, final List<SolrParams> localParams) {
+    final String[] keys = new String[localParams.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = localParams.get(i).get("key");
+    }
+
+    return executeWithRetries(jedis -> executePipelined(jedis, commands, localParams), "pipeline of "
+        + commands.size() + " commands", Arrays.toString(keys));
   }
 
   @Override
-  public Map<String, Float> executeCommand(final Command command, final SolrParams localParams) {
+  public ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    if (!respDecoding) {
+      return null;
+    }
+
+    final byte[][] args = command.getRespArgs(localParams);
+    return executeWithRetries(jedis -> ScoredTerms.of(new RespConnection(jedis).execute(args)),
+        command.getClass().getName(), localParams.get("key"));
+  }
+
+  @Override
+  public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    return executeWithRetries(jedis -> check.execute(new RespConnection(jedis), members), check.toString(),
+        members.size() + " members");
+  }
+
+  @Override
+  public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    command.checkParams(localParams);
+    return executeWithRetries(jedis -> command.fetchIds(new RespConnection(jedis), localParams),
+        command.getClass().getName(), Arrays.toString(((Command<?>) command).getKeys(localParams)));
+  }
+
+  @Override
+  public void close() {
+    connectionPool.close();
+  }
+
+  /**
+   * Executes the commands on a single connection. Commands which can be pipelined are sent in one round trip,
+   * the remaining ones are executed one by one after the pipeline has been synced.
+   *
+   * @param jedis Redis connection
+   * @param commands The commands to execute
+   * @param localParams Solr Local params of the tags, in the same order as the commands
+   * @return Results in the same order as the commands
+   */
+  private static List<ScoredTerms> executePipelined(final Jedis jedis, final List<Command> commands,
+      final List<SolrParams> localParams) {
+    final List<Supplier<ScoredTerms>> responses = new ArrayList<>(commands.size());
+    final Pipeline pipeline = jedis.pipelined();
+
+    try {
+      for (int i = 0; i < commands.size(); i++) {
+        final Command command = commands.get(i);
+        responses.add(command instanceof PipelinedCommand
+            ? ((PipelinedCommand) command).queue(pipeline, localParams.get(i)) : null);
+      }
+    } finally {
+      // Drain already queued commands so the connection can be reused even if a command had invalid params
+      pipeline.sync();
+    }
+
+    final List<ScoredTerms> results = new ArrayList<>(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      final Supplier<ScoredTerms> response = responses.get(i);
+      results.add(response != null ? response.get() : commands.get(i).execute(jedis, localParams.get(i)));
+    }
+
+    return results;
+  }
+
+  /**
+   * Runs an operation on a pooled connection and retries it on communication errors.
+   *
+   * @param operation Operation to run
+   * @param description Description of the operation used for logging
+   * @param key Redis key(s) used for logging
+   * @param <T> Result type
+   * @return Result of the operation
+   */
+  private <T> T executeWithRetries(final Function<Jedis, T> operation, final String description, final String key) {
     int retries = 0;
 
-    Map<String, Float> results = null;
+    T results = null;
     final long methodInvocationStart = currentTimeMillis();
 
     do {
       Jedis jedis = null;
       final long commandInvocationStart = currentTimeMillis();
 
+      boolean released = false;
       try {
         jedis = connectionPool.getResource();
-        results = command.execute(jedis, localParams);
+        connectionPreparer.accept(jedis);
+        results = operation.apply(jedis);
+        released = true;
         connectionPool.returnResource(jedis);
 
         break;
 
       } catch (final JedisException e) {
+        released = true;
         connectionPool.returnBrokenResource(jedis);
 
         log.warn("Redis communication error occurred with Jedis${} after {}ms for command {} on {}: {}. Retry {} of {}",
-            System.identityHashCode(jedis), currentTimeMillis() - commandInvocationStart, command.getClass().getName(),
-            localParams.get("key"), e.getMessage(), retries + 1, maxRetries);
+            System.identityHashCode(jedis), currentTimeMillis() - commandInvocationStart, description,
+            key, e.getMessage(), retries + 1, maxRetries);
 
         if (retries >= maxRetries) {
           throw e;
         }
 
+      } finally {
+        if (!released && jedis != null) {
+          // Any other error may have left a reply unread, so the connection can't be reused
+          connectionPool.returnBrokenResource(jedis);
+        }
       }
     } while (retries++ < maxRetries);
 
     if (retries > 0) {
       log.warn("Redis communication error recovered after {}ms and {} of {} retries for command {} on {}",
-          currentTimeMillis() - methodInvocationStart, retries + 1, maxRetries, command.getClass().getName(),
-          localParams.get("key"));
+          currentTimeMillis() - methodInvocationStart, retries + 1, maxRetries, description, key);
     }
 
     return results;
   }
 
-    /** @return Current time in milliseconds */
+  /**
+   * @return Current time in milliseconds
+   */
   private static long currentTimeMillis() {
     return System.currentTimeMillis();
   }
@@ -0,0 +1,489 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Executes commands against a Sentinel managed primary and its replicas.
+ * <p> Read-only commands are sent to the replica with the least outstanding requests, all other commands go to the
+ * primary. The primary is followed through failovers by the sentinel pool. Replicas are discovered through the
+ * sentinels periodically and whenever a replica fails. A replica is only read from while it is up, replicates from
+ * the current primary, its replication link has not been down for longer than the staleness tolerance and the
+ * replication offset it last acknowledged to the primary is no further behind than the lag tolerance. If no replica
+ * qualifies, reads go to the primary. Replicas are only checked on discovery, so a replica falling behind is read
+ * from until the next discovery.
+ *
+ * @author prog
+ */
+class SentinelCommandHandler implements CommandHandler {
+  /**
+   * Logger
+   */
+  private static final Logger log = LoggerFactory.getLogger(SentinelCommandHandler.class);
+
+  /**
+   * Replica flags reported by the sentinels which rule a replica out
+   */
+  private static final List<String> UNAVAILABLE_FLAGS = Arrays.asList("s_down", "o_down", "disconnected");
+
+  /**
+   * Replication offset of the primary in the replication section of INFO
+   */
+  private static final String PRIMARY_OFFSET = "master_repl_offset";
+
+  /**
+   * Replica entry in the replication section of INFO of the primary, e.g. {@code slave0:ip=...,port=...,offset=...}
+   */
+  private static final Pattern REPLICA_ENTRY = Pattern.compile("slave\\d+");
+
+  /**
+   * Sentinel managed pool of the primary
+   */
+  private final JedisSentinelPool primaryPool;
+
+  /**
+   * Command handler of the primary
+   */
+  private final CommandHandler primaryHandler;
+
+  /**
+   * Name of the monitored primary
+   */
+  private final String masterName;
+
+  /**
+   * Sentinels used to discover the replicas
+   */
+  private final Set<HostAndPort> sentinels;
+
+  /**
+   * Opens a connection to a sentinel
+   */
+  private final Function<HostAndPort, Jedis> sentinelConnector;
+
+  /**
+   * Creates the connection pool of a replica
+   */
+  private final Function<HostAndPort, Pool<Jedis>> replicaPoolFactory;
+
+  /**
+   * Longest time in milliseconds the replication link of a replica may be down for it still to be read from
+   */
+  private final long maxStaleness;
+
+  /**
+   * Largest number of bytes of the replication stream a replica may be behind the primary to be read from, negative
+   * to read from replicas however far behind they are
+   */
+  private final long maxLag;
+
+  /**
+   * Whether replies of commands supporting it are decoded straight into a slab of terms
+   */
+  private final boolean respDecoding;
+
+  /**
+   * Runs the replica discovery
+   */
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Whether a replica discovery has been requested and not yet run
+   */
+  private final AtomicBoolean refreshRequested = new AtomicBoolean();
+
+  /**
+   * Replicas currently read from
+   */
+  private volatile List<Replica> replicas = Collections.emptyList();
+
+  /**
+   * Replica read from by the handler.
+   */
+  private static final class Replica {
+    /**
+     * Address of the replica
+     */
+    private final HostAndPort address;
+
+    /**
+     * Connection pool of the replica
+     */
+    private final Pool<Jedis> pool;
+
+    /**
+     * Command handler of the replica
+     */
+    private final CommandHandler handler;
+
+    /**
+     * Number of requests currently sent to the replica
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * @param address Address of the replica
+     * @param pool Connection pool of the replica
+     * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+     */
+    private Replica(final HostAndPort address, final Pool<Jedis> pool, final boolean respDecoding) {
+      this.address = address;
+      this.pool = pool;
+      // Failed reads are not retried on the replica but on the primary
+      this.handler = new RetryingCommandHandler(pool, 0, respDecoding);
+    }
+  }
+
+  /**
+   * @param primaryPool Sentinel managed pool of the primary
+   * @param retries How often should a failed operation on the primary be retried
+   * @param masterName Name of the monitored primary
+   * @param sentinels Sentinels used to discover the replicas
+   * @param sentinelConnector Opens a connection to a sentinel
+   * @param replicaPoolFactory Creates the connection pool of a replica
+   * @param maxStaleness Longest time in milliseconds the replication link of a replica may be down for it still to
+   *                     be read from
+   * @param maxLag Largest number of bytes of the replication stream a replica may be behind the primary to be read
+   *               from, negative to read from replicas however far behind they are
+   * @param refreshInterval Interval of the replica discovery in milliseconds
+   * @param respDecoding Whether replies of commands supporting it are decoded straight into a slab of terms
+   */
+  SentinelCommandHandler(final JedisSentinelPool primaryPool, final int retries, final String masterName,
+      final Set<HostAndPort> sentinels, final Function<HostAndPort, Jedis> sentinelConnector,
+      final Function<HostAndPort, Pool<Jedis>> replicaPoolFactory, final long maxStaleness, final long maxLag,
+      final long refreshInterval, final boolean respDecoding) {
+    this.primaryPool = primaryPool;
+    this.primaryHandler = new RetryingCommandHandler(primaryPool, retries, respDecoding);
+    this.respDecoding = respDecoding;
+    this.masterName = masterName;
+    this.sentinels = sentinels;
+    this.sentinelConnector = sentinelConnector;
+    this.replicaPoolFactory = replicaPoolFactory;
+    this.maxStaleness = maxStaleness;
+    this.maxLag = maxLag;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new SolrNamedThreadFactory("redis-sentinel"));
+
+    refreshReplicas();
+    scheduler.scheduleWithFixedDelay(this::refreshReplicas, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+    if (command.isReadOnly()) {
+      final Replica replica = pickReplica();
+      if (replica != null) {
+        try {
+          replica.outstanding.incrementAndGet();
+          return replica.handler.executeCommand(command, localParams);
+        } catch (final JedisException e) {
+          handleReplicaFailure(replica, e);
+        } finally {
+          replica.outstanding.decrementAndGet();
+        }
+      }
+    }
+
+    return primaryHandler.executeCommand(command, localParams);
+  }
+
+  @Override
+  public List<ScoredTerms> executeCommands(final List<Command> commands, final List<SolrParams> localParams) {
+    boolean readOnly = true;
+    for (final Command command : commands) {
+      readOnly &= command.isReadOnly();
+    }
+
+    if (readOnly) {
+      final Replica replica = pickReplica();
+      if (replica != null) {
+        try {
+          replica.outstanding.incrementAndGet();
+          return replica.handler.executeCommands(commands, localParams);
+        } catch (final JedisException e) {
+          handleReplicaFailure(replica, e);
+        } finally {
+          replica.outstanding.decrementAndGet();
+        }
+      }
+    }
+
+    return primaryHandler.executeCommands(commands, localParams);
+  }
+
+  @Override
+  public ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    final Replica replica = pickReplica();
+    if (replica != null) {
+      try {
+        replica.outstanding.incrementAndGet();
+        return replica.handler.executeRespCommand(command, localParams);
+      } catch (final JedisException e) {
+        handleReplicaFailure(replica, e);
+      } finally {
+        replica.outstanding.decrementAndGet();
+      }
+    }
+
+    return primaryHandler.executeRespCommand(command, localParams);
+  }
+
+  @Override
+  public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    final Replica replica = pickReplica();
+    if (replica != null) {
+      try {
+        replica.outstanding.incrementAndGet();
+        return replica.handler.executeMembershipCheck(check, members);
+      } catch (final JedisException e) {
+        handleReplicaFailure(replica, e);
+      } finally {
+        replica.outstanding.decrementAndGet();
+      }
+    }
+
+    return primaryHandler.executeMembershipCheck(check, members);
+  }
+
+  @Override
+  public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    final Replica replica = pickReplica();
+    if (replica != null) {
+      try {
+        replica.outstanding.incrementAndGet();
+        return replica.handler.executeIds(command, localParams);
+      } catch (final JedisException e) {
+        handleReplicaFailure(replica, e);
+      } finally {
+        replica.outstanding.decrementAndGet();
+      }
+    }
+
+    return primaryHandler.executeIds(command, localParams);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    for (final Replica replica : replicas) {
+      replica.pool.close();
+    }
+    primaryHandler.close();
+  }
+
+  /**
+   * Discovers the replicas through the first reachable sentinel.
+   */
+  void refreshReplicas() {
+    refreshRequested.set(false);
+
+    for (final HostAndPort sentinel : sentinels) {
+      try (Jedis jedis = sentinelConnector.apply(sentinel)) {
+        updateReplicas(jedis.sentinelSlaves(masterName));
+        return;
+      } catch (final JedisException e) {
+        log.warn("Could not discover replicas of {} through sentinel {}: {}", masterName, sentinel, e.getMessage());
+      }
+    }
+
+    log.warn("No sentinel of {} reachable, keeping {} known replicas", masterName, replicas.size());
+  }
+
+  /**
+   * @return Addresses of the replicas currently read from
+   */
+  List<HostAndPort> getReplicaAddresses() {
+    final List<HostAndPort> addresses = new ArrayList<>();
+    for (final Replica replica : replicas) {
+      addresses.add(replica.address);
+    }
+    return addresses;
+  }
+
+  /**
+   * Replaces the replicas read from.
+   *
+   * @param replicaInfos Replica details reported by a sentinel
+   */
+  private void updateReplicas(final List<Map<String, String>> replicaInfos) {
+    final HostAndPort primary = primaryPool.getCurrentHostMaster();
+    final Map<HostAndPort, Long> lags = maxLag < 0 ? Collections.emptyMap() : fetchLags();
+    final Map<HostAndPort, Replica> previous = new HashMap<>();
+    for (final Replica replica : replicas) {
+      previous.put(replica.address, replica);
+    }
+
+    final List<Replica> current = new ArrayList<>();
+    for (final Map<String, String> replicaInfo : replicaInfos) {
+      final HostAndPort address = new HostAndPort(replicaInfo.get("ip"), Integer.parseInt(replicaInfo.get("port")));
+      if (isReadable(replicaInfo, primary) && (maxLag < 0 || lags.getOrDefault(address, Long.MAX_VALUE) <= maxLag)) {
+        final Replica replica = previous.remove(address);
+        current.add(replica != null ? replica : new Replica(address, replicaPoolFactory.apply(address), respDecoding));
+      } else {
+        log.debug("Not reading from replica {} of {}: {}", address, masterName, replicaInfo);
+      }
+    }
+
+    replicas = Collections.unmodifiableList(current);
+
+    for (final Replica replica : previous.values()) {
+      log.info("Stopped reading from replica {} of {}", replica.address, masterName);
+      replica.pool.close();
+    }
+  }
+
+  /**
+   * Reads how far each replica is behind from the primary. Offsets acknowledged by the replicas and the offset of the
+   * primary are taken from the same INFO reply, so they are comparable. Replicas acknowledge every second, so a
+   * replica is reported behind by up to a second of writes even when it is not.
+   *
+   * @return Number of bytes of the replication stream each replica is behind the primary, empty if the primary is
+   * not reachable
+   */
+  private Map<HostAndPort, Long> fetchLags() {
+    final String info;
+    try (Jedis jedis = primaryPool.getResource()) {
+      info = jedis.info("replication");
+    } catch (final JedisException e) {
+      log.warn("Could not read replication offsets of {}, not reading from replicas: {}", masterName, e.getMessage());
+      return Collections.emptyMap();
+    }
+    return info == null ? Collections.emptyMap() : parseLags(info);
+  }
+
+  /**
+   * @param info Replication section of INFO of the primary
+   * @return Number of bytes of the replication stream each listed replica is behind the primary
+   */
+  static Map<HostAndPort, Long> parseLags(final String info) {
+    long primaryOffset = -1;
+    final Map<HostAndPort, Long> offsets = new HashMap<>();
+    for (final String line : info.split("\\r?\\n")) {
+      final int colon = line.indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      final String name = line.substring(0, colon);
+      if (PRIMARY_OFFSET.equals(name)) {
+        primaryOffset = Long.parseLong(line.substring(colon + 1).trim());
+      } else if (REPLICA_ENTRY.matcher(name).matches()) {
+        final Map<String, String> fields = new HashMap<>();
+        for (final String field : line.substring(colon + 1).trim().split(",")) {
+          final int equals = field.indexOf('=');
+          if (equals > 0) {
+            fields.put(field.substring(0, equals), field.substring(equals + 1));
+          }
+        }
+        if (fields.containsKey("ip") && fields.containsKey("port") && fields.containsKey("offset")) {
+          offsets.put(new HostAndPort(fields.get("ip"), Integer.parseInt(fields.get("port"))),
+              Long.parseLong(fields.get("offset")));
+        }
+      }
+    }
+
+    final Map<HostAndPort, Long> lags = new HashMap<>();
+    if (primaryOffset >= 0) {
+      for (final Map.Entry<HostAndPort, Long> offset : offsets.entrySet()) {
+        lags.put(offset.getKey(), Math.max(0, primaryOffset - offset.getValue()));
+      }
+    }
+    return lags;
+  }
+
+  /**
+   * @param replicaInfo Replica details reported by a sentinel
+   * @param primary Current primary
+   * @return Whether the replica is up, replicates from the primary and its link is not down for too long
+   */
+  private boolean isReadable(final Map<String, String> replicaInfo, final HostAndPort primary) {
+    for (final String flag : replicaInfo.getOrDefault("flags", "").split(",")) {
+      if (UNAVAILABLE_FLAGS.contains(flag)) {
+        return false;
+      }
+    }
+
+    if (primary != null && !(primary.getHost().equals(replicaInfo.get("master-host"))
+        && String.valueOf(primary.getPort()).equals(replicaInfo.get("master-port")))) {
+      // Still replicating from the previous primary after a failover
+      return false;
+    }
+
+    return "ok".equals(replicaInfo.get("master-link-status"))
+        || Long.parseLong(replicaInfo.getOrDefault("master-link-down-time", "0")) <= maxStaleness;
+  }
+
+  /**
+   * Picks the replica with the least outstanding requests. Ties are broken randomly.
+   *
+   * @return Picked replica, null if there is no replica to read from
+   */
+  private Replica pickReplica() {
+    final List<Replica> current = replicas;
+    if (current.isEmpty()) {
+      return null;
+    }
+
+    final int offset = ThreadLocalRandom.current().nextInt(current.size());
+    Replica picked = null;
+    for (int i = 0; i < current.size(); i++) {
+      final Replica replica = current.get((offset + i) % current.size());
+      if (picked == null || replica.outstanding.get() < picked.outstanding.get()) {
+        picked = replica;
+      }
+    }
+
+    return picked;
+  }
+
+  /**
+   * Handles a failed read from a replica. Errors of the replica itself lead to a replica discovery and the read is
+   * retried on the primary, all other errors are rethrown.
+   *
+   * @param replica Failed replica
+   * @param e Error
+   */
+  private void handleReplicaFailure(final Replica replica, final JedisException e) {
+    final boolean loading = e instanceof JedisDataException && e.getMessage() != null
+        && e.getMessage().startsWith("LOADING");
+    if (!(e instanceof JedisConnectionException) && !loading) {
+      throw e;
+    }
+
+    log.warn("Reading from replica {} of {} failed, falling back to the primary: {}", replica.address, masterName,
+        e.getMessage());
+
+    if (refreshRequested.compareAndSet(false, true)) {
+      scheduler.execute(this::refreshReplicas);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.solr.common.params.SolrParams;
+import redis.clients.jedis.exceptions.JedisException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Blocking adapter of an asynchronous command handler. Batches are only submitted, so they run in the background
+ * until their results are needed.
+ *
+ * @author prog
+ */
+class SyncCommandHandler implements CommandHandler {
+  /**
+   * Asynchronous command handler
+   */
+  private final AsyncCommandHandler asyncHandler;
+
+  /**
+   * @param asyncHandler Asynchronous command handler
+   */
+  SyncCommandHandler(final AsyncCommandHandler asyncHandler) {
+    this.asyncHandler = asyncHandler;
+  }
+
+  @Override
+  public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+    return await(asyncHandler.executeCommandAsync(command, localParams));
+  }
+
+  @Override
+  public List<ScoredTerms> executeCommands(final List<Command> commands, final List<SolrParams> localParams) {
+    return await(asyncHandler.executeCommandsAsync(commands, localParams));
+  }
+
+  @Override
+  public CompletableFuture<List<ScoredTerms>> submitCommands(final List<Command> commands,
+      final List<SolrParams> localParams) {
+    return asyncHandler.executeCommandsAsync(commands, localParams);
+  }
+
+  @Override
+  public ScoredTerms executeRespCommand(final RespCommand command, final SolrParams localParams) {
+    return await(asyncHandler.executeRespCommandAsync(command, localParams));
+  }
+
+  @Override
+  public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab members) {
+    return await(asyncHandler.executeMembershipCheckAsync(check, members));
+  }
+
+  @Override
+  public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+    return await(asyncHandler.executeIdsAsync(command, localParams));
+  }
+
+  @Override
+  public void close() {
+    asyncHandler.close();
+  }
+
+  /**
+   * Waits for a future, rethrowing the error it failed with.
+   *
+   * @param future Future to wait for
+   * @param <T> Result type
+   * @return Result of the future
+   */
+  static <T> T await(final CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (final CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new JedisException(e.getCause());
+    }
+  }
+}
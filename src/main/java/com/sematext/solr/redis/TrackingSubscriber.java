@@ -0,0 +1,202 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import com.sematext.solr.redis.resp.RespConnection;
+import com.sematext.solr.redis.resp.RespReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Evicts cached results on the invalidation messages Redis 6 sends to clients tracking the keys they read
+ * (server-assisted client side caching). The listening connection is switched to RESP3 with HELLO, so the messages
+ * are pushed to it between the replies it reads itself.
+ * <p> In broadcast mode the listening connection tracks all keys starting with one of the configured prefixes, or all
+ * keys without prefixes, whichever connection reads them. In default mode Redis only tracks the keys read by
+ * connections redirecting their messages to the listening connection, see {@link #track(Jedis)}. This costs Redis
+ * memory for each read key, but no messages are sent for keys which were not read.
+ *
+ * @author prog
+ */
+final class TrackingSubscriber extends CacheInvalidator {
+  private static final Logger log = LoggerFactory.getLogger(TrackingSubscriber.class);
+
+  /**
+   * Kind of the push messages announcing changed keys
+   */
+  private static final String INVALIDATE = "invalidate";
+
+  /**
+   * Reply to a ping
+   */
+  private static final String PONG = "PONG";
+
+  /**
+   * Whether all keys starting with the prefixes are tracked, instead of the keys read by redirecting connections
+   */
+  private final boolean broadcast;
+
+  /**
+   * Prefixes of the keys tracked in broadcast mode, all keys if empty
+   */
+  private final List<String> prefixes;
+
+  /**
+   * Client id of the listening connection, -1 while disconnected
+   */
+  private volatile long clientId = -1;
+
+  /**
+   * Output of the listening connection, null while disconnected
+   */
+  private volatile OutputStream output;
+
+  /**
+   * Client id each connection redirects its messages to, by socket so a reconnected connection is tracked again
+   */
+  private final Map<Socket, Long> redirects = Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * @param cache Results to evict
+   * @param connector Opens a connection to the Redis primary
+   * @param broadcast Whether all keys starting with the prefixes are tracked, instead of the keys read by redirecting
+   * connections
+   * @param prefixes Prefixes of the keys tracked in broadcast mode, all keys if empty
+   * @param retryInterval Interval in milliseconds between attempts to connect
+   * @param pingInterval Interval in milliseconds between pings of the listening connection
+   */
+  TrackingSubscriber(final ResultCache cache, final Supplier<Jedis> connector, final boolean broadcast,
+      final List<String> prefixes, final long retryInterval, final long pingInterval) {
+    super(cache, connector, "redis-tracking", retryInterval, pingInterval);
+    this.broadcast = broadcast;
+    this.prefixes = prefixes;
+  }
+
+  /**
+   * Makes a connection about to read keys redirect the invalidation messages of the keys to the listening connection.
+   * Nothing is done in broadcast mode, or while no connection listens, since all results are evicted once it does.
+   *
+   * @param jedis Connection about to read keys
+   */
+  void track(final Jedis jedis) {
+    final long id = clientId;
+    if (broadcast || id < 0) {
+      return;
+    }
+
+    final Client client = jedis.getClient();
+    final Socket socket = client.getSocket();
+    final Long redirect = socket != null ? redirects.get(socket) : null;
+    if (redirect != null && redirect == id) {
+      return;
+    }
+
+    new RespConnection(jedis).execute(SafeEncoder.encodeMany("CLIENT", "TRACKING", "on", "REDIRECT",
+        Long.toString(id)));
+    redirects.put(client.getSocket(), id);
+  }
+
+  @Override
+  void listen(final Jedis jedis) throws IOException {
+    final Client client = jedis.getClient();
+    if (!client.isConnected()) {
+      client.connect();
+    }
+    final Socket socket = client.getSocket();
+    // Messages may be apart for longer than the read timeout, pings detect broken connections instead
+    socket.setSoTimeout(0);
+
+    final OutputStream out = socket.getOutputStream();
+    final RespReader reader = new RespReader(socket.getInputStream());
+    final BytesRefSlab reply = new BytesRefSlab();
+    send(out, "HELLO", "3");
+    reader.readMembers(reply);
+
+    final long id;
+    if (broadcast) {
+      final List<String> args = new ArrayList<>(Arrays.asList("CLIENT", "TRACKING", "on", "BCAST"));
+      for (final String prefix : prefixes) {
+        args.add("PREFIX");
+        args.add(prefix);
+      }
+      send(out, args.toArray(new String[0]));
+      reader.readMembers(reply);
+      id = -1;
+    } else {
+      send(out, "CLIENT", "ID");
+      id = reader.readInteger();
+    }
+
+    try {
+      output = out;
+      clientId = id;
+      listening();
+      log.info("Tracking {} keys of Redis for client side caching", broadcast ? "broadcast" : "read");
+
+      while (!isClosed()) {
+        reply.clear();
+        reader.readMembers(reply);
+        onPush(reply);
+      }
+    } finally {
+      clientId = -1;
+      output = null;
+    }
+  }
+
+  @Override
+  void ping(final Jedis jedis) throws IOException {
+    final OutputStream out = output;
+    if (out != null) {
+      send(out, "PING");
+    }
+  }
+
+  /**
+   * Evicts the results of the keys of an invalidation message. A message without keys, sent on FLUSHALL or when
+   * Redis drops keys from its tracking table, evicts all results.
+   *
+   * @param message Kind of the message followed by its keys, or the reply to a ping
+   */
+  void onPush(final BytesRefSlab message) {
+    if (message.size() == 0) {
+      return;
+    }
+
+    final String kind = message.get(0).utf8ToString();
+    if (PONG.equals(kind)) {
+      pong();
+    } else if (INVALIDATE.equals(kind)) {
+      if (message.size() == 1) {
+        cache.invalidateAll();
+      }
+      for (int i = 1; i < message.size(); i++) {
+        invalidate(message.get(i).utf8ToString());
+      }
+    }
+  }
+
+  /**
+   * @param out Output of a connection
+   * @param args Command name followed by its arguments
+   * @throws IOException If writing fails
+   */
+  private static void send(final OutputStream out, final String... args) throws IOException {
+    synchronized (out) {
+      out.write(RespReader.encodeCommand(SafeEncoder.encodeMany(args)));
+      out.flush();
+    }
+  }
+}
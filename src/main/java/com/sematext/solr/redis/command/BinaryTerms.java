@@ -0,0 +1,222 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Set;
+
+/**
+ * Decodes the binary serialization forms of values fetched with GET, which are smaller than JSON arrays and decoded
+ * straight into terms without creating a String per term.
+ * <p> Lengths are unsigned variable length integers with 7 bits per byte, least significant group first, as used by
+ * Protocol Buffers and Lucene. Every form has a scored variant, suffixed with {@code _scored}, which follows each
+ * term with its weight as a little endian 32 bit float.
+ * <ul>
+ *   <li>{@code varint}: each term is its length followed by its UTF-8 bytes</li>
+ *   <li>{@code front_coded}: each term is the length of the prefix it shares with the previous term, the length of
+ *   the rest and the UTF-8 bytes of the rest. Sorted terms stay sorted, so they are not sorted again.</li>
+ *   <li>{@code packed_longs}: each number is its difference to the previous number, the first one to 0, zig-zag
+ *   encoded into a variable length integer. Numbers become terms in decimal form, which numeric fields parse
+ *   without creating a String.</li>
+ * </ul>
+ *
+ * @author prog
+ */
+final class BinaryTerms {
+  /**
+   * Form of terms prefixed with their length
+   */
+  static final String VARINT = "varint";
+
+  /**
+   * Form of terms sharing prefixes with the previous term
+   */
+  static final String FRONT_CODED = "front_coded";
+
+  /**
+   * Form of delta encoded numbers
+   */
+  static final String PACKED_LONGS = "packed_longs";
+
+  /**
+   * Suffix of the forms carrying a weight for each term
+   */
+  static final String SCORED_SUFFIX = "_scored";
+
+  /**
+   * All binary forms
+   */
+  private static final Set<String> FORMS = Set.of(VARINT, FRONT_CODED, PACKED_LONGS, VARINT + SCORED_SUFFIX,
+      FRONT_CODED + SCORED_SUFFIX, PACKED_LONGS + SCORED_SUFFIX);
+
+  /**
+   * Value being decoded
+   */
+  private final BytesRef value;
+
+  /**
+   * Position of the next byte to decode
+   */
+  private int position;
+
+  /**
+   * @param value Value to decode
+   */
+  private BinaryTerms(final BytesRef value) {
+    this.value = value;
+    this.position = value.offset;
+  }
+
+  /**
+   * @param form Serialization form
+   * @return Whether the form is one of the binary forms
+   */
+  static boolean isBinary(final String form) {
+    return FORMS.contains(form);
+  }
+
+  /**
+   * Decodes a value.
+   *
+   * @param form Binary serialization form
+   * @param value Value to decode, only read during the call
+   * @return Decoded terms
+   * @throws DeserializationException If the value is malformed
+   */
+  static ScoredTerms decode(final String form, final BytesRef value) throws DeserializationException {
+    final boolean scored = form.endsWith(SCORED_SUFFIX);
+    final String termForm = scored ? form.substring(0, form.length() - SCORED_SUFFIX.length()) : form;
+    // The terms take about as many bytes as the value
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder(Math.max(value.length / 8, 1));
+    final BinaryTerms decoder = new BinaryTerms(value);
+
+    switch (termForm) {
+      case VARINT:
+        decoder.decodeVarint(builder, scored);
+        break;
+      case FRONT_CODED:
+        decoder.decodeFrontCoded(builder, scored);
+        break;
+      case PACKED_LONGS:
+        decoder.decodePackedLongs(builder, scored);
+        break;
+      default:
+        throw new DeserializationException(String.format("Unsupported serialization format: '%s'", form));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param builder Builder to add the terms to
+   * @param scored Whether each term is followed by its weight
+   * @throws DeserializationException If the value is malformed
+   */
+  private void decodeVarint(final ScoredTerms.Builder builder, final boolean scored)
+      throws DeserializationException {
+    final BytesRef term = new BytesRef(value.bytes, 0, 0);
+    while (hasMore()) {
+      term.length = readLength();
+      term.offset = skip(term.length);
+      builder.add(term, scored ? readFloat() : Float.NaN);
+    }
+  }
+
+  /**
+   * @param builder Builder to add the terms to
+   * @param scored Whether each term is followed by its weight
+   * @throws DeserializationException If the value is malformed
+   */
+  private void decodeFrontCoded(final ScoredTerms.Builder builder, final boolean scored)
+      throws DeserializationException {
+    final BytesRef term = new BytesRef(16);
+    while (hasMore()) {
+      final int prefix = readLength();
+      if (prefix > term.length) {
+        throw new DeserializationException("Malformed front coded value, prefix longer than previous term");
+      }
+      final int suffix = readLength();
+      final int start = skip(suffix);
+      term.bytes = ArrayUtil.grow(term.bytes, prefix + suffix);
+      System.arraycopy(value.bytes, start, term.bytes, prefix, suffix);
+      term.length = prefix + suffix;
+      builder.add(term, scored ? readFloat() : Float.NaN);
+    }
+  }
+
+  /**
+   * @param builder Builder to add the terms to
+   * @param scored Whether each number is followed by its weight
+   * @throws DeserializationException If the value is malformed
+   */
+  private void decodePackedLongs(final ScoredTerms.Builder builder, final boolean scored)
+      throws DeserializationException {
+    final StringBuilder decimal = new StringBuilder(20);
+    long number = 0;
+    while (hasMore()) {
+      final long delta = readVLong();
+      number += (delta >>> 1) ^ -(delta & 1);
+      decimal.setLength(0);
+      builder.add(decimal.append(number), scored ? readFloat() : Float.NaN);
+    }
+  }
+
+  /**
+   * @return Whether bytes are left to decode
+   */
+  private boolean hasMore() {
+    return position < value.offset + value.length;
+  }
+
+  /**
+   * @param length Number of bytes to skip
+   * @return Position of the first skipped byte
+   * @throws DeserializationException If the value is truncated
+   */
+  private int skip(final int length) throws DeserializationException {
+    if (length > value.offset + value.length - position) {
+      throw new DeserializationException("Truncated binary value");
+    }
+    final int start = position;
+    position += length;
+    return start;
+  }
+
+  /**
+   * @return Next length
+   * @throws DeserializationException If the value is truncated or the length too large
+   */
+  private int readLength() throws DeserializationException {
+    final long length = readVLong();
+    if (length > Integer.MAX_VALUE || length < 0) {
+      throw new DeserializationException("Malformed binary value, length " + length + " too large");
+    }
+    return (int) length;
+  }
+
+  /**
+   * @return Next variable length integer
+   * @throws DeserializationException If the value is truncated or the integer has more than 64 bits
+   */
+  private long readVLong() throws DeserializationException {
+    long result = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      final byte next = value.bytes[skip(1)];
+      result |= (long) (next & 0x7F) << shift;
+      if (next >= 0) {
+        return result;
+      }
+    }
+    throw new DeserializationException("Malformed binary value, variable length integer too long");
+  }
+
+  /**
+   * @return Next little endian 32 bit float
+   * @throws DeserializationException If the value is truncated
+   */
+  private float readFloat() throws DeserializationException {
+    final int start = skip(Float.BYTES);
+    final byte[] bytes = value.bytes;
+    return Float.intBitsToFloat(bytes[start] & 0xFF | (bytes[start + 1] & 0xFF) << 8 | (bytes[start + 2] & 0xFF) << 16
+        | (bytes[start + 3] & 0xFF) << 24);
+  }
+}
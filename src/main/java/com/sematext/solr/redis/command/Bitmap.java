@@ -0,0 +1,147 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.RespConnection;
+import com.sematext.solr.redis.resp.RespReader;
+import org.apache.solr.common.params.SolrParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.BinaryJedisCommands;
+import redis.clients.util.SafeEncoder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches a bitmap of numeric ids, e.g. built with SETBIT.
+ * <p> {@link #fetchIds} reads the raw bitmap with GETRANGE in chunks of {@code chunkSize} bytes, so a large bitmap
+ * never comes as a single huge reply. Its length is asked with STRLEN in the round trip fetching the first chunk and
+ * all other chunks are pipelined in a second round trip, each read straight into a single array. Chunks are not read
+ * atomically, so a bitmap larger than a chunk which changes while it is fetched may mix both versions.
+ *
+ * @author prog
+ */
+public final class Bitmap implements Command<BinaryJedisCommands>, IdSetCommand {
+  /**
+   * Default number of bytes fetched by one GETRANGE
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  private static final Logger log = LoggerFactory.getLogger(Bitmap.class);
+
+  @Override
+  public ScoredTerms execute(final BinaryJedisCommands client, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    log.debug("Fetching bitmap from Redis for key: {}", key);
+
+    final byte[] bytes = client.get(SafeEncoder.encode(key));
+    return bytes == null ? null : new RedisBitmap(bytes, bytes.length).toTerms();
+  }
+
+  @Override
+  public boolean fetchesIds(final SolrParams params) {
+    return true;
+  }
+
+  @Override
+  public void checkParams(final SolrParams params) {
+    ParamUtil.assertGetStringByName(params, "key");
+    getChunkSize(params);
+  }
+
+  @Override
+  public RedisBitmap fetchIds(final RespConnection connection, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final int chunkSize = getChunkSize(params);
+
+    log.debug("Fetching bitmap from Redis for key: {} in chunks of {} bytes", key, chunkSize);
+
+    final byte[] keyBytes = SafeEncoder.encode(key);
+    final List<byte[][]> first = new ArrayList<>(2);
+    first.add(SafeEncoder.encodeMany("STRLEN", key));
+    first.add(getRange(keyBytes, 0, chunkSize));
+    final ChunkReader chunks = new ChunkReader(chunkSize);
+    connection.executeAll(first, chunks);
+
+    final int length = chunks.bytes.length;
+    if (length > chunkSize) {
+      final List<byte[][]> rest = new ArrayList<>(length / chunkSize);
+      for (long start = chunkSize; start < length; start += chunkSize) {
+        rest.add(getRange(keyBytes, start, chunkSize));
+      }
+      connection.executeAll(rest, chunks);
+    }
+
+    return new RedisBitmap(chunks.bytes, chunks.read);
+  }
+
+  /**
+   * @param params Solr local params of the tag
+   * @return Number of bytes fetched by one GETRANGE
+   */
+  private static int getChunkSize(final SolrParams params) {
+    final int chunkSize = ParamUtil.tryGetIntByName(params, "chunkSize", DEFAULT_CHUNK_SIZE);
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+    }
+    return chunkSize;
+  }
+
+  /**
+   * @param key Key of the bitmap
+   * @param start Offset of the first byte
+   * @param chunkSize Number of bytes to fetch
+   * @return GETRANGE command fetching a chunk
+   */
+  private static byte[][] getRange(final byte[] key, final long start, final int chunkSize) {
+    return new byte[][] {SafeEncoder.encode("GETRANGE"), key, SafeEncoder.encode(Long.toString(start)),
+        SafeEncoder.encode(Long.toString(start + chunkSize - 1))};
+  }
+
+  /**
+   * Reads the length of the bitmap followed by its chunks into a single array.
+   */
+  private static final class ChunkReader implements RespConnection.ReplyReader {
+    /**
+     * Number of bytes fetched by one GETRANGE
+     */
+    private final int chunkSize;
+
+    /**
+     * Bytes of the bitmap, sized once the length is known
+     */
+    private byte[] bytes;
+
+    /**
+     * Number of bytes read up to the end of the last chunk
+     */
+    private int read;
+
+    /**
+     * Number of chunks read
+     */
+    private int chunk;
+
+    /**
+     * @param chunkSize Number of bytes fetched by one GETRANGE
+     */
+    ChunkReader(final int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void read(final RespReader reader, final int command) throws IOException {
+      if (bytes == null) {
+        bytes = new byte[(int) reader.readInteger()];
+        return;
+      }
+
+      // A chunk may be shorter if the bitmap shrank, the bytes it misses stay unset
+      final int offset = chunk++ * chunkSize;
+      final int chunkRead = reader.readBulk(bytes, offset);
+      if (chunkRead > 0) {
+        read = offset + chunkRead;
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value split into chunks stored under the keys {@code key:0} to {@code key:n-1}, while {@code key} holds the number
+ * of chunks in decimal form. Each chunk is compressed and serialized on its own, so no single reply occupies Redis for
+ * long and the chunks are decompressed and deserialized concurrently.
+ * <p> Chunks are fetched with MGETs of {@link #CHUNKS_PER_MGET} chunks, all pipelined in a single round trip. Each
+ * chunk is handed to the pool of workers of the parser plugin as soon as it is read, so it is decoded while the next
+ * chunks are still read.
+ *
+ * @author prog
+ */
+public final class ChunkedValue {
+  private static final Logger log = LoggerFactory.getLogger(ChunkedValue.class);
+
+  /**
+   * Local param enabling chunked values
+   */
+  static final String CHUNKED_PARAM = "chunked";
+
+  /**
+   * Number of chunks fetched by a single MGET
+   */
+  static final int CHUNKS_PER_MGET = 4;
+
+  /**
+   * Largest number of chunks a header may announce
+   */
+  static final int MAX_CHUNKS = 1 << 16;
+
+  /**
+   * Seconds an idle worker waits for the next chunk before it terminates
+   */
+  private static final long IDLE_SECONDS = 60;
+
+  private ChunkedValue() {
+    super();
+  }
+
+  /**
+   * Creates the workers decoding chunks. Idle workers terminate, so the pool holds no threads between queries.
+   *
+   * @param threads Number of workers
+   * @return Pool of workers whose idle threads terminate after a minute
+   */
+  public static ExecutorService createWorkers(final int threads) {
+    final ThreadPoolExecutor executor = new ExecutorUtil.MDCAwareThreadPoolExecutor(threads, threads,
+        IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new SolrNamedThreadFactory("redis-chunks"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * @param params Solr local params of the tag
+   * @return Whether the value of the key is split into chunks
+   */
+  static boolean isChunked(final SolrParams params) {
+    return params.getBool(CHUNKED_PARAM, false);
+  }
+
+  /**
+   * Parses the number of chunks held by the key of a chunked value.
+   *
+   * @param header Value of the key
+   * @return Number of chunks
+   * @throws DeserializationException If the header is not a number of chunks
+   */
+  static int parseCount(final byte[] header) throws DeserializationException {
+    final String count = new String(header, StandardCharsets.US_ASCII).trim();
+    try {
+      final int chunks = Integer.parseInt(count);
+      if (chunks >= 0 && chunks <= MAX_CHUNKS) {
+        return chunks;
+      }
+    } catch (final NumberFormatException e) {
+      throw new DeserializationException(String.format("Malformed number of chunks: '%s'", count), e);
+    }
+    throw new DeserializationException(String.format("Number of chunks out of range: %s", count));
+  }
+
+  /**
+   * @param key Key holding the number of chunks
+   * @param count Number of chunks
+   * @return Keys of the chunks in order
+   */
+  static String[] chunkKeys(final String key, final int count) {
+    final String[] keys = new String[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = key + ':' + i;
+    }
+    return keys;
+  }
+
+  /**
+   * Fetches the chunks of a value and merges their terms. Missing chunks and chunks which can't be deserialized are
+   * skipped.
+   *
+   * @param connection Redis connection
+   * @param params Solr local params of the tag
+   * @param valueFilter Decompresses and deserializes each chunk
+   * @param workers Workers decoding the chunks
+   * @param key Key holding the number of chunks
+   * @param count Number of chunks
+   * @return Terms of any of the chunks, null if there are none
+   */
+  static ScoredTerms fetch(final RespConnection connection, final SolrParams params, final ValueFilter valueFilter,
+      final Executor workers, final String key, final int count) {
+    log.debug("Fetching {} chunks of {} from Redis", count, key);
+
+    final String[] keys = chunkKeys(key, count);
+    final List<byte[][]> commands = new ArrayList<>((count + CHUNKS_PER_MGET - 1) / CHUNKS_PER_MGET);
+    for (int start = 0; start < count; start += CHUNKS_PER_MGET) {
+      final int end = Math.min(start + CHUNKS_PER_MGET, count);
+      final String[] args = new String[end - start + 1];
+      args[0] = "MGET";
+      System.arraycopy(keys, start, args, 1, end - start);
+      commands.add(SafeEncoder.encodeMany(args));
+    }
+
+    // Each chunk is handed to the workers as soon as it is read, while the replies of the next MGETs still arrive
+    final List<CompletableFuture<ScoredTerms>> chunks = new ArrayList<>(count);
+    connection.executeAll(commands, (reader, command) -> {
+      final int length = reader.readArrayLength();
+      for (int i = 0; i < length; i++) {
+        final byte[] chunk = reader.readBulk();
+        chunks.add(count == 1 ? CompletableFuture.completedFuture(Get.filterValue(valueFilter, params, chunk))
+            : CompletableFuture.supplyAsync(() -> Get.filterValue(valueFilter, params, chunk), workers));
+      }
+    });
+
+    final List<ScoredTerms> results = new ArrayList<>(chunks.size());
+    for (final CompletableFuture<ScoredTerms> chunk : chunks) {
+      results.add(chunk.join());
+    }
+    return ResultUtil.union(results);
+  }
+}
@@ -1,8 +1,24 @@
 package com.sematext.solr.redis.command;
 
 import org.apache.solr.common.params.SolrParams;
-import java.util.Map;
 
 public interface Command<T> {
-  Map<String, Float> execute(T client, SolrParams params);
+  ScoredTerms execute(T client, SolrParams params);
+
+  /**
+   * Returns the Redis keys accessed by the command, used to route the command in a Redis Cluster.
+   *
+   * @param params Solr local params of the tag
+   * @return Accessed keys. An empty array if the command accesses no key, null if it has to run on every node
+   */
+  default String[] getKeys(final SolrParams params) {
+    return new String[] {ParamUtil.assertGetStringByName(params, "key")};
+  }
+
+  /**
+   * @return Whether the command only reads data and therefore may be sent to a replica
+   */
+  default boolean isReadOnly() {
+    return true;
+  }
 }
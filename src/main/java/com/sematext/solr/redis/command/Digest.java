@@ -0,0 +1,139 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.params.SolrParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.ScriptingCommands;
+import redis.clients.jedis.exceptions.JedisDataException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Digest of the contents of the keys of a tag, computed by a Lua script inside Redis so the contents never cross the
+ * wire. Sets and hashes are sorted first, so the digest only changes when the contents do. For each key the result
+ * holds the SHA1 of its type and contents followed by its cardinality, or its length for strings.
+ * <p> The script is run by its SHA1 and only sent along when Redis doesn't know it yet, which also loads it into the
+ * script cache of Redis.
+ *
+ * @author prog
+ */
+public final class Digest implements Command<ScriptingCommands>, MultiKeyCommand {
+  private static final Logger log = LoggerFactory.getLogger(Digest.class);
+
+  /**
+   * Lua script digesting the contents of each key. Every item is prefixed with its length, so items containing the
+   * separator can't collide.
+   */
+  static final String SCRIPT = ""
+      + "local result = {}\n"
+      + "for _, key in ipairs(KEYS) do\n"
+      + "  local kind = redis.call('TYPE', key)['ok']\n"
+      + "  local items = {}\n"
+      + "  local count = 0\n"
+      + "  if kind == 'set' then\n"
+      + "    items = redis.call('SMEMBERS', key)\n"
+      + "    table.sort(items)\n"
+      + "    count = #items\n"
+      + "  elseif kind == 'zset' then\n"
+      + "    items = redis.call('ZRANGE', key, 0, -1, 'WITHSCORES')\n"
+      + "    count = #items / 2\n"
+      + "  elseif kind == 'list' then\n"
+      + "    items = redis.call('LRANGE', key, 0, -1)\n"
+      + "    count = #items\n"
+      + "  elseif kind == 'hash' then\n"
+      + "    local flat = redis.call('HGETALL', key)\n"
+      + "    local fields = {}\n"
+      + "    local values = {}\n"
+      + "    for i = 1, #flat, 2 do\n"
+      + "      fields[#fields + 1] = flat[i]\n"
+      + "      values[flat[i]] = flat[i + 1]\n"
+      + "    end\n"
+      + "    table.sort(fields)\n"
+      + "    for _, field in ipairs(fields) do\n"
+      + "      items[#items + 1] = field\n"
+      + "      items[#items + 1] = values[field]\n"
+      + "    end\n"
+      + "    count = #fields\n"
+      + "  elseif kind == 'string' then\n"
+      + "    items = {redis.call('GET', key)}\n"
+      + "    count = string.len(items[1])\n"
+      + "  elseif kind ~= 'none' then\n"
+      + "    return redis.error_reply('Cannot digest ' .. kind .. ' key ' .. key)\n"
+      + "  end\n"
+      + "  local parts = {kind}\n"
+      + "  for _, item in ipairs(items) do\n"
+      + "    parts[#parts + 1] = string.len(item) .. ':' .. item\n"
+      + "  end\n"
+      + "  result[#result + 1] = redis.sha1hex(table.concat(parts, '\\n'))\n"
+      + "  result[#result + 1] = tostring(count)\n"
+      + "end\n"
+      + "return result\n";
+
+  /**
+   * SHA1 of the script, which Redis knows the script by
+   */
+  static final String SHA1 = sha1Hex(SCRIPT);
+
+  /**
+   * Error Redis replies with when the script is not loaded
+   */
+  private static final String NO_SCRIPT = "NOSCRIPT";
+
+  @Override
+  public ScoredTerms execute(final ScriptingCommands client, final SolrParams params) {
+    final String[] keys = getKeys(params);
+
+    log.debug("Fetching digest from Redis for keys: {}", (Object) keys);
+
+    Object result;
+    try {
+      result = client.evalsha(SHA1, keys.length, keys);
+    } catch (final JedisDataException e) {
+      if (e.getMessage() == null || !e.getMessage().startsWith(NO_SCRIPT)) {
+        throw e;
+      }
+      log.debug("Loading digest script into Redis");
+      result = client.eval(SCRIPT, keys.length, keys);
+    }
+
+    @SuppressWarnings("unchecked")
+    final List<String> digests = (List<String>) result;
+    return ResultUtil.stringIteratorToTerms(digests);
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    // Digests are kept in key group order, so the same contents always give the same digests
+    final ScoredTerms.Builder merged = new ScoredTerms.Builder();
+    for (final ScoredTerms result : results) {
+      for (int i = 0; result != null && i < result.size(); i++) {
+        merged.add(result.getTerm(i), result.getScore(i));
+      }
+    }
+    return merged.build();
+  }
+
+  /**
+   * @param text Text to hash
+   * @return SHA1 of the UTF-8 bytes of the text in lower case hex digits, as printed by Redis
+   */
+  private static String sha1Hex(final String text) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (final byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+}
@@ -3,14 +3,15 @@ package com.sematext.solr.redis.command;
 import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScriptingCommands;
-import java.util.Map;
 
 public class Eval extends ScriptingCommand {
   private static final Logger log = LoggerFactory.getLogger(Eval.class);
 
   @Override
-  protected Map<String, Float> invokeCommand(final ScriptingCommands client, final SolrParams params,
+  protected ScoredTerms invokeCommand(final ScriptingCommands client, final SolrParams params,
     final int keyLength, final String[] args) {
     final String script = ParamUtil.assertGetStringByName(params, "script");
 
@@ -18,4 +19,14 @@ public class Eval extends ScriptingCommand {
 
     return createReturnValue(params, client.eval(script, keyLength, args));
   }
+
+  @Override
+  protected Response<Object> queueCommand(final Pipeline pipeline, final SolrParams params, final int keyLength,
+    final String[] args) {
+    final String script = ParamUtil.assertGetStringByName(params, "script");
+
+    log.debug("Queueing EVAL for script: {}", script);
+
+    return pipeline.eval(script, keyLength, args);
+  }
 }
@@ -1,29 +1,102 @@
 package com.sematext.solr.redis.command;
 
+import com.sematext.solr.redis.resp.RespConnection;
 import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.BinaryJedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
-public final class Get implements Command<BinaryJedisCommands> {
+public final class Get implements Command<BinaryJedisCommands>, PipelinedCommand, IdSetCommand {
   private static final Logger log = LoggerFactory.getLogger(Get.class);
   private final ValueFilter valueFilter;
 
+  /**
+   * Workers decoding the chunks of chunked values
+   */
+  private final Executor chunkWorkers;
+
+  /**
+   * @param valueFilter Decompresses and deserializes values, the chunks of chunked values on the calling thread
+   */
   public Get(final ValueFilter valueFilter) {
+    this(valueFilter, Runnable::run);
+  }
+
+  /**
+   * @param valueFilter Decompresses and deserializes values
+   * @param chunkWorkers Workers decoding the chunks of chunked values, see {@link ChunkedValue#createWorkers}
+   */
+  public Get(final ValueFilter valueFilter, final Executor chunkWorkers) {
     this.valueFilter = valueFilter;
+    this.chunkWorkers = chunkWorkers;
   }
 
   @Override
-  public Map<String, Float> execute(final BinaryJedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final BinaryJedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final byte[] byteValue = client.get(key.getBytes());
 
-    if (byteValue == null) {
+    log.debug("Fetching GET from Redis for key: {}", key);
+
+    if (ChunkedValue.isChunked(params) && byteValue != null) {
+      try {
+        return ChunkedValue.fetch(new RespConnection(connection(client)), params, valueFilter, chunkWorkers, key,
+            ChunkedValue.parseCount(byteValue));
+      } catch (final DeserializationException e) {
+        log.error(e.getMessage());
+        return null;
+      }
+    }
+    return filterValue(valueFilter, params, byteValue);
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    if (ChunkedValue.isChunked(params)) {
+      // The keys of the chunks are only known once the number of chunks has been read
       return null;
     }
 
-    log.debug("Fetching GET from Redis for key: {}", key);
+    log.debug("Queueing GET for key: {}", key);
+
+    final Response<byte[]> response = pipeline.get(key.getBytes());
+    return () -> filterValue(valueFilter, params, response.get());
+  }
+
+  /**
+   * @param client Redis client
+   * @return Connection the chunks of a chunked value are fetched over
+   */
+  private static Jedis connection(final BinaryJedisCommands client) {
+    if (!(client instanceof Jedis)) {
+      throw new UnsupportedOperationException("Chunked values can't be fetched by " + client.getClass().getName());
+    }
+    return (Jedis) client;
+  }
+
+  /**
+   * Deserializes a value into terms, logging why it can't be deserialized.
+   *
+   * @param valueFilter Deserializes the value
+   * @param params Solr local params of the tag
+   * @param byteValue Value, may be null
+   * @return Terms of the value, null if the key is missing or the value can't be deserialized
+   */
+  static ScoredTerms filterValue(final ValueFilter valueFilter, final SolrParams params, final byte[] byteValue) {
+    if (byteValue == null) {
+      return null;
+    }
 
     try {
       return valueFilter.filterValue(params, byteValue);
@@ -35,4 +108,68 @@ public final class Get implements Command<BinaryJedisCommands> {
       return null;
     }
   }
+
+  @Override
+  public boolean fetchesIds(final SolrParams params) {
+    return ValueFilter.isIdSerialization(params);
+  }
+
+  @Override
+  public IdSet fetchIds(final RespConnection connection, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    if (!ChunkedValue.isChunked(params)) {
+      return fetchIds(connection, params, valueFilter, key);
+    }
+
+    final List<byte[]> header = new ArrayList<>(1);
+    connection.executeAll(Collections.singletonList(SafeEncoder.encodeMany("GET", key)),
+        (reader, command) -> header.add(reader.readBulk()));
+    if (header.get(0) == null) {
+      return IdSet.union(Collections.emptyList());
+    }
+    try {
+      return fetchIds(connection, params, valueFilter,
+          ChunkedValue.chunkKeys(key, ChunkedValue.parseCount(header.get(0))));
+    } catch (final DeserializationException e) {
+      log.error(e.getMessage());
+      return IdSet.union(Collections.emptyList());
+    }
+  }
+
+  /**
+   * Fetches the values of keys with pipelined GETs and deserializes the ids they hold. Each value is read into an
+   * array of its exact length which the ids are read from in place. Values which don't hold ids are skipped.
+   *
+   * @param connection Redis connection
+   * @param params Solr local params of the tag
+   * @param valueFilter Deserializes the values
+   * @param keys Keys of the values
+   * @return Ids of any of the values
+   */
+  static IdSet fetchIds(final RespConnection connection, final SolrParams params, final ValueFilter valueFilter,
+      final String... keys) {
+    log.debug("Fetching ids with GET from Redis for keys: {}", (Object) keys);
+
+    final List<byte[][]> commands = new ArrayList<>(keys.length);
+    for (final String key : keys) {
+      commands.add(SafeEncoder.encodeMany("GET", key));
+    }
+    final List<byte[]> values = new ArrayList<>(keys.length);
+    connection.executeAll(commands, (reader, command) -> values.add(reader.readBulk()));
+
+    final List<IdSet> ids = new ArrayList<>(values.size());
+    for (final byte[] value : values) {
+      if (value == null) {
+        continue;
+      }
+      try {
+        ids.add(valueFilter.filterIds(params, value));
+      } catch (final UnsupportedAlgorithmException e) {
+        log.error(e.getMessage());
+      } catch (final DeserializationException e) {
+        log.error(e.getMessage());
+      }
+    }
+    return IdSet.union(ids);
+  }
 }
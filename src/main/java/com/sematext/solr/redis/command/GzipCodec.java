@@ -0,0 +1,45 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Codec of values compressed with gzip. Values are inflated as a stream, so a JSON array is read while it is inflated.
+ *
+ * @author prog
+ */
+final class GzipCodec implements ValueCodec {
+  /**
+   * Size of the buffer of the inflater, large enough to inflate values of megabytes in few reads
+   */
+  private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Buffer of each thread holding inflated values
+   */
+  private final ThreadBuffer buffer;
+
+  /**
+   * @param maxDecompressedBytes Largest inflated value
+   */
+  GzipCodec(final int maxDecompressedBytes) {
+    buffer = new ThreadBuffer(maxDecompressedBytes);
+  }
+
+  @Override
+  public BytesRef decompress(final byte[] compressed) throws IOException {
+    try (final InputStream stream = open(compressed)) {
+      // Compressed text usually shrinks to less than a fourth
+      return buffer.readFully(stream, compressed.length * 4L);
+    }
+  }
+
+  @Override
+  public InputStream open(final byte[] compressed) throws IOException {
+    return new GZIPInputStream(new ByteArrayInputStream(compressed), INFLATER_BUFFER_SIZE);
+  }
+}
@@ -4,19 +4,32 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import java.util.Collections;
-import java.util.Map;
+import java.util.function.Supplier;
 
-public final class HGet implements Command<JedisCommands> {
+public final class HGet implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(HGet.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final String field = ParamUtil.assertGetStringByName(params, "field");
 
     log.debug("Fetching HGET from Redis for key: {} ({})", key, field);
 
-    return ResultUtil.stringIteratorToMap(Collections.singletonList(client.hget(key, field)));
+    return ResultUtil.stringIteratorToTerms(Collections.singletonList(client.hget(key, field)));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final String field = ParamUtil.assertGetStringByName(params, "field");
+
+    log.debug("Queueing HGET for key: {} ({})", key, field);
+
+    final Response<String> response = pipeline.hget(key, field);
+    return () -> ResultUtil.stringIteratorToTerms(Collections.singletonList(response.get()));
   }
 }
@@ -4,17 +4,36 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class HKeys implements Command<JedisCommands> {
+public final class HKeys implements Command<JedisCommands>, PipelinedCommand, RespCommand {
   private static final Logger log = LoggerFactory.getLogger(HKeys.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
 
     log.debug("Fetching HKEYS from Redis for key: {}", key);
 
-    return ResultUtil.stringIteratorToMap(client.hkeys(key));
+    return ResultUtil.stringIteratorToTerms(client.hkeys(key));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    log.debug("Queueing HKEYS for key: {}", key);
+
+    final Response<Set<String>> response = pipeline.hkeys(key);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany("HKEYS", ParamUtil.assertGetStringByName(params, "key"));
   }
 }
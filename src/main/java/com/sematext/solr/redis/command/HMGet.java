@@ -4,18 +4,40 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.function.Supplier;
 
-public final class HMGet implements Command<JedisCommands> {
+public final class HMGet implements Command<JedisCommands>, PipelinedCommand, RespCommand {
   private static final Logger log = LoggerFactory.getLogger(HMGet.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final String[] fields = ParamUtil.getStringByPrefix(params, "field");
 
     log.debug("Fetching HMGET from Redis for key: {} ({})", key, fields);
 
-    return ResultUtil.stringIteratorToMap(client.hmget(key, fields));
+    return ResultUtil.stringIteratorToTerms(client.hmget(key, fields));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final String[] fields = ParamUtil.getStringByPrefix(params, "field");
+
+    log.debug("Queueing HMGET for key: {} ({})", key, fields);
+
+    final Response<List<String>> response = pipeline.hmget(key, fields);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final String[] fields = ParamUtil.getStringByPrefix(params, "field");
+    return SafeEncoder.encodeMany(ParamUtil.prepend("HMGET", ParamUtil.prepend(key, fields)));
   }
 }
@@ -0,0 +1,53 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.Accountable;
+import java.util.List;
+
+/**
+ * Set of numeric ids fetched from Redis in a compact form, e.g. a bitmap. Ids are only ever handled as primitive longs,
+ * so a set of millions of ids can filter a numeric field without a String or a BytesRef per id. The memory held by
+ * the set is reported, so caches weigh it like fetched terms.
+ *
+ * @author prog
+ */
+public interface IdSet extends Accountable {
+  /**
+   * @param id Id
+   * @return Whether the id is in the set
+   */
+  boolean contains(long id);
+
+  /**
+   * @param from First id to look at
+   * @return Smallest id of the set not smaller than the given one, -1 if there is none
+   */
+  long nextId(long from);
+
+  /**
+   * @return Number of ids
+   */
+  long size();
+
+  /**
+   * Turns the ids into terms, for fields which don't hold the ids as numbers.
+   *
+   * @return Ids in ascending order, in decimal form
+   */
+  default ScoredTerms toTerms() {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder((int) Math.min(size(), Integer.MAX_VALUE));
+    final StringBuilder decimal = new StringBuilder(20);
+    for (long id = nextId(0); id >= 0; id = nextId(id + 1)) {
+      decimal.setLength(0);
+      builder.add(decimal.append(id));
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param sets Sets to merge
+   * @return Set of the ids of any of the given sets
+   */
+  static IdSet union(final List<IdSet> sets) {
+    return sets.size() == 1 ? sets.get(0) : new IdSetUnion(sets);
+  }
+}
@@ -0,0 +1,36 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * Command which can fetch numeric ids in a compact form, e.g. a bitmap, instead of terms. Such ids can filter a numeric
+ * field through its points or docValues without ever being turned into terms.
+ *
+ * @author prog
+ */
+public interface IdSetCommand {
+  /**
+   * @param params Solr local params of the tag
+   * @return Whether the command fetches ids with the given params
+   */
+  boolean fetchesIds(SolrParams params);
+
+  /**
+   * Checks the params before a connection is borrowed to fetch the ids, so invalid params never hold a connection.
+   *
+   * @param params Solr local params of the tag
+   * @throws IllegalArgumentException If the params are invalid
+   */
+  default void checkParams(final SolrParams params) {
+  }
+
+  /**
+   * Fetches the ids.
+   *
+   * @param connection Redis connection
+   * @param params Solr local params of the tag
+   * @return Fetched ids, empty if the key does not exist
+   */
+  IdSet fetchIds(RespConnection connection, SolrParams params);
+}
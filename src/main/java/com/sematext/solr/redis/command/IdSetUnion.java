@@ -0,0 +1,97 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ids of any of several sets, e.g. of several keys fetched by MGET. The sets are not merged, each lookup asks all of
+ * them.
+ *
+ * @author prog
+ */
+final class IdSetUnion implements IdSet {
+  /**
+   * Memory of a union without its sets
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IdSetUnion.class);
+
+  /**
+   * Merged sets
+   */
+  private final IdSet[] sets;
+
+  /**
+   * Number of distinct ids
+   */
+  private final long size;
+
+  /**
+   * @param sets Merged sets
+   */
+  IdSetUnion(final List<IdSet> sets) {
+    this.sets = sets.toArray(new IdSet[0]);
+
+    long count = 0;
+    for (long id = nextId(0); id >= 0; id = nextId(id + 1)) {
+      count++;
+    }
+    this.size = count;
+  }
+
+  @Override
+  public boolean contains(final long id) {
+    for (final IdSet set : sets) {
+      if (set.contains(id)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public long nextId(final long from) {
+    long next = -1;
+    for (final IdSet set : sets) {
+      final long id = set.nextId(from);
+      if (id >= 0 && (next < 0 || id < next)) {
+        next = id;
+      }
+    }
+    return next;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long bytes = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(sets);
+    for (final IdSet set : sets) {
+      bytes += set.ramBytesUsed();
+    }
+    return bytes;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (final IdSet set : sets) {
+      hash = 31 * hash + set.hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof IdSetUnion)) {
+      return false;
+    }
+    return Arrays.equals(sets, ((IdSetUnion) obj).sets);
+  }
+}
@@ -4,17 +4,48 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.MultiKeyCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class Keys implements Command<MultiKeyCommands> {
+public final class Keys implements Command<MultiKeyCommands>, PipelinedCommand, RespCommand, MultiKeyCommand {
   private static final Logger log = LoggerFactory.getLogger(Keys.class);
 
   @Override
-  public Map<String, Float> execute(final MultiKeyCommands client, final SolrParams params) {
+  public ScoredTerms execute(final MultiKeyCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
 
     log.debug("Fetching KEYS from Redis for key: {}", key);
 
-    return ResultUtil.stringIteratorToMap(client.keys(key));
+    return ResultUtil.stringIteratorToTerms(client.keys(key));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    log.debug("Queueing KEYS for key: {}", key);
+
+    final Response<Set<String>> response = pipeline.keys(key);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    // The key param holds a pattern matched against the whole keyspace of every node
+    return null;
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.union(results);
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany("KEYS", ParamUtil.assertGetStringByName(params, "key"));
   }
 }
@@ -4,19 +4,32 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import java.util.Collections;
-import java.util.Map;
+import java.util.function.Supplier;
 
-public final class LIndex implements Command<JedisCommands> {
+public final class LIndex implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(LIndex.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final int index = ParamUtil.tryGetIntByName(params, "index", 0);
 
     log.debug("Fetching LINDEX from Redis for key: {} ({})", key, index);
 
-    return ResultUtil.stringIteratorToMap(Collections.singletonList(client.lindex(key, index)));
+    return ResultUtil.stringIteratorToTerms(Collections.singletonList(client.lindex(key, index)));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final int index = ParamUtil.tryGetIntByName(params, "index", 0);
+
+    log.debug("Queueing LINDEX for key: {} ({})", key, index);
+
+    final Response<String> response = pipeline.lindex(key, index);
+    return () -> ResultUtil.stringIteratorToTerms(Collections.singletonList(response.get()));
   }
 }
@@ -4,25 +4,39 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import java.util.List;
+import java.util.function.Supplier;
 
-public final class LRange implements Command<JedisCommands> {
+public final class LRange implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(LRange.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final int min = ParamUtil.tryGetIntByName(params, "min", 0);
     final int max = ParamUtil.tryGetIntByName(params, "max", -1);
 
     log.debug("Fetching LRANGE from Redis for key: {} ({}, {})", key, min, max);
 
-    // Use decrementing Scorer to preserve list ordering
-    return ResultUtil.stringIteratorToMap(client.lrange(key, min, max), 0F, new ResultUtil.Scorer() {
-      @Override
-      public Float score(final Float score) {
-        return score - 1F;
-      }
-    });
+    return toTerms(client.lrange(key, min, max));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final int min = ParamUtil.tryGetIntByName(params, "min", 0);
+    final int max = ParamUtil.tryGetIntByName(params, "max", -1);
+
+    log.debug("Queueing LRANGE for key: {} ({}, {})", key, min, max);
+
+    final Response<List<String>> response = pipeline.lrange(key, min, max);
+    return () -> toTerms(response.get());
+  }
+
+  private static ScoredTerms toTerms(final List<String> list) {
+    // The position in the list is the rank of a term
+    return ResultUtil.stringIteratorToOrderedTerms(list);
   }
 }
@@ -0,0 +1,104 @@
+package com.sematext.solr.redis.command;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Codec of values in the LZ4 frame format, as written by the {@code lz4} command line tool and the frame APIs of the
+ * LZ4 libraries. Frames are decoded by lz4-java, which verifies their checksums and skips skippable frames. Values
+ * are decoded into a buffer of the content size stored in the frame, if any and if it is plausible for the size of
+ * the value. lz4-java only decodes independent blocks, the default of the {@code lz4} tool, so frames of linked
+ * blocks are rejected.
+ *
+ * @author prog
+ */
+final class Lz4Codec implements ValueCodec {
+  /**
+   * Magic number starting a frame
+   */
+  private static final int MAGIC = 0x184D2204;
+
+  /**
+   * Flag of the frame descriptor telling blocks are independent
+   */
+  private static final int BLOCK_INDEPENDENCE = 0x20;
+
+  /**
+   * Buffer of each thread holding decompressed values
+   */
+  private final ThreadBuffer buffer;
+
+  /**
+   * @param maxDecompressedBytes Largest decompressed value
+   */
+  Lz4Codec(final int maxDecompressedBytes) {
+    buffer = new ThreadBuffer(maxDecompressedBytes);
+  }
+
+  @Override
+  public BytesRef decompress(final byte[] compressed) throws IOException {
+    try (final LZ4FrameInputStream stream = frame(compressed)) {
+      if (stream.isExpectedContentSizeDefined()) {
+        buffer.checkSize(stream.getExpectedContentSize());
+        return buffer.readFully(new Lz4Stream(stream),
+            buffer.trustedSize(stream.getExpectedContentSize(), compressed.length));
+      }
+      // Without a content size, compressed text usually shrinks to less than a third
+      return buffer.readFully(new Lz4Stream(stream), compressed.length * 3L);
+    }
+  }
+
+  @Override
+  public InputStream open(final byte[] compressed) throws IOException {
+    return new Lz4Stream(frame(compressed));
+  }
+
+  /**
+   * @param compressed Compressed value
+   * @return Stream of the frames of the value, past the header of the first frame
+   * @throws IOException If the value doesn't start with a frame of independent blocks
+   */
+  private static LZ4FrameInputStream frame(final byte[] compressed) throws IOException {
+    if (compressed.length > 4 && (compressed[0] & 0xFF | (compressed[1] & 0xFF) << 8 | (compressed[2] & 0xFF) << 16
+        | (compressed[3] & 0xFF) << 24) == MAGIC && (compressed[4] & BLOCK_INDEPENDENCE) == 0) {
+      throw new IOException("Linked LZ4 blocks are not supported");
+    }
+    return new LZ4FrameInputStream(new ByteArrayInputStream(compressed));
+  }
+
+  /**
+   * Stream reporting malformed blocks as {@link IOException}, like any other malformed data
+   */
+  private static final class Lz4Stream extends FilterInputStream {
+    /**
+     * @param frames Stream of the frames of a value
+     */
+    private Lz4Stream(final LZ4FrameInputStream frames) {
+      super(frames);
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (final LZ4Exception e) {
+        throw new IOException("Malformed LZ4 block: " + e.getMessage(), e);
+      }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (final LZ4Exception e) {
+        throw new IOException("Malformed LZ4 block: " + e.getMessage(), e);
+      }
+    }
+  }
+}
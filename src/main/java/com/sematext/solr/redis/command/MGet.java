@@ -1,20 +1,107 @@
 package com.sematext.solr.redis.command;
 
+import com.sematext.solr.redis.resp.RespConnection;
 import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.MultiKeyBinaryCommands;
 import redis.clients.jedis.MultiKeyCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
-public final class MGet implements Command<MultiKeyCommands> {
+public final class MGet implements Command<MultiKeyCommands>, PipelinedCommand, RespCommand, MultiKeyCommand,
+    IdSetCommand {
   private static final Logger log = LoggerFactory.getLogger(MGet.class);
+  private final ValueFilter valueFilter;
+
+  public MGet(final ValueFilter valueFilter) {
+    this.valueFilter = valueFilter;
+  }
 
   @Override
-  public Map<String, Float> execute(final MultiKeyCommands client, final SolrParams params) {
+  public ScoredTerms execute(final MultiKeyCommands client, final SolrParams params) {
     final String[] keys = ParamUtil.getStringByPrefix(params, "key");
 
     log.debug("Fetching MGET from Redis for key: {}", keys);
 
-    return ResultUtil.stringIteratorToMap(client.mget(keys));
+    if (ValueFilter.isFiltered(params)) {
+      return filterValues(params, binaryClient(client).mget(SafeEncoder.encodeMany(keys)));
+    }
+    return ResultUtil.stringIteratorToTerms(client.mget(keys));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    log.debug("Queueing MGET for key: {}", keys);
+
+    if (ValueFilter.isFiltered(params)) {
+      final Response<List<byte[]>> response = pipeline.mget(SafeEncoder.encodeMany(keys));
+      return () -> filterValues(params, response.get());
+    }
+    final Response<List<String>> response = pipeline.mget(keys);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  /**
+   * @param client Redis client
+   * @return Client fetching values as they are stored
+   */
+  private static MultiKeyBinaryCommands binaryClient(final Object client) {
+    if (!(client instanceof MultiKeyBinaryCommands)) {
+      throw new UnsupportedOperationException("Values can't be fetched as they are stored with MGET by "
+          + client.getClass().getName());
+    }
+    return (MultiKeyBinaryCommands) client;
+  }
+
+  /**
+   * Deserializes each value and merges their terms. Missing keys and values which can't be deserialized are skipped.
+   *
+   * @param params Solr local params of the tag
+   * @param values Values of the keys, null for missing keys
+   * @return Terms of any of the values
+   */
+  private ScoredTerms filterValues(final SolrParams params, final List<byte[]> values) {
+    final List<ScoredTerms> results = new ArrayList<>(values.size());
+    for (final byte[] value : values) {
+      results.add(Get.filterValue(valueFilter, params, value));
+    }
+    return ResultUtil.union(results);
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.union(results);
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany(ParamUtil.prepend("MGET", ParamUtil.getStringByPrefix(params, "key")));
+  }
+
+  @Override
+  public boolean isRespDecodable(final SolrParams params) {
+    return !ValueFilter.isFiltered(params);
+  }
+
+  @Override
+  public boolean fetchesIds(final SolrParams params) {
+    return ValueFilter.isIdSerialization(params);
+  }
+
+  @Override
+  public IdSet fetchIds(final RespConnection connection, final SolrParams params) {
+    return Get.fetchIds(connection, params, valueFilter, ParamUtil.getStringByPrefix(params, "key"));
   }
 }
@@ -0,0 +1,213 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.params.SolrParams;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Asks Redis which of the given members belong to the object a redis clause would fetch, without fetching the object.
+ * <p> Sets are asked with SMISMEMBER, hashes with HMGET and sorted sets with ZMSCORE, whose scores are compared with
+ * the score range of the clause. The members are split into commands of at most {@link #MAX_MEMBERS_PER_COMMAND}
+ * members which are pipelined in a single round trip. SMISMEMBER and ZMSCORE need Redis 6.2 or later.
+ *
+ * @author prog
+ */
+public final class MembershipCheck {
+  /**
+   * Maximal number of members sent in a single command
+   */
+  static final int MAX_MEMBERS_PER_COMMAND = 1000;
+
+  /**
+   * Name of the command checking the members
+   */
+  private final String command;
+
+  /**
+   * Redis key of the object
+   */
+  private final String key;
+
+  /**
+   * Lower score bound as passed to the clause, null if scores are not checked
+   */
+  private final String min;
+
+  /**
+   * Upper score bound as passed to the clause, null if scores are not checked
+   */
+  private final String max;
+
+  /**
+   * Value of the lower score bound
+   */
+  private final double lower;
+
+  /**
+   * Value of the upper score bound
+   */
+  private final double upper;
+
+  /**
+   * @param command Name of the command checking the members
+   * @param key Redis key of the object
+   * @param min Lower score bound, null if scores are not checked
+   * @param max Upper score bound, null if scores are not checked
+   */
+  MembershipCheck(final String command, final String key, final String min, final String max) {
+    this.command = command;
+    this.key = key;
+    this.min = min;
+    this.max = max;
+    // Wrong bounds fail before anything is sent
+    this.lower = min == null ? Double.NEGATIVE_INFINITY : parseBound(min);
+    this.upper = max == null ? Double.POSITIVE_INFINITY : parseBound(max);
+  }
+
+  /**
+   * Creates the membership check of a redis clause.
+   *
+   * @param redisCommand Command of the clause
+   * @param params Solr local params of the clause
+   * @return Membership check
+   * @throws IllegalArgumentException If the membership of the results of the command can't be checked
+   */
+  public static MembershipCheck forCommand(final String redisCommand, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    switch (redisCommand.toUpperCase(Locale.ROOT)) {
+      case "SMEMBERS":
+        return new MembershipCheck("SMISMEMBER", key, null, null);
+      case "HKEYS":
+        return new MembershipCheck("HMGET", key, null, null);
+      case "ZRANGE":
+      case "ZREVRANGE":
+        if (ParamUtil.tryGetIntByName(params, "range_start", 0) != 0
+            || ParamUtil.tryGetIntByName(params, "range_end", -1) != -1) {
+          throw new IllegalArgumentException(String.format(Locale.ROOT,
+              "Membership in a range of ranks of %s can't be checked", redisCommand));
+        }
+        return new MembershipCheck("ZMSCORE", key, null, null);
+      case "ZRANGEBYSCORE":
+      case "ZREVRANGEBYSCORE":
+        return new MembershipCheck("ZMSCORE", key, ParamUtil.tryGetStringByName(params, "min", "-inf"),
+            ParamUtil.tryGetStringByName(params, "max", "+inf"));
+      default:
+        throw new IllegalArgumentException(String.format(Locale.ROOT,
+            "Membership in results of %s can't be checked", redisCommand));
+    }
+  }
+
+  /**
+   * @return Redis key of the object
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Checks the members over a connection.
+   *
+   * @param connection Redis connection
+   * @param members Members to check
+   * @return Whether each member belongs to the object, in the same order as the members
+   */
+  public boolean[] execute(final RespConnection connection, final BytesRefSlab members) {
+    final byte[] commandBytes = command.getBytes(StandardCharsets.UTF_8);
+    final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    final List<byte[][]> commands = new ArrayList<>(members.size() / MAX_MEMBERS_PER_COMMAND + 1);
+    final BytesRef member = new BytesRef();
+
+    for (int from = 0; from < members.size(); from += MAX_MEMBERS_PER_COMMAND) {
+      final int to = Math.min(from + MAX_MEMBERS_PER_COMMAND, members.size());
+      final byte[][] args = new byte[to - from + 2][];
+      args[0] = commandBytes;
+      args[1] = keyBytes;
+      for (int i = from; i < to; i++) {
+        members.get(i, member);
+        args[i - from + 2] = Arrays.copyOfRange(member.bytes, member.offset, member.offset + member.length);
+      }
+      commands.add(args);
+    }
+
+    final boolean[] flags = new boolean[members.size()];
+    if (min == null) {
+      connection.executeAll(commands, (reader, index) -> reader.readFlags(flags, index * MAX_MEMBERS_PER_COMMAND));
+    } else {
+      final double[] scores = new double[members.size()];
+      connection.executeAll(commands, (reader, index) -> reader.readScores(scores, index * MAX_MEMBERS_PER_COMMAND));
+      for (int i = 0; i < scores.length; i++) {
+        flags[i] = isInRange(scores[i]);
+      }
+    }
+
+    return flags;
+  }
+
+  /**
+   * @param score Score of a member, NaN if it is not a member
+   * @return Whether the score is in the score range of the clause
+   */
+  boolean isInRange(final double score) {
+    if (Double.isNaN(score)) {
+      return false;
+    }
+    if (min == null) {
+      return true;
+    }
+    return (min.startsWith("(") ? score > lower : score >= lower) && (max.startsWith("(") ? score < upper
+        : score <= upper);
+  }
+
+  /**
+   * @param bound Score bound in the form of ZRANGEBYSCORE, e.g. 5, (5 or -inf
+   * @return Value of the bound
+   */
+  private static double parseBound(final String bound) {
+    final String value = bound.startsWith("(") ? bound.substring(1) : bound;
+    switch (value.toLowerCase(Locale.ROOT)) {
+      case "inf":
+      case "+inf":
+        return Double.POSITIVE_INFINITY;
+      case "-inf":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        try {
+          return Double.parseDouble(value);
+        } catch (final NumberFormatException ex) {
+          throw new IllegalArgumentException(String.format(Locale.ROOT, "Wrong score bound '%s'.", bound), ex);
+        }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return min == null ? command + " " + key : command + " " + key + " [" + min + ", " + max + "]";
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(command, key, min, max);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof MembershipCheck)) {
+      return false;
+    }
+
+    final MembershipCheck other = (MembershipCheck) obj;
+    return command.equals(other.command) && key.equals(other.key) && Objects.equals(min, other.min)
+        && Objects.equals(max, other.max);
+  }
+}
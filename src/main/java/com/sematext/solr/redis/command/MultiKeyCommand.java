@@ -0,0 +1,35 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.params.SolrParams;
+import java.util.List;
+
+/**
+ * Command accessing several keys. In a Redis Cluster the keys may live in different hash slots. The command is then
+ * split into partial commands, one for each group of keys sharing a slot, and the partial results are merged.
+ */
+public interface MultiKeyCommand {
+  /**
+   * @param group Index of the key group. The group holding the first key has index 0
+   * @return Command to execute for the key group
+   */
+  default Command<?> getPartialCommand(final int group) {
+    return (Command<?>) this;
+  }
+
+  /**
+   * @param params Solr local params of the tag
+   * @param keys Keys of the group
+   * @return Params of the partial command accessing only the given keys
+   */
+  default SolrParams getPartialParams(final SolrParams params, final String[] keys) {
+    return ParamUtil.replaceStringsByPrefix(params, "key", keys);
+  }
+
+  /**
+   * Merges the partial results.
+   *
+   * @param results Results of the partial commands in key group order. A single result may be null
+   * @return Merged result
+   */
+  ScoredTerms merge(List<ScoredTerms> results);
+}
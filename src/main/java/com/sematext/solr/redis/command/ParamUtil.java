@@ -1,5 +1,6 @@
 package com.sematext.solr.redis.command;
 
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -83,6 +84,31 @@ final class ParamUtil {
     return keyList.toArray(new String[keyList.size()]);
   }
 
+  static SolrParams replaceStringsByPrefix(final SolrParams params, final String prefix, final String[] values) {
+    final ModifiableSolrParams replaced = new ModifiableSolrParams();
+    final Iterator<String> it = params.getParameterNamesIterator();
+
+    while (it != null && it.hasNext()) {
+      final String paramKey = it.next();
+      if (!paramKey.startsWith(prefix)) {
+        replaced.set(paramKey, params.getParams(paramKey));
+      }
+    }
+
+    for (int i = 0; i < values.length; i++) {
+      replaced.set(i == 0 ? prefix : prefix + i, values[i]);
+    }
+
+    return replaced;
+  }
+
+  static String[] prepend(final String first, final String... rest) {
+    final String[] joined = new String[rest.length + 1];
+    joined[0] = first;
+    System.arraycopy(rest, 0, joined, 1, rest.length);
+    return joined;
+  }
+
   private static boolean isEmpty(final String value) {
     return value == null || "".equals(value);
   }
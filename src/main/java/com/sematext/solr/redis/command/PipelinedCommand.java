@@ -0,0 +1,20 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.params.SolrParams;
+import redis.clients.jedis.Pipeline;
+import java.util.function.Supplier;
+
+/**
+ * Command which can be queued on a Redis pipeline together with other commands.
+ */
+public interface PipelinedCommand {
+  /**
+   * Queues the command on the pipeline
+   *
+   * @param pipeline Pipeline to queue the command on
+   * @param params Solr local params of the tag
+   * @return Supplier of the result. It may only be called once the pipeline has been synced. Null if the command
+   * can't be pipelined with these params, it is then executed on its own after the pipeline
+   */
+  Supplier<ScoredTerms> queue(Pipeline pipeline, SolrParams params);
+}
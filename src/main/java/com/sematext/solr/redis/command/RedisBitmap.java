@@ -0,0 +1,122 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import java.util.Arrays;
+
+/**
+ * Ids stored in a Redis bitmap, e.g. with SETBIT: id n is set if bit n of the string is set, bit 0 being the most
+ * significant bit of the first byte.
+ * <p> The raw bytes of the bitmap are kept as fetched, so a dense set of ids costs one bit per id and testing an id
+ * is a single array access.
+ *
+ * @author prog
+ */
+public final class RedisBitmap implements IdSet {
+  /**
+   * Memory of a bitmap without its bytes
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RedisBitmap.class);
+
+  /**
+   * Bytes of the bitmap
+   */
+  private final byte[] bytes;
+
+  /**
+   * Number of valid bytes
+   */
+  private final int length;
+
+  /**
+   * Number of set ids
+   */
+  private final long cardinality;
+
+  /**
+   * Number of bytes up to the last one holding a set id
+   */
+  private final int usedLength;
+
+  /**
+   * @param bytes Bytes of the bitmap
+   * @param length Number of valid bytes
+   */
+  public RedisBitmap(final byte[] bytes, final int length) {
+    this.bytes = bytes;
+    this.length = length;
+
+    long count = 0;
+    int used = 0;
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] != 0) {
+        count += Integer.bitCount(bytes[i] & 0xFF);
+        used = i + 1;
+      }
+    }
+    this.cardinality = count;
+    this.usedLength = used;
+  }
+
+  @Override
+  public boolean contains(final long id) {
+    return id >= 0 && id < bitLength() && (bytes[(int) (id >>> 3)] & (0x80 >>> (id & 7))) != 0;
+  }
+
+  @Override
+  public long nextId(final long from) {
+    final long start = Math.max(from, 0);
+    if (start >= bitLength()) {
+      return -1;
+    }
+
+    int index = (int) (start >>> 3);
+    int bits = bytes[index] & (0xFF >>> (start & 7));
+    while (bits == 0) {
+      if (++index == length) {
+        return -1;
+      }
+      bits = bytes[index] & 0xFF;
+    }
+    return ((long) index << 3) + Integer.numberOfLeadingZeros(bits) - (Integer.SIZE - Byte.SIZE);
+  }
+
+  @Override
+  public long size() {
+    return cardinality;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytes);
+  }
+
+  /**
+   * @return Number of ids the bitmap covers, one more than the largest id it can hold
+   */
+  public long bitLength() {
+    return (long) length << 3;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (int i = 0; i < usedLength; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof RedisBitmap)) {
+      return false;
+    }
+    // Trailing unset bytes don't change the set ids
+    final RedisBitmap other = (RedisBitmap) obj;
+    return cardinality == other.cardinality
+        && Arrays.equals(bytes, 0, usedLength, other.bytes, 0, other.usedLength);
+  }
+}
@@ -0,0 +1,25 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.params.SolrParams;
+
+/**
+ * Command whose reply only holds members, so it can be decoded straight into a
+ * {@link com.sematext.solr.redis.resp.BytesRefSlab} instead of going through Jedis.
+ */
+public interface RespCommand {
+  /**
+   * Builds the command as sent over the wire
+   *
+   * @param params Solr local params of the tag
+   * @return Command name followed by its arguments
+   */
+  byte[][] getRespArgs(SolrParams params);
+
+  /**
+   * @param params Solr local params of the tag
+   * @return Whether the members of the reply are the terms, false if they still need to be deserialized
+   */
+  default boolean isRespDecodable(final SolrParams params) {
+    return true;
+  }
+}
@@ -1,47 +1,137 @@
 package com.sematext.solr.redis.command;
 
+import org.apache.lucene.util.BytesRef;
 import redis.clients.jedis.Tuple;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 final class ResultUtil {
   private ResultUtil() {
     super();
   }
 
-  static Map<String, Float> stringIteratorToMap(final Iterable<String> collection) {
-    return stringIteratorToMap(collection, Float.NaN, new Scorer() {
-      @Override
-      public Float score(final Float v) {
-        return v;
-      }
-    });
+  static ScoredTerms stringIteratorToTerms(final Iterable<String> collection) {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder(expectedSize(collection));
+
+    for (final String entry : collection) {
+      builder.add(entry);
+    }
+
+    return builder.build();
   }
 
-  static Map<String, Float> stringIteratorToMap(final Iterable<String> collection, final Float value,
-    final Scorer scorer) {
-    final Map<String, Float> map = new HashMap<>();
-    Float score = value;
+  static ScoredTerms stringIteratorToOrderedTerms(final Iterable<String> collection) {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder(expectedSize(collection)).ordered(true);
 
     for (final String entry : collection) {
-      score = scorer.score(score);
-      map.put(entry, score);
+      builder.add(entry);
     }
 
-    return map;
+    return builder.build();
   }
 
-  static Map<String, Float> tupleIteratorToMap(final Iterable<Tuple> set) {
-    final Map<String, Float> map = new HashMap<>();
+  static ScoredTerms tupleIteratorToTerms(final Iterable<Tuple> set) {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder(expectedSize(set)).ordered(true);
 
     for (final Tuple tuple : set) {
-      map.put(tuple.getElement(), (float) tuple.getScore());
+      builder.add(tuple.getElement(), (float) tuple.getScore());
+    }
+
+    return builder.build();
+  }
+
+  static ScoredTerms union(final List<ScoredTerms> results) {
+    ScoredTerms.Builder union = null;
+    final Set<BytesRef> seen = new HashSet<>();
+
+    for (final ScoredTerms result : results) {
+      if (result != null) {
+        if (union == null) {
+          union = new ScoredTerms.Builder(result.size());
+        }
+        for (int i = 0; i < result.size(); i++) {
+          final BytesRef term = result.getTerm(i);
+          if (seen.add(term)) {
+            union.add(term, result.getScore(i));
+          }
+        }
+      }
+    }
+
+    return union == null ? null : union.build();
+  }
+
+  static ScoredTerms intersection(final List<ScoredTerms> results) {
+    final ScoredTerms first = results.get(0);
+    final ScoredTerms.Builder intersection = new ScoredTerms.Builder(first == null ? 0 : first.size());
+    if (first == null) {
+      return intersection.build();
+    }
+
+    final List<Set<BytesRef>> others = new ArrayList<>();
+    for (final ScoredTerms result : results.subList(1, results.size())) {
+      if (result == null) {
+        return intersection.build();
+      }
+      others.add(toSet(result));
+    }
+
+    final Set<BytesRef> seen = new HashSet<>();
+    for (int i = 0; i < first.size(); i++) {
+      final BytesRef term = first.getTerm(i);
+      if (seen.add(term) && containedInAll(others, term)) {
+        intersection.add(term, first.getScore(i));
+      }
+    }
+
+    return intersection.build();
+  }
+
+  static ScoredTerms difference(final List<ScoredTerms> results) {
+    final ScoredTerms first = results.get(0);
+    final ScoredTerms.Builder difference = new ScoredTerms.Builder(first == null ? 0 : first.size());
+    if (first == null) {
+      return difference.build();
     }
 
-    return map;
+    final Set<BytesRef> removed = new HashSet<>();
+    for (final ScoredTerms result : results.subList(1, results.size())) {
+      if (result != null) {
+        removed.addAll(toSet(result));
+      }
+    }
+
+    for (int i = 0; i < first.size(); i++) {
+      final BytesRef term = first.getTerm(i);
+      if (removed.add(term)) {
+        difference.add(term, first.getScore(i));
+      }
+    }
+
+    return difference.build();
+  }
+
+  private static Set<BytesRef> toSet(final ScoredTerms result) {
+    final Set<BytesRef> set = new HashSet<>();
+    for (int i = 0; i < result.size(); i++) {
+      set.add(result.getTerm(i));
+    }
+    return set;
+  }
+
+  private static boolean containedInAll(final List<Set<BytesRef>> sets, final BytesRef term) {
+    for (final Set<BytesRef> set : sets) {
+      if (!set.contains(term)) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  interface Scorer {
-    Float score(final Float v);
+  private static int expectedSize(final Iterable<?> iterable) {
+    return iterable instanceof Collection ? ((Collection<?>) iterable).size() : 16;
   }
 }
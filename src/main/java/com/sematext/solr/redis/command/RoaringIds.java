@@ -0,0 +1,403 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import java.util.Arrays;
+
+/**
+ * Ids of a Roaring bitmap in the portable serialization format shared by the Java, C and Go Roaring libraries.
+ * <p> The bitmap is checked once when it is wrapped: container keys must be strictly ascending, array and run
+ * containers sorted and every cardinality must match the contents, since lookups binary search the containers.
+ * Containers are then read in place from the serialized bytes on every lookup, like an immutable Roaring bitmap
+ * mapped over a buffer, so the bitmap is never copied nor expanded. Ids are unsigned 32 bit integers.
+ *
+ * @author prog
+ */
+public final class RoaringIds implements IdSet {
+  /**
+   * Cookie of bitmaps without run containers
+   */
+  static final int SERIAL_COOKIE_NO_RUNCONTAINER = 12346;
+
+  /**
+   * Cookie of bitmaps with run containers, the number of containers minus one is in the upper 16 bits
+   */
+  static final int SERIAL_COOKIE = 12347;
+
+  /**
+   * Bitmaps with run containers and fewer containers than this have no offset header
+   */
+  private static final int NO_OFFSET_THRESHOLD = 4;
+
+  /**
+   * Largest cardinality of an array container
+   */
+  private static final int ARRAY_MAX_CARDINALITY = 4096;
+
+  /**
+   * Size of a bitmap container
+   */
+  private static final int BITMAP_CONTAINER_BYTES = 8192;
+
+  /**
+   * Largest id
+   */
+  private static final long MAX_ID = 0xFFFFFFFFL;
+
+  /**
+   * Container type of sorted 16 bit values
+   */
+  private static final byte ARRAY = 0;
+
+  /**
+   * Container type of a 65536 bit bitmap
+   */
+  private static final byte BITMAP = 1;
+
+  /**
+   * Container type of sorted runs of values
+   */
+  private static final byte RUN = 2;
+
+  /**
+   * Memory of a bitmap without its arrays
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RoaringIds.class);
+
+  /**
+   * Serialized bitmap
+   */
+  private final byte[] bytes;
+
+  /**
+   * Start of the serialized bitmap
+   */
+  private final int start;
+
+  /**
+   * End of the serialized bitmap
+   */
+  private final int end;
+
+  /**
+   * Upper 16 bits of the ids of each container, ascending
+   */
+  private final char[] keys;
+
+  /**
+   * Type of each container
+   */
+  private final byte[] types;
+
+  /**
+   * Number of ids in each container
+   */
+  private final int[] cardinalities;
+
+  /**
+   * Start of the data of each container
+   */
+  private final int[] offsets;
+
+  /**
+   * Number of ids
+   */
+  private final long size;
+
+  /**
+   * @param bytes Serialized bitmap
+   * @param start Start of the serialized bitmap
+   * @param end End of the serialized bitmap
+   * @param keys Upper 16 bits of the ids of each container
+   * @param types Type of each container
+   * @param cardinalities Number of ids in each container
+   * @param offsets Start of the data of each container
+   */
+  private RoaringIds(final byte[] bytes, final int start, final int end, final char[] keys, final byte[] types,
+      final int[] cardinalities, final int[] offsets) {
+    this.bytes = bytes;
+    this.start = start;
+    this.end = end;
+    this.keys = keys;
+    this.types = types;
+    this.cardinalities = cardinalities;
+    this.offsets = offsets;
+
+    long count = 0;
+    for (final int cardinality : cardinalities) {
+      count += cardinality;
+    }
+    this.size = count;
+  }
+
+  /**
+   * Wraps a serialized bitmap without copying it.
+   *
+   * @param bytes Serialized bitmap
+   * @param start Start of the serialized bitmap
+   * @param length Length of the serialized bitmap
+   * @return Ids of the bitmap
+   * @throws DeserializationException If the bytes are not a valid portable Roaring bitmap
+   */
+  public static RoaringIds wrap(final byte[] bytes, final int start, final int length)
+      throws DeserializationException {
+    final int end = start + length;
+    int position = start;
+    requireBytes(position + Integer.BYTES, end);
+    final int cookie = readInt(bytes, position);
+    position += Integer.BYTES;
+
+    final int count;
+    final int runFlags;
+    if ((cookie & 0xFFFF) == SERIAL_COOKIE) {
+      count = (cookie >>> 16) + 1;
+      runFlags = position;
+      position += (count + 7) / 8;
+    } else if (cookie == SERIAL_COOKIE_NO_RUNCONTAINER) {
+      requireBytes(position + Integer.BYTES, end);
+      count = readInt(bytes, position);
+      runFlags = -1;
+      position += Integer.BYTES;
+    } else {
+      throw new DeserializationException("Not a portable Roaring bitmap, cookie " + cookie);
+    }
+    if (count < 0 || count > 1 << 16) {
+      throw new DeserializationException("Wrong number of Roaring containers: " + count);
+    }
+
+    requireBytes(position + count * 4L, end);
+    final char[] keys = new char[count];
+    final int[] cardinalities = new int[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = readChar(bytes, position);
+      cardinalities[i] = readChar(bytes, position + 2) + 1;
+      if (i > 0 && keys[i] <= keys[i - 1]) {
+        throw new DeserializationException("Roaring container keys are not strictly ascending at container " + i);
+      }
+      position += 4;
+    }
+    if (runFlags < 0 || count >= NO_OFFSET_THRESHOLD) {
+      // Offsets follow from the container sizes, so the offset header is skipped
+      position += count * Integer.BYTES;
+    }
+
+    final byte[] types = new byte[count];
+    final int[] offsets = new int[count];
+    for (int i = 0; i < count; i++) {
+      offsets[i] = position;
+      if (runFlags >= 0 && (bytes[runFlags + i / 8] & (1 << (i % 8))) != 0) {
+        types[i] = RUN;
+        requireBytes(position + 2L, end);
+        position += 2 + readChar(bytes, position) * 4;
+      } else if (cardinalities[i] <= ARRAY_MAX_CARDINALITY) {
+        types[i] = ARRAY;
+        position += cardinalities[i] * 2;
+      } else {
+        types[i] = BITMAP;
+        position += BITMAP_CONTAINER_BYTES;
+      }
+      requireBytes(position, end);
+      checkContainer(bytes, offsets[i], types[i], cardinalities[i], i);
+    }
+
+    return new RoaringIds(bytes, start, position, keys, types, cardinalities, offsets);
+  }
+
+  /**
+   * Checks that the values of a container are sorted and add up to its cardinality, so lookups can binary search
+   * them.
+   *
+   * @param bytes Serialized bitmap
+   * @param offset Start of the data of the container
+   * @param type Type of the container
+   * @param cardinality Number of ids of the container as given in its header
+   * @param container Index of the container, used in messages
+   * @throws DeserializationException If the container is not valid
+   */
+  private static void checkContainer(final byte[] bytes, final int offset, final byte type, final int cardinality,
+      final int container) throws DeserializationException {
+    final int count;
+    switch (type) {
+      case ARRAY:
+        for (int i = 1; i < cardinality; i++) {
+          if (readChar(bytes, offset + i * 2) <= readChar(bytes, offset + (i - 1) * 2)) {
+            throw new DeserializationException("Roaring array container " + container + " is not sorted");
+          }
+        }
+        count = cardinality;
+        break;
+      case BITMAP:
+        int bits = 0;
+        for (int i = 0; i < BITMAP_CONTAINER_BYTES; i++) {
+          bits += Integer.bitCount(bytes[offset + i] & 0xFF);
+        }
+        count = bits;
+        break;
+      default:
+        final int runs = readChar(bytes, offset);
+        int values = 0;
+        // Smallest value the next run may start at, runs neither overlap nor touch
+        int next = 0;
+        for (int i = 0; i < runs; i++) {
+          final int runStart = readChar(bytes, offset + 2 + i * 4);
+          final int runEnd = runStart + readChar(bytes, offset + 4 + i * 4);
+          if (runStart < next || runEnd > 0xFFFF) {
+            throw new DeserializationException("Roaring run container " + container + " is not sorted");
+          }
+          values += runEnd - runStart + 1;
+          next = runEnd + 2;
+        }
+        count = values;
+        break;
+    }
+    if (count != cardinality) {
+      throw new DeserializationException("Roaring container " + container + " holds " + count + " ids instead of "
+          + cardinality);
+    }
+  }
+
+  @Override
+  public boolean contains(final long id) {
+    if (id < 0 || id > MAX_ID) {
+      return false;
+    }
+    final int container = Arrays.binarySearch(keys, (char) (id >>> 16));
+    return container >= 0 && nextInContainer(container, (int) (id & 0xFFFF)) == (int) (id & 0xFFFF);
+  }
+
+  @Override
+  public long nextId(final long from) {
+    if (from > MAX_ID) {
+      return -1;
+    }
+    final long first = Math.max(from, 0);
+
+    int container = Arrays.binarySearch(keys, (char) (first >>> 16));
+    int low = (int) (first & 0xFFFF);
+    if (container < 0) {
+      container = -container - 1;
+      low = 0;
+    }
+    for (; container < keys.length; container++, low = 0) {
+      final int next = nextInContainer(container, low);
+      if (next >= 0) {
+        return (long) keys[container] << 16 | next;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytes) + RamUsageEstimator.sizeOf(keys)
+        + RamUsageEstimator.sizeOf(types) + RamUsageEstimator.sizeOf(cardinalities) + RamUsageEstimator.sizeOf(offsets);
+  }
+
+  /**
+   * @param container Index of the container
+   * @param low Lower 16 bits of the first id to look at
+   * @return Lower 16 bits of the smallest id of the container not smaller than the given one, -1 if there is none
+   */
+  private int nextInContainer(final int container, final int low) {
+    final int offset = offsets[container];
+    switch (types[container]) {
+      case ARRAY:
+        int first = 0;
+        int last = cardinalities[container] - 1;
+        while (first <= last) {
+          final int middle = (first + last) >>> 1;
+          if (readChar(bytes, offset + middle * 2) < low) {
+            first = middle + 1;
+          } else {
+            last = middle - 1;
+          }
+        }
+        return first < cardinalities[container] ? readChar(bytes, offset + first * 2) : -1;
+      case BITMAP:
+        int index = low >>> 3;
+        int bits = bytes[offset + index] & (0xFF << (low & 7)) & 0xFF;
+        while (bits == 0) {
+          if (++index == BITMAP_CONTAINER_BYTES) {
+            return -1;
+          }
+          bits = bytes[offset + index] & 0xFF;
+        }
+        return index << 3 | Integer.numberOfTrailingZeros(bits);
+      default:
+        final int runs = readChar(bytes, offset);
+        // Last run starting at or before the value
+        int lowRun = 0;
+        int highRun = runs - 1;
+        while (lowRun <= highRun) {
+          final int middle = (lowRun + highRun) >>> 1;
+          if (readChar(bytes, offset + 2 + middle * 4) <= low) {
+            lowRun = middle + 1;
+          } else {
+            highRun = middle - 1;
+          }
+        }
+        if (highRun >= 0) {
+          final int runStart = readChar(bytes, offset + 2 + highRun * 4);
+          if (low <= runStart + readChar(bytes, offset + 4 + highRun * 4)) {
+            return low;
+          }
+        }
+        return highRun + 1 < runs ? readChar(bytes, offset + 2 + (highRun + 1) * 4) : -1;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof RoaringIds)) {
+      return false;
+    }
+    final RoaringIds other = (RoaringIds) obj;
+    return Arrays.equals(bytes, start, end, other.bytes, other.start, other.end);
+  }
+
+  /**
+   * @param required Index up to which the bitmap must reach
+   * @param end End of the serialized bitmap
+   * @throws DeserializationException If the bitmap is truncated
+   */
+  private static void requireBytes(final long required, final int end) throws DeserializationException {
+    if (required > end) {
+      throw new DeserializationException("Truncated Roaring bitmap, needs " + required + " bytes but has " + end);
+    }
+  }
+
+  /**
+   * @param bytes Bytes
+   * @param offset Start of the value
+   * @return Little endian 16 bit value
+   */
+  private static char readChar(final byte[] bytes, final int offset) {
+    return (char) ((bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8);
+  }
+
+  /**
+   * @param bytes Bytes
+   * @param offset Start of the value
+   * @return Little endian 32 bit value
+   */
+  private static int readInt(final byte[] bytes, final int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+        | (bytes[offset + 3] & 0xFF) << 24;
+  }
+}
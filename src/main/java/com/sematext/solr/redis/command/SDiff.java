@@ -4,17 +4,55 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.MultiKeyCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class SDiff implements Command<MultiKeyCommands> {
+public final class SDiff implements Command<MultiKeyCommands>, PipelinedCommand, RespCommand, MultiKeyCommand {
   private static final Logger log = LoggerFactory.getLogger(SDiff.class);
 
+  private static final SUnion UNION = new SUnion();
+
   @Override
-  public Map<String, Float> execute(final MultiKeyCommands client, final SolrParams params) {
+  public ScoredTerms execute(final MultiKeyCommands client, final SolrParams params) {
     final String[] keys = ParamUtil.getStringByPrefix(params, "key");
 
     log.debug("Fetching SDIFF from Redis for keys: {}", keys);
 
-    return ResultUtil.stringIteratorToMap(client.sdiff(keys));
+    return ResultUtil.stringIteratorToTerms(client.sdiff(keys));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    log.debug("Queueing SDIFF for keys: {}", keys);
+
+    final Response<Set<String>> response = pipeline.sdiff(keys);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public Command<?> getPartialCommand(final int group) {
+    // Members of keys outside of the first group are subtracted from the first group's difference
+    return group == 0 ? this : UNION;
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.difference(results);
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany(ParamUtil.prepend("SDIFF", ParamUtil.getStringByPrefix(params, "key")));
   }
 }
@@ -4,17 +4,47 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.MultiKeyCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class SInter implements Command<MultiKeyCommands> {
+public final class SInter implements Command<MultiKeyCommands>, PipelinedCommand, RespCommand, MultiKeyCommand {
   private static final Logger log = LoggerFactory.getLogger(SInter.class);
 
   @Override
-  public Map<String, Float> execute(final MultiKeyCommands client, final SolrParams params) {
+  public ScoredTerms execute(final MultiKeyCommands client, final SolrParams params) {
     final String[] keys = ParamUtil.getStringByPrefix(params, "key");
 
     log.debug("Fetching SINTER from Redis for keys: {}", keys);
 
-    return ResultUtil.stringIteratorToMap(client.sinter(keys));
+    return ResultUtil.stringIteratorToTerms(client.sinter(keys));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    log.debug("Queueing SINTER for keys: {}", keys);
+
+    final Response<Set<String>> response = pipeline.sinter(keys);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.intersection(results);
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany(ParamUtil.prepend("SINTER", ParamUtil.getStringByPrefix(params, "key")));
   }
 }
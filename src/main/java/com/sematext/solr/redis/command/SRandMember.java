@@ -5,19 +5,41 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.function.Supplier;
 
-public final class SRandMember implements Command<JedisCommands> {
+public final class SRandMember implements Command<JedisCommands>, PipelinedCommand, RespCommand {
   private static final Logger log = LoggerFactory.getLogger(SRandMember.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final int count = ParamUtil.tryGetIntByName(params, "count", 1);
 
     log.debug("Fetching SRANDMEMBER from Redis for key: {} ({})", key, count);
 
     // Workaround for https://github.com/xetorthio/jedis/issues/665
-    return client instanceof Jedis ? ResultUtil.stringIteratorToMap(((Jedis) client).srandmember(key, count)) : null;
+    return client instanceof Jedis ? ResultUtil.stringIteratorToTerms(((Jedis) client).srandmember(key, count)) : null;
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final int count = ParamUtil.tryGetIntByName(params, "count", 1);
+
+    log.debug("Queueing SRANDMEMBER for key: {} ({})", key, count);
+
+    final Response<List<String>> response = pipeline.srandmember(key, count);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final int count = ParamUtil.tryGetIntByName(params, "count", 1);
+    return SafeEncoder.encodeMany("SRANDMEMBER", key, String.valueOf(count));
   }
 }
@@ -4,18 +4,47 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.MultiKeyCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
-import java.util.Map;
-
-public final class SUnion implements Command<MultiKeyCommands> {
+public final class SUnion implements Command<MultiKeyCommands>, PipelinedCommand, RespCommand, MultiKeyCommand {
   private static final Logger log = LoggerFactory.getLogger(SUnion.class);
 
   @Override
-  public Map<String, Float> execute(final MultiKeyCommands client, final SolrParams params) {
+  public ScoredTerms execute(final MultiKeyCommands client, final SolrParams params) {
     final String[] keys = ParamUtil.getStringByPrefix(params, "key");
 
     log.debug("Fetching SUNION from Redis for keys: {}", keys);
 
-    return ResultUtil.stringIteratorToMap(client.sunion(keys));
+    return ResultUtil.stringIteratorToTerms(client.sunion(keys));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    log.debug("Queueing SUNION for keys: {}", keys);
+
+    final Response<Set<String>> response = pipeline.sunion(keys);
+    return () -> ResultUtil.stringIteratorToTerms(response.get());
+  }
+
+  @Override
+  public String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.union(results);
+  }
+
+  @Override
+  public byte[][] getRespArgs(final SolrParams params) {
+    return SafeEncoder.encodeMany(ParamUtil.prepend("SUNION", ParamUtil.getStringByPrefix(params, "key")));
   }
 }
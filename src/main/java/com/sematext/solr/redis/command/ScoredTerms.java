@@ -0,0 +1,306 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.BytesRefSet;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Terms fetched from Redis with their scores.
+ * <p> Terms are kept as UTF-8 bytes in a single {@link BytesRefSlab} and scores in a parallel float array, so a result
+ * costs a handful of arrays instead of a map entry, a String and a boxed Float per term. Terms keep the order Redis
+ * returned them in and may repeat. Results of lists and sorted sets are ordered: the position of a term is its rank.
+ *
+ * @author prog
+ */
+public final class ScoredTerms implements Accountable {
+  /**
+   * Shallow size of a result
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(ScoredTerms.class);
+
+  /**
+   * Terms
+   */
+  private final BytesRefSlab terms;
+
+  /**
+   * Score of each term, null if all scores are NaN
+   */
+  private final float[] scores;
+
+  /**
+   * Whether the terms are in ascending unsigned byte order
+   */
+  private final boolean sorted;
+
+  /**
+   * Whether the position of a term is its rank, best ranked first
+   */
+  private final boolean ordered;
+
+  /**
+   * @param terms Terms
+   * @param scores Score of each term, null if all scores are NaN
+   * @param sorted Whether the terms are in ascending unsigned byte order
+   * @param ordered Whether the position of a term is its rank, best ranked first
+   */
+  private ScoredTerms(final BytesRefSlab terms, final float[] scores, final boolean sorted, final boolean ordered) {
+    this.terms = terms;
+    this.scores = scores;
+    this.sorted = sorted;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Wraps terms which all have a NaN score.
+   *
+   * @param terms Terms
+   * @return Terms without scores
+   */
+  public static ScoredTerms of(final BytesRefSlab terms) {
+    final BytesRef previous = new BytesRef();
+    final BytesRef current = new BytesRef();
+    boolean sorted = true;
+
+    for (int i = 1; i < terms.size() && sorted; i++) {
+      sorted = terms.get(i - 1, previous).compareTo(terms.get(i, current)) <= 0;
+    }
+
+    return new ScoredTerms(terms, null, sorted, false);
+  }
+
+  /**
+   * @return Number of terms
+   */
+  public int size() {
+    return terms.size();
+  }
+
+  /**
+   * Points a BytesRef to a term.
+   *
+   * @param index Index of the term
+   * @param target BytesRef to point to the term
+   * @return The target
+   */
+  public BytesRef getTerm(final int index, final BytesRef target) {
+    return terms.get(index, target);
+  }
+
+  /**
+   * @param index Index of the term
+   * @return New BytesRef pointing to the term
+   */
+  public BytesRef getTerm(final int index) {
+    return terms.get(index);
+  }
+
+  /**
+   * @param index Index of the term
+   * @return Score of the term, may be NaN
+   */
+  public float getScore(final int index) {
+    return scores == null ? Float.NaN : scores[index];
+  }
+
+  /**
+   * @return Whether all scores are NaN
+   */
+  public boolean isAllNaN() {
+    return scores == null;
+  }
+
+  /**
+   * @return Whether the terms are in ascending unsigned byte order
+   */
+  public boolean isSorted() {
+    return sorted;
+  }
+
+  /**
+   * @return Whether the position of a term is its rank, best ranked first
+   */
+  public boolean isOrdered() {
+    return ordered;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + terms.ramBytesUsed() + (scores == null ? 0 : RamUsageEstimator.sizeOf(scores));
+  }
+
+  /**
+   * @return Set of the terms, sharing their bytes with these terms
+   */
+  public BytesRefSet toSet() {
+    return new BytesRefSet(terms);
+  }
+
+  /**
+   * @return Terms without repetitions, keeping the first occurrence of each term and its score
+   */
+  public ScoredTerms distinct() {
+    final Set<BytesRef> seen = new HashSet<>();
+    final Builder builder = new Builder(size()).ordered(ordered);
+
+    for (int i = 0; i < size(); i++) {
+      final BytesRef term = getTerm(i);
+      if (seen.add(term)) {
+        builder.add(term, getScore(i));
+      }
+    }
+
+    return builder.size() == size() ? this : builder.build();
+  }
+
+  /**
+   * Builds scored terms.
+   */
+  public static final class Builder {
+    /**
+     * Terms
+     */
+    private final BytesRefSlab terms;
+
+    /**
+     * Scores, null as long as all scores are NaN
+     */
+    private float[] scores;
+
+    /**
+     * Whether the terms added so far are in ascending unsigned byte order
+     */
+    private boolean sorted = true;
+
+    /**
+     * Whether the position of a term is its rank
+     */
+    private boolean ordered;
+
+    /**
+     * Scratch holding the previous term
+     */
+    private final BytesRef previous = new BytesRef();
+
+    /**
+     * Scratch holding the current term
+     */
+    private final BytesRef current = new BytesRef();
+
+    /**
+     * Creates a builder for a small number of terms.
+     */
+    public Builder() {
+      this(16);
+    }
+
+    /**
+     * @param expectedSize Expected number of terms
+     */
+    public Builder(final int expectedSize) {
+      terms = new BytesRefSlab(Math.max(expectedSize, 1) * 8, expectedSize);
+    }
+
+    /**
+     * Adds a term without a score. Null terms are skipped.
+     *
+     * @param term Term
+     * @return This builder
+     */
+    public Builder add(final CharSequence term) {
+      return add(term, Float.NaN);
+    }
+
+    /**
+     * Adds a term. Null terms are skipped.
+     *
+     * @param term Term
+     * @param score Score of the term, may be NaN
+     * @return This builder
+     */
+    public Builder add(final CharSequence term, final float score) {
+      if (term == null) {
+        return this;
+      }
+
+      final int offset = terms.reserve(UnicodeUtil.maxUTF8Length(term.length()));
+      final int end = UnicodeUtil.UTF16toUTF8(term, 0, term.length(), terms.buffer(), offset);
+      terms.commit(end - offset);
+      added(score);
+      return this;
+    }
+
+    /**
+     * Adds a term. Null terms are skipped.
+     *
+     * @param term Term, copied into the builder
+     * @param score Score of the term, may be NaN
+     * @return This builder
+     */
+    public Builder add(final BytesRef term, final float score) {
+      if (term == null) {
+        return this;
+      }
+
+      terms.append(term);
+      added(score);
+      return this;
+    }
+
+    /**
+     * @param isOrdered Whether the position of a term is its rank, best ranked first
+     * @return This builder
+     */
+    public Builder ordered(final boolean isOrdered) {
+      this.ordered = isOrdered;
+      return this;
+    }
+
+    /**
+     * @return Number of terms added so far
+     */
+    public int size() {
+      return terms.size();
+    }
+
+    /**
+     * @return Built terms. The builder must not be used afterwards
+     */
+    public ScoredTerms build() {
+      return new ScoredTerms(terms, scores == null ? null : ArrayUtil.copyOfSubArray(scores, 0, terms.size()),
+          sorted, ordered);
+    }
+
+    /**
+     * Records the score of the last added term and whether the terms are still sorted.
+     *
+     * @param score Score of the last added term
+     */
+    private void added(final float score) {
+      final int index = terms.size() - 1;
+
+      if (scores != null || !Float.isNaN(score)) {
+        if (scores == null) {
+          scores = new float[Math.max(index + 1, 16)];
+          Arrays.fill(scores, Float.NaN);
+        } else if (index >= scores.length) {
+          final int oldLength = scores.length;
+          scores = ArrayUtil.grow(scores, index + 1);
+          Arrays.fill(scores, oldLength, scores.length, Float.NaN);
+        }
+        scores[index] = score;
+      }
+
+      if (sorted && index > 0) {
+        sorted = terms.get(index - 1, previous).compareTo(terms.get(index, current)) <= 0;
+      }
+    }
+  }
+}
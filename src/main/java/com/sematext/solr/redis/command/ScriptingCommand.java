@@ -1,20 +1,68 @@
 package com.sematext.solr.redis.command;
 
 import org.apache.solr.common.params.SolrParams;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.ScriptingCommands;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.function.Supplier;
 
-abstract class ScriptingCommand implements Command<ScriptingCommands> {
+abstract class ScriptingCommand implements Command<ScriptingCommands>, PipelinedCommand, MultiKeyCommand {
 
-  protected abstract Map<String, Float> invokeCommand(ScriptingCommands client, SolrParams params, int keyLength,
+  protected abstract ScoredTerms invokeCommand(ScriptingCommands client, SolrParams params, int keyLength,
     String[] args);
 
+  protected abstract Response<Object> queueCommand(Pipeline pipeline, SolrParams params, int keyLength,
+    String[] args);
+
+  @Override
+  public final ScoredTerms execute(final ScriptingCommands client, final SolrParams params) {
+    final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    return invokeCommand(client, params, keys.length, combineKeysAndArgs(keys, params));
+  }
+
   @Override
-  public final Map<String, Float> execute(final ScriptingCommands client, final SolrParams params) {
+  public final Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
     final String[] keys = ParamUtil.getStringByPrefix(params, "key");
+
+    final Response<Object> response = queueCommand(pipeline, params, keys.length, combineKeysAndArgs(keys, params));
+    return () -> createReturnValue(params, response.get());
+  }
+
+  @Override
+  public final String[] getKeys(final SolrParams params) {
+    return ParamUtil.getStringByPrefix(params, "key");
+  }
+
+  @Override
+  public final boolean isReadOnly() {
+    // Scripts may write, so they are always sent to the primary
+    return false;
+  }
+
+  /**
+   * A script reading keys of several hash slots can't be split into one script per slot in general, so the split is
+   * only allowed when the clause states that the results of the partial scripts are to be united with
+   * {@code merge=union}.
+   */
+  @Override
+  public final SolrParams getPartialParams(final SolrParams params, final String[] keys) {
+    if (!"union".equals(params.get("merge"))) {
+      throw new IllegalArgumentException(String.format("CROSSSLOT Keys %s of script span several hash slots, "
+          + "set merge=union to run the script once per slot and unite the results", Arrays.toString(getKeys(params))));
+    }
+    return MultiKeyCommand.super.getPartialParams(params, keys);
+  }
+
+  @Override
+  public final ScoredTerms merge(final List<ScoredTerms> results) {
+    return ResultUtil.union(results);
+  }
+
+  private static String[] combineKeysAndArgs(final String[] keys, final SolrParams params) {
     final String[] args = ParamUtil.getStringByPrefix(params, "arg");
     final int keyLength = keys.length;
     final int argLength = args.length;
@@ -24,10 +72,10 @@ abstract class ScriptingCommand implements Command<ScriptingCommands> {
     System.arraycopy(keys, 0, combined, 0, keyLength);
     System.arraycopy(args, 0, combined, keyLength, argLength);
 
-    return invokeCommand(client, params, keyLength, combined);
+    return combined;
   }
 
-  protected final Map<String, Float> createReturnValue(final SolrParams params, final Object result) {
+  protected final ScoredTerms createReturnValue(final SolrParams params, final Object result) {
     final boolean returnsHash = ParamUtil.tryGetBooleanByName(params, "returns_hash", false);
 
     if (result == null) {
@@ -41,23 +89,23 @@ abstract class ScriptingCommand implements Command<ScriptingCommands> {
     }
   }
 
-  private Map<String, Float> returnScalar(final Object result) {
-    return ResultUtil.stringIteratorToMap(Collections.singletonList(result.toString()));
+  private ScoredTerms returnScalar(final Object result) {
+    return ResultUtil.stringIteratorToTerms(Collections.singletonList(result.toString()));
   }
 
-  private Map<String, Float> returnList(final Iterable<String> result) {
-    return ResultUtil.stringIteratorToMap(result);
+  private ScoredTerms returnList(final Iterable<String> result) {
+    return ResultUtil.stringIteratorToTerms(result);
   }
 
-  private Map<String, Float> returnHash(final Iterable result) {
-    final Map<String, Float> hash = new HashMap<>();
+  private ScoredTerms returnHash(final Iterable result) {
+    final ScoredTerms.Builder hash = new ScoredTerms.Builder();
 
     int a = 0;
     String hashKey = null;
     for (final Object value: result) {
       a++;
       if (a % 2 == 0) {
-        hash.put(hashKey, Float.parseFloat(value.toString()));
+        hash.add(hashKey, Float.parseFloat(value.toString()));
       } else {
         hashKey = value.toString();
       }
@@ -67,6 +115,6 @@ abstract class ScriptingCommand implements Command<ScriptingCommands> {
       throw new IllegalArgumentException(String.format("Expected list with even number of elements, got %d", a));
     }
 
-    return hash;
+    return hash.build();
   }
 }
@@ -0,0 +1,45 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.BytesRef;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * Codec of values in the raw Snappy format, as written by the {@code compress} functions of the Snappy libraries. The
+ * length of the value is known upfront, so snappy-java decodes it straight into a buffer of the right size. No
+ * element of the format expands more than 3 bytes into 64, so a length beyond {@value #MAX_RATIO} times the size of
+ * the value is rejected as malformed before allocating.
+ *
+ * @author prog
+ */
+final class SnappyCodec implements ValueCodec {
+  /**
+   * Largest ratio of a decompressed to a compressed value
+   */
+  private static final int MAX_RATIO = 22;
+
+  /**
+   * Buffer of each thread holding decompressed values
+   */
+  private final ThreadBuffer buffer;
+
+  /**
+   * @param maxDecompressedBytes Largest decompressed value
+   */
+  SnappyCodec(final int maxDecompressedBytes) {
+    buffer = new ThreadBuffer(maxDecompressedBytes);
+  }
+
+  @Override
+  public BytesRef decompress(final byte[] compressed) throws IOException {
+    final int size = Snappy.uncompressedLength(compressed);
+    if (size < 0 || size > (long) compressed.length * MAX_RATIO) {
+      throw new IOException("Malformed Snappy value, invalid length " + size);
+    }
+    buffer.checkSize(size);
+    final byte[] output = buffer.get(size);
+    final int length = Snappy.uncompress(compressed, 0, compressed.length, output, 0);
+    return new BytesRef(output, 0, length);
+  }
+}
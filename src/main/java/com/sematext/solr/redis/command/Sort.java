@@ -4,15 +4,31 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.SortingParams;
-import java.util.Map;
+import java.util.List;
+import java.util.function.Supplier;
 
-public final class Sort implements Command<JedisCommands> {
+public final class Sort implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(Sort.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    return toTerms(client.sort(key, createSortingParams(key, params)));
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+
+    final Response<List<String>> response = pipeline.sort(key, createSortingParams(key, params));
+    return () -> toTerms(response.get());
+  }
+
+  private static SortingParams createSortingParams(final String key, final SolrParams params) {
     final String algorithm = ParamUtil.tryGetStringByName(params, "algorithm", null);
     final String order = ParamUtil.tryGetStringByName(params, "order", null);
     final Integer limit = ParamUtil.tryGetIntByName(params, "limit", null);
@@ -44,12 +60,11 @@ public final class Sort implements Command<JedisCommands> {
     log.debug("Fetching SORT from Redis for keys: {} GET {} BY {} ORDER {} OFFSET {} LIMIT {} ALGORITHM {}", key, get,
         byValue, order, offset, limit, algorithm);
 
-    // Use decrementing Scorer to preserve list ordering
-    return ResultUtil.stringIteratorToMap(client.sort(key, sortingParams), 0F, new ResultUtil.Scorer() {
-      @Override
-      public Float score(final Float score) {
-        return score - 1F;
-      }
-    });
+    return sortingParams;
+  }
+
+  private static ScoredTerms toTerms(final List<String> list) {
+    // The position in the list is the rank of a term
+    return ResultUtil.stringIteratorToOrderedTerms(list);
   }
 }
@@ -0,0 +1,152 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Byte buffer of each thread, reused by all values a codec decompresses on that thread. Buffers which grow beyond
+ * {@link #MAX_RETAINED_SIZE} serve a single value and are then left to the garbage collector, so a few huge values
+ * don't pin memory in every thread of the pool.
+ * <p> Sizes claimed by the header of a compressed value are not trusted beyond {@link #MAX_TRUSTED_RATIO} times the
+ * size of the compressed value, larger values grow the buffer while they are read. No value grows it beyond the
+ * maximum size, so a hostile header or a decompression bomb fails with an {@link IOException} instead of allocating
+ * gigabytes.
+ *
+ * @author prog
+ */
+final class ThreadBuffer {
+  /**
+   * Largest buffer kept for the next value
+   */
+  static final int MAX_RETAINED_SIZE = 1 << 26;
+
+  /**
+   * Default largest decompressed value
+   */
+  static final int DEFAULT_MAX_SIZE = 1 << 28;
+
+  /**
+   * Largest ratio of a decompressed to a compressed value for which the buffer is sized upfront
+   */
+  static final int MAX_TRUSTED_RATIO = 32;
+
+  /**
+   * Size of a new buffer
+   */
+  private static final int INITIAL_SIZE = 1 << 16;
+
+  /**
+   * Buffer of each thread
+   */
+  private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_SIZE]);
+
+  /**
+   * Largest decompressed value
+   */
+  private final int maxSize;
+
+  /**
+   * @param maxSize Largest decompressed value
+   */
+  ThreadBuffer(final int maxSize) {
+    if (maxSize <= 0 || maxSize > ArrayUtil.MAX_ARRAY_LENGTH) {
+      throw new IllegalArgumentException("Largest decompressed value must be between 1 and "
+          + ArrayUtil.MAX_ARRAY_LENGTH + " bytes, got " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Checks a size claimed by the header of a compressed value.
+   *
+   * @param size Claimed size of the decompressed value
+   * @throws IOException If the value is larger than the largest decompressed value
+   */
+  void checkSize(final long size) throws IOException {
+    if (size > maxSize) {
+      throw new IOException("Decompressed value of " + size + " bytes exceeds the limit of " + maxSize + " bytes");
+    }
+  }
+
+  /**
+   * @param size Size claimed by the header of a compressed value
+   * @param compressedLength Length of the compressed value
+   * @return Claimed size if it is trusted to size a buffer upfront, otherwise the largest trusted size
+   */
+  int trustedSize(final long size, final int compressedLength) {
+    return (int) Math.min(Math.max(size, 1), Math.min((long) compressedLength * MAX_TRUSTED_RATIO, maxSize));
+  }
+
+  /**
+   * @param size Required size
+   * @return Buffer of the calling thread holding at least the required size, its content is undefined
+   */
+  byte[] get(final int size) {
+    final byte[] buffer = buffers.get();
+    return buffer.length >= size ? buffer : retain(new byte[oversize(size)]);
+  }
+
+  /**
+   * Grows a buffer returned by {@link #get}, keeping its content.
+   *
+   * @param buffer Buffer to grow
+   * @param size Required size
+   * @return Buffer holding at least the required size and starting with the content of the given buffer
+   */
+  byte[] grow(final byte[] buffer, final int size) {
+    return buffer.length >= size ? buffer : retain(Arrays.copyOf(buffer, oversize(size)));
+  }
+
+  /**
+   * Reads a stream to its end into the buffer of the calling thread.
+   *
+   * @param stream Stream of a decompressed value
+   * @param expectedSize Expected size of the value, already trusted, the buffer grows if it is larger
+   * @return Content of the stream, only valid until the calling thread reads another value into this buffer
+   * @throws IOException If the stream can't be read or the value is larger than the largest decompressed value
+   */
+  BytesRef readFully(final InputStream stream, final long expectedSize) throws IOException {
+    byte[] value = get((int) Math.min(Math.max(expectedSize, 1), maxSize));
+    int length = 0;
+    int read;
+    while ((read = stream.read(value, length, value.length - length)) >= 0) {
+      length += read;
+      if (length > maxSize) {
+        throw new IOException("Decompressed value exceeds the limit of " + maxSize + " bytes");
+      }
+      if (length == value.length) {
+        if (length == maxSize) {
+          if (stream.read() >= 0) {
+            throw new IOException("Decompressed value exceeds the limit of " + maxSize + " bytes");
+          }
+          break;
+        }
+        value = grow(value, length + 1);
+      }
+    }
+    return new BytesRef(value, 0, length);
+  }
+
+  /**
+   * @param size Required size
+   * @return Size of a buffer holding the required size with room to grow, but not beyond the largest value
+   */
+  private int oversize(final int size) {
+    return Math.max(size, Math.min(ArrayUtil.oversize(size, Byte.BYTES), maxSize));
+  }
+
+  /**
+   * @param buffer New buffer of the calling thread
+   * @return Given buffer
+   */
+  private byte[] retain(final byte[] buffer) {
+    if (buffer.length <= MAX_RETAINED_SIZE) {
+      buffers.set(buffer);
+    }
+    return buffer;
+  }
+}
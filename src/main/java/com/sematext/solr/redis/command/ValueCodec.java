@@ -0,0 +1,51 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses values fetched with GET, selected by the {@code compression} local param.
+ * <p> Codecs are registered by name in {@link ValueCodecs}, either built in or configured in solrconfig.xml. A single
+ * instance of a codec serves all requests, so it must be thread safe. Decompressed values go to a buffer of the
+ * calling thread which the next value decompressed by that thread reuses, so decompressing values of megabytes
+ * allocates nothing once the buffer has grown.
+ *
+ * @author prog
+ */
+public interface ValueCodec {
+  /**
+   * Configures the codec with the arguments of its solrconfig.xml entry, e.g. the path of a dictionary. Called once,
+   * before the codec is registered.
+   *
+   * @param args Arguments of the codec
+   */
+  default void init(final NamedList<?> args) {
+  }
+
+  /**
+   * Decompresses a whole value.
+   *
+   * @param compressed Compressed value
+   * @return Decompressed value, only valid until the calling thread decompresses another value with this codec
+   * @throws IOException If the value can't be decompressed
+   */
+  BytesRef decompress(byte[] compressed) throws IOException;
+
+  /**
+   * Opens a stream of the decompressed value, for values which are decoded while they are decompressed. The default
+   * implementation streams the result of {@link #decompress}.
+   *
+   * @param compressed Compressed value
+   * @return Stream of the decompressed value, only valid until the calling thread decompresses another value with
+   * this codec
+   * @throws IOException If the value can't be decompressed
+   */
+  default InputStream open(final byte[] compressed) throws IOException {
+    final BytesRef value = decompress(compressed);
+    return new ByteArrayInputStream(value.bytes, value.offset, value.length);
+  }
+}
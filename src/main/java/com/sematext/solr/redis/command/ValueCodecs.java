@@ -0,0 +1,127 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.util.NamedList;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the codecs which decompress values, by the name given in the {@code compression} local param.
+ * <p> {@code gzip}, {@code lz4} (frame format), {@code snappy} (raw format) and {@code zstd} (frame format, without a
+ * dictionary) are built in. Other codecs, e.g. Zstandard with a dictionary trained on many small similar values, are
+ * configured in solrconfig.xml, which may also replace a built in codec. Each parser plugin owns its registry, so
+ * codecs configured for one core never leak into another.
+ *
+ * @author prog
+ */
+public final class ValueCodecs {
+  /**
+   * Name of the argument holding the class of a configured codec
+   */
+  public static final String CLASS_ARG = "class";
+
+  /**
+   * Name of the argument holding the size of the largest value a configured codec decompresses
+   */
+  public static final String MAX_DECOMPRESSED_BYTES_ARG = "maxDecompressedBytes";
+
+  /**
+   * Default size of the largest decompressed value
+   */
+  public static final int DEFAULT_MAX_DECOMPRESSED_BYTES = ThreadBuffer.DEFAULT_MAX_SIZE;
+
+  /**
+   * Codecs by name
+   */
+  private final Map<String, ValueCodec> codecs = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a registry holding the built in codecs, decompressing values up to the default limit
+   */
+  public ValueCodecs() {
+    this(DEFAULT_MAX_DECOMPRESSED_BYTES);
+  }
+
+  /**
+   * Creates a registry holding the built in codecs. Values larger than the limit, or claiming to be, fail to
+   * decompress instead of allocating their claimed size.
+   *
+   * @param maxDecompressedBytes Size of the largest value the built in codecs decompress
+   */
+  public ValueCodecs(final int maxDecompressedBytes) {
+    registerBuiltIns(maxDecompressedBytes);
+  }
+
+  /**
+   * @param value Size of the largest decompressed value, as configured
+   * @return Size of the largest decompressed value
+   * @throws IllegalArgumentException If the size is not a positive number
+   */
+  public static int parseMaxDecompressedBytes(final Object value) {
+    try {
+      final int maxDecompressedBytes = Integer.parseInt(value.toString().trim());
+      if (maxDecompressedBytes <= 0) {
+        throw new IllegalArgumentException(MAX_DECOMPRESSED_BYTES_ARG + " must be positive: " + value);
+      }
+      return maxDecompressedBytes;
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(MAX_DECOMPRESSED_BYTES_ARG + " must be a number: " + value, e);
+    }
+  }
+
+  /**
+   * @param name Name of the codec
+   * @return Codec registered with the name, null if there is none
+   */
+  public ValueCodec get(final String name) {
+    return codecs.get(name);
+  }
+
+  /**
+   * Registers the built in codecs, replacing the codecs registered with their names.
+   *
+   * @param maxDecompressedBytes Size of the largest value the built in codecs decompress
+   */
+  public void registerBuiltIns(final int maxDecompressedBytes) {
+    codecs.put("gzip", new GzipCodec(maxDecompressedBytes));
+    codecs.put("lz4", new Lz4Codec(maxDecompressedBytes));
+    codecs.put("snappy", new SnappyCodec(maxDecompressedBytes));
+    codecs.put("zstd", new ZstdCodec(maxDecompressedBytes));
+  }
+
+  /**
+   * Registers a codec, replacing the codec registered with the same name.
+   *
+   * @param name Name of the codec
+   * @param codec Codec
+   */
+  public void register(final String name, final ValueCodec codec) {
+    codecs.put(name, codec);
+  }
+
+  /**
+   * Creates and registers a codec configured in solrconfig.xml.
+   *
+   * @param name Name of the codec
+   * @param args Arguments of the codec, holding its class in {@link #CLASS_ARG}
+   * @return Registered codec
+   * @throws IllegalArgumentException If the codec can't be created
+   */
+  public ValueCodec register(final String name, final NamedList<?> args) {
+    final Object className = args.get(CLASS_ARG);
+    if (!(className instanceof String)) {
+      throw new IllegalArgumentException("Missing class of codec " + name);
+    }
+
+    final ValueCodec codec;
+    try {
+      codec = Class.forName((String) className, true, ValueCodec.class.getClassLoader())
+          .asSubclass(ValueCodec.class).getDeclaredConstructor().newInstance();
+    } catch (final ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Can't create codec " + name + " of class " + className, e);
+    }
+    codec.init(args);
+    register(name, codec);
+    return codec;
+  }
+}
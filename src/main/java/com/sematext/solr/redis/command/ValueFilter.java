@@ -1,82 +1,236 @@
 package com.sematext.solr.redis.command;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Decompresses and deserializes values fetched with GET.
+ * <p> Values are decompressed by the {@link ValueCodec} registered for the {@code compression} local param and decoded
+ * as streams: a JSON array or object is read token by token straight from the codec, each string being added to the
+ * terms as soon as it is read, so neither the decompressed payload nor the array is ever held as a whole.
+ */
 public class ValueFilter {
   private static final Logger log = LoggerFactory.getLogger(ValueFilter.class);
 
-  Map<String, Float> filterValue(final SolrParams params, final byte[] byteValue)
+  /**
+   * Serialization of values holding a portable Roaring bitmap of numeric ids
+   */
+  static final String ROARING = "roaring";
+
+  /**
+   * Serialization of values holding a JSON object mapping each term to its weight
+   */
+  static final String JSON_SCORED = "json_scored";
+
+  /**
+   * Codecs decompressing values by name
+   */
+  private final ValueCodecs codecs;
+
+  /**
+   * Creates a filter decompressing values with the built in codecs
+   */
+  public ValueFilter() {
+    this(new ValueCodecs());
+  }
+
+  /**
+   * @param codecs Codecs decompressing values by name
+   */
+  public ValueFilter(final ValueCodecs codecs) {
+    this.codecs = codecs;
+  }
+
+  /**
+   * @param params Solr local params of the tag
+   * @return Whether values are deserialized into ids rather than terms
+   */
+  static boolean isIdSerialization(final SolrParams params) {
+    return ROARING.equals(ParamUtil.tryGetStringByName(params, "serialization", ""));
+  }
+
+  /**
+   * @param params Solr local params of the tag
+   * @return Whether values are compressed or serialized, so they can't be used as terms as they are
+   */
+  static boolean isFiltered(final SolrParams params) {
+    return !ParamUtil.tryGetStringByName(params, "compression", "").isEmpty()
+        || !ParamUtil.tryGetStringByName(params, "serialization", "").isEmpty();
+  }
+
+  /**
+   * Deserializes a value holding ids. An uncompressed bitmap is read in place, without copying the value.
+   *
+   * @param params Solr local params of the tag
+   * @param byteValue Value
+   * @return Ids of the value
+   * @throws UnsupportedAlgorithmException If the compression is not supported
+   * @throws DeserializationException If the value does not hold ids
+   */
+  IdSet filterIds(final SolrParams params, final byte[] byteValue)
       throws UnsupportedAlgorithmException, DeserializationException {
     final String compression = ParamUtil.tryGetStringByName(params, "compression", "");
     final String serializationForm = ParamUtil.tryGetStringByName(params, "serialization", "");
+    final ValueCodec codec = codec(compression);
+    if (!ROARING.equals(serializationForm)) {
+      throw new DeserializationException(String.format("Serialization format '%s' does not hold ids",
+          serializationForm));
+    }
 
-    return deserialize(serializationForm, inflate(compression, byteValue));
+    // Ids are read in place, so they can't stay in the buffer of the codec
+    final byte[] bytes = codec == null ? byteValue : BytesRef.deepCopyOf(decompress(codec, byteValue)).bytes;
+
+    return RoaringIds.wrap(bytes, 0, bytes.length);
   }
 
-  private static String inflate(final String compression, final byte[] bytes) throws UnsupportedAlgorithmException {
-    if ("".equals(compression)) {
-      return new String(bytes);
-    } else if ("gzip".equals(compression)) {
-      return inflateGzip(bytes);
+  ScoredTerms filterValue(final SolrParams params, final byte[] byteValue)
+      throws UnsupportedAlgorithmException, DeserializationException {
+    final String compression = ParamUtil.tryGetStringByName(params, "compression", "");
+    final String serializationForm = ParamUtil.tryGetStringByName(params, "serialization", "");
+    if (ROARING.equals(serializationForm)) {
+      return filterIds(params, byteValue).toTerms();
+    }
+
+    final ValueCodec codec = codec(compression);
+    if ("".equals(serializationForm)) {
+      return deserializePlain(codec, byteValue);
+    } else if ("json".equals(serializationForm)) {
+      return deserializeJson(codec, byteValue);
+    } else if (JSON_SCORED.equals(serializationForm)) {
+      return deserializeJsonScored(codec, byteValue);
+    } else if (BinaryTerms.isBinary(serializationForm)) {
+      return BinaryTerms.decode(serializationForm, decompress(codec, byteValue));
     } else {
-      throw new UnsupportedAlgorithmException(String.format("Unsupported algorithm: '%s'", compression));
+      throw new DeserializationException(String.format("Unsupported serialization format: '%s'", serializationForm));
     }
   }
 
-  private static Map<String, Float> deserialize(final String serializationFormat, final String value)
-      throws DeserializationException {
+  /**
+   * @param compression Name of the compression, empty if values are not compressed
+   * @return Codec decompressing values, null if values are not compressed
+   * @throws UnsupportedAlgorithmException If no codec is registered with the name
+   */
+  private ValueCodec codec(final String compression) throws UnsupportedAlgorithmException {
+    if ("".equals(compression)) {
+      return null;
+    }
 
-    if ("".equals(serializationFormat)) {
-      return ResultUtil.stringIteratorToMap(Collections.singletonList(value));
-    } else if ("json".equals(serializationFormat)) {
-      return ResultUtil.stringIteratorToMap(Arrays.asList(deserializeJson(value)));
-    } else {
-      throw new DeserializationException(String.format("Unsupported serialization format: '%s'", serializationFormat));
+    final ValueCodec codec = codecs.get(compression);
+    if (codec == null) {
+      throw new UnsupportedAlgorithmException(String.format("Unsupported algorithm: '%s'", compression));
     }
+    return codec;
   }
 
-  private static String inflateGzip(final byte[] bytes) {
-    log.debug("Decompressing GZIP data");
+  private static BytesRef decompress(final ValueCodec codec, final byte[] bytes) throws DeserializationException {
+    if (codec == null) {
+      return new BytesRef(bytes);
+    }
 
     try {
-      try (
-          final GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(bytes));
-          final BufferedReader buffer = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-      ) {
-        String value = "";
-        String line;
-        while ((line = buffer.readLine()) != null) {
-          value += line;
-        }
-        return value;
-      }
-    } catch (final UnsupportedEncodingException e) {
-      log.warn("Unsupported encoding, using string as is: {}", e.getMessage());
-      return new String(bytes);
+      return codec.decompress(bytes);
     } catch (final IOException e) {
-      log.warn("Compression exception, using string as is: {}", e.getMessage());
-      return new String(bytes);
+      throw new DeserializationException("Compression exception: " + e.getMessage(), e);
+    }
+  }
+
+  private static ScoredTerms deserializePlain(final ValueCodec codec, final byte[] bytes) {
+    BytesRef value = new BytesRef(bytes);
+    if (codec != null) {
+      try {
+        value = codec.decompress(bytes);
+      } catch (final IOException e) {
+        log.warn("Compression exception, using string as is: {}", e.getMessage());
+      }
     }
+    return new ScoredTerms.Builder(1).add(value, Float.NaN).build();
   }
 
-  private static String[] deserializeJson(final String value) {
+  private static ScoredTerms deserializeJson(final ValueCodec codec, final byte[] bytes) {
     log.debug("Deserialization JSON data");
 
-    try {
-      return new Gson().fromJson(value, String[].class);
-    } catch (final JsonSyntaxException e) {
+    try (final JsonReader reader = jsonReader(codec, bytes)) {
+      final ScoredTerms.Builder builder = new ScoredTerms.Builder();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+        } else {
+          builder.add(reader.nextString());
+        }
+      }
+      reader.endArray();
+      assertConsumed(reader);
+      return builder.build();
+    } catch (final IOException | IllegalStateException e) {
       log.warn("Deserialization error, using string as is: {}", e.getMessage());
-      return new String[]{value};
+      return deserializePlain(codec, bytes);
+    }
+  }
+
+  /**
+   * Reads a JSON object of terms and their weights, e.g. {@code {"a": 1.5, "b": 2}}, token by token. A null weight
+   * adds the term without a weight.
+   *
+   * @param codec Codec decompressing the value, null if the value is not compressed
+   * @param bytes Value
+   * @return Scored terms in the order of the object
+   * @throws DeserializationException If the value is not a JSON object of numbers
+   */
+  private static ScoredTerms deserializeJsonScored(final ValueCodec codec, final byte[] bytes)
+      throws DeserializationException {
+    log.debug("Deserialization scored JSON data");
+
+    try (final JsonReader reader = jsonReader(codec, bytes)) {
+      final ScoredTerms.Builder builder = new ScoredTerms.Builder();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String term = reader.nextName();
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          builder.add(term, Float.NaN);
+        } else {
+          builder.add(term, (float) reader.nextDouble());
+        }
+      }
+      reader.endObject();
+      assertConsumed(reader);
+      return builder.build();
+    } catch (final IOException | IllegalStateException | NumberFormatException e) {
+      throw new DeserializationException("Deserialization exception: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @param codec Codec decompressing the value, null if the value is not compressed
+   * @param bytes Value
+   * @return Lenient reader of the JSON value, decompressing it while it is read
+   * @throws IOException If the codec fails to start decompressing
+   */
+  private static JsonReader jsonReader(final ValueCodec codec, final byte[] bytes) throws IOException {
+    final JsonReader reader = new JsonReader(new InputStreamReader(
+        codec == null ? new ByteArrayInputStream(bytes) : codec.open(bytes), StandardCharsets.UTF_8));
+    reader.setLenient(true);
+    return reader;
+  }
+
+  /**
+   * @param reader Reader past the end of the top level value
+   * @throws IOException If more data follows the top level value
+   */
+  private static void assertConsumed(final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.END_DOCUMENT) {
+      throw new MalformedJsonException("JSON document was not fully consumed");
     }
   }
 }
@@ -4,13 +4,17 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class ZRangeByScore implements Command<JedisCommands> {
+public final class ZRangeByScore implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(ZRangeByScore.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final String min = ParamUtil.tryGetStringByName(params, "min", "-inf");
     final String max = ParamUtil.tryGetStringByName(params, "max", "+inf");
@@ -19,9 +23,27 @@ public final class ZRangeByScore implements Command<JedisCommands> {
     log.debug("Fetching ZRANGEBYSCORE from Redis for key: {} ({}, {})", key, min, max);
 
     if (withScores) {
-      return ResultUtil.tupleIteratorToMap(client.zrangeByScoreWithScores(key, min, max));
+      return ResultUtil.tupleIteratorToTerms(client.zrangeByScoreWithScores(key, min, max));
     } else {
-      return ResultUtil.stringIteratorToMap(client.zrangeByScore(key, min, max));
+      return ResultUtil.stringIteratorToOrderedTerms(client.zrangeByScore(key, min, max));
+    }
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final String min = ParamUtil.tryGetStringByName(params, "min", "-inf");
+    final String max = ParamUtil.tryGetStringByName(params, "max", "+inf");
+    final boolean withScores = ParamUtil.tryGetBooleanByName(params, "with_scores", true);
+
+    log.debug("Queueing ZRANGEBYSCORE for key: {} ({}, {})", key, min, max);
+
+    if (withScores) {
+      final Response<Set<Tuple>> response = pipeline.zrangeByScoreWithScores(key, min, max);
+      return () -> ResultUtil.tupleIteratorToTerms(response.get());
+    } else {
+      final Response<Set<String>> response = pipeline.zrangeByScore(key, min, max);
+      return () -> ResultUtil.stringIteratorToOrderedTerms(response.get());
     }
   }
 }
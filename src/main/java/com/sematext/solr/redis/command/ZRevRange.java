@@ -4,13 +4,17 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public class ZRevRange implements Command<JedisCommands> {
+public class ZRevRange implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(ZRevRange.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final long start = ParamUtil.tryGetIntByName(params, "range_start", 0);
     final long end = ParamUtil.tryGetIntByName(params, "range_end", -1);
@@ -19,9 +23,27 @@ public class ZRevRange implements Command<JedisCommands> {
     log.debug("Fetching ZREVRANGE from Redis for key: {} ({}, {})", key, start, end);
 
     if (withScores) {
-      return ResultUtil.tupleIteratorToMap(client.zrevrangeWithScores(key, start, end));
+      return ResultUtil.tupleIteratorToTerms(client.zrevrangeWithScores(key, start, end));
     } else {
-      return ResultUtil.stringIteratorToMap(client.zrevrange(key, start, end));
+      return ResultUtil.stringIteratorToOrderedTerms(client.zrevrange(key, start, end));
+    }
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final long start = ParamUtil.tryGetIntByName(params, "range_start", 0);
+    final long end = ParamUtil.tryGetIntByName(params, "range_end", -1);
+    final boolean withScores = ParamUtil.tryGetBooleanByName(params, "with_scores", true);
+
+    log.debug("Queueing ZREVRANGE for key: {} ({}, {})", key, start, end);
+
+    if (withScores) {
+      final Response<Set<Tuple>> response = pipeline.zrevrangeWithScores(key, start, end);
+      return () -> ResultUtil.tupleIteratorToTerms(response.get());
+    } else {
+      final Response<Set<String>> response = pipeline.zrevrange(key, start, end);
+      return () -> ResultUtil.stringIteratorToOrderedTerms(response.get());
     }
   }
 }
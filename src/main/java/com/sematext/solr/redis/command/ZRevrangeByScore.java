@@ -4,13 +4,17 @@ import org.apache.solr.common.params.SolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.JedisCommands;
-import java.util.Map;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import java.util.Set;
+import java.util.function.Supplier;
 
-public final class ZRevrangeByScore implements Command<JedisCommands> {
+public final class ZRevrangeByScore implements Command<JedisCommands>, PipelinedCommand {
   private static final Logger log = LoggerFactory.getLogger(ZRevrangeByScore.class);
 
   @Override
-  public Map<String, Float> execute(final JedisCommands client, final SolrParams params) {
+  public ScoredTerms execute(final JedisCommands client, final SolrParams params) {
     final String key = ParamUtil.assertGetStringByName(params, "key");
     final String min = ParamUtil.tryGetStringByName(params, "min", "-inf");
     final String max = ParamUtil.tryGetStringByName(params, "max", "+inf");
@@ -19,9 +23,27 @@ public final class ZRevrangeByScore implements Command<JedisCommands> {
     log.debug("Fetching ZREVRANGEBYSCORE from Redis for key: {} ({}, {})", key, min, max);
 
     if (withScores) {
-      return ResultUtil.tupleIteratorToMap(client.zrevrangeByScoreWithScores(key, max, min));
+      return ResultUtil.tupleIteratorToTerms(client.zrevrangeByScoreWithScores(key, max, min));
     } else {
-      return ResultUtil.stringIteratorToMap(client.zrevrangeByScore(key, max, min));
+      return ResultUtil.stringIteratorToOrderedTerms(client.zrevrangeByScore(key, max, min));
+    }
+  }
+
+  @Override
+  public Supplier<ScoredTerms> queue(final Pipeline pipeline, final SolrParams params) {
+    final String key = ParamUtil.assertGetStringByName(params, "key");
+    final String min = ParamUtil.tryGetStringByName(params, "min", "-inf");
+    final String max = ParamUtil.tryGetStringByName(params, "max", "+inf");
+    final boolean withScores = ParamUtil.tryGetBooleanByName(params, "with_scores", true);
+
+    log.debug("Queueing ZREVRANGEBYSCORE for key: {} ({}, {})", key, min, max);
+
+    if (withScores) {
+      final Response<Set<Tuple>> response = pipeline.zrevrangeByScoreWithScores(key, max, min);
+      return () -> ResultUtil.tupleIteratorToTerms(response.get());
+    } else {
+      final Response<Set<String>> response = pipeline.zrevrangeByScore(key, max, min);
+      return () -> ResultUtil.stringIteratorToOrderedTerms(response.get());
     }
   }
 }
@@ -0,0 +1,109 @@
+package com.sematext.solr.redis.command;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Codec of values in the Zstandard frame format, decoded by zstd-jni. Values whose frame holds a plausible content
+ * size for the size of the value are decoded in a single call straight into a buffer of that size, other values are
+ * decoded as a stream.
+ * <p> Many small similar values, e.g. the JSON arrays of the filters of users, compress much better with a dictionary
+ * trained on samples of them with {@code zstd --train}. The path of the dictionary is the {@code dictionary} argument
+ * of the codec in solrconfig.xml, it is loaded once and shared by all threads. The
+ * {@value ValueCodecs#MAX_DECOMPRESSED_BYTES_ARG} argument limits the size of a decompressed value.
+ *
+ * @author prog
+ */
+public final class ZstdCodec implements ValueCodec {
+  /**
+   * Name of the argument holding the path of the dictionary
+   */
+  public static final String DICTIONARY_ARG = "dictionary";
+
+  /**
+   * Buffer of each thread holding decompressed values
+   */
+  private ThreadBuffer buffer;
+
+  /**
+   * Digested dictionary the values were compressed with, null if they were compressed without a dictionary
+   */
+  private ZstdDictDecompress dictionary;
+
+  /**
+   * Creates a codec without a dictionary, decompressing values up to the default limit
+   */
+  public ZstdCodec() {
+    this(ValueCodecs.DEFAULT_MAX_DECOMPRESSED_BYTES);
+  }
+
+  /**
+   * @param maxDecompressedBytes Largest decompressed value
+   */
+  ZstdCodec(final int maxDecompressedBytes) {
+    buffer = new ThreadBuffer(maxDecompressedBytes);
+  }
+
+  @Override
+  public void init(final NamedList<?> args) {
+    final Object maxDecompressedBytes = args.get(ValueCodecs.MAX_DECOMPRESSED_BYTES_ARG);
+    if (maxDecompressedBytes != null) {
+      buffer = new ThreadBuffer(ValueCodecs.parseMaxDecompressedBytes(maxDecompressedBytes));
+    }
+
+    final Object path = args.get(DICTIONARY_ARG);
+    if (path == null) {
+      return;
+    }
+
+    try {
+      dictionary = new ZstdDictDecompress(Files.readAllBytes(Paths.get(path.toString())));
+    } catch (final IOException e) {
+      throw new IllegalArgumentException("Can't read Zstandard dictionary " + path, e);
+    }
+  }
+
+  @Override
+  public BytesRef decompress(final byte[] compressed) throws IOException {
+    final long size = Zstd.getFrameContentSize(compressed);
+    buffer.checkSize(size);
+    if (size >= 0 && size <= buffer.trustedSize(size, compressed.length)) {
+      final byte[] output = buffer.get((int) size);
+      try {
+        final long length = dictionary == null
+            ? Zstd.decompressByteArray(output, 0, output.length, compressed, 0, compressed.length)
+            : Zstd.decompressFastDict(output, 0, compressed, 0, compressed.length, dictionary);
+        return new BytesRef(output, 0, (int) length);
+      } catch (final ZstdException e) {
+        if (e.getErrorCode() != Zstd.errDstSizeTooSmall()) {
+          throw new IOException("Malformed Zstandard value: " + e.getMessage(), e);
+        }
+        // Concatenated frames, only the size of the first one is known
+      }
+    }
+
+    try (final InputStream stream = open(compressed)) {
+      // Without a content size, compressed text usually shrinks to less than a fourth
+      return buffer.readFully(stream, buffer.trustedSize(compressed.length * 4L, compressed.length));
+    }
+  }
+
+  @Override
+  public InputStream open(final byte[] compressed) throws IOException {
+    final ZstdInputStreamNoFinalizer stream = new ZstdInputStreamNoFinalizer(new ByteArrayInputStream(compressed));
+    if (dictionary != null) {
+      stream.setDict(dictionary);
+    }
+    return stream;
+  }
+}
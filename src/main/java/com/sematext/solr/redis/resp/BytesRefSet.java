@@ -0,0 +1,167 @@
+package com.sematext.solr.redis.resp;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Read-only set of the distinct members of a {@link BytesRefSlab}.
+ * <p> The set is an open-addressing hash table with linear probing whose slots hold the index of a member in the slab,
+ * so it costs a single int array on top of the slab and looking a member up allocates nothing. The set is safe to
+ * use from several threads.
+ *
+ * @author prog
+ */
+public final class BytesRefSet implements Accountable {
+  /**
+   * Shallow size of the set
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BytesRefSet.class);
+
+  /**
+   * Members
+   */
+  private final BytesRefSlab members;
+
+  /**
+   * Index of the member in each slot plus one, 0 for empty slots
+   */
+  private final int[] slots;
+
+  /**
+   * Mask turning a hash into a slot
+   */
+  private final int mask;
+
+  /**
+   * Number of distinct members
+   */
+  private final int size;
+
+  /**
+   * Sum of the hashes of the distinct members
+   */
+  private final int hash;
+
+  /**
+   * Indexes the members of a slab. The slab must not change afterwards.
+   *
+   * @param members Members, repeated members are only indexed once
+   */
+  public BytesRefSet(final BytesRefSlab members) {
+    this.members = members;
+    // At most half of the slots are used, so probe sequences stay short
+    this.slots = new int[Math.max(2, Integer.highestOneBit(Math.max(members.size(), 1) * 2 - 1) << 1)];
+    this.mask = slots.length - 1;
+
+    int distinct = 0;
+    int hashSum = 0;
+    final BytesRef member = new BytesRef();
+    for (int i = 0; i < members.size(); i++) {
+      members.get(i, member);
+      final int memberHash = hash(member);
+      final int slot = find(member, memberHash);
+      if (slots[slot] == 0) {
+        slots[slot] = i + 1;
+        distinct++;
+        hashSum += memberHash;
+      }
+    }
+    this.size = distinct;
+    this.hash = hashSum;
+  }
+
+  /**
+   * @param term Term to look up
+   * @return Whether the term is a member
+   */
+  public boolean contains(final BytesRef term) {
+    return slots[find(term, hash(term))] != 0;
+  }
+
+  /**
+   * @return Number of distinct members
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return Iterator over the distinct members, in no particular order
+   */
+  public BytesRefIterator iterator() {
+    final BytesRef member = new BytesRef();
+    return new BytesRefIterator() {
+      /**
+       * Next slot to look at
+       */
+      private int slot;
+
+      @Override
+      public BytesRef next() {
+        while (slot < slots.length) {
+          final int index = slots[slot++];
+          if (index != 0) {
+            return members.get(index - 1, member);
+          }
+        }
+        return null;
+      }
+    };
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + members.ramBytesUsed() + RamUsageEstimator.sizeOf(slots);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof BytesRefSet)) {
+      return false;
+    }
+
+    final BytesRefSet other = (BytesRefSet) obj;
+    if (size != other.size || hash != other.hash) {
+      return false;
+    }
+    final BytesRef member = new BytesRef();
+    for (final int slot : slots) {
+      if (slot != 0 && !other.contains(members.get(slot - 1, member))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param term Term to look up
+   * @param termHash Hash of the term
+   * @return Slot holding the term, or the empty slot the term belongs to
+   */
+  private int find(final BytesRef term, final int termHash) {
+    int slot = termHash & mask;
+    while (slots[slot] != 0 && !members.equals(slots[slot] - 1, term)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * @param term Term
+   * @return Hash of the term
+   */
+  private static int hash(final BytesRef term) {
+    return StringHelper.murmurhash3_x86_32(term.bytes, term.offset, term.length, 0);
+  }
+}
@@ -0,0 +1,172 @@
+package com.sematext.solr.redis.resp;
+
+import java.util.Arrays;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Append-only list of byte sequences stored back to back in a single byte array.
+ * <p> Members are exposed as {@link BytesRef} slices of the shared array, so reading them neither copies bytes nor
+ * allocates per member objects. Slices stay valid when the slab grows later on.
+ *
+ * @author prog
+ */
+public final class BytesRefSlab implements Accountable {
+  /**
+   * Shallow size of the slab
+   */
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BytesRefSlab.class);
+
+  /**
+   * Default initial capacity in bytes
+   */
+  private static final int DEFAULT_BYTES = 1024;
+
+  /**
+   * Default initial capacity in members
+   */
+  private static final int DEFAULT_MEMBERS = 16;
+
+  /**
+   * Member bytes
+   */
+  private byte[] bytes;
+
+  /**
+   * Start offset of each member, followed by the end offset of the last member
+   */
+  private int[] offsets;
+
+  /**
+   * Number of members
+   */
+  private int size;
+
+  /**
+   * Creates an empty slab with default capacity.
+   */
+  public BytesRefSlab() {
+    this(DEFAULT_BYTES, DEFAULT_MEMBERS);
+  }
+
+  /**
+   * Creates an empty slab.
+   *
+   * @param initialBytes Initial capacity in bytes
+   * @param initialMembers Initial capacity in members
+   */
+  public BytesRefSlab(final int initialBytes, final int initialMembers) {
+    bytes = new byte[Math.max(initialBytes, 1)];
+    offsets = new int[Math.max(initialMembers, 1) + 1];
+  }
+
+  /**
+   * Appends a member.
+   *
+   * @param source Array holding the member
+   * @param offset Start of the member in the array
+   * @param length Length of the member
+   */
+  public void append(final byte[] source, final int offset, final int length) {
+    final int start = reserve(length);
+    System.arraycopy(source, offset, bytes, start, length);
+    commit(length);
+  }
+
+  /**
+   * Appends a member.
+   *
+   * @param member Member to append
+   */
+  public void append(final BytesRef member) {
+    append(member.bytes, member.offset, member.length);
+  }
+
+  /**
+   * Reserves room for a member which is written straight into {@link #buffer()} and then added with
+   * {@link #commit(int)}.
+   *
+   * @param length Length of the member
+   * @return Offset in {@link #buffer()} to write the member to
+   */
+  public int reserve(final int length) {
+    final int end = offsets[size];
+    if (end + length > bytes.length) {
+      bytes = ArrayUtil.grow(bytes, end + length);
+    }
+    if (size + 2 > offsets.length) {
+      offsets = ArrayUtil.grow(offsets, size + 2);
+    }
+    return end;
+  }
+
+  /**
+   * Adds the member written to the reserved room.
+   *
+   * @param length Length of the member
+   */
+  public void commit(final int length) {
+    offsets[size + 1] = offsets[size] + length;
+    size++;
+  }
+
+  /**
+   * Removes all members, keeping the allocated capacity.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * @return Array the next member is written to, only valid until the next {@link #reserve(int)}
+   */
+  public byte[] buffer() {
+    return bytes;
+  }
+
+  /**
+   * @return Number of members
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Points a BytesRef to a member.
+   *
+   * @param index Index of the member
+   * @param target BytesRef to point to the member
+   * @return The target
+   */
+  public BytesRef get(final int index, final BytesRef target) {
+    target.bytes = bytes;
+    target.offset = offsets[index];
+    target.length = offsets[index + 1] - offsets[index];
+    return target;
+  }
+
+  /**
+   * @param index Index of the member
+   * @return New BytesRef pointing to the member
+   */
+  public BytesRef get(final int index) {
+    return get(index, new BytesRef());
+  }
+
+  /**
+   * @param index Index of the member
+   * @param term Term to compare with
+   * @return Whether the member equals the term
+   */
+  public boolean equals(final int index, final BytesRef term) {
+    return Arrays.equals(bytes, offsets[index], offsets[index + 1], term.bytes, term.offset,
+        term.offset + term.length);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytes) + RamUsageEstimator.sizeOf(offsets);
+  }
+}
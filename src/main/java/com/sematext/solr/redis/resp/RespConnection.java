@@ -0,0 +1,113 @@
+package com.sematext.solr.redis.resp;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends commands over the socket of a pooled Jedis connection and decodes the replies with a {@link RespReader}.
+ * <p> Jedis is only used for pooling, authentication and database selection. Between two Jedis commands its
+ * buffers are empty, so the socket can be used directly. If reading or writing fails, the connection is closed, so
+ * it is reopened before it is used again.
+ *
+ * @author prog
+ */
+public final class RespConnection {
+  /**
+   * Pooled Jedis connection
+   */
+  private final Jedis jedis;
+
+  /**
+   * @param jedis Pooled Jedis connection
+   */
+  public RespConnection(final Jedis jedis) {
+    this.jedis = jedis;
+  }
+
+  /**
+   * Executes a command whose reply holds members.
+   *
+   * @param args Command name followed by its arguments
+   * @return Members of the reply
+   */
+  public BytesRefSlab execute(final byte[]... args) {
+    final List<byte[][]> commands = new ArrayList<>(1);
+    commands.add(args);
+    return executeAll(commands).get(0);
+  }
+
+  /**
+   * Executes commands in one round trip.
+   *
+   * @param commands Commands, each being the command name followed by its arguments
+   * @return Members of the replies in the same order as the commands
+   */
+  public List<BytesRefSlab> executeAll(final List<byte[][]> commands) {
+    final List<BytesRefSlab> replies = new ArrayList<>(commands.size());
+    executeAll(commands, (reader, command) -> {
+      final BytesRefSlab slab = new BytesRefSlab();
+      reader.readMembers(slab);
+      replies.add(slab);
+    });
+    return replies;
+  }
+
+  /**
+   * Executes commands in one round trip and lets the caller read the replies.
+   *
+   * @param commands Commands, each being the command name followed by its arguments
+   * @param replyReader Reads the reply of each command, in the same order as the commands
+   */
+  public void executeAll(final List<byte[][]> commands, final ReplyReader replyReader) {
+    final Client client = jedis.getClient();
+    try {
+      if (!client.isConnected()) {
+        client.connect();
+      }
+
+      final OutputStream out = client.getSocket().getOutputStream();
+      for (final byte[][] args : commands) {
+        out.write(RespReader.encodeCommand(args));
+      }
+      out.flush();
+
+      final RespReader reader = new RespReader(client.getSocket().getInputStream());
+      for (int i = 0; i < commands.size(); i++) {
+        try {
+          replyReader.read(reader, i);
+        } catch (final JedisDataException e) {
+          if (i < commands.size() - 1) {
+            // Replies of the following commands are still unread
+            client.disconnect();
+          }
+          throw e;
+        }
+      }
+    } catch (final IOException e) {
+      client.disconnect();
+      throw new JedisConnectionException(e);
+    } catch (final JedisConnectionException e) {
+      client.disconnect();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the reply of a command
+   */
+  @FunctionalInterface
+  public interface ReplyReader {
+    /**
+     * @param reader Reader positioned at the reply
+     * @param command Index of the command the reply belongs to
+     * @throws IOException If reading fails
+     */
+    void read(RespReader reader, int command) throws IOException;
+  }
+}
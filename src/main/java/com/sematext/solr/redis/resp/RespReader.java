@@ -0,0 +1,553 @@
+package com.sematext.solr.redis.resp;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads replies of the Redis serialization protocol (RESP).
+ * <p> Bulk strings are decoded straight into a {@link BytesRefSlab}. Large bulk strings are read from the stream
+ * directly into the slab, so member bytes are copied at most once and never turned into Strings.
+ * <p> {@link #readMembers} also reads the types added by RESP3, so it reads the replies and push messages of
+ * connections switched to RESP3 with HELLO.
+ *
+ * @author prog
+ */
+public final class RespReader {
+  /**
+   * Default read buffer size
+   */
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Stream to read from
+   */
+  private final InputStream in;
+
+  /**
+   * Read buffer
+   */
+  private final byte[] buffer;
+
+  /**
+   * Position of the next unread byte in the buffer
+   */
+  private int position;
+
+  /**
+   * End of the valid bytes in the buffer
+   */
+  private int limit;
+
+  /**
+   * @param in Stream to read from
+   */
+  public RespReader(final InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param in Stream to read from
+   * @param bufferSize Read buffer size
+   */
+  public RespReader(final InputStream in, final int bufferSize) {
+    this.in = in;
+    this.buffer = new byte[bufferSize];
+  }
+
+  /**
+   * Reads a reply and appends the strings it holds to a slab. Arrays are flattened, nil values are skipped and
+   * integers are appended in their decimal form. RESP3 sets and push messages are flattened like arrays, maps into
+   * their keys and values in turn, while booleans, doubles and big numbers are appended as they are sent.
+   *
+   * @param slab Slab to append to
+   * @return Number of appended members
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public int readMembers(final BytesRefSlab slab) throws IOException {
+    final int before = slab.size();
+    final byte type = readByte();
+
+    switch (type) {
+      case '*':
+      case '~':
+      case '>':
+        final long count = readLong();
+        for (long i = 0; i < count; i++) {
+          readMembers(slab);
+        }
+        break;
+      case '%':
+        final long entries = readLong();
+        for (long i = 0; i < 2 * entries; i++) {
+          readMembers(slab);
+        }
+        break;
+      case '$':
+      case '=':
+        final long length = readLong();
+        if (length >= 0) {
+          readBulk(slab, (int) length);
+        }
+        break;
+      case '+':
+      case ':':
+      case '#':
+      case ',':
+      case '(':
+        readLine(slab);
+        break;
+      case '_':
+        readCrLf();
+        break;
+      case '-':
+        throw readError();
+      case '!':
+        final BytesRefSlab message = new BytesRefSlab(64, 1);
+        readBulk(message, (int) readLong());
+        throw toException(message.get(0).utf8ToString());
+      default:
+        throw new JedisConnectionException("Unknown reply type: " + (char) type);
+    }
+
+    return slab.size() - before;
+  }
+
+  /**
+   * Reads an array reply telling for each element whether it is set, like the replies of SMISMEMBER and HMGET.
+   * Nil elements and the integer 0 are unset, any other element is set. Values are skipped without being copied.
+   *
+   * @param flags Array the flags are written to
+   * @param offset Index of the flag of the first element
+   * @return Number of elements
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public int readFlags(final boolean[] flags, final int offset) throws IOException {
+    final int count = readArrayLength();
+
+    for (int i = 0; i < count; i++) {
+      final byte type = readByte();
+      switch (type) {
+        case ':':
+          flags[offset + i] = readLong() != 0;
+          break;
+        case '$':
+          final long length = readLong();
+          flags[offset + i] = length >= 0;
+          if (length >= 0) {
+            skip(length);
+            readCrLf();
+          }
+          break;
+        case '+':
+          skipLine();
+          flags[offset + i] = true;
+          break;
+        case '-':
+          throw readError();
+        default:
+          throw new JedisConnectionException("Unexpected element type: " + (char) type);
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Reads an array reply of scores, like the reply of ZMSCORE. Nil elements are read as NaN.
+   *
+   * @param scores Array the scores are written to
+   * @param offset Index of the score of the first element
+   * @return Number of elements
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public int readScores(final double[] scores, final int offset) throws IOException {
+    final int count = readArrayLength();
+    final BytesRefSlab score = new BytesRefSlab(32, 1);
+
+    for (int i = 0; i < count; i++) {
+      final byte type = readByte();
+      switch (type) {
+        case ':':
+          scores[offset + i] = readLong();
+          break;
+        case '$':
+          final long length = readLong();
+          if (length < 0) {
+            scores[offset + i] = Double.NaN;
+          } else {
+            score.clear();
+            readBulk(score, (int) length);
+            scores[offset + i] = parseScore(score.get(0).utf8ToString());
+          }
+          break;
+        case '-':
+          throw readError();
+        default:
+          throw new JedisConnectionException("Unexpected element type: " + (char) type);
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Reads an integer reply, like the reply of STRLEN.
+   *
+   * @return Read integer
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public long readInteger() throws IOException {
+    final byte type = readByte();
+    if (type == '-') {
+      throw readError();
+    }
+    if (type != ':') {
+      throw new JedisConnectionException("Expected an integer reply but got: " + (char) type);
+    }
+    return readLong();
+  }
+
+  /**
+   * Reads a bulk string reply, like the reply of GETRANGE, straight into an array. Bytes which don't fit in the array
+   * are skipped.
+   *
+   * @param target Array to read into
+   * @param offset Index in the array of the first byte
+   * @return Number of bytes read into the array, 0 for a nil reply
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public int readBulk(final byte[] target, final int offset) throws IOException {
+    final byte type = readByte();
+    if (type == '-') {
+      throw readError();
+    }
+    if (type != '$') {
+      throw new JedisConnectionException("Expected a bulk string reply but got: " + (char) type);
+    }
+
+    final long length = readLong();
+    if (length < 0) {
+      return 0;
+    }
+    final int read = (int) Math.min(length, target.length - offset);
+    readFully(target, offset, read);
+    skip(length - read);
+    readCrLf();
+    return read;
+  }
+
+  /**
+   * Reads a bulk string reply, like the reply of GET, into an array of its exact length.
+   *
+   * @return Read bytes, null for a nil reply
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public byte[] readBulk() throws IOException {
+    final byte type = readByte();
+    if (type == '-') {
+      throw readError();
+    }
+    if (type != '$') {
+      throw new JedisConnectionException("Expected a bulk string reply but got: " + (char) type);
+    }
+
+    final long length = readLong();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[(int) length];
+    readFully(bytes, 0, bytes.length);
+    readCrLf();
+    return bytes;
+  }
+
+  /**
+   * Reads the header of an array reply, like the reply of MGET, whose elements are then read one by one.
+   *
+   * @return Number of elements of the array reply which is read next, 0 for a nil array
+   * @throws IOException If reading fails
+   * @throws JedisDataException If Redis replied with an error
+   */
+  public int readArrayLength() throws IOException {
+    final byte type = readByte();
+    if (type == '-') {
+      throw readError();
+    }
+    if (type != '*') {
+      throw new JedisConnectionException("Expected an array reply but got: " + (char) type);
+    }
+    return (int) Math.max(readLong(), 0);
+  }
+
+  /**
+   * Reads the message of an error reply.
+   *
+   * @return Exception to throw
+   * @throws IOException If reading fails
+   */
+  private JedisDataException readError() throws IOException {
+    final BytesRefSlab message = new BytesRefSlab(64, 1);
+    readLine(message);
+    return toException(message.get(0).utf8ToString());
+  }
+
+  /**
+   * Reads a bulk string of known length into the slab.
+   *
+   * @param slab Slab to append to
+   * @param length Length of the bulk string
+   * @throws IOException If reading fails
+   */
+  private void readBulk(final BytesRefSlab slab, final int length) throws IOException {
+    final int offset = slab.reserve(length);
+    readFully(slab.buffer(), offset, length);
+    slab.commit(length);
+    readCrLf();
+  }
+
+  /**
+   * Reads bytes into an array.
+   *
+   * @param target Array to read into
+   * @param start Index in the array of the first byte
+   * @param length Number of bytes to read
+   * @throws IOException If reading fails
+   */
+  private void readFully(final byte[] target, final int start, final int length) throws IOException {
+    int offset = start;
+    int remaining = length;
+
+    final int buffered = Math.min(remaining, limit - position);
+    System.arraycopy(buffer, position, target, offset, buffered);
+    position += buffered;
+    offset += buffered;
+    remaining -= buffered;
+
+    if (remaining >= buffer.length) {
+      // Too large to go through the buffer, read straight into the target
+      while (remaining > 0) {
+        final int read = in.read(target, offset, remaining);
+        if (read < 0) {
+          throw new JedisConnectionException("Unexpected end of stream");
+        }
+        offset += read;
+        remaining -= read;
+      }
+    } else {
+      while (remaining > 0) {
+        fill();
+        final int chunk = Math.min(remaining, limit - position);
+        System.arraycopy(buffer, position, target, offset, chunk);
+        position += chunk;
+        offset += chunk;
+        remaining -= chunk;
+      }
+    }
+  }
+
+  /**
+   * Reads the rest of a line into the slab.
+   *
+   * @param slab Slab to append to
+   * @throws IOException If reading fails
+   */
+  private void readLine(final BytesRefSlab slab) throws IOException {
+    int length = 0;
+    int offset = slab.reserve(0);
+
+    while (true) {
+      final byte b = readByte();
+      if (b == '\r') {
+        readExpected('\n');
+        break;
+      }
+      offset = slab.reserve(length + 1);
+      slab.buffer()[offset + length++] = b;
+    }
+
+    slab.commit(length);
+  }
+
+  /**
+   * Skips the rest of a line.
+   *
+   * @throws IOException If reading fails
+   */
+  private void skipLine() throws IOException {
+    while (readByte() != '\r') {
+      // Skipping
+    }
+    readExpected('\n');
+  }
+
+  /**
+   * Skips bytes without copying them.
+   *
+   * @param length Number of bytes to skip
+   * @throws IOException If reading fails
+   */
+  private void skip(final long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      fill();
+      final int chunk = (int) Math.min(remaining, limit - position);
+      position += chunk;
+      remaining -= chunk;
+    }
+  }
+
+  /**
+   * Reads a signed decimal number terminated by CRLF.
+   *
+   * @return Read number
+   * @throws IOException If reading fails
+   */
+  private long readLong() throws IOException {
+    boolean negative = false;
+    long value = 0;
+
+    byte b = readByte();
+    if (b == '-') {
+      negative = true;
+      b = readByte();
+    }
+
+    while (b != '\r') {
+      value = value * 10 + (b - '0');
+      b = readByte();
+    }
+    readExpected('\n');
+
+    return negative ? -value : value;
+  }
+
+  /**
+   * @throws IOException If reading fails
+   */
+  private void readCrLf() throws IOException {
+    readExpected('\r');
+    readExpected('\n');
+  }
+
+  /**
+   * @param expected Expected byte
+   * @throws IOException If reading fails
+   */
+  private void readExpected(final char expected) throws IOException {
+    final byte b = readByte();
+    if (b != expected) {
+      throw new JedisConnectionException("Expected '" + expected + "' but got '" + (char) b + "'");
+    }
+  }
+
+  /**
+   * @return Next byte
+   * @throws IOException If reading fails
+   */
+  private byte readByte() throws IOException {
+    if (position == limit) {
+      fill();
+    }
+    return buffer[position++];
+  }
+
+  /**
+   * Refills the buffer if it has been consumed.
+   *
+   * @throws IOException If reading fails
+   */
+  private void fill() throws IOException {
+    if (position < limit) {
+      return;
+    }
+
+    position = 0;
+    limit = in.read(buffer, 0, buffer.length);
+    if (limit < 0) {
+      limit = 0;
+      throw new JedisConnectionException("Unexpected end of stream");
+    }
+  }
+
+  /**
+   * @param score Score in the form Redis replies with
+   * @return Parsed score
+   */
+  private static double parseScore(final String score) {
+    switch (score) {
+      case "inf":
+      case "+inf":
+        return Double.POSITIVE_INFINITY;
+      case "-inf":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        try {
+          return Double.parseDouble(score);
+        } catch (final NumberFormatException ex) {
+          throw new JedisDataException("Not a score: " + score, ex);
+        }
+    }
+  }
+
+  /**
+   * Maps an error reply to the exception Jedis would throw for it.
+   *
+   * @param message Error message
+   * @return Exception to throw
+   */
+  static JedisDataException toException(final String message) {
+    if (message.startsWith("MOVED ") || message.startsWith("ASK ")) {
+      final String[] parts = message.split(" ");
+      final int slot = Integer.parseInt(parts[1]);
+      final int separator = parts[2].lastIndexOf(':');
+      final HostAndPort target = new HostAndPort(parts[2].substring(0, separator),
+          Integer.parseInt(parts[2].substring(separator + 1)));
+      return message.startsWith("MOVED ")
+          ? new JedisMovedDataException(message, target, slot) : new JedisAskDataException(message, target, slot);
+    }
+    return new JedisDataException(message);
+  }
+
+  /**
+   * Encodes a command in the Redis serialization protocol.
+   *
+   * @param args Command name followed by its arguments
+   * @return Encoded command
+   */
+  public static byte[] encodeCommand(final byte[]... args) {
+    final StringBuilder header = new StringBuilder();
+    int length = 0;
+    for (final byte[] arg : args) {
+      length += arg.length + 2 + 1 + String.valueOf(arg.length).length() + 2;
+    }
+    header.append('*').append(args.length).append("\r\n");
+    final byte[] prefix = header.toString().getBytes(StandardCharsets.US_ASCII);
+
+    final byte[] command = new byte[prefix.length + length];
+    System.arraycopy(prefix, 0, command, 0, prefix.length);
+    int offset = prefix.length;
+    for (final byte[] arg : args) {
+      final byte[] argHeader = ("$" + arg.length + "\r\n").getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(argHeader, 0, command, offset, argHeader.length);
+      offset += argHeader.length;
+      System.arraycopy(arg, 0, command, offset, arg.length);
+      offset += arg.length;
+      command[offset++] = '\r';
+      command[offset++] = '\n';
+    }
+
+    return command;
+  }
+}
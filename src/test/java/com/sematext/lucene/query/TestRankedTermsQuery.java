@@ -0,0 +1,146 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestRankedTermsQuery {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      addDocument(writer, "a");
+      addDocument(writer, "b");
+      addDocument(writer, "c", "a");
+      addDocument(writer, "d");
+      writer.commit();
+      addDocument(writer, "e");
+      for (int i = 0; i < 3000; i++) {
+        addDocument(writer, "t" + i);
+      }
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldScoreByRank() throws IOException {
+    final TopDocs topDocs = searcher.search(query("b", "d", "x", "a"), 10);
+
+    assertEquals(4, topDocs.totalHits.value);
+    assertEquals(Arrays.asList("b", "d", "a", "c"), ids(topDocs));
+    assertEquals(1F, topDocs.scoreDocs[0].score, 0F);
+    assertEquals(0.75F, topDocs.scoreDocs[1].score, 0F);
+    assertEquals(0.25F, topDocs.scoreDocs[2].score, 0F);
+  }
+
+  @Test
+  public void shouldUseBestRankOfDocument() throws IOException {
+    final TopDocs topDocs = searcher.search(query("e", "c", "a"), 10);
+
+    assertEquals(Arrays.asList("e", "c", "a"), ids(topDocs));
+    assertEquals(2F / 3F, topDocs.scoreDocs[1].score, 0F);
+  }
+
+  @Test
+  public void shouldKeepBestRankOfRepeatedTerm() throws IOException {
+    final RankedTermsQuery query = query("b", "d", "b");
+
+    assertEquals(2, query.size());
+    assertEquals(query("b", "d"), query);
+  }
+
+  @Test
+  public void shouldMatchMoreTermsThanMaxClauseCount() throws IOException {
+    final List<String> terms = new ArrayList<>();
+    for (int i = BooleanQuery.getMaxClauseCount() * 2; i >= 0; i--) {
+      terms.add("t" + i);
+    }
+
+    final TopDocs topDocs = searcher.search(query(terms.toArray(new String[0])), 3);
+
+    assertEquals(BooleanQuery.getMaxClauseCount() * 2 + 1, topDocs.totalHits.value);
+    assertEquals(Arrays.asList("t2048", "t2047", "t2046"), ids(topDocs));
+  }
+
+  @Test
+  public void shouldFilterWithoutScores() throws IOException {
+    assertEquals(3, searcher.count(query("a", "d", "x")));
+  }
+
+  @Test
+  public void shouldExplainRank() throws IOException {
+    final TopDocs topDocs = searcher.search(query("b", "a"), 10);
+    final Explanation explanation = searcher.explain(query("b", "a"), topDocs.scoreDocs[1].doc);
+
+    assertTrue(explanation.isMatch());
+    assertTrue(explanation.getDescription().contains("rank 2 of 2"));
+    assertFalse(searcher.explain(query("b"), topDocs.scoreDocs[1].doc).isMatch());
+  }
+
+  @Test
+  public void shouldRewriteEmptyQueryToMatchNoDocs() throws IOException {
+    assertTrue(searcher.rewrite(query()) instanceof MatchNoDocsQuery);
+  }
+
+  private static RankedTermsQuery query(final String... terms) {
+    final List<BytesRef> rankedTerms = new ArrayList<>();
+    for (final String term : terms) {
+      rankedTerms.add(new BytesRef(term));
+    }
+    return new RankedTermsQuery("field", rankedTerms);
+  }
+
+  private static void addDocument(final IndexWriter writer, final String... values) throws IOException {
+    final Document document = new Document();
+    document.add(new StringField("id", values[0], Field.Store.YES));
+    for (final String value : values) {
+      document.add(new StringField("field", value, Field.Store.NO));
+    }
+    writer.addDocument(document);
+  }
+
+  private List<String> ids(final TopDocs topDocs) throws IOException {
+    final List<String> ids = new ArrayList<>();
+    for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      ids.add(searcher.doc(scoreDoc.doc).get("id"));
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,173 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestWeightedPointInSetQuery {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 5000; i++) {
+        final Document document = new Document();
+        document.add(new IntPoint("int", i));
+        document.add(new IntPoint("int", -i - 1));
+        document.add(new LongPoint("long", i * 1000000000L));
+        writer.addDocument(document);
+        if (i == 2499) {
+          writer.commit();
+        }
+      }
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldScoreBySumOfWeightsOfMatchedValues() throws IOException {
+    final WeightedPointInSetQuery query = ints(new int[] {7, -8, 4000, 12345, 3}, new float[] {2, 3, 5, 100, 1});
+
+    final TopDocs topDocs = searcher.search(query, 10);
+
+    assertEquals(3, topDocs.totalHits.value);
+    assertEquals(7, topDocs.scoreDocs[0].doc);
+    assertEquals(5, topDocs.scoreDocs[0].score, 0);
+    assertEquals(4000, topDocs.scoreDocs[1].doc);
+    assertEquals(5, topDocs.scoreDocs[1].score, 0);
+    assertEquals(3, topDocs.scoreDocs[2].doc);
+    assertEquals(1, topDocs.scoreDocs[2].score, 0);
+  }
+
+  @Test
+  public void shouldScoreLikeBooleanQueryOfBoostedPointQueries() throws IOException {
+    final long[] values = {0, 42000000000L, 4999000000000L, 17, 2500000000000L};
+    final float[] weights = {1.5F, 2, 0.5F, 9, 3};
+    final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    final byte[][] packed = new byte[values.length][Long.BYTES];
+    for (int i = 0; i < values.length; i++) {
+      builder.add(new BoostQuery(LongPoint.newExactQuery("long", values[i]), weights[i]), BooleanClause.Occur.SHOULD);
+      LongPoint.encodeDimension(values[i], packed[i], 0);
+    }
+
+    final TopDocs expected = searcher.search(builder.build(), 10);
+    final TopDocs actual = searcher.search(new WeightedPointInSetQuery("long", Long.BYTES, packed, weights), 10);
+
+    assertEquals(4, actual.totalHits.value);
+    assertEquals(expected.totalHits.value, actual.totalHits.value);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      final ScoreDoc expectedDoc = expected.scoreDocs[i];
+      assertEquals(expectedDoc.doc, actual.scoreDocs[i].doc);
+      assertEquals(expectedDoc.score, actual.scoreDocs[i].score, 0);
+    }
+  }
+
+  @Test
+  public void shouldAddUpWeightsOfRepeatedValues() throws IOException {
+    final WeightedPointInSetQuery query = ints(new int[] {10, 10, 11}, new float[] {1, 2, 1});
+
+    final TopDocs topDocs = searcher.search(query, 10);
+
+    assertEquals(2, query.size());
+    assertEquals(10, topDocs.scoreDocs[0].doc);
+    assertEquals(3, topDocs.scoreDocs[0].score, 0);
+  }
+
+  @Test
+  public void shouldMatchManyValues() throws IOException {
+    final int[] values = new int[3000];
+    final float[] weights = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i * 3;
+      weights[i] = 1;
+    }
+    final WeightedPointInSetQuery query = ints(values, weights);
+
+    // Every third document below 5000, counted without scores and collected with them
+    assertEquals(1667, searcher.count(query));
+    assertEquals(1667, searcher.search(query, 1).totalHits.value);
+    assertEquals(0, searcher.count(ints(new int[0], new float[0])));
+  }
+
+  @Test
+  public void shouldFilterWithoutScores() throws IOException {
+    final BooleanQuery query = new BooleanQuery.Builder()
+        .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+        .add(ints(new int[] {1, 2, -4}, new float[] {1, 1, 1}), BooleanClause.Occur.FILTER)
+        .build();
+
+    final TopDocs topDocs = searcher.search(query, 10);
+
+    assertEquals(3, topDocs.totalHits.value);
+    assertEquals(1, topDocs.scoreDocs[0].score, 0);
+  }
+
+  @Test
+  public void shouldExplainScore() throws IOException {
+    final WeightedPointInSetQuery query = ints(new int[] {5, -6}, new float[] {2, 4});
+
+    final Explanation match = searcher.explain(query, 5);
+    final Explanation noMatch = searcher.explain(query, 6);
+
+    assertTrue(match.isMatch());
+    assertEquals(6, match.getValue().floatValue(), 0);
+    assertFalse(noMatch.isMatch());
+  }
+
+  @Test
+  public void shouldEqualQueryOfSameValuesAndWeights() {
+    assertEquals(ints(new int[] {1, 2}, new float[] {1, 2}), ints(new int[] {2, 1}, new float[] {2, 1}));
+    assertEquals(ints(new int[] {1, 2}, new float[] {1, 2}).hashCode(),
+        ints(new int[] {2, 1}, new float[] {2, 1}).hashCode());
+    assertNotEquals(ints(new int[] {1, 2}, new float[] {1, 2}), ints(new int[] {1, 2}, new float[] {2, 1}));
+    assertEquals("int:WEIGHTED_POINTS(2 values)", ints(new int[] {1, 2, 1}, new float[] {1, 1, 1}).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNegativeWeights() {
+    ints(new int[] {1}, new float[] {-1});
+  }
+
+  private static WeightedPointInSetQuery ints(final int[] values, final float[] weights) {
+    final byte[][] packed = new byte[values.length][Integer.BYTES];
+    for (int i = 0; i < values.length; i++) {
+      IntPoint.encodeDimension(values[i], packed[i], 0);
+    }
+    return new WeightedPointInSetQuery("int", Integer.BYTES, packed, weights);
+  }
+}
@@ -0,0 +1,169 @@
+package com.sematext.lucene.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestWeightedTermsQuery {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      addDocument(writer, "1", "a");
+      addDocument(writer, "2", "b b b");
+      addDocument(writer, "3", "c a x y z");
+      writer.commit();
+      addDocument(writer, "4", "d a");
+      for (int i = 0; i < 3000; i++) {
+        addDocument(writer, "t" + i, "t" + i);
+      }
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldScoreLikeBooleanQueryWithIndexStatistics() throws IOException {
+    final List<String> terms = Arrays.asList("a", "b", "c", "d", "missing");
+    final float[] weights = {2F, 0.5F, 3F, 1F, 4F};
+
+    final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    for (int i = 0; i < weights.length; i++) {
+      builder.add(new BoostQuery(new TermQuery(new Term("field", terms.get(i))), weights[i]),
+          BooleanClause.Occur.SHOULD);
+    }
+
+    final TopDocs expected = searcher.search(builder.build(), 10);
+    final TopDocs actual = searcher.search(query(terms, weights, true), 10);
+
+    assertEquals(4, actual.totalHits.value);
+    assertEquals(ids(expected), ids(actual));
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 1e-5F);
+    }
+  }
+
+  @Test
+  public void shouldScoreFromWeightsOnlyWithoutIndexStatistics() throws IOException {
+    final TopDocs topDocs = searcher.search(query(Arrays.asList("a", "b", "c"), new float[] {2F, 0.5F, 3F}, false), 10);
+
+    assertEquals(Arrays.asList("3", "1", "4", "2"), ids(topDocs));
+    assertEquals(5F, topDocs.scoreDocs[0].score, 0F);
+    assertEquals(2F, topDocs.scoreDocs[1].score, 0F);
+    assertEquals(2F, topDocs.scoreDocs[2].score, 0F);
+    assertEquals(0.5F, topDocs.scoreDocs[3].score, 0F);
+  }
+
+  @Test
+  public void shouldAddUpWeightsOfRepeatedTerm() {
+    final WeightedTermsQuery query = query(Arrays.asList("a", "b", "a"), new float[] {1F, 2F, 3F}, false);
+
+    assertEquals(2, query.size());
+    assertEquals(query(Arrays.asList("a", "b"), new float[] {4F, 2F}, false), query);
+    assertNotEquals(query(Arrays.asList("a", "b"), new float[] {4F, 2F}, true), query);
+  }
+
+  @Test
+  public void shouldMatchMoreTermsThanMaxClauseCount() throws IOException {
+    final List<String> terms = new ArrayList<>();
+    final float[] weights = new float[BooleanQuery.getMaxClauseCount() * 2];
+    for (int i = 0; i < weights.length; i++) {
+      terms.add("t" + i);
+      weights[i] = i;
+    }
+
+    final TopDocs topDocs = searcher.search(query(terms, weights, false), 2);
+
+    assertEquals(weights.length, topDocs.totalHits.value);
+    assertEquals(Arrays.asList("t2047", "t2046"), ids(topDocs));
+  }
+
+  @Test
+  public void shouldFilterWithoutScores() throws IOException {
+    assertEquals(3, searcher.count(query(Arrays.asList("a", "missing"), new float[] {1F, 2F}, true)));
+  }
+
+  @Test
+  public void shouldExplainScore() throws IOException {
+    for (final boolean useIndexStatistics : new boolean[] {true, false}) {
+      final Query query = query(Arrays.asList("a", "c"), new float[] {2F, 3F}, useIndexStatistics);
+      for (final ScoreDoc scoreDoc : searcher.search(query, 10).scoreDocs) {
+        final Explanation explanation = searcher.explain(query, scoreDoc.doc);
+        assertTrue(explanation.isMatch());
+        assertEquals(scoreDoc.score, explanation.getValue().floatValue(), 1e-5F);
+      }
+    }
+    assertFalse(searcher.explain(query(Arrays.asList("b"), new float[] {1F}, true), 0).isMatch());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNegativeWeights() {
+    query(Arrays.asList("a"), new float[] {-1F}, true);
+  }
+
+  private static WeightedTermsQuery query(final List<String> terms, final float[] weights,
+      final boolean useIndexStatistics) {
+    final List<BytesRef> weightedTerms = new ArrayList<>();
+    for (final String term : terms) {
+      weightedTerms.add(new BytesRef(term));
+    }
+    return new WeightedTermsQuery("field", weightedTerms, weights, useIndexStatistics);
+  }
+
+  private static void addDocument(final IndexWriter writer, final String id, final String text) throws IOException {
+    final Document document = new Document();
+    document.add(new StringField("id", id, Field.Store.YES));
+    document.add(new TextField("field", text, Field.Store.NO));
+    writer.addDocument(document);
+  }
+
+  private List<String> ids(final TopDocs topDocs) throws IOException {
+    final List<String> ids = new ArrayList<>();
+    for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      ids.add(searcher.doc(scoreDoc.doc).get("id"));
+    }
+    return ids;
+  }
+}
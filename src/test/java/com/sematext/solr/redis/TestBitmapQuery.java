@@ -0,0 +1,137 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.RedisBitmap;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.solr.schema.NumberType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestBitmapQuery {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 100; i++) {
+        final Document document = new Document();
+        document.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+        document.add(new IntPoint("int", i));
+        document.add(new NumericDocValuesField("int", i));
+        document.add(new LongPoint("long", i * 10L));
+        document.add(new SortedNumericDocValuesField("long", i * 10L));
+        document.add(new SortedNumericDocValuesField("long", i * 10L + 1));
+        writer.addDocument(document);
+        if (i == 49) {
+          writer.commit();
+        }
+      }
+      writer.addDocument(new Document());
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldMatchIdsThroughPoints() throws IOException {
+    final Query query = BitmapQuery.create("int", NumberType.INTEGER, true, false, bitmap(3, 50, 99, 150));
+
+    Assert.assertTrue(query instanceof PointInSetQuery);
+    Assert.assertEquals(3, searcher.count(query));
+    Assert.assertEquals(2, searcher.count(BitmapQuery.create("long", NumberType.LONG, true, false,
+        bitmap(0, 31, 990, 5))));
+  }
+
+  @Test
+  public void shouldMatchIdsThroughDocValues() throws IOException {
+    final Query query = BitmapQuery.create("int", NumberType.INTEGER, false, true, bitmap(3, 50, 99, 150));
+
+    Assert.assertTrue(query instanceof BitmapQuery);
+    Assert.assertEquals(3, searcher.count(query));
+    // Any value of a multi-valued field matches
+    Assert.assertEquals(3, searcher.count(BitmapQuery.create("long", NumberType.LONG, false, true,
+        bitmap(0, 31, 990, 5))));
+  }
+
+  @Test
+  public void shouldFilterCandidates() throws IOException {
+    final int[] ids = new int[50];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i * 2 + 1;
+    }
+    final BooleanQuery query = new BooleanQuery.Builder()
+        .add(new TermQuery(new Term("parity", "odd")), BooleanClause.Occur.MUST)
+        .add(BitmapQuery.create("int", NumberType.INTEGER, true, true, bitmap(ids)), BooleanClause.Occur.FILTER)
+        .build();
+
+    Assert.assertTrue(query.clauses().get(1).getQuery() instanceof IndexOrDocValuesQuery);
+    Assert.assertEquals(50, searcher.count(query));
+  }
+
+  @Test
+  public void shouldMatchNothingForEmptyBitmap() {
+    Assert.assertTrue(BitmapQuery.create("int", NumberType.INTEGER, true, true, bitmap()) instanceof MatchNoDocsQuery);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectFieldsOfOtherTypes() {
+    BitmapQuery.create("float", NumberType.FLOAT, true, true, bitmap(1));
+  }
+
+  @Test
+  public void shouldEqualQueryOfSameIds() {
+    Assert.assertEquals(new BitmapQuery("int", bitmap(1, 2)), new BitmapQuery("int", bitmap(1, 2)));
+    Assert.assertEquals(new BitmapQuery("int", bitmap(1, 2)).hashCode(), new BitmapQuery("int", bitmap(1, 2)).hashCode());
+    Assert.assertNotEquals(new BitmapQuery("int", bitmap(1, 2)), new BitmapQuery("int", bitmap(1, 3)));
+    Assert.assertNotEquals(new BitmapQuery("int", bitmap(1, 2)), new BitmapQuery("long", bitmap(1, 2)));
+    Assert.assertEquals("int:BITMAP(2 ids)", new BitmapQuery("int", bitmap(1, 2)).toString());
+  }
+
+  static RedisBitmap bitmap(final int... ids) {
+    int max = -1;
+    for (final int id : ids) {
+      max = Math.max(max, id);
+    }
+    final byte[] bytes = new byte[(max >> 3) + 1];
+    for (final int id : ids) {
+      bytes[id >> 3] |= 0x80 >>> (id & 7);
+    }
+    return new RedisBitmap(bytes, bytes.length);
+  }
+}
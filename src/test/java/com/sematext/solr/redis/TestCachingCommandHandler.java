@@ -0,0 +1,233 @@
+package com.sematext.solr.redis;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCachingCommandHandler {
+  @Mock
+  private CommandHandler delegate;
+
+  @Mock
+  private Command command;
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  private ResultCache cache;
+
+  private CommandHandler commandHandler;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    cache = new ResultCache(100, 1 << 20, 1000, Map.of("keys", 0L, "hgetall", 5000L), nanos::get);
+    commandHandler = new CachingCommandHandler(delegate, cache);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mocks.close();
+  }
+
+  @Test
+  public void shouldFetchResultOnlyOnce() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+
+    final ScoredTerms first = commandHandler.executeCommand(command, params("command", "smembers", "key", "k"));
+    final ScoredTerms second = commandHandler.executeCommand(command, params("command", "SMEMBERS", "key", "k",
+        "tag", "filter", "v", "field"));
+
+    Assert.assertSame(first, second);
+    verify(delegate, times(1)).executeCommand(any(), any());
+    final Map<String, Object> statistics = cache.getStatistics();
+    Assert.assertEquals(1L, statistics.get("hits"));
+    Assert.assertEquals(1L, statistics.get("misses"));
+    Assert.assertEquals(1L, statistics.get("size"));
+  }
+
+  @Test
+  public void shouldShareResultOfClausesOnlyBuildingDifferentQueries() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+
+    commandHandler.executeCommand(command, params("command", "smembers", "key", "k", "operator", "AND",
+        "strategy", "postfilter", "batchSize", "100"));
+    commandHandler.executeCommand(command, params("command", "smembers", "key", "k", "useIndexStats", "true",
+        "ignoreScore", "true", "useAnalyzer", "true"));
+
+    verify(delegate, times(1)).executeCommand(any(), any());
+  }
+
+  @Test
+  public void shouldKeepResultsOfDifferentParamsApart() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"), terms("b"));
+
+    commandHandler.executeCommand(command, params("command", "smembers", "key", "k"));
+    final ScoredTerms other = commandHandler.executeCommand(command, params("command", "smembers", "key", "l"));
+
+    Assert.assertEquals("b", other.getTerm(0).utf8ToString());
+  }
+
+  @Test
+  public void shouldExpireResultsAfterTimeToLiveOfCommand() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+    final SolrParams smembers = params("command", "smembers", "key", "k");
+    final SolrParams hgetall = params("command", "hgetall", "key", "k");
+
+    commandHandler.executeCommand(command, smembers);
+    commandHandler.executeCommand(command, hgetall);
+    nanos.set(TimeUnit.MILLISECONDS.toNanos(2000));
+    commandHandler.executeCommand(command, smembers);
+    commandHandler.executeCommand(command, hgetall);
+
+    // SMEMBERS expires after the default second, HGETALL lives for five seconds
+    verify(delegate, times(2)).executeCommand(command, smembers);
+    verify(delegate, times(1)).executeCommand(command, hgetall);
+  }
+
+  @Test
+  public void shouldNotCacheCommandsWithoutTimeToLive() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+    final SolrParams keys = params("command", "keys", "key", "k*");
+
+    commandHandler.executeCommand(command, keys);
+    commandHandler.executeCommand(command, keys);
+
+    verify(delegate, times(2)).executeCommand(command, keys);
+  }
+
+  @Test
+  public void shouldNotCacheMissingResults() {
+    final SolrParams get = params("command", "get", "key", "missing");
+
+    Assert.assertNull(commandHandler.executeCommand(command, get));
+    Assert.assertNull(commandHandler.executeCommand(command, get));
+
+    verify(delegate, times(2)).executeCommand(command, get);
+  }
+
+  @Test
+  public void shouldSubmitOnlyMissingResultsOfBatch() {
+    final SolrParams cached = params("command", "smembers", "key", "cached");
+    final SolrParams missing = params("command", "smembers", "key", "missing");
+    when(delegate.executeCommand(command, cached)).thenReturn(terms("a"));
+    when(delegate.submitCommands(Collections.singletonList(command), Collections.singletonList(missing)))
+        .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(terms("b"))));
+    commandHandler.executeCommand(command, cached);
+
+    final List<ScoredTerms> results = commandHandler.submitCommands(Arrays.asList(command, command),
+        Arrays.asList(cached, missing)).join();
+
+    Assert.assertEquals("a", results.get(0).getTerm(0).utf8ToString());
+    Assert.assertEquals("b", results.get(1).getTerm(0).utf8ToString());
+    Assert.assertSame(results.get(1), commandHandler.executeCommand(command, missing));
+  }
+
+  @Test
+  public void shouldEvictResultsBeyondMaximumNumberOfEntries() {
+    cache = new ResultCache(2, 1 << 20, 1000, Collections.emptyMap(), Ticker.systemTicker());
+    commandHandler = new CachingCommandHandler(delegate, cache);
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+
+    for (int i = 0; i < 10; i++) {
+      commandHandler.executeCommand(command, params("command", "smembers", "key", "k" + i));
+    }
+    cache.cleanUp();
+
+    Assert.assertTrue((Long) cache.getStatistics().get("size") <= 2);
+    Assert.assertTrue((Long) cache.getStatistics().get("evictions") >= 8);
+  }
+
+  @Test
+  public void shouldEvictResultsOfChangedKey() {
+    when(delegate.executeCommand(any(), any())).thenReturn(terms("a"));
+    final SolrParams changed = params("command", "smembers", "key", "k");
+    final SolrParams unchanged = params("command", "smembers", "key", "l");
+    commandHandler.executeCommand(command, changed);
+    commandHandler.executeCommand(command, unchanged);
+
+    Assert.assertTrue(cache.invalidate("k"));
+    Assert.assertFalse(cache.invalidate("k"));
+    commandHandler.executeCommand(command, changed);
+    commandHandler.executeCommand(command, unchanged);
+
+    verify(delegate, times(2)).executeCommand(command, changed);
+    verify(delegate, times(1)).executeCommand(command, unchanged);
+  }
+
+  @Test
+  public void shouldNotCacheResultFetchedWhileItsKeyChanged() {
+    final SolrParams get = params("command", "get", "key", "k");
+    when(delegate.executeCommand(command, get)).thenAnswer(invocation -> {
+      cache.invalidate("k");
+      return terms("a");
+    });
+
+    Assert.assertNotNull(commandHandler.executeCommand(command, get));
+    commandHandler.executeCommand(command, get);
+
+    verify(delegate, times(2)).executeCommand(command, get);
+  }
+
+  @Test
+  public void shouldNotCacheBatchResultsFetchedWhileAllResultsWereEvicted() {
+    final SolrParams get = params("command", "get", "key", "k");
+    when(delegate.executeCommands(any(), any())).thenAnswer(invocation -> {
+      cache.invalidateAll();
+      return Collections.singletonList(terms("a"));
+    });
+
+    final List<ScoredTerms> results = commandHandler.executeCommands(Collections.singletonList(command),
+        Collections.singletonList(get));
+
+    Assert.assertEquals("a", results.get(0).getTerm(0).utf8ToString());
+    Assert.assertNull(cache.getIfPresent(get));
+  }
+
+  @Test
+  public void shouldStopTrackingFailedBatches() {
+    final SolrParams get = params("command", "get", "key", "k");
+    when(delegate.submitCommands(any(), any())).thenReturn(CompletableFuture.failedFuture(
+        new IllegalStateException("Redis is down")));
+
+    final CompletableFuture<List<ScoredTerms>> results = commandHandler.submitCommands(
+        Collections.singletonList(command), Collections.singletonList(get));
+
+    Assert.assertTrue(results.isCompletedExceptionally());
+    Assert.assertFalse(cache.invalidate("k"));
+  }
+
+  private static ScoredTerms terms(final String term) {
+    return new ScoredTerms.Builder().add(term).build();
+  }
+
+  private static ModifiableSolrParams params(final String... nameValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      params.add(nameValues[i], nameValues[i + 1]);
+    }
+    return params;
+  }
+}
@@ -0,0 +1,328 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Eval;
+import com.sematext.solr.redis.command.Keys;
+import com.sematext.solr.redis.command.SDiff;
+import com.sematext.solr.redis.command.SMembers;
+import com.sematext.solr.redis.command.SUnion;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestClusterCommandHandler {
+  @Mock
+  private JedisSlotBasedConnectionHandler connectionHandler;
+
+  @Mock
+  private Jedis jedisOne;
+
+  @Mock
+  private Jedis jedisTwo;
+
+  @Mock
+  private Pipeline pipelineOne;
+
+  @Mock
+  private Pipeline pipelineTwo;
+
+  @Mock
+  private Jedis anyNode;
+
+  private ClusterCommandHandler commandHandler;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    when(jedisOne.pipelined()).thenReturn(pipelineOne);
+    when(jedisTwo.pipelined()).thenReturn(pipelineTwo);
+    when(connectionHandler.getConnectionFromNode(new HostAndPort("localhost", 7000))).thenReturn(jedisOne);
+    when(connectionHandler.getConnectionFromNode(new HostAndPort("localhost", 7001))).thenReturn(jedisTwo);
+    when(connectionHandler.getConnection()).thenReturn(anyNode);
+    commandHandler = new ClusterCommandHandler(connectionHandler, 1, 2, false, Executors.newCachedThreadPool());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    commandHandler.close();
+    mocks.close();
+  }
+
+  @Test
+  public void shouldRouteSingleKeyCommandBySlot() {
+    when(connectionHandler.getConnectionFromSlot(JedisClusterCRC16.getSlot("key"))).thenReturn(jedisOne);
+    when(jedisOne.smembers("key")).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+
+    final ScoredTerms result = commandHandler.executeCommand(new SMembers(), params("key", "key"));
+
+    Assert.assertEquals(2, result.size());
+    verify(jedisOne).close();
+  }
+
+  @Test
+  public void shouldNotFanOutWhenKeysShareSlot() {
+    when(connectionHandler.getConnectionFromSlot(JedisClusterCRC16.getSlot("{tag}a"))).thenReturn(jedisOne);
+    when(jedisOne.sunion("{tag}a", "{tag}b")).thenReturn(new HashSet<>(Arrays.asList("123")));
+
+    final ScoredTerms result = commandHandler.executeCommand(new SUnion(),
+        params("key", "{tag}a", "key1", "{tag}b"));
+
+    Assert.assertEquals(1, result.size());
+    verify(jedisOne, never()).pipelined();
+  }
+
+  @Test
+  public void shouldAwaitAllFuturesBeforeReportingInterrupt() {
+    final ExecutorService pending = Executors.newSingleThreadExecutor();
+    try {
+      final Future<String> slow = pending.submit(() -> {
+        Thread.sleep(100);
+        return "done";
+      });
+      Thread.currentThread().interrupt();
+      try {
+        ClusterCommandHandler.await(Collections.singletonList(slow));
+        Assert.fail("Interrupt wasn't reported");
+      } catch (final JedisException e) {
+        Assert.assertTrue(slow.isDone());
+        Assert.assertTrue(Thread.interrupted());
+      }
+    } finally {
+      pending.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldFanOutAndMergeUnionAcrossNodes() {
+    when(anyNode.clusterSlots()).thenReturn(Arrays.asList(
+        slotRange(0, 8191, 7001), slotRange(8192, 16383, 7000)));
+    final Response<Set<String>> responseOne = mockResponse(new HashSet<>(Arrays.asList("1", "2")));
+    final Response<Set<String>> responseTwo = mockResponse(new HashSet<>(Arrays.asList("2", "3")));
+    when(pipelineOne.sunion("a")).thenReturn(responseOne);
+    when(pipelineTwo.sunion("b")).thenReturn(responseTwo);
+
+    final ScoredTerms result = commandHandler.executeCommand(new SUnion(), params("key", "a", "key1", "b"));
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), toStrings(result));
+    verify(pipelineOne).sync();
+    verify(pipelineTwo).sync();
+    verify(jedisOne).close();
+    verify(jedisTwo).close();
+  }
+
+  @Test(timeout = 10000)
+  public void shouldFanOutFromExecutorThreadsWhenAllThreadsAreBusy() {
+    final ClusterCommandHandler singleThreaded = new ClusterCommandHandler(connectionHandler, 1, 2, false, 1);
+    when(anyNode.clusterSlots()).thenReturn(Arrays.asList(
+        slotRange(0, 8191, 7001), slotRange(8192, 16383, 7000)));
+    final Response<Set<String>> responseOne = mockResponse(new HashSet<>(Arrays.asList("1")));
+    final Response<Set<String>> responseTwo = mockResponse(new HashSet<>(Arrays.asList("2")));
+    when(pipelineOne.sunion("a")).thenReturn(responseOne);
+    when(pipelineTwo.sunion("b")).thenReturn(responseTwo);
+
+    try {
+      final List<ScoredTerms> results = singleThreaded.executeCommands(Arrays.asList(new SUnion(), new SUnion()),
+          Arrays.asList(params("key", "a", "key1", "b"), params("key", "a", "key1", "b")));
+
+      Assert.assertEquals(2, results.size());
+      Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2")), toStrings(results.get(1)));
+    } finally {
+      singleThreaded.close();
+    }
+  }
+
+  @Test
+  public void shouldSubtractOtherSlotsFromDifferenceOfFirstSlot() {
+    when(anyNode.clusterSlots()).thenReturn(Arrays.asList(
+        slotRange(0, 8191, 7001), slotRange(8192, 16383, 7000)));
+    final Response<Set<String>> responseOne = mockResponse(new HashSet<>(Arrays.asList("1", "2", "3")));
+    final Response<Set<String>> responseTwo = mockResponse(new HashSet<>(Arrays.asList("2")));
+    when(pipelineOne.sdiff("a")).thenReturn(responseOne);
+    when(pipelineTwo.sunion("b")).thenReturn(responseTwo);
+
+    final ScoredTerms result = commandHandler.executeCommand(new SDiff(), params("key", "a", "key1", "b"));
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("1", "3")), toStrings(result));
+  }
+
+  @Test
+  public void shouldRejectScriptWithKeysOfSeveralSlots() {
+    try {
+      commandHandler.executeCommand(new Eval(), params("script", "return 1", "key", "a", "key1", "b"));
+      Assert.fail("Expected the script to be rejected");
+    } catch (final IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage().startsWith("CROSSSLOT"));
+    }
+    verify(connectionHandler, never()).getConnection();
+  }
+
+  @Test
+  public void shouldUniteResultsOfScriptPerSlotWhenAsked() {
+    when(anyNode.clusterSlots()).thenReturn(Arrays.asList(
+        slotRange(0, 8191, 7001), slotRange(8192, 16383, 7000)));
+    final Response<Object> responseOne = mockResponse(Arrays.asList("1", "2"));
+    final Response<Object> responseTwo = mockResponse(Arrays.asList("2", "3"));
+    when(pipelineOne.eval("return KEYS", 1, "a")).thenReturn(responseOne);
+    when(pipelineTwo.eval("return KEYS", 1, "b")).thenReturn(responseTwo);
+
+    final ScoredTerms result = commandHandler.executeCommand(new Eval(),
+        params("script", "return KEYS", "key", "a", "key1", "b", "merge", "union"));
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), toStrings(result));
+  }
+
+  @Test
+  public void shouldPipelinePartialCommandsOfTheSameNode() {
+    when(anyNode.clusterSlots()).thenReturn(Collections.singletonList(slotRange(0, 16383, 7000)));
+    final Response<Set<String>> responseA = mockResponse(new HashSet<>(Arrays.asList("1")));
+    final Response<Set<String>> responseB = mockResponse(new HashSet<>(Arrays.asList("2")));
+    when(pipelineOne.sunion("a")).thenReturn(responseA);
+    when(pipelineOne.sunion("b")).thenReturn(responseB);
+
+    final ScoredTerms result = commandHandler.executeCommand(new SUnion(), params("key", "a", "key1", "b"));
+
+    Assert.assertEquals(2, result.size());
+    verify(pipelineOne, times(1)).sync();
+    verify(connectionHandler, times(1)).getConnectionFromNode(new HostAndPort("localhost", 7000));
+    verify(connectionHandler, never()).getConnectionFromSlot(anyInt());
+    verify(jedisOne, times(1)).close();
+  }
+
+  @Test
+  public void shouldFetchClusterSlotsOnceUntilLayoutChanges() {
+    when(anyNode.clusterSlots())
+        .thenReturn(Arrays.asList(slotRange(0, 8191, 7001), slotRange(8192, 16383, 7000)))
+        .thenReturn(Collections.singletonList(slotRange(0, 16383, 7000)));
+    final Response<Set<String>> responseA = mockResponse(new HashSet<>(Arrays.asList("1")));
+    final Response<Set<String>> responseB = mockResponse(new HashSet<>(Arrays.asList("2")));
+    final Response<Set<String>> moved = mockResponse(null);
+    when(moved.get()).thenThrow(new JedisMovedDataException("MOVED", new HostAndPort("localhost", 7000),
+        JedisClusterCRC16.getSlot("b")));
+    when(pipelineOne.sunion("a")).thenReturn(responseA);
+    when(pipelineOne.sunion("b")).thenReturn(responseB);
+    when(pipelineTwo.sunion("b")).thenReturn(moved);
+
+    commandHandler.executeCommand(new SUnion(), params("key", "a", "key1", "b"));
+    final ScoredTerms result = commandHandler.executeCommand(new SUnion(), params("key", "a", "key1", "b"));
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2")), toStrings(result));
+    verify(connectionHandler).renewSlotCache();
+    verify(anyNode, times(2)).clusterSlots();
+  }
+
+  @Test
+  public void shouldRenewSlotCacheAndRetryWhenSlotMoved() {
+    when(connectionHandler.getConnectionFromSlot(JedisClusterCRC16.getSlot("key")))
+        .thenReturn(jedisOne)
+        .thenReturn(jedisTwo);
+    when(jedisOne.smembers("key")).thenThrow(new JedisMovedDataException("MOVED",
+        new HostAndPort("localhost", 7001), JedisClusterCRC16.getSlot("key")));
+    when(jedisTwo.smembers("key")).thenReturn(new HashSet<>(Arrays.asList("123")));
+
+    final ScoredTerms result = commandHandler.executeCommand(new SMembers(), params("key", "key"));
+
+    Assert.assertEquals(1, result.size());
+    verify(connectionHandler).renewSlotCache(jedisOne);
+    verify(jedisOne).close();
+    verify(jedisTwo).close();
+  }
+
+  @Test
+  public void shouldFollowAskRedirection() {
+    final HostAndPort target = new HostAndPort("localhost", 7001);
+    when(connectionHandler.getConnectionFromSlot(JedisClusterCRC16.getSlot("key"))).thenReturn(jedisOne);
+    when(connectionHandler.getConnectionFromNode(target)).thenReturn(jedisTwo);
+    when(jedisOne.smembers("key")).thenThrow(new JedisAskDataException("ASK", target,
+        JedisClusterCRC16.getSlot("key")));
+    when(jedisTwo.smembers("key")).thenReturn(new HashSet<>(Arrays.asList("123")));
+
+    final ScoredTerms result = commandHandler.executeCommand(new SMembers(), params("key", "key"));
+
+    Assert.assertEquals(1, result.size());
+    verify(jedisTwo).asking();
+    verify(connectionHandler, never()).renewSlotCache(jedisOne);
+  }
+
+  @Test
+  public void shouldRunKeysOnEveryPrimary() {
+    when(anyNode.clusterSlots()).thenReturn(Arrays.asList(
+        slotRange(0, 8191, 7000), slotRange(8192, 16383, 7001)));
+    final Response<Set<String>> responseOne = mockResponse(new HashSet<>(Arrays.asList("k1")));
+    final Response<Set<String>> responseTwo = mockResponse(new HashSet<>(Arrays.asList("k2")));
+    when(pipelineOne.keys("k*")).thenReturn(responseOne);
+    when(pipelineTwo.keys("k*")).thenReturn(responseTwo);
+
+    final ScoredTerms result = commandHandler.executeCommand(new Keys(), params("key", "k*"));
+
+    Assert.assertEquals(new HashSet<>(Arrays.asList("k1", "k2")), toStrings(result));
+  }
+
+  @Test
+  public void shouldGroupKeysBySlotKeepingOrder() {
+    final Map<Integer, List<String>> keysBySlot = ClusterCommandHandler.groupBySlot(
+        new String[] {"{x}1", "a", "{x}2"});
+
+    Assert.assertEquals(2, keysBySlot.size());
+    Assert.assertEquals(Arrays.asList("{x}1", "{x}2"), keysBySlot.values().iterator().next());
+  }
+
+  private static ModifiableSolrParams params(final String... keysAndValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      params.set(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return params;
+  }
+
+  private static List<Object> slotRange(final long start, final long end, final long port) {
+    return Arrays.asList(start, end, Arrays.asList(SafeEncoder.encode("localhost"), port));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Response<T> mockResponse(final T value) {
+    final Response<T> response = mock(Response.class);
+    when(response.get()).thenReturn(value);
+    return response;
+  }
+
+  private static Set<String> toStrings(final ScoredTerms terms) {
+    final Set<String> strings = new HashSet<>();
+    for (int i = 0; i < terms.size(); i++) {
+      strings.add(terms.getTerm(i).utf8ToString());
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,53 @@
+package com.sematext.solr.redis;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.search.QueryParsing;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class TestCommandBatch {
+
+  @Test
+  public void shouldIgnoreQueryBuildingParamsInKey() {
+    final ModifiableSolrParams first = new ModifiableSolrParams();
+    first.set("command", "smembers");
+    first.set("key", "simpleKey");
+    first.set(QueryParsing.V, "string_field");
+    first.set("tag", "tag1");
+
+    final ModifiableSolrParams second = new ModifiableSolrParams();
+    second.set("key", "simpleKey");
+    second.set("command", "SMEMBERS");
+    second.set(QueryParsing.V, "other_field");
+    second.set("ignoreScore", "true");
+    second.set("strategy", "docvalues");
+    second.set("useIndexStats", "true");
+    second.set("batchSize", "100");
+
+    Assert.assertEquals(ClauseKeys.fetchKey(first), ClauseKeys.fetchKey(second));
+
+    second.set("key", "otherKey");
+    Assert.assertNotEquals(ClauseKeys.fetchKey(first), ClauseKeys.fetchKey(second));
+  }
+
+  @Test
+  public void shouldFindDistinctClausesInQueryAndFilterQueries() {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("q", "title:foo OR {!redis command=smembers key=first}string_field");
+    params.add("fq", "{!redis command=smembers key=$keyParam v=other_field}");
+    params.add("fq", "{!redis command=smembers key=first tag=t}string_field");
+    params.add("fq", "{!lucene}title:bar");
+    params.add("fq", "{!redis command=smembers key=broken");
+    params.set("keyParam", "second");
+
+    final Map<String, SolrParams> clauses = CommandBatch.findClauses(params, "redis");
+    Assert.assertEquals(2, clauses.size());
+
+    final SolrParams[] found = clauses.values().toArray(new SolrParams[0]);
+    Assert.assertEquals("first", found[0].get("key"));
+    Assert.assertEquals("second", found[1].get("key"));
+  }
+}
@@ -0,0 +1,116 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.search.DelegatingCollector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestDocValuesTermsPostFilter {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 100; i++) {
+        final Document document = new Document();
+        document.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("v" + i)));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("w" + i)));
+        document.add(new SortedDocValuesField("single", new BytesRef("v" + i)));
+        writer.addDocument(document);
+        if (i == 49) {
+          writer.commit();
+        }
+      }
+      writer.addDocument(new Document());
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldPassOnlyCollectedDocumentsWithTerms() throws IOException {
+    final DocValuesTermsPostFilter postFilter = postFilter("field", "v1", "w2", "v3", "w77", "v77", "missing");
+
+    Assert.assertEquals(3, collect(postFilter, new TermQuery(new Term("parity", "odd"))));
+    Assert.assertEquals(4, collect(postFilter, new MatchAllDocsQuery()));
+  }
+
+  @Test
+  public void shouldReadSortedDocValues() throws IOException {
+    Assert.assertEquals(2, collect(postFilter("single", "v10", "v60", "w10"), new MatchAllDocsQuery()));
+  }
+
+  @Test
+  public void shouldMatchAsQuery() throws IOException {
+    Assert.assertEquals(3, searcher.count(postFilter("field", "v1", "w2", "v99", "missing")));
+    Assert.assertEquals(0, searcher.count(postFilter("field")));
+    Assert.assertEquals(0, searcher.count(postFilter("absent", "v1")));
+  }
+
+  @Test
+  public void shouldNotBeCachedByDefault() {
+    final DocValuesTermsPostFilter postFilter = postFilter("field", "v1");
+
+    Assert.assertFalse(postFilter.getCache());
+    Assert.assertEquals(DocValuesTermsPostFilter.POST_FILTER_COST, postFilter.getCost());
+  }
+
+  @Test
+  public void shouldEqualPostFilterOfSameTerms() {
+    Assert.assertEquals(postFilter("field", "a", "b"), postFilter("field", "b", "a", "b"));
+    Assert.assertEquals(postFilter("field", "a", "b").hashCode(), postFilter("field", "b", "a", "b").hashCode());
+    Assert.assertNotEquals(postFilter("field", "a", "b"), postFilter("field", "a", "c"));
+    Assert.assertNotEquals(postFilter("field", "a", "b"), postFilter("single", "a", "b"));
+  }
+
+  private int collect(final DocValuesTermsPostFilter postFilter, final Query query) throws IOException {
+    final DelegatingCollector collector = postFilter.getFilterCollector(searcher);
+    final TotalHitCountCollector hits = new TotalHitCountCollector();
+    collector.setDelegate(hits);
+    searcher.search(query, collector);
+    return hits.getTotalHits();
+  }
+
+  private static DocValuesTermsPostFilter postFilter(final String field, final String... terms) {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder();
+    for (final String term : terms) {
+      builder.add(term);
+    }
+    return new DocValuesTermsPostFilter(field, builder.build().toSet());
+  }
+}
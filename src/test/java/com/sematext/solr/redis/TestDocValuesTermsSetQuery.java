@@ -0,0 +1,158 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestDocValuesTermsSetQuery {
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  private OrdinalsCache ordinalsCache;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 100; i++) {
+        final Document document = new Document();
+        document.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("v" + i)));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("w" + i)));
+        document.add(new SortedDocValuesField("single", new BytesRef("v" + i)));
+        writer.addDocument(document);
+        if (i == 49) {
+          writer.commit();
+        }
+      }
+      writer.addDocument(new Document());
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+    // Keep Lucene's query cache from answering repeated queries without asking for ordinals
+    searcher.setQueryCache(null);
+    ordinalsCache = new OrdinalsCache(OrdinalsCache.DEFAULT_MAX_BYTES);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldMatchByLookingUpFewTerms() throws IOException {
+    // 100 values per segment, so a few terms are looked up one by one
+    Assert.assertEquals(3, searcher.count(query("field", "v1", "w2", "v99", "missing")));
+    Assert.assertEquals(2, searcher.count(query("single", "v10", "v60", "w10")));
+  }
+
+  @Test
+  public void shouldMatchByScanningValuesForManyTerms() throws IOException {
+    final String[] terms = new String[60];
+    for (int i = 0; i < terms.length; i++) {
+      terms[i] = (i % 2 == 0 ? "v" : "w") + (i * 3);
+    }
+
+    // Every third document up to 177, so 59 of them exist in the index
+    Assert.assertEquals(34, searcher.count(query("field", terms)));
+    Assert.assertEquals(17, searcher.count(query("single", terms)));
+  }
+
+  @Test
+  public void shouldFilterCandidates() throws IOException {
+    final BooleanQuery query = new BooleanQuery.Builder()
+        .add(new TermQuery(new Term("parity", "odd")), BooleanClause.Occur.MUST)
+        .add(query("field", "v1", "v2", "w3", "v4", "w77"), BooleanClause.Occur.FILTER)
+        .build();
+
+    Assert.assertEquals(3, searcher.count(query));
+  }
+
+  @Test
+  public void shouldRemapWhenTheSetChanges() throws IOException {
+    Assert.assertEquals(2, searcher.count(query("field", "v1", "v2")));
+    Assert.assertEquals(2, searcher.count(query("field", "v1", "v2")));
+    Assert.assertEquals(1, searcher.count(query("field", "v3")));
+    Assert.assertEquals(0, searcher.count(query("field")));
+    Assert.assertEquals(0, searcher.count(query("absent", "v1")));
+  }
+
+  @Test
+  public void shouldKeepOrdinalsOfSeveralSetsOfAField() throws IOException {
+    searcher.count(query("field", "v1", "v2"));
+    searcher.count(query("field", "v3"));
+    Assert.assertEquals(0L, ordinalsCache.getStatistics().get("hits"));
+
+    // Both sets hit in both segments, although they are new objects
+    Assert.assertEquals(2, searcher.count(query("field", "v1", "v2")));
+    Assert.assertEquals(1, searcher.count(query("field", "v3")));
+    Assert.assertEquals(4L, ordinalsCache.getStatistics().get("hits"));
+    Assert.assertEquals(2L, ordinalsCache.getStatistics().get("size"));
+  }
+
+  @Test
+  public void shouldDropOrdinalsOfClosedSegments() throws IOException {
+    searcher.count(query("field", "v1", "v2"));
+    ordinalsCache.cleanUp();
+    Assert.assertEquals(1L, ordinalsCache.getStatistics().get("size"));
+
+    reader.close();
+    ordinalsCache.cleanUp();
+
+    Assert.assertEquals(0L, ordinalsCache.getStatistics().get("size"));
+    Assert.assertEquals(0L, ordinalsCache.getStatistics().get("weight"));
+    reader = DirectoryReader.open(directory);
+  }
+
+  @Test
+  public void shouldNotCacheOrdinalsBeyondMaxBytes() throws IOException {
+    ordinalsCache = new OrdinalsCache(1);
+    Assert.assertEquals(2, searcher.count(query("field", "v1", "v2")));
+    ordinalsCache.cleanUp();
+    Assert.assertEquals(0L, ordinalsCache.getStatistics().get("size"));
+    Assert.assertEquals(2, searcher.count(query("field", "v1", "v2")));
+  }
+
+  @Test
+  public void shouldEqualQueryOfSameTerms() {
+    Assert.assertEquals(query("field", "a", "b"), query("field", "b", "a", "b"));
+    Assert.assertEquals(query("field", "a", "b").hashCode(), query("field", "b", "a").hashCode());
+    Assert.assertNotEquals(query("field", "a", "b"), query("field", "a", "c"));
+    Assert.assertNotEquals(query("field", "a", "b"), query("single", "a", "b"));
+    Assert.assertEquals("field:DOCVALUES(2 terms)", query("field", "a", "b", "a").toString());
+  }
+
+  private DocValuesTermsSetQuery query(final String field, final String... terms) {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder();
+    for (final String term : terms) {
+      builder.add(term);
+    }
+    return new DocValuesTermsSetQuery(field, builder.build().toSet(), ordinalsCache);
+  }
+}
@@ -0,0 +1,151 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+public class TestKeyspaceSubscriber {
+  @Mock
+  private Jedis jedis;
+
+  private final ResultCache cache = new ResultCache(100, 1 << 20, 60000, Collections.emptyMap());
+
+  private KeyspaceSubscriber subscriber;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    subscriber = new KeyspaceSubscriber(cache, () -> jedis, 2, Collections.emptyList(), 1000, 1000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    subscriber.close();
+    mocks.close();
+  }
+
+  @Test
+  public void shouldSubscribeToKeyspaceOfDatabase() {
+    subscriber.subscribe();
+
+    verify(jedis).psubscribe(any(JedisPubSub.class), eq("__keyspace@2__:*"));
+  }
+
+  @Test
+  public void shouldSubscribeToKeysStartingWithPrefixes() {
+    subscriber.close();
+    subscriber = new KeyspaceSubscriber(cache, () -> jedis, 2, Arrays.asList("filter:", "user[1]*"), 1000, 1000);
+
+    subscriber.subscribe();
+
+    verify(jedis).psubscribe(any(JedisPubSub.class), eq("__keyspace@2__:filter:*"),
+        eq("__keyspace@2__:user\\[1\\]\\**"));
+  }
+
+  @Test
+  public void shouldListenOnceSubscribedToAllPrefixes() {
+    subscriber.close();
+    subscriber = new KeyspaceSubscriber(cache, () -> jedis, 2, Arrays.asList("a:", "b:"), 1000, 1000);
+    final List<ScoredTerms> cached = new ArrayList<>();
+    doAnswer(invocation -> {
+      final JedisPubSub subscription = invocation.getArgument(0);
+      subscription.onPSubscribe("__keyspace@2__:a:*", 1);
+      cache.get(params("smembers", "b:k"), params -> terms("k"));
+      subscription.onPSubscribe("__keyspace@2__:b:*", 2);
+      cached.add(cache.getIfPresent(params("smembers", "b:k")));
+      return null;
+    }).when(jedis).psubscribe(any(JedisPubSub.class), anyString(), anyString());
+
+    subscriber.subscribe();
+
+    // The result was cached before changes of its key were announced
+    Assert.assertNull(cached.get(0));
+  }
+
+  @Test
+  public void shouldEvictResultsOfChangedKeys() {
+    final List<ScoredTerms> cached = new ArrayList<>();
+    doAnswer(invocation -> {
+      final JedisPubSub subscription = invocation.getArgument(0);
+      subscription.onPSubscribe("__keyspace@2__:*", 1);
+      cache.get(params("smembers", "k"), params -> terms("k"));
+      cache.get(params("smembers", "l"), params -> terms("l"));
+      cache.get(params("get", "chunked"), params -> terms("chunked"));
+      subscription.onPMessage("__keyspace@2__:*", "__keyspace@2__:k", "sadd");
+      subscription.onPMessage("__keyspace@2__:*", "__keyspace@2__:chunked:3", "set");
+      cached.add(cache.getIfPresent(params("smembers", "k")));
+      cached.add(cache.getIfPresent(params("smembers", "l")));
+      cached.add(cache.getIfPresent(params("get", "chunked")));
+      return null;
+    }).when(jedis).psubscribe(any(JedisPubSub.class), anyString());
+
+    subscriber.subscribe();
+
+    Assert.assertNull(cached.get(0));
+    Assert.assertNotNull(cached.get(1));
+    Assert.assertNull(cached.get(2));
+    Assert.assertEquals(2L, cache.getStatistics().get("invalidations"));
+  }
+
+  @Test
+  public void shouldEvictAllResultsOnSubscribe() {
+    cache.get(params("smembers", "k"), params -> terms("k"));
+    final List<ScoredTerms> cached = new ArrayList<>();
+    doAnswer(invocation -> {
+      final JedisPubSub subscription = invocation.getArgument(0);
+      subscription.onPSubscribe("__keyspace@2__:*", 1);
+      cached.add(cache.getIfPresent(params("smembers", "k")));
+      return null;
+    }).when(jedis).psubscribe(any(JedisPubSub.class), anyString());
+
+    subscriber.subscribe();
+
+    Assert.assertNull(cached.get(0));
+  }
+
+  @Test
+  public void shouldEvictAllResultsWhenConnectionIsLost() {
+    doAnswer(invocation -> {
+      final JedisPubSub subscription = invocation.getArgument(0);
+      subscription.onPSubscribe("__keyspace@2__:*", 1);
+      cache.get(params("smembers", "k"), params -> terms("k"));
+      throw new JedisConnectionException("Connection reset");
+    }).when(jedis).psubscribe(any(JedisPubSub.class), anyString());
+
+    subscriber.subscribe();
+
+    Assert.assertNull(cache.getIfPresent(params("smembers", "k")));
+  }
+
+  private static ScoredTerms terms(final String term) {
+    return new ScoredTerms.Builder().add(term).build();
+  }
+
+  private static ModifiableSolrParams params(final String command, final String key) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("command", command);
+    params.add("key", key);
+    return params;
+  }
+}
@@ -0,0 +1,222 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.MembershipCheck;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.search.DelegatingCollector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TestMembershipPostFilter {
+
+  private final Set<String> members = new HashSet<>();
+
+  private final List<Integer> batches = new ArrayList<>();
+
+  private final CommandHandler commandHandler = new CommandHandler() {
+    @Override
+    public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+      throw new UnsupportedOperationException("Nothing is fetched");
+    }
+
+    @Override
+    public boolean[] executeMembershipCheck(final MembershipCheck check, final BytesRefSlab values) {
+      batches.add(values.size());
+      final boolean[] flags = new boolean[values.size()];
+      for (int i = 0; i < flags.length; i++) {
+        flags[i] = members.contains(values.get(i).utf8ToString());
+      }
+      return flags;
+    }
+  };
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 100; i++) {
+        final Document document = new Document();
+        document.add(new StringField("parity", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+        document.add(new TextField("body", String.join(" ", "word", i % 3 == 0 ? "word" : "other", "filler"),
+            Field.Store.NO));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("v" + i)));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("w" + i)));
+        writer.addDocument(document);
+        if (i == 49) {
+          writer.commit();
+        }
+      }
+      writer.addDocument(new Document());
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldCheckOnlyCollectedDocuments() throws IOException {
+    members.addAll(Arrays.asList("v1", "w2", "w3", "v77", "missing"));
+    final TotalHitCountCollector hits = new TotalHitCountCollector();
+
+    collect(postFilter(10), new TermQuery(new Term("parity", "odd")), hits);
+
+    Assert.assertEquals(3, hits.getTotalHits());
+    // 25 odd documents with 2 values in each segment
+    Assert.assertEquals(Arrays.asList(10, 10, 10, 10, 10, 10, 10, 10, 10, 10), batches);
+  }
+
+  @Test
+  public void shouldCheckEachSegmentSeparately() throws IOException {
+    members.add("v99");
+    final TotalHitCountCollector hits = new TotalHitCountCollector();
+
+    collect(postFilter(MembershipPostFilter.DEFAULT_BATCH_SIZE), new MatchAllDocsQuery(), hits);
+
+    Assert.assertEquals(1, hits.getTotalHits());
+    Assert.assertEquals(Arrays.asList(100, 100), batches);
+  }
+
+  @Test
+  public void shouldPassScoresOfBufferedDocuments() throws IOException {
+    for (int i = 0; i < 100; i += 4) {
+      members.add("w" + i);
+    }
+    final Query query = new TermQuery(new Term("body", "word"));
+    final ScoreRecorder expected = new ScoreRecorder();
+    searcher.search(query, expected);
+    final ScoreRecorder filtered = new ScoreRecorder();
+
+    collect(postFilter(7), query, filtered);
+
+    Assert.assertEquals(25, filtered.scores.size());
+    for (final Map.Entry<Integer, Float> score : filtered.scores.entrySet()) {
+      Assert.assertEquals(0, score.getKey() % 4);
+      Assert.assertEquals(expected.scores.get(score.getKey()), score.getValue());
+    }
+    Assert.assertNotEquals(filtered.scores.get(0), filtered.scores.get(4));
+  }
+
+  @Test
+  public void shouldMatchAsQuery() throws IOException {
+    members.addAll(Arrays.asList("v1", "w2", "x"));
+
+    Assert.assertEquals(2, searcher.count(postFilter(MembershipPostFilter.DEFAULT_BATCH_SIZE)));
+  }
+
+  @Test
+  public void shouldNotBeCachedByDefault() {
+    final MembershipPostFilter postFilter = postFilter(10);
+
+    Assert.assertFalse(postFilter.getCache());
+    Assert.assertEquals(DocValuesTermsPostFilter.POST_FILTER_COST, postFilter.getCost());
+  }
+
+  @Test
+  public void shouldEqualPostFilterOfSameCheck() {
+    Assert.assertEquals(postFilter(10), postFilter(10));
+    Assert.assertEquals(postFilter(10).hashCode(), postFilter(10).hashCode());
+    Assert.assertNotEquals(postFilter(10), postFilter(20));
+    Assert.assertNotEquals(postFilter(10), new MembershipPostFilter("field",
+        MembershipCheck.forCommand("hkeys", keyParams()), commandHandler, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyBatches() {
+    postFilter(0);
+  }
+
+  private void collect(final MembershipPostFilter postFilter, final Query query, final Collector delegate)
+      throws IOException {
+    final DelegatingCollector collector = postFilter.getFilterCollector(searcher);
+    collector.setDelegate(delegate);
+    searcher.search(query, collector);
+    collector.finish();
+  }
+
+  private MembershipPostFilter postFilter(final int batchSize) {
+    return new MembershipPostFilter("field", MembershipCheck.forCommand("smembers", keyParams()), commandHandler,
+        batchSize);
+  }
+
+  private static SolrParams keyParams() {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("key", "key");
+    return params;
+  }
+
+  private static final class ScoreRecorder extends SimpleCollector {
+    private final Map<Integer, Float> scores = new LinkedHashMap<>();
+
+    private Scorable scorer;
+
+    private int docBase;
+
+    @Override
+    protected void doSetNextReader(final LeafReaderContext context) {
+      docBase = context.docBase;
+    }
+
+    @Override
+    public void setScorer(final Scorable scorer) {
+      this.scorer = scorer;
+    }
+
+    @Override
+    public void collect(final int doc) throws IOException {
+      scores.put(docBase + doc, scorer.score());
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+      return ScoreMode.COMPLETE;
+    }
+  }
+}
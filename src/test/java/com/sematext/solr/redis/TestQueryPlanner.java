@@ -0,0 +1,126 @@
+package com.sematext.solr.redis;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.schema.SchemaField;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestQueryPlanner {
+
+  private final QueryPlanner planner = new QueryPlanner();
+
+  private Directory directory;
+
+  private DirectoryReader reader;
+
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = new ByteBuffersDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+      for (int i = 0; i < 100; i++) {
+        final Document document = new Document();
+        document.add(new StringField("field", "v" + i, Field.Store.NO));
+        document.add(new SortedSetDocValuesField("field", new BytesRef("v" + i)));
+        writer.addDocument(document);
+        if (i == 49) {
+          writer.commit();
+        }
+      }
+    }
+    reader = DirectoryReader.open(directory);
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    reader.close();
+    directory.close();
+  }
+
+  @Test
+  public void shouldChooseByEstimatedSelectivity() {
+    final SchemaField field = field(true, true);
+
+    Assert.assertEquals(QueryStrategy.TERMS, planner.plan(QueryStrategy.AUTO, field, 10, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.DOCVALUES, planner.plan(QueryStrategy.AUTO, field, 40, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.DOCVALUES,
+        planner.plan(QueryStrategy.AUTO, field, QueryPlanner.POSTFILTER_MIN_TERMS - 1, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.POSTFILTER,
+        planner.plan(QueryStrategy.AUTO, field, QueryPlanner.POSTFILTER_MIN_TERMS, searcher).getStrategy());
+    Assert.assertTrue(planner.plan(QueryStrategy.AUTO, field, 40, searcher).getReason().contains("40.0%"));
+  }
+
+  @Test
+  public void shouldUseDocValuesForManyValues() {
+    final QueryPlanner thresholdPlanner = new QueryPlanner(20);
+
+    Assert.assertEquals(QueryStrategy.TERMS, thresholdPlanner.plan(QueryStrategy.AUTO, field(true, true), 19, searcher)
+        .getStrategy());
+    final QueryPlanner.Plan plan = thresholdPlanner.plan(QueryStrategy.AUTO, field(true, true), 20, searcher);
+    Assert.assertEquals(QueryStrategy.DOCVALUES, plan.getStrategy());
+    Assert.assertTrue(plan.getReason().contains("threshold of 20"));
+    Assert.assertEquals(QueryStrategy.DOCVALUES,
+        thresholdPlanner.plan(QueryStrategy.AUTO, field(true, true), 20, null).getStrategy());
+    Assert.assertEquals(QueryStrategy.TERMS,
+        thresholdPlanner.plan(QueryStrategy.AUTO, field(true, false), 20, searcher).getStrategy());
+  }
+
+  @Test
+  public void shouldChooseByFieldCapabilities() {
+    Assert.assertEquals(QueryStrategy.TERMS,
+        planner.plan(QueryStrategy.AUTO, field(true, false), 50, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.DOCVALUES,
+        planner.plan(QueryStrategy.AUTO, field(false, true), 5, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.TERMS, planner.plan(QueryStrategy.AUTO, null, 50, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.TERMS,
+        planner.plan(QueryStrategy.AUTO, field(true, true), 50, null).getStrategy());
+  }
+
+  @Test
+  public void shouldFollowRequestedStrategy() {
+    Assert.assertEquals(QueryStrategy.POSTFILTER,
+        planner.plan(QueryStrategy.POSTFILTER, field(true, true), 1, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.TERMS,
+        planner.plan(QueryStrategy.TERMS, field(true, true), 1000, searcher).getStrategy());
+    Assert.assertEquals(QueryStrategy.TERMS,
+        planner.plan(QueryStrategy.DOCVALUES, field(true, false), 1000, searcher).getStrategy());
+  }
+
+  @Test
+  public void shouldParseStrategy() {
+    Assert.assertEquals(QueryStrategy.AUTO, QueryStrategy.fromString(null));
+    Assert.assertEquals(QueryStrategy.AUTO, QueryStrategy.fromString(" "));
+    Assert.assertEquals(QueryStrategy.DOCVALUES, QueryStrategy.fromString("DocValues"));
+    Assert.assertEquals("postfilter", QueryStrategy.POSTFILTER.toString());
+  }
+
+  private static SchemaField field(final boolean indexed, final boolean docValues) {
+    final SchemaField field = mock(SchemaField.class);
+    when(field.getName()).thenReturn("field");
+    when(field.indexed()).thenReturn(indexed);
+    when(field.hasDocValues()).thenReturn(docValues);
+    when(field.docValuesType()).thenReturn(docValues ? DocValuesType.SORTED_SET : DocValuesType.NONE);
+    return field;
+  }
+}
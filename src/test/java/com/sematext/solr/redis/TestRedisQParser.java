@@ -1,15 +1,37 @@
 package com.sematext.solr.redis;
 
+import com.sematext.lucene.query.RankedTermsQuery;
+import com.sematext.lucene.query.TaggedQuery;
+import com.sematext.lucene.query.WeightedPointInSetQuery;
+import com.sematext.lucene.query.WeightedTermsQuery;
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.IdSet;
+import com.sematext.solr.redis.command.IdSetCommand;
+import com.sematext.solr.redis.command.RedisBitmap;
+import com.sematext.solr.redis.command.RespCommand;
+import com.sematext.solr.redis.command.ScoredTerms;
+import com.sematext.solr.redis.command.ValueCodecs;
+import com.sematext.solr.redis.resp.BytesRefSlab;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QueryParsing;
@@ -22,6 +44,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.SortingParams;
 import redis.clients.jedis.Tuple;
 import redis.clients.jedis.exceptions.JedisException;
@@ -36,9 +60,13 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PointInSetQuery;
 import org.mockito.MockitoAnnotations;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -99,13 +127,13 @@ public class TestRedisQParser {
   @Test(expected = IllegalArgumentException.class)
   public void shouldThrowExceptionOnMissingCommand() {
     when(localParamsMock.get(anyString())).thenReturn(null);
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
   }
 
   @Test(expected = IllegalArgumentException.class)
   public void shouldThrowExceptionOnMissingKey() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("smembers");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
   }
 
@@ -113,7 +141,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnSmembersCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("smembers");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
   }
@@ -126,7 +154,7 @@ public class TestRedisQParser {
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -142,7 +170,7 @@ public class TestRedisQParser {
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -154,7 +182,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnSrandmemberCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("srandmember");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).srandmember("simpleKey", 1);
   }
@@ -168,7 +196,7 @@ public class TestRedisQParser {
     when(jedisMock.srandmember(anyString(), anyInt())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).srandmember("simpleKey", 2);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -184,7 +212,7 @@ public class TestRedisQParser {
     when(jedisMock.srandmember(anyString(), anyInt())).thenReturn(Collections.singletonList("123"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).srandmember("simpleKey", 1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -200,7 +228,7 @@ public class TestRedisQParser {
     when(jedisMock.srandmember(anyString(), anyInt())).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).srandmember("simpleKey", 1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -216,7 +244,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("key1")).thenReturn("key2");
     when(localParamsMock.get("keyempty")).thenReturn("");
     when(localParamsMock.getParameterNamesIterator()).thenReturn(Arrays.asList("command", "key", "key1", "keyfoo", "keyempty").iterator());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).sinter("key1", "key2", "key3");
   }
@@ -231,7 +259,7 @@ public class TestRedisQParser {
     when(jedisMock.sinter(anyString(), anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sinter("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -249,7 +277,7 @@ public class TestRedisQParser {
     when(jedisMock.sinter(anyString(), anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sinter("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -261,7 +289,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnKeysCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("keys");
     when(localParamsMock.get("key")).thenReturn("pattern");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).keys("pattern");
   }
@@ -274,7 +302,7 @@ public class TestRedisQParser {
     when(jedisMock.keys(anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).keys("pattern");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -290,7 +318,7 @@ public class TestRedisQParser {
     when(jedisMock.sdiff(anyString(), anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).keys("pattern");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -306,7 +334,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("key1")).thenReturn("key2");
     when(localParamsMock.get("keyempty")).thenReturn("");
     when(localParamsMock.getParameterNamesIterator()).thenReturn(Arrays.asList("command", "key", "key1", "keyfoo", "keyempty").iterator());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).sdiff("key1", "key2", "key3");
   }
@@ -321,7 +349,7 @@ public class TestRedisQParser {
     when(jedisMock.sdiff(anyString(), anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sdiff("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -339,7 +367,7 @@ public class TestRedisQParser {
     when(jedisMock.sdiff(anyString(), anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sdiff("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -355,7 +383,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("key1")).thenReturn("key2");
     when(localParamsMock.get("keyempty")).thenReturn("");
     when(localParamsMock.getParameterNamesIterator()).thenReturn(Arrays.asList("command", "key", "key1", "keyfoo", "keyempty").iterator());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).sunion("key1", "key2", "key3");
   }
@@ -370,7 +398,7 @@ public class TestRedisQParser {
     when(jedisMock.sunion(anyString(), anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sunion("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -388,7 +416,7 @@ public class TestRedisQParser {
     when(jedisMock.sunion(anyString(), anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).sunion("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -400,7 +428,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnHvalsCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("hvals");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).hvals("simpleKey");
   }
@@ -413,7 +441,7 @@ public class TestRedisQParser {
     when(jedisMock.hvals(anyString())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hvals("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -429,7 +457,7 @@ public class TestRedisQParser {
     when(jedisMock.hvals(anyString())).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hvals("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -441,7 +469,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnHkeysCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("hkeys");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).hkeys("simpleKey");
   }
@@ -454,7 +482,7 @@ public class TestRedisQParser {
     when(jedisMock.hkeys(anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hkeys("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -470,7 +498,7 @@ public class TestRedisQParser {
     when(jedisMock.hkeys(anyString())).thenReturn(new HashSet<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hkeys("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -483,7 +511,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("command")).thenReturn("hget");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
     when(localParamsMock.get("field")).thenReturn("f1");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).hget("simpleKey", "f1");
   }
@@ -492,7 +520,7 @@ public class TestRedisQParser {
   public void shouldThrowExceptionIfFieldIsMissing() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("hget");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).hget("simpleKey", "f1");
   }
@@ -506,7 +534,7 @@ public class TestRedisQParser {
     when(jedisMock.hget(anyString(), anyString())).thenReturn("123");
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hget("simpleKey", "f1");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -523,7 +551,7 @@ public class TestRedisQParser {
     when(jedisMock.hget(anyString(), anyString())).thenReturn(null);
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hget("simpleKey", "f1");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -541,7 +569,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("fieldempty")).thenReturn("");
     when(localParamsMock.getParameterNamesIterator()).thenReturn(
         Arrays.asList("command", "key", "field1", "fieldfoo", "fieldempty", "field").iterator());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).hmget("hash", "field1", "field2", "field3");
   }
@@ -556,7 +584,7 @@ public class TestRedisQParser {
     when(jedisMock.hmget(anyString(), anyString())).thenReturn(Arrays.asList("123"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hmget("hash", "field1");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -574,7 +602,7 @@ public class TestRedisQParser {
     when(jedisMock.hmget(anyString(), anyString())).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).hmget("hash", "field1");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -586,7 +614,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnGetCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("get");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
   }
@@ -599,7 +627,7 @@ public class TestRedisQParser {
     when(jedisMock.get(any(byte[].class))).thenReturn("val".getBytes());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -616,7 +644,7 @@ public class TestRedisQParser {
     when(jedisMock.get(any(byte[].class))).thenReturn("[1,2,3]".getBytes());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -633,7 +661,7 @@ public class TestRedisQParser {
     when(jedisMock.get(any(byte[].class))).thenReturn(Compressor.compressGzip("1".getBytes()));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -652,7 +680,7 @@ public class TestRedisQParser {
     when(jedisMock.get(any(byte[].class))).thenReturn(Compressor.compressGzip("[100,200,300]".getBytes()));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -668,7 +696,7 @@ public class TestRedisQParser {
     when(jedisMock.get(anyString())).thenReturn(null);
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).get("simpleKey".getBytes());
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -684,7 +712,7 @@ public class TestRedisQParser {
     when(jedisMock.lindex(anyString(), anyLong())).thenReturn("value");
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lindex("simpleKey", 0);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -701,7 +729,7 @@ public class TestRedisQParser {
     when(jedisMock.lindex(anyString(), anyLong())).thenReturn("value");
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lindex("simpleKey", 10);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -718,7 +746,7 @@ public class TestRedisQParser {
     when(jedisMock.lindex(anyString(), anyLong())).thenReturn(null);
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lindex("simpleKey", 10);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -734,7 +762,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("key1")).thenReturn("key2");
     when(localParamsMock.get("keyempty")).thenReturn("");
     when(localParamsMock.getParameterNamesIterator()).thenReturn(Arrays.asList("command", "key", "key1", "keyfoo", "keyempty").iterator());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).mget("key1", "key2", "key3");
   }
@@ -749,7 +777,7 @@ public class TestRedisQParser {
     when(jedisMock.mget(anyString(), anyString())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).mget("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -767,7 +795,7 @@ public class TestRedisQParser {
     when(jedisMock.mget(anyString(), anyString())).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).mget("key1", "key2");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -779,7 +807,7 @@ public class TestRedisQParser {
   public void shouldQueryRedisOnLrangeCommand() throws SyntaxError {
     when(localParamsMock.get("command")).thenReturn("lrange");
     when(localParamsMock.get("key")).thenReturn("simpleKey");
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
   }
@@ -792,7 +820,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -800,6 +828,21 @@ public class TestRedisQParser {
     Assert.assertEquals(2, terms.size());
   }
 
+  @Test
+  public void shouldRankTermsFromRedisOnLrangeCommand() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("lrange");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321", "123"));
+    when(requestMock.getSchema()).thenReturn(schema);
+    when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    verify(jedisMock).lrange("simpleKey", 0, -1);
+    Assert.assertTrue(query instanceof RankedTermsQuery);
+    Assert.assertEquals("string_field:RANKED(123 321)", query.toString());
+  }
+
   @Test
   public void shouldAddTermsFromRedisOnLrangeCommandCustomMin() throws SyntaxError, IOException {
     when(localParamsMock.get("command")).thenReturn("lrange");
@@ -809,7 +852,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", -1, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -826,7 +869,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, 1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -844,7 +887,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 2, 3);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -863,7 +906,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -882,7 +925,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -900,7 +943,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -916,7 +959,7 @@ public class TestRedisQParser {
     when(jedisMock.lrange(anyString(), anyLong(), anyLong())).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).lrange("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -932,7 +975,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(new ArrayList<String>());
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -950,7 +993,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -969,7 +1012,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -988,7 +1031,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1007,7 +1050,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1026,7 +1069,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1046,7 +1089,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1067,7 +1110,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1087,7 +1130,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1108,7 +1151,7 @@ public class TestRedisQParser {
     when(jedisMock.sort(anyString(), any(SortingParams.class))).thenReturn(Arrays.asList("123", "321"));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     final ArgumentCaptor<SortingParams> argument = ArgumentCaptor.forClass(SortingParams.class);
     verify(jedisMock).sort(eq("simpleKey"), argument.capture());
@@ -1128,7 +1171,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrevrangeWithScores("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1147,7 +1190,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrevrangeWithScores("simpleKey", 1, 100);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1155,6 +1198,36 @@ public class TestRedisQParser {
     Assert.assertEquals(2, terms.size());
   }
 
+  @Test
+  public void shouldWeightTermsWithRedisScoresOnZrangeCommand() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("zrange");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(localParamsMock.getBool("useIndexStats", true)).thenReturn(true);
+    when(jedisMock.zrangeWithScores(anyString(), anyLong(), anyLong()))
+        .thenReturn(new LinkedHashSet<>(Arrays.asList(new Tuple("123", 3.0), new Tuple("321", -1.0))));
+    when(requestMock.getSchema()).thenReturn(schema);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    Assert.assertTrue(query instanceof WeightedTermsQuery);
+    Assert.assertTrue(((WeightedTermsQuery) query).isUseIndexStatistics());
+    Assert.assertEquals("string_field:WEIGHTED(123^3.0 321^1.0)", query.toString());
+  }
+
+  @Test
+  public void shouldScoreOnlyFromRedisScoresWithoutIndexStats() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("zrange");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(localParamsMock.getBool("useIndexStats", true)).thenReturn(false);
+    when(jedisMock.zrangeWithScores(anyString(), anyLong(), anyLong()))
+        .thenReturn(new LinkedHashSet<>(Arrays.asList(new Tuple("123", 2.0), new Tuple("321", 0.5))));
+    when(requestMock.getSchema()).thenReturn(schema);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    Assert.assertEquals("string_field:WEIGHTS(123^2.0 321^0.5)", query.toString());
+  }
+
   @Test
   public void shouldAddTermsFromRedisOnZrangeCommandWithDefaultParams() throws SyntaxError, IOException {
     when(localParamsMock.get("command")).thenReturn("zrange");
@@ -1164,7 +1237,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrangeWithScores("simpleKey", 0, -1);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1183,7 +1256,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrangeWithScores("simpleKey", 1, 100);
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1200,7 +1273,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrevrangeByScoreWithScores("simpleKey", "+inf", "-inf");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1219,7 +1292,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrevrangeByScoreWithScores("simpleKey", "100", "1");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1236,7 +1309,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrangeByScoreWithScores("simpleKey", "-inf", "+inf");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1255,7 +1328,7 @@ public class TestRedisQParser {
         .thenReturn(new HashSet<>(Arrays.asList(new Tuple("123", (double) 1.0f), new Tuple("321", (double) 1.0f))));
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).zrangeByScoreWithScores("simpleKey", "1", "100");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1280,7 +1353,7 @@ public class TestRedisQParser {
 
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new StandardAnalyzer());
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).eval("return 1;", 1, "k", "a");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1295,7 +1368,7 @@ public class TestRedisQParser {
     when(localParamsMock.get("useAnalyzer")).thenReturn("false");
     when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123 124", "321")));
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1312,7 +1385,7 @@ public class TestRedisQParser {
     when(requestMock.getSchema()).thenReturn(schema);
     when(schema.getQueryAnalyzer()).thenReturn(new WhitespaceAnalyzer());
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123 124", "321")));
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1332,8 +1405,8 @@ public class TestRedisQParser {
     when(jedisPoolMock.getResource()).thenReturn(jedisFailingMock).thenReturn(jedisMock);
     when(jedisFailingMock.smembers("simpleKey")).thenThrow(new JedisException("Synthetic exception"));
     when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<String>(Collections.singletonList("value")));
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock,
-            new RetryingCommandHandler(jedisPoolMock, 1));
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock,
+        new RetryingCommandHandler(jedisPoolMock, 1)).build();
     final Query query = redisQParser.parse();
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
     final Set<Term> terms = extractTerms(searcher, query);
@@ -1351,7 +1424,7 @@ public class TestRedisQParser {
     when(schema.getQueryAnalyzer()).thenReturn(new WhitespaceAnalyzer());
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123 124", "321", "322", "323", "324",
             "325", "326", "327", "328", "329", "330", "331", "332", "333", "334", "335", "336", "337", "338")));
-    redisQParser = new RedisQParser("string_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     final Query query = redisQParser.parse();
     verify(jedisMock).smembers("simpleKey");
     IndexSearcher searcher = new IndexSearcher(new MultiReader());
@@ -1371,7 +1444,7 @@ public class TestRedisQParser {
     when(fieldTypeMock.isPointField()).thenReturn(true);
     when(fieldTypeMock.getFieldQuery(any(), any(), any())).thenReturn(indexOrDocValuesQuery);
     when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("337", "338")));
-    redisQParser = new RedisQParser("int_field", localParamsMock, paramsMock, requestMock, commandHandler);
+    redisQParser = parser("int_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
     
     //it should be a bool query, otherwise it will fail
     BooleanQuery query = (BooleanQuery) redisQParser.parse();
@@ -1381,6 +1454,250 @@ public class TestRedisQParser {
     assertTrue(subClause.getQuery() instanceof IndexOrDocValuesQuery);
   }
 
+  @Test
+  public void shouldUsePointSetQueryForIndexedPointField() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get("ignoreScore")).thenReturn("true");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("int_field");
+    mockPointField(NumberType.INTEGER);
+    when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("337", "-338", "+339", "340.0")));
+    redisQParser = parser("int_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+
+    final Query query = redisQParser.parse();
+
+    Assert.assertEquals(IntPoint.newSetQuery("int_field", 337, -338, 339, 340), query);
+  }
+
+  @Test
+  public void shouldUseWeightedPointQueryForScoredPointField() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("zrevrange");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("long_field");
+    mockPointField(NumberType.LONG);
+    when(jedisMock.zrevrangeWithScores(anyString(), anyLong(), anyLong()))
+        .thenReturn(new LinkedHashSet<>(Arrays.asList(new Tuple("12345678901", 3.0), new Tuple("7", 0.0))));
+    redisQParser = parser("long_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+
+    final Query query = redisQParser.parse();
+
+    final byte[][] values = new byte[2][Long.BYTES];
+    LongPoint.encodeDimension(12345678901L, values[0], 0);
+    LongPoint.encodeDimension(7L, values[1], 0);
+    Assert.assertEquals(new WeightedPointInSetQuery("long_field", Long.BYTES, values, new float[] {3, 1}), query);
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void shouldRejectValuesOfPointFieldThatAreNotNumbers() throws SyntaxError {
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("double_field");
+    mockPointField(NumberType.DOUBLE);
+    when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("1.5", "many")));
+    redisQParser = parser("double_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+
+    redisQParser.parse();
+  }
+
+  @Test
+  public void shouldMatchBitmapIdsInPointField() throws SyntaxError {
+    when(localParamsMock.get("command")).thenReturn("bitmap");
+    when(localParamsMock.get("key")).thenReturn("ids");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("int_field");
+    mockPointField(NumberType.INTEGER);
+    when(fieldMock.getType()).thenReturn(fieldTypeMock);
+    when(fieldMock.hasDocValues()).thenReturn(true);
+    redisQParser = parser("int_field", localParamsMock, paramsMock, requestMock, idsHandler(TestBitmapQuery.bitmap(3,
+        10))).build();
+
+    final Query query = redisQParser.parse();
+
+    assertTrue(query instanceof IndexOrDocValuesQuery);
+    final Query pointQuery = ((IndexOrDocValuesQuery) query).getIndexQuery();
+    assertTrue(pointQuery instanceof PointInSetQuery);
+    Assert.assertEquals("int_field:{3 10}", pointQuery.toString());
+    verify(jedisMock, never()).get(any(byte[].class));
+  }
+
+  @Test
+  public void shouldMatchRoaringIdsOfGetInPointField() throws SyntaxError {
+    when(localParamsMock.get("command")).thenReturn("get");
+    when(localParamsMock.get("key")).thenReturn("ids");
+    when(localParamsMock.get("serialization")).thenReturn("roaring");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("long_field");
+    mockPointField(NumberType.LONG);
+    when(fieldMock.indexed()).thenReturn(false);
+    when(fieldMock.getType()).thenReturn(fieldTypeMock);
+    when(fieldMock.hasDocValues()).thenReturn(true);
+    redisQParser = parser("long_field", localParamsMock, paramsMock, requestMock, idsHandler(TestBitmapQuery.bitmap(3,
+        10))).build();
+
+    final Query query = redisQParser.parse();
+
+    Assert.assertEquals("long_field:BITMAP(2 ids)", query.toString());
+  }
+
+  @Test
+  public void shouldMatchBitmapIdsAsTermsInStringField() throws SyntaxError, IOException {
+    when(localParamsMock.get("command")).thenReturn("bitmap");
+    when(localParamsMock.get("key")).thenReturn("ids");
+    when(localParamsMock.get("ignoreScore")).thenReturn("true");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(requestMock.getSchema()).thenReturn(schema);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, idsHandler(TestBitmapQuery
+        .bitmap(3, 10))).build();
+
+    final Query query = redisQParser.parse();
+
+    Assert.assertEquals(new TermInSetQuery("string_field", new BytesRef("3"), new BytesRef("10")), query);
+  }
+
+  private static CommandHandler idsHandler(final IdSet ids) {
+    return new CommandHandler() {
+      @Override
+      public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+        throw new UnsupportedOperationException("Ids are fetched in a compact form");
+      }
+
+      @Override
+      public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+        return ids;
+      }
+    };
+  }
+
+  private void mockPointField(final NumberType numberType) {
+    when(requestMock.getSchema()).thenReturn(schema);
+    when(schema.getFieldTypeNoEx(any())).thenReturn(fieldTypeMock);
+    when(schema.getFieldOrNull(any())).thenReturn(fieldMock);
+    when(fieldTypeMock.isPointField()).thenReturn(true);
+    when(fieldTypeMock.getNumberType()).thenReturn(numberType);
+    when(fieldMock.indexed()).thenReturn(true);
+  }
+
+
+  @Test
+  public void shouldFetchAllRedisClausesOfRequestInOnePipeline() throws SyntaxError, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("q", "*:*");
+    params.add("fq", "{!redis command=smembers key=first}string_field");
+    params.add("fq", "title:foo AND {!redis command=SMEMBERS key=second v=other_field tag=second}");
+    when(requestMock.getParams()).thenReturn(params);
+    when(requestMock.getContext()).thenReturn(new HashMap<>());
+
+    final Pipeline pipelineMock = mock(Pipeline.class);
+    final Response<Set<String>> firstResponse = mockResponse(new HashSet<>(Arrays.asList("123", "321")));
+    final Response<Set<String>> secondResponse = mockResponse(new HashSet<>(Arrays.asList("456")));
+    when(jedisMock.pipelined()).thenReturn(pipelineMock);
+    when(pipelineMock.smembers("first")).thenReturn(firstResponse);
+    when(pipelineMock.smembers("second")).thenReturn(secondResponse);
+
+    final ModifiableSolrParams firstLocalParams = new ModifiableSolrParams();
+    firstLocalParams.set(QueryParsing.TYPE, "redis");
+    firstLocalParams.set("command", "smembers");
+    firstLocalParams.set("key", "first");
+    firstLocalParams.set(QueryParsing.V, "string_field");
+    final ModifiableSolrParams secondLocalParams = new ModifiableSolrParams();
+    secondLocalParams.set(QueryParsing.TYPE, "redis");
+    secondLocalParams.set("command", "SMEMBERS");
+    secondLocalParams.set("key", "second");
+    secondLocalParams.set(QueryParsing.V, "other_field");
+
+    final IndexSearcher searcher = new IndexSearcher(new MultiReader());
+    final Query firstQuery = parser("string_field", firstLocalParams, params, requestMock, commandHandler)
+        .batchByDefault(true).build().parse();
+    Assert.assertEquals(2, extractTerms(searcher, firstQuery).size());
+    final Query secondQuery = parser("other_field", secondLocalParams, params, requestMock, commandHandler)
+        .batchByDefault(true).build().parse();
+    Assert.assertEquals(1, extractTerms(searcher, secondQuery).size());
+
+    verify(jedisMock, times(1)).pipelined();
+    verify(pipelineMock, times(1)).sync();
+    verify(jedisMock, never()).smembers(anyString());
+  }
+
+  @Test
+  public void shouldSubmitBatchWhenParserIsCreated() {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("fq", "{!redis command=smembers key=first}string_field");
+    when(requestMock.getParams()).thenReturn(params);
+    when(requestMock.getContext()).thenReturn(new HashMap<>());
+    final Pipeline pipelineMock = mock(Pipeline.class);
+    final Response<Set<String>> response = mockResponse(new HashSet<>(Arrays.asList("123")));
+    when(jedisMock.pipelined()).thenReturn(pipelineMock);
+    when(pipelineMock.smembers("first")).thenReturn(response);
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("first");
+
+    redisQParser = parser("string_field", localParamsMock, params, requestMock, commandHandler).batchByDefault(true)
+        .build();
+
+    verify(pipelineMock).sync();
+  }
+
+  @Test
+  public void shouldNotBatchWhenDisabledByRequestParameter() throws SyntaxError {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("redis.batch", false);
+    params.add("fq", "{!redis command=smembers key=first}string_field");
+    params.add("fq", "{!redis command=smembers key=second}string_field");
+    when(requestMock.getParams()).thenReturn(params);
+    when(requestMock.getContext()).thenReturn(new HashMap<>());
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("first");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+
+    redisQParser = parser("string_field", localParamsMock, params, requestMock, commandHandler).batchByDefault(true)
+        .build();
+    redisQParser.parse();
+
+    verify(jedisMock).smembers("first");
+    verify(jedisMock, never()).pipelined();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldAddTermsFromDecodedSlabOnSmembersCommand() throws SyntaxError, IOException {
+    final CommandHandler slabHandler = mock(CommandHandler.class);
+    final BytesRefSlab slab = new BytesRefSlab();
+    slab.append(new BytesRef("123"));
+    slab.append(new BytesRef("321"));
+    slab.append(new BytesRef("123"));
+    when(slabHandler.executeRespCommand(any(RespCommand.class), eq(localParamsMock))).thenReturn(ScoredTerms.of(slab));
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get("ignoreScore")).thenReturn("true");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(requestMock.getSchema()).thenReturn(schema);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, slabHandler).build();
+    final Query query = redisQParser.parse();
+    verify(slabHandler, never()).executeCommand(any(), any());
+    assertTrue(query instanceof TermInSetQuery);
+    IndexSearcher searcher = new IndexSearcher(new MultiReader());
+    final Set<Term> terms = extractTerms(searcher, query);
+    Assert.assertEquals(2, terms.size());
+    assertTrue(terms.contains(new Term("string_field", "123")));
+    assertTrue(terms.contains(new Term("string_field", "321")));
+  }
+
+  @Test
+  public void shouldFallBackToMapWhenHandlerDoesNotDecodeSlab() throws SyntaxError {
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+    when(requestMock.getSchema()).thenReturn(schema);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    redisQParser.parse();
+    verify(jedisMock).smembers("simpleKey");
+    verify(jedisMock, never()).getClient();
+  }
+
+  private static <T> Response<T> mockResponse(final T value) {
+    final Response<T> response = mock(Response.class);
+    when(response.get()).thenReturn(value);
+    return response;
+  }
 
   private static String getSortingParamString(final SortingParams params) {
     final StringBuilder builder = new StringBuilder();
@@ -1392,6 +1709,331 @@ public class TestRedisQParser {
     return builder.toString().trim();
   }
 
+  @Test
+  public void shouldUseDocValuesOnDocValuesStrategy() throws SyntaxError {
+    mockStrategyClause("docvalues", true);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof DocValuesTermsSetQuery);
+    Assert.assertEquals("string_field:DOCVALUES(2 terms)", query.toString());
+  }
+
+  @Test
+  public void shouldUsePostFilterOnPostFilterStrategy() throws SyntaxError {
+    mockStrategyClause("postfilter", true);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof DocValuesTermsPostFilter);
+    Assert.assertFalse(((DocValuesTermsPostFilter) query).getCache());
+    Assert.assertEquals(DocValuesTermsPostFilter.POST_FILTER_COST, ((DocValuesTermsPostFilter) query).getCost());
+  }
+
+  @Test
+  public void shouldFallBackToTermsWithoutDocValues() throws SyntaxError {
+    mockStrategyClause("postfilter", false);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof TermInSetQuery);
+  }
+
+  @Test
+  public void shouldCheckMembershipWithoutFetchingOnMembershipStrategy() throws SyntaxError {
+    mockStrategyClause("membership", true);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof MembershipPostFilter);
+    Assert.assertFalse(((MembershipPostFilter) query).getCache());
+    Assert.assertEquals("{!cache=false cost=100}string_field:MEMBERSHIP_POSTFILTER(SMISMEMBER simpleKey)",
+        query.toString());
+    verify(jedisMock, never()).smembers(anyString());
+  }
+
+  @Test
+  public void shouldNotTagPostFilter() throws SyntaxError {
+    mockStrategyClause("membership", true);
+    when(localParamsMock.get("tag")).thenReturn("alias");
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof MembershipPostFilter);
+  }
+
+  @Test
+  public void shouldTagQueryOfOtherStrategy() throws SyntaxError {
+    mockStrategyClause("docvalues", true);
+    when(localParamsMock.get("tag")).thenReturn("alias");
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof TaggedQuery);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnNonNumericBatchSize() {
+    mockStrategyClause("membership", true);
+    when(localParamsMock.get("batchSize")).thenReturn("many");
+    when(localParamsMock.getInt("batchSize", MembershipPostFilter.DEFAULT_BATCH_SIZE)).thenCallRealMethod();
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnNonPositiveBatchSize() {
+    mockStrategyClause("membership", true);
+    when(localParamsMock.get("batchSize")).thenReturn("0");
+    when(localParamsMock.getInt("batchSize", MembershipPostFilter.DEFAULT_BATCH_SIZE)).thenCallRealMethod();
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+  }
+
+  @Test
+  public void shouldFetchMembersOnMembershipStrategyWithoutDocValues() throws SyntaxError {
+    mockStrategyClause("membership", false);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    final Query query = redisQParser.parse();
+    assertTrue(query instanceof TermInSetQuery);
+    verify(jedisMock).smembers("simpleKey");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnMembershipStrategyOfUnsupportedCommand() throws SyntaxError {
+    mockStrategyClause("membership", true);
+    when(localParamsMock.get("command")).thenReturn("lrange");
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+    redisQParser.parse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnStrategyOfScoringClause() {
+    mockStrategyClause("docvalues", true);
+    when(localParamsMock.get("ignoreScore")).thenReturn(null);
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnWrongStrategy() {
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("strategy")).thenReturn("bitmap");
+    redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+  }
+
+  @Test
+  public void shouldReportPlanInDebugOutput() throws SyntaxError {
+    mockStrategyClause("docvalues", true);
+    final SolrQueryResponse response = new SolrQueryResponse();
+    final ResponseBuilder responseBuilder = new ResponseBuilder(requestMock, response, new ArrayList<>());
+    responseBuilder.setDebugQuery(true);
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(requestMock, response));
+    SolrRequestInfo.getRequestInfo().setResponseBuilder(responseBuilder);
+    try {
+      redisQParser = parser("string_field", localParamsMock, paramsMock, requestMock, commandHandler).build();
+      redisQParser.parse();
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+
+    final NamedList<?> plan = (NamedList<?>) responseBuilder.getDebugInfo().findRecursive("redis", "plan");
+    Assert.assertEquals("docvalues", plan.get("strategy"));
+    Assert.assertEquals("requested", plan.get("reason"));
+    Assert.assertEquals(2, plan.get("terms"));
+    Assert.assertEquals("simpleKey", plan.get("key"));
+  }
+
+  @Test
+  public void shouldReuseCachedQueryWhileVersionIsUnchanged() throws SyntaxError {
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.get(any(byte[].class))).thenReturn("7".getBytes());
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+
+    final Query first = parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+    final Query second = parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+
+    Assert.assertSame(first, second);
+    verify(jedisMock, times(1)).smembers("simpleKey");
+    verify(jedisMock, times(2)).get(any(byte[].class));
+  }
+
+  @Test
+  public void shouldNotShareCachedPostFilterBetweenRequests() throws SyntaxError {
+    mockStrategyClause("postfilter", true);
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.get(any(byte[].class))).thenReturn("7".getBytes());
+    final ModifiableSolrParams tuned = versionedParams();
+    tuned.set("strategy", "postfilter");
+    tuned.set("ignoreScore", "true");
+    tuned.set("cache", "true");
+    tuned.set("cost", "200");
+    final ModifiableSolrParams plain = versionedParams();
+    plain.set("strategy", "postfilter");
+    plain.set("ignoreScore", "true");
+
+    final Query first = parser("string_field", tuned, paramsMock, requestMock, commandHandler).queryCache(queryCache)
+        .build().getQuery();
+    final Query hit = parser("string_field", tuned, paramsMock, requestMock, commandHandler).queryCache(queryCache)
+        .build().getQuery();
+    final Query second = parser("string_field", plain, paramsMock, requestMock, commandHandler).queryCache(queryCache)
+        .build().getQuery();
+
+    // Solr sets cache and cost on the query of each request, so they never leak into the following requests
+    Assert.assertTrue(((DocValuesTermsPostFilter) first).getCache());
+    Assert.assertEquals(200, ((DocValuesTermsPostFilter) hit).getCost());
+    Assert.assertNotSame(first, hit);
+    Assert.assertFalse(((DocValuesTermsPostFilter) second).getCache());
+    Assert.assertEquals(DocValuesTermsPostFilter.POST_FILTER_COST, ((DocValuesTermsPostFilter) second).getCost());
+    Assert.assertEquals(first, second);
+    Assert.assertEquals(2L, queryCache.getStatistics().get("hits"));
+    verify(jedisMock, times(1)).smembers("simpleKey");
+  }
+
+  @Test
+  public void shouldWeighCachedBitmapQueryByItsIds() throws SyntaxError {
+    final QueryCache queryCache = new QueryCache(1000, 1 << 24);
+    mockPointField(NumberType.INTEGER);
+    when(fieldMock.getType()).thenReturn(fieldTypeMock);
+    final RedisBitmap bitmap = TestBitmapQuery.bitmap(3, 1 << 20);
+    final CommandHandler versionedIdsHandler = new CommandHandler() {
+      @Override
+      public ScoredTerms executeCommand(final Command command, final SolrParams localParams) {
+        return new ScoredTerms.Builder(1).add("7").build();
+      }
+
+      @Override
+      public IdSet executeIds(final IdSetCommand command, final SolrParams localParams) {
+        return bitmap;
+      }
+    };
+    final ModifiableSolrParams localParams = versionedParams();
+    localParams.set("command", "bitmap");
+    localParams.set(QueryParsing.V, "int_field");
+
+    parser("int_field", localParams, paramsMock, requestMock, versionedIdsHandler).queryCache(queryCache).build()
+        .parse();
+    queryCache.cleanUp();
+
+    // The bitmap of 128 KB outweighs the smallest weight of an entry, 16 KB
+    Assert.assertEquals(1L, queryCache.getStatistics().get("size"));
+    Assert.assertTrue((Long) queryCache.getStatistics().get("weight") >= bitmap.ramBytesUsed());
+  }
+
+  @Test
+  public void shouldRebuildCachedQueryWhenVersionChanges() throws SyntaxError, IOException {
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.get(any(byte[].class))).thenReturn("7".getBytes(), "8".getBytes());
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")),
+        new HashSet<>(Arrays.asList("123")));
+
+    parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler).queryCache(queryCache).build()
+        .parse();
+    final Query query = parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+
+    Assert.assertEquals(1, extractTerms(new IndexSearcher(new MultiReader()), query).size());
+    verify(jedisMock, times(2)).smembers("simpleKey");
+  }
+
+  @Test
+  public void shouldNotCacheQueryWithoutVersion() throws SyntaxError {
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.get(any(byte[].class))).thenReturn(null);
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+
+    parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler).queryCache(queryCache).build()
+        .parse();
+    parser("string_field", versionedParams(), paramsMock, requestMock, commandHandler).queryCache(queryCache).build()
+        .parse();
+
+    verify(jedisMock, times(2)).smembers("simpleKey");
+    Assert.assertEquals(0L, queryCache.getStatistics().get("hits"));
+  }
+
+  @Test
+  public void shouldReuseCachedQueryWhileDigestIsUnchanged() throws SyntaxError {
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.evalsha(anyString(), eq(1), eq("simpleKey"))).thenReturn(Arrays.asList("aa", "2"));
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+
+    final Query first = parser("string_field", digestedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+    final Query second = parser("string_field", digestedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+
+    Assert.assertSame(first, second);
+    verify(jedisMock, times(1)).smembers("simpleKey");
+  }
+
+  @Test
+  public void shouldFetchMembersWhenDigestChanges() throws SyntaxError, IOException {
+    final QueryCache queryCache = new QueryCache(10, 1 << 20);
+    when(jedisMock.evalsha(anyString(), eq(1), eq("simpleKey"))).thenReturn(Arrays.asList("aa", "2"),
+        Arrays.asList("bb", "1"));
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")),
+        new HashSet<>(Arrays.asList("123")));
+
+    parser("string_field", digestedParams(), paramsMock, requestMock, commandHandler).queryCache(queryCache).build()
+        .parse();
+    final Query query = parser("string_field", digestedParams(), paramsMock, requestMock, commandHandler)
+        .queryCache(queryCache).build().parse();
+
+    Assert.assertEquals(1, extractTerms(new IndexSearcher(new MultiReader()), query).size());
+    verify(jedisMock, times(2)).smembers("simpleKey");
+  }
+
+  @Test
+  public void shouldCacheDecodedResultsByDigest() throws SyntaxError {
+    final ResultCache resultCache = new ResultCache(10, 1 << 20, 60000, Collections.emptyMap());
+    final CommandHandler cachingHandler = new CachingCommandHandler(commandHandler, resultCache);
+    when(jedisMock.evalsha(anyString(), eq(1), eq("simpleKey"))).thenReturn(Arrays.asList("aa", "2"));
+    when(jedisMock.smembers("simpleKey")).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+
+    parser("string_field", digestedParams(), paramsMock, requestMock, cachingHandler).queryCache(new QueryCache(10,
+        1 << 20)).build().parse();
+    final ModifiableSolrParams otherField = digestedParams();
+    otherField.set(QueryParsing.V, "other_field");
+    parser("other_field", otherField, paramsMock, requestMock, cachingHandler).queryCache(new QueryCache(10, 1 << 20))
+        .build().parse();
+
+    verify(jedisMock, times(2)).evalsha(anyString(), eq(1), eq("simpleKey"));
+    verify(jedisMock, times(1)).smembers("simpleKey");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowExceptionOnDigestOfRandomMembers() {
+    final ModifiableSolrParams localParams = digestedParams();
+    localParams.set("command", "srandmember");
+    parser("string_field", localParams, paramsMock, requestMock, commandHandler).build();
+  }
+
+  private static ModifiableSolrParams digestedParams() {
+    final ModifiableSolrParams localParams = new ModifiableSolrParams();
+    localParams.set("command", "smembers");
+    localParams.set("key", "simpleKey");
+    localParams.set(QueryCache.DIGEST_PARAM, "true");
+    localParams.set(QueryParsing.V, "string_field");
+    return localParams;
+  }
+
+  private static ModifiableSolrParams versionedParams() {
+    final ModifiableSolrParams localParams = new ModifiableSolrParams();
+    localParams.set("command", "smembers");
+    localParams.set("key", "simpleKey");
+    localParams.set(QueryCache.VERSION_KEY_PARAM, "simpleKey:version");
+    localParams.set(QueryParsing.V, "string_field");
+    return localParams;
+  }
+
+  private void mockStrategyClause(final String strategy, final boolean docValues) {
+    when(localParamsMock.get("command")).thenReturn("smembers");
+    when(localParamsMock.get("key")).thenReturn("simpleKey");
+    when(localParamsMock.get("strategy")).thenReturn(strategy);
+    when(localParamsMock.get("ignoreScore")).thenReturn("true");
+    when(localParamsMock.get(QueryParsing.V)).thenReturn("string_field");
+    when(jedisMock.smembers(anyString())).thenReturn(new HashSet<>(Arrays.asList("123", "321")));
+    when(requestMock.getSchema()).thenReturn(schema);
+    when(schema.getFieldOrNull("string_field")).thenReturn(fieldMock);
+    when(fieldMock.getName()).thenReturn("string_field");
+    when(fieldMock.indexed()).thenReturn(true);
+    when(fieldMock.hasDocValues()).thenReturn(docValues);
+    when(fieldMock.docValuesType()).thenReturn(docValues ? DocValuesType.SORTED_SET : DocValuesType.NONE);
+  }
+
   private static Set<Term> extractTerms(IndexSearcher searcher, Query query) throws IOException {
     final Set<Term> terms = new HashSet<>();
     Query rewrittenQuery = searcher.rewrite(query);
@@ -1402,6 +2044,48 @@ public class TestRedisQParser {
     rewrittenQuery.visit(QueryVisitor.termCollector(terms));
     return terms;
   }
+
+  private static ParserBuilder parser(final String qstr, final SolrParams localParams, final SolrParams params,
+      final SolrQueryRequest req, final CommandHandler commandHandler) {
+    return new ParserBuilder(qstr, localParams, params, req, commandHandler);
+  }
+
+  private static final class ParserBuilder {
+    private static final Map<String, Command<?>> COMMANDS = RedisQParser.createCommands(new ValueCodecs(),
+        Runnable::run);
+
+    private final String qstr;
+    private final SolrParams localParams;
+    private final SolrParams params;
+    private final SolrQueryRequest req;
+    private final CommandHandler commandHandler;
+    private boolean batchByDefault;
+    private QueryCache queryCache;
+
+    private ParserBuilder(final String qstr, final SolrParams localParams, final SolrParams params,
+        final SolrQueryRequest req, final CommandHandler commandHandler) {
+      this.qstr = qstr;
+      this.localParams = localParams;
+      this.params = params;
+      this.req = req;
+      this.commandHandler = commandHandler;
+    }
+
+    private ParserBuilder batchByDefault(final boolean batch) {
+      this.batchByDefault = batch;
+      return this;
+    }
+
+    private ParserBuilder queryCache(final QueryCache cache) {
+      this.queryCache = cache;
+      return this;
+    }
+
+    private RedisQParser build() {
+      return new RedisQParser(qstr, localParams, params, req, commandHandler, batchByDefault, new QueryPlanner(),
+          queryCache, null, COMMANDS);
+    }
+  }
 }
 
 final class Compressor
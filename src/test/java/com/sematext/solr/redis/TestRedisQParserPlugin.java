@@ -1,10 +1,13 @@
 package com.sematext.solr.redis;
 
+import com.sematext.solr.redis.command.TestValueCodecs;
+import com.sematext.solr.redis.command.ValueCodecs;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.search.QParser;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 import org.junit.After;
@@ -15,8 +18,17 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
 import redis.clients.jedis.Protocol;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.ArgumentMatchers.*;
 
@@ -176,4 +188,170 @@ public class TestRedisQParserPlugin {
     assertNull(passwordArgument.getValue());
     assertEquals(100, poolConfigArgument.getValue().getMaxTotal());
   }
+
+  @Test
+  public void shouldConfigureClusterWithSeedNodes() {
+    final JedisSlotBasedConnectionHandler clusterConnectionHandler = mock(JedisSlotBasedConnectionHandler.class);
+    doReturn(clusterConnectionHandler).when(parserPlugin).createClusterConnectionHandler(any(), any(), anyInt(),
+        any());
+    final NamedList<String> list = new NamedList<>();
+    list.add("mode", "cluster");
+    list.add("host", "10.0.0.1:7000, 10.0.0.2");
+    list.add("maxRedirections", "3");
+    list.add("clusterThreads", "6");
+    parserPlugin.init(list);
+
+    final ArgumentCaptor<Set<HostAndPort>> nodesArgument = ArgumentCaptor.forClass(Set.class);
+    verify(parserPlugin).createClusterConnectionHandler(nodesArgument.capture(), poolConfigArgument.capture(),
+        eq(Protocol.DEFAULT_TIMEOUT), passwordArgument.capture());
+    verify(parserPlugin).createClusterCommandHandler(clusterConnectionHandler, 1, 3, 6);
+    verify(parserPlugin, never()).createPool(any(), anyString(), anyInt(), anyInt(), any(), anyInt());
+
+    assertEquals(new HashSet<>(Arrays.asList(new HostAndPort("10.0.0.1", 7000),
+        new HostAndPort("10.0.0.2", Protocol.DEFAULT_PORT))), nodesArgument.getValue());
+    assertNull(passwordArgument.getValue());
+    assertEquals(5, poolConfigArgument.getValue().getMaxTotal());
+
+    parserPlugin.close();
+    verify(clusterConnectionHandler).close();
+    assertTrue(parserPlugin.getChunkWorkers().isShutdown());
+  }
+
+  @Test
+  public void shouldConfigureSentinelWithReplicaReads() {
+    final JedisSentinelPool sentinelPool = mock(JedisSentinelPool.class);
+    final CommandHandler sentinelCommandHandler = mock(CommandHandler.class);
+    doReturn(sentinelPool).when(parserPlugin).createSentinelPool(anyString(), any(), any(), anyInt(), any(),
+        anyInt());
+    doReturn(sentinelCommandHandler).when(parserPlugin).createSentinelCommandHandler(any(), anyInt(), anyString(),
+        any(), any(), any(), anyInt(), anyLong(), anyInt());
+    final NamedList<String> list = new NamedList<>();
+    list.add("mode", "sentinel");
+    list.add("host", "10.0.0.1:26379,10.0.0.2:26379");
+    list.add("masterName", "filters");
+    list.add("maxStaleness", "2000");
+    list.add("maxLag", "4096");
+    parserPlugin.init(list);
+
+    final ArgumentCaptor<Set<HostAndPort>> sentinelsArgument = ArgumentCaptor.forClass(Set.class);
+    verify(parserPlugin).createSentinelPool(eq("filters"), sentinelsArgument.capture(), poolConfigArgument.capture(),
+        eq(Protocol.DEFAULT_TIMEOUT), passwordArgument.capture(), eq(Protocol.DEFAULT_DATABASE));
+    verify(parserPlugin).createSentinelCommandHandler(eq(sentinelPool), eq(1), eq("filters"), any(), any(), any(),
+        eq(2000), eq(4096L), eq(5000));
+    verify(parserPlugin, never()).createPool(any(), anyString(), anyInt(), anyInt(), any(), anyInt());
+
+    assertEquals(new HashSet<>(Arrays.asList(new HostAndPort("10.0.0.1", 26379),
+        new HostAndPort("10.0.0.2", 26379))), sentinelsArgument.getValue());
+    assertNull(passwordArgument.getValue());
+
+    parserPlugin.close();
+    verify(sentinelCommandHandler).close();
+  }
+
+  @Test
+  public void shouldRegisterConfiguredCodecs() {
+    final NamedList<Object> codec = new NamedList<>();
+    codec.add(ValueCodecs.CLASS_ARG, TestValueCodecs.ReversingCodec.class.getName());
+    codec.add("suffix", "?");
+    final NamedList<Object> codecs = new NamedList<>();
+    codecs.add("configured", codec);
+    final NamedList<Object> list = new NamedList<>();
+    list.add("codecs", codecs);
+    parserPlugin.init(list);
+
+    assertTrue(parserPlugin.getCodecs().get("configured") instanceof TestValueCodecs.ReversingCodec);
+    assertNull(new RedisQParserPlugin().getCodecs().get("configured"));
+  }
+
+  @Test
+  public void shouldCacheResultsWhenConfigured() {
+    final NamedList<Object> ttls = new NamedList<>();
+    ttls.add("KEYS", 0);
+    final NamedList<Object> cache = new NamedList<>();
+    cache.add("maxEntries", "100");
+    cache.add("ttl", 500L);
+    cache.add("ttls", ttls);
+    final NamedList<Object> list = new NamedList<>();
+    list.add("resultCache", cache);
+    parserPlugin.init(list);
+
+    assertNotNull(parserPlugin.getResultCache());
+    final ModifiableSolrParams keys = new ModifiableSolrParams();
+    keys.add("command", "keys");
+    assertFalse(parserPlugin.getResultCache().isCached(keys));
+  }
+
+  @Test
+  public void shouldNotCacheResultsOfVersionStampedClauses() {
+    final NamedList<Object> list = new NamedList<>();
+    list.add("resultCache", new NamedList<>());
+    parserPlugin.init(list);
+
+    final ModifiableSolrParams clause = new ModifiableSolrParams();
+    clause.add("command", "smembers");
+    assertTrue(parserPlugin.getResultCache().isCached(clause));
+    clause.add("versionKey", "set:version");
+    assertFalse(parserPlugin.getResultCache().isCached(clause));
+  }
+
+  @Test
+  public void shouldBoundQueryCacheAsConfigured() {
+    final NamedList<Object> cache = new NamedList<>();
+    cache.add("maxEntries", 10);
+    cache.add("maxBytes", 1024L);
+    final NamedList<Object> list = new NamedList<>();
+    list.add("queryCache", cache);
+    parserPlugin.init(list);
+
+    assertNotNull(parserPlugin.getQueryCache());
+    assertEquals(0L, parserPlugin.getQueryCache().getStatistics().get("size"));
+  }
+
+  @Test
+  public void shouldBoundOrdinalsCacheAsConfigured() {
+    final NamedList<Object> cache = new NamedList<>();
+    cache.add("maxBytes", 1024L);
+    final NamedList<Object> list = new NamedList<>();
+    list.add("ordinalsCache", cache);
+    parserPlugin.init(list);
+
+    assertNotNull(parserPlugin.getOrdinalsCache());
+    assertEquals(0L, parserPlugin.getOrdinalsCache().getStatistics().get("size"));
+  }
+
+  @Test
+  public void shouldEvictCachedResultsOnKeyspaceNotificationsWhenConfigured() {
+    final KeyspaceSubscriber subscriber = mock(KeyspaceSubscriber.class);
+    doReturn(subscriber).when(parserPlugin).createKeyspaceSubscriber(any(), any(), anyInt(), any());
+    final NamedList<Object> cache = new NamedList<>();
+    cache.add("keyspaceInvalidation", true);
+    cache.add("keyspacePrefixes", "filter:, user:");
+    final NamedList<Object> list = new NamedList<>();
+    list.add("database", "3");
+    list.add("resultCache", cache);
+    parserPlugin.init(list);
+
+    final ResultCache resultCache = parserPlugin.getResultCache();
+    verify(parserPlugin).createKeyspaceSubscriber(eq(resultCache), any(), eq(3),
+        eq(Arrays.asList("filter:", "user:")));
+    verify(subscriber).start();
+    parserPlugin.close();
+    verify(subscriber).close();
+  }
+
+  @Test
+  public void shouldNotSubscribeToKeyspaceNotificationsByDefault() {
+    final NamedList<Object> list = new NamedList<>();
+    list.add("resultCache", new NamedList<>());
+    parserPlugin.init(list);
+
+    verify(parserPlugin, never()).createKeyspaceSubscriber(any(), any(), anyInt(), any());
+  }
+
+  @Test
+  public void shouldNotCacheResultsByDefault() {
+    parserPlugin.init(new NamedList());
+
+    assertNull(parserPlugin.getResultCache());
+  }
 }
@@ -1,24 +1,39 @@
 package com.sematext.solr.redis;
 
+import com.sematext.solr.redis.command.Bitmap;
 import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.PipelinedCommand;
+import com.sematext.solr.redis.command.SMembers;
+import com.sematext.solr.redis.command.ScoredTerms;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import redis.clients.jedis.Client;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisException;
 
-import java.util.HashMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import org.mockito.MockitoAnnotations;
 
 public class TestRetryingCommandHandler {
@@ -40,7 +55,7 @@ public class TestRetryingCommandHandler {
   @Mock
   private SolrParams localParams;
 
-  private final Map<String, Float> expectedResult = new HashMap<>();
+  private final ScoredTerms expectedResult = new ScoredTerms.Builder().build();
   
   private AutoCloseable mocks;
 
@@ -66,7 +81,7 @@ public class TestRetryingCommandHandler {
     when(command.execute(jedisOne, localParams)).thenThrow(new JedisConnectionException("Connection exception"));
     when(command.execute(jedisTwo, localParams)).thenReturn(expectedResult);
 
-    final Map<String, Float> result = createCommandHandler(1).executeCommand(command, localParams);
+    final ScoredTerms result = createCommandHandler(1).executeCommand(command, localParams);
     Assert.assertEquals(expectedResult, result);
 
     verify(jedisPool, times(1)).returnBrokenResource(jedisOne);
@@ -136,7 +151,7 @@ public class TestRetryingCommandHandler {
     when(command.execute(jedisTwo, localParams)).thenThrow(new JedisConnectionException("Connection exception"));
     when(command.execute(jedisThree, localParams)).thenReturn(expectedResult);
 
-    final Map<String, Float> result = createCommandHandler(2).executeCommand(command, localParams);
+    final ScoredTerms result = createCommandHandler(2).executeCommand(command, localParams);
     Assert.assertEquals(expectedResult, result);
 
     verify(jedisPool, times(1)).returnBrokenResource(jedisOne);
@@ -144,6 +159,101 @@ public class TestRetryingCommandHandler {
     verify(jedisPool, times(1)).returnResource(jedisThree);
   }
 
+  @Test
+  public void shouldExecuteCommandsInOnePipelineAndRetryItAsAWhole() {
+    final Pipeline pipelineOne = mock(Pipeline.class);
+    final Pipeline pipelineTwo = mock(Pipeline.class);
+    final PipelinedCommand pipelinedCommand = mock(PipelinedCommand.class, withSettings().extraInterfaces(Command.class));
+    when(jedisPool.getResource())
+        .thenReturn(jedisOne)
+        .thenReturn(jedisTwo);
+    when(jedisOne.pipelined()).thenReturn(pipelineOne);
+    when(jedisTwo.pipelined()).thenReturn(pipelineTwo);
+    when(pipelinedCommand.queue(pipelineOne, localParams)).thenReturn(() -> {
+      throw new JedisConnectionException("Connection exception");
+    });
+    when(pipelinedCommand.queue(pipelineTwo, localParams)).thenReturn(() -> expectedResult);
+    when(command.execute(jedisTwo, localParams)).thenReturn(expectedResult);
+
+    final List<ScoredTerms> results = createCommandHandler(1).executeCommands(
+        Arrays.asList((Command) pipelinedCommand, command), Arrays.asList(localParams, localParams));
+    Assert.assertEquals(Arrays.asList(expectedResult, expectedResult), results);
+
+    verify(pipelineOne, times(1)).sync();
+    verify(pipelineTwo, times(1)).sync();
+    verify(jedisPool, times(1)).returnBrokenResource(jedisOne);
+    verify(jedisPool, times(1)).returnResource(jedisTwo);
+  }
+
+  @Test
+  public void shouldDecodeRepliesIntoSlabAndRetry() throws IOException {
+    final Client clientOne = mock(Client.class);
+    final Client clientTwo = mock(Client.class);
+    final Socket socketOne = mock(Socket.class);
+    final Socket socketTwo = mock(Socket.class);
+    final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    when(jedisPool.getResource())
+        .thenReturn(jedisOne)
+        .thenReturn(jedisTwo);
+    when(jedisOne.getClient()).thenReturn(clientOne);
+    when(jedisTwo.getClient()).thenReturn(clientTwo);
+    when(clientOne.isConnected()).thenReturn(true);
+    when(clientTwo.isConnected()).thenReturn(true);
+    when(clientOne.getSocket()).thenReturn(socketOne);
+    when(clientTwo.getSocket()).thenReturn(socketTwo);
+    when(socketOne.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    when(socketOne.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+    when(socketTwo.getOutputStream()).thenReturn(written);
+    when(socketTwo.getInputStream()).thenReturn(
+        new ByteArrayInputStream("*2\r\n$3\r\n123\r\n$3\r\n321\r\n".getBytes(StandardCharsets.UTF_8)));
+    when(localParams.get("key")).thenReturn("simpleKey");
+
+    final ScoredTerms terms = new RetryingCommandHandler(jedisPool, 1, true)
+        .executeRespCommand(new SMembers(), localParams);
+
+    Assert.assertEquals(2, terms.size());
+    Assert.assertEquals("123", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("321", terms.getTerm(1).utf8ToString());
+    Assert.assertTrue(terms.isAllNaN());
+    Assert.assertEquals("*2\r\n$8\r\nSMEMBERS\r\n$9\r\nsimpleKey\r\n", written.toString("UTF-8"));
+    verify(clientOne, times(1)).disconnect();
+    verify(jedisPool, times(1)).returnBrokenResource(jedisOne);
+    verify(jedisPool, times(1)).returnResource(jedisTwo);
+  }
+
+  @Test
+  public void shouldNotDecodeRepliesIntoSlabByDefault() {
+    when(localParams.get("key")).thenReturn("simpleKey");
+
+    Assert.assertNull(createCommandHandler(1).executeRespCommand(new SMembers(), localParams));
+    verify(jedisPool, times(0)).getResource();
+  }
+
+  @Test
+  public void shouldReleaseConnectionOnOtherErrors() {
+    when(jedisPool.getResource()).thenReturn(jedisOne);
+    when(command.execute(jedisOne, localParams)).thenThrow(new IllegalStateException("Unexpected reply"));
+
+    try {
+      createCommandHandler(1).executeCommand(command, localParams);
+      Assert.fail("Expected the error to be rethrown");
+    } catch (final IllegalStateException e) {
+      Assert.assertEquals("Unexpected reply", e.getMessage());
+    }
+    verify(jedisPool, times(1)).getResource();
+    verify(jedisPool, times(1)).returnBrokenResource(jedisOne);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldCheckParamsOfIdsBeforeBorrowingConnection() {
+    try {
+      createCommandHandler(1).executeIds(new Bitmap(), new ModifiableSolrParams(
+          Map.of("key", new String[] {"ids"}, "chunkSize", new String[] {"0"})));
+    } finally {
+      verify(jedisPool, times(0)).getResource();
+    }
+  }
+
   private CommandHandler createCommandHandler(final int maxRetries) {
     return new RetryingCommandHandler(jedisPool, maxRetries);
   }
@@ -0,0 +1,275 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Eval;
+import com.sematext.solr.redis.command.SMembers;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Pool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestSentinelCommandHandler {
+  private static final HostAndPort PRIMARY = new HostAndPort("10.0.0.1", 6379);
+
+  private static final HostAndPort REPLICA_ONE = new HostAndPort("10.0.0.2", 6379);
+
+  private static final HostAndPort REPLICA_TWO = new HostAndPort("10.0.0.3", 6379);
+
+  @Mock
+  private JedisSentinelPool primaryPool;
+
+  @Mock
+  private Jedis primary;
+
+  @Mock
+  private Jedis sentinel;
+
+  private final Map<HostAndPort, Pool<Jedis>> replicaPools = new HashMap<>();
+
+  private final Map<HostAndPort, Jedis> replicaConnections = new HashMap<>();
+
+  private SentinelCommandHandler commandHandler;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    when(primaryPool.getCurrentHostMaster()).thenReturn(PRIMARY);
+    when(primaryPool.getResource()).thenReturn(primary);
+    for (final HostAndPort replica : Arrays.asList(REPLICA_ONE, REPLICA_TWO)) {
+      final Pool<Jedis> pool = mock(Pool.class);
+      final Jedis jedis = mock(Jedis.class);
+      when(pool.getResource()).thenReturn(jedis);
+      replicaPools.put(replica, pool);
+      replicaConnections.put(replica, jedis);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (commandHandler != null) {
+      commandHandler.close();
+    }
+    mocks.close();
+  }
+
+  @Test
+  public void shouldSendReadsToReplicaAndScriptsToPrimary() {
+    reportReplicas(replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"));
+    commandHandler = createCommandHandler(0);
+    when(replicaConnections.get(REPLICA_ONE).smembers("key")).thenReturn(new HashSet<>(Arrays.asList("123")));
+    when(primary.eval(anyString(), anyInt(), (String[]) any())).thenReturn("321");
+
+    Assert.assertEquals(Collections.singleton("123"),
+        toStrings(commandHandler.executeCommand(new SMembers(), params("key", "key"))));
+    Assert.assertEquals(Collections.singleton("321"),
+        toStrings(commandHandler.executeCommand(new Eval(), params("script", "return '321'"))));
+
+    verify(primary, never()).smembers(anyString());
+    verify(replicaPools.get(REPLICA_ONE)).returnResource(replicaConnections.get(REPLICA_ONE));
+  }
+
+  @Test
+  public void shouldOnlyReadFromHealthyAndFreshReplicas() {
+    reportReplicas(
+        replicaInfo(REPLICA_ONE, PRIMARY, "slave,s_down", "ok", "0"),
+        replicaInfo(REPLICA_TWO, PRIMARY, "slave", "err", "1500"),
+        replicaInfo(new HostAndPort("10.0.0.4", 6379), new HostAndPort("10.0.0.9", 6379), "slave", "ok", "0"));
+
+    commandHandler = createCommandHandler(1000);
+    Assert.assertEquals(Collections.emptyList(), commandHandler.getReplicaAddresses());
+    commandHandler.close();
+
+    commandHandler = createCommandHandler(2000);
+    Assert.assertEquals(Collections.singletonList(REPLICA_TWO), commandHandler.getReplicaAddresses());
+  }
+
+  @Test
+  public void shouldFallBackToPrimaryWhenReplicaFails() {
+    reportReplicas(replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"));
+    commandHandler = createCommandHandler(0);
+    when(replicaConnections.get(REPLICA_ONE).smembers("key")).thenThrow(new JedisConnectionException("down"));
+    when(primary.smembers("key")).thenReturn(new HashSet<>(Arrays.asList("123")));
+
+    Assert.assertEquals(Collections.singleton("123"),
+        toStrings(commandHandler.executeCommand(new SMembers(), params("key", "key"))));
+
+    verify(replicaPools.get(REPLICA_ONE)).returnBrokenResource(replicaConnections.get(REPLICA_ONE));
+    verify(primary).smembers("key");
+  }
+
+  @Test
+  public void shouldDropReplicasOfPreviousPrimaryAfterFailover() {
+    reportReplicas(
+        replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"),
+        replicaInfo(REPLICA_TWO, PRIMARY, "slave", "ok", "0"));
+    commandHandler = createCommandHandler(0);
+    Assert.assertEquals(2, commandHandler.getReplicaAddresses().size());
+
+    // REPLICA_TWO got promoted, PRIMARY rejoined as replica of it while REPLICA_ONE still follows the old primary
+    when(primaryPool.getCurrentHostMaster()).thenReturn(REPLICA_TWO);
+    reportReplicas(
+        replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"),
+        replicaInfo(PRIMARY, REPLICA_TWO, "slave", "ok", "0"));
+    replicaPools.put(PRIMARY, mock(Pool.class));
+    commandHandler.refreshReplicas();
+
+    Assert.assertEquals(Collections.singletonList(PRIMARY), commandHandler.getReplicaAddresses());
+    verify(replicaPools.get(REPLICA_ONE)).close();
+    verify(replicaPools.get(REPLICA_TWO)).close();
+  }
+
+  @Test
+  public void shouldPreferReplicaWithLeastOutstandingRequests() throws Exception {
+    reportReplicas(
+        replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"),
+        replicaInfo(REPLICA_TWO, PRIMARY, "slave", "ok", "0"));
+    commandHandler = createCommandHandler(0);
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicReference<Object> busy = new AtomicReference<>();
+    for (final Jedis jedis : replicaConnections.values()) {
+      when(jedis.smembers("slow")).thenAnswer(invocation -> {
+        busy.set(invocation.getMock());
+        started.countDown();
+        release.await();
+        return new HashSet<>(Arrays.asList("slow"));
+      });
+      when(jedis.smembers("fast")).thenReturn(new HashSet<>(Arrays.asList("fast")));
+    }
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<ScoredTerms> slow = executor.submit(
+          () -> commandHandler.executeCommand(new SMembers(), params("key", "slow")));
+      started.await();
+      for (int i = 0; i < 10; i++) {
+        commandHandler.executeCommand(new SMembers(), params("key", "fast"));
+      }
+      release.countDown();
+      slow.get();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final Jedis idle = busy.get() == replicaConnections.get(REPLICA_ONE)
+        ? replicaConnections.get(REPLICA_TWO) : replicaConnections.get(REPLICA_ONE);
+    verify((Jedis) busy.get(), never()).smembers("fast");
+    verify(idle, times(10)).smembers("fast");
+  }
+
+  @Test
+  public void shouldOnlyReadFromReplicasCloseToPrimaryOffset() {
+    reportReplicas(
+        replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"),
+        replicaInfo(REPLICA_TWO, PRIMARY, "slave", "ok", "0"));
+    when(primary.info("replication")).thenReturn("# Replication\r\nrole:master\r\nconnected_slaves:2\r\n"
+        + "slave0:ip=10.0.0.2,port=6379,state=online,offset=9000,lag=0\r\n"
+        + "slave1:ip=10.0.0.3,port=6379,state=online,offset=1000,lag=0\r\n"
+        + "master_repl_offset:10000\r\n");
+
+    commandHandler = createCommandHandler(0, 1000);
+
+    Assert.assertEquals(Collections.singletonList(REPLICA_ONE), commandHandler.getReplicaAddresses());
+  }
+
+  @Test
+  public void shouldNotReadFromReplicasWhenPrimaryOffsetIsUnknown() {
+    reportReplicas(replicaInfo(REPLICA_ONE, PRIMARY, "slave", "ok", "0"));
+    when(primary.info("replication")).thenThrow(new JedisConnectionException("down"));
+
+    commandHandler = createCommandHandler(0, 1000);
+    Assert.assertEquals(Collections.emptyList(), commandHandler.getReplicaAddresses());
+    commandHandler.close();
+
+    commandHandler = createCommandHandler(0, -1);
+    Assert.assertEquals(Collections.singletonList(REPLICA_ONE), commandHandler.getReplicaAddresses());
+  }
+
+  private SentinelCommandHandler createCommandHandler(final long maxStaleness) {
+    return createCommandHandler(maxStaleness, 0);
+  }
+
+  private SentinelCommandHandler createCommandHandler(final long maxStaleness, final long maxLag) {
+    return new SentinelCommandHandler(primaryPool, 0, "mymaster",
+        Collections.singleton(new HostAndPort("localhost", 26379)), address -> sentinel, replicaPools::get,
+        maxStaleness, maxLag, 60000, false);
+  }
+
+  /**
+   * Reports the replicas through the sentinel and as fully caught up through the primary
+   */
+  @SafeVarargs
+  private final void reportReplicas(final Map<String, String>... replicas) {
+    final List<Map<String, String>> infos = Arrays.asList(replicas);
+    when(sentinel.sentinelSlaves("mymaster")).thenReturn(infos);
+    final StringBuilder replication = new StringBuilder("# Replication\r\nrole:master\r\n");
+    for (int i = 0; i < replicas.length; i++) {
+      replication.append("slave").append(i).append(":ip=").append(replicas[i].get("ip")).append(",port=")
+          .append(replicas[i].get("port")).append(",state=online,offset=100,lag=0\r\n");
+    }
+    replication.append("master_repl_offset:100\r\n");
+    when(primary.info("replication")).thenReturn(replication.toString());
+  }
+
+  private static Map<String, String> replicaInfo(final HostAndPort replica, final HostAndPort master,
+      final String flags, final String linkStatus, final String linkDownTime) {
+    final Map<String, String> info = new HashMap<>();
+    info.put("ip", replica.getHost());
+    info.put("port", String.valueOf(replica.getPort()));
+    info.put("flags", flags);
+    info.put("master-host", master.getHost());
+    info.put("master-port", String.valueOf(master.getPort()));
+    info.put("master-link-status", linkStatus);
+    info.put("master-link-down-time", linkDownTime);
+    return info;
+  }
+
+  private static ModifiableSolrParams params(final String... keysAndValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      params.set(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return params;
+  }
+
+  private static Set<String> toStrings(final ScoredTerms terms) {
+    final Set<String> strings = new HashSet<>();
+    for (int i = 0; i < terms.size(); i++) {
+      strings.add(terms.getTerm(i).utf8ToString());
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,95 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.Command;
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestSyncCommandHandler {
+  @Mock
+  private CommandHandler delegate;
+
+  @Mock
+  private Command command;
+
+  @Mock
+  private SolrParams localParams;
+
+  private CommandHandler commandHandler;
+
+  private AutoCloseable mocks;
+
+  @Before
+  public void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    commandHandler = new SyncCommandHandler(new ExecutorAsyncCommandHandler(delegate,
+        Executors.newFixedThreadPool(1)));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    commandHandler.close();
+    mocks.close();
+  }
+
+  @Test
+  public void shouldExecuteCommandOnExecutorThread() {
+    final AtomicReference<Thread> executingThread = new AtomicReference<>();
+    final ScoredTerms expectedResult = new ScoredTerms.Builder().add("123").build();
+    when(delegate.executeCommand(command, localParams)).thenAnswer(invocation -> {
+      executingThread.set(Thread.currentThread());
+      return expectedResult;
+    });
+
+    Assert.assertEquals(expectedResult, commandHandler.executeCommand(command, localParams));
+    Assert.assertNotEquals(Thread.currentThread(), executingThread.get());
+  }
+
+  @Test(expected = JedisConnectionException.class)
+  public void shouldRethrowErrorOfCommand() {
+    when(delegate.executeCommand(command, localParams)).thenThrow(new JedisConnectionException("down"));
+
+    commandHandler.executeCommand(command, localParams);
+  }
+
+  @Test
+  public void shouldSubmitBatchWithoutWaitingForIt() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<ScoredTerms> expectedResults = Collections.singletonList(new ScoredTerms.Builder().build());
+    when(delegate.executeCommands(anyList(), anyList())).thenAnswer(invocation -> {
+      release.await();
+      return expectedResults;
+    });
+
+    final CompletableFuture<List<ScoredTerms>> results = commandHandler.submitCommands(
+        Collections.singletonList(command), Collections.singletonList(localParams));
+    Assert.assertFalse(results.isDone());
+
+    release.countDown();
+    Assert.assertEquals(expectedResults, results.get());
+  }
+
+  @Test
+  public void shouldCloseDelegate() {
+    commandHandler.close();
+
+    verify(delegate).close();
+  }
+}
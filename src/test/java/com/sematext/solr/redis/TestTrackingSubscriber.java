@@ -0,0 +1,281 @@
+package com.sematext.solr.redis;
+
+import com.sematext.solr.redis.command.ScoredTerms;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TestTrackingSubscriber {
+  private static final long TIMEOUT = 5000;
+
+  private final ResultCache cache = new ResultCache(100, 1 << 20, 60000, Collections.emptyMap());
+
+  private StubServer server;
+
+  private TrackingSubscriber subscriber;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new StubServer();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (subscriber != null) {
+      subscriber.close();
+    }
+    server.close();
+  }
+
+  @Test
+  public void shouldEvictResultsOfKeysInvalidatedInBroadcastMode() throws Exception {
+    startListening(true, Collections.singletonList("user:"), 60000);
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+    Assert.assertEquals("CLIENT TRACKING on BCAST PREFIX user:", server.nextCommand());
+    awaitListening();
+    cache.get(params("user:1"), params -> terms("a"));
+    cache.get(params("user:2"), params -> terms("b"));
+
+    server.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n$6\r\nuser:1\r\n");
+    awaitEviction(params("user:1"));
+
+    Assert.assertNotNull(cache.getIfPresent(params("user:2")));
+  }
+
+  @Test
+  public void shouldEvictAllResultsOnFlush() throws Exception {
+    startListening(true, Collections.emptyList(), 60000);
+    awaitListening();
+    cache.get(params("user:1"), params -> terms("a"));
+
+    server.push(">2\r\n$10\r\ninvalidate\r\n_\r\n");
+
+    awaitEviction(params("user:1"));
+  }
+
+  @Test
+  public void shouldEvictAllResultsAndReconnectWhenConnectionIsLost() throws Exception {
+    startListening(true, Collections.emptyList(), 60000);
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+    Assert.assertEquals("CLIENT TRACKING on BCAST", server.nextCommand());
+    awaitListening();
+    cache.get(params("user:1"), params -> terms("a"));
+
+    server.disconnectClients();
+
+    awaitEviction(params("user:1"));
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+  }
+
+  @Test
+  public void shouldReconnectWhenPingsAreNotAnswered() throws Exception {
+    server.answerPings = false;
+    startListening(true, Collections.emptyList(), 50);
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+    Assert.assertEquals("CLIENT TRACKING on BCAST", server.nextCommand());
+    Assert.assertEquals("PING", server.nextCommand());
+
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+  }
+
+  @Test
+  public void shouldRedirectInvalidationsOfReadKeysInDefaultMode() throws Exception {
+    startListening(false, Collections.emptyList(), 60000);
+    Assert.assertEquals("HELLO 3", server.nextCommand());
+    Assert.assertEquals("CLIENT ID", server.nextCommand());
+    awaitListening();
+
+    try (Jedis reader = new Jedis("127.0.0.1", server.getPort())) {
+      subscriber.track(reader);
+      subscriber.track(reader);
+      reader.ping();
+    }
+
+    Assert.assertEquals("CLIENT TRACKING on REDIRECT 42", server.nextCommand());
+    Assert.assertEquals("PING", server.nextCommand());
+    cache.get(params("user:1"), params -> terms("a"));
+    server.push(">2\r\n$10\r\ninvalidate\r\n*1\r\n$6\r\nuser:1\r\n");
+    awaitEviction(params("user:1"));
+  }
+
+  private void startListening(final boolean broadcast, final List<String> prefixes, final long pingInterval) {
+    cache.get(params("marker"), params -> terms("marker"));
+    subscriber = new TrackingSubscriber(cache, () -> new Jedis("127.0.0.1", server.getPort()), broadcast, prefixes,
+        10, pingInterval);
+    subscriber.start();
+  }
+
+  /**
+   * Waits for the eviction of all results once the subscriber listens
+   */
+  private void awaitListening() throws InterruptedException {
+    awaitEviction(params("marker"));
+  }
+
+  private void awaitEviction(final SolrParams params) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (cache.getIfPresent(params) != null) {
+      Assert.assertTrue("Result wasn't evicted", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static ScoredTerms terms(final String term) {
+    return new ScoredTerms.Builder().add(term).build();
+  }
+
+  private static ModifiableSolrParams params(final String key) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("command", "smembers");
+    params.add("key", key);
+    return params;
+  }
+
+  /**
+   * Speaks just enough RESP to answer the commands of the subscriber and push invalidation messages to it
+   */
+  private static final class StubServer implements AutoCloseable {
+    private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+    private final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+    private volatile OutputStream listener;
+
+    private volatile boolean answerPings = true;
+
+    private StubServer() throws IOException {
+      final Thread acceptor = new Thread(this::accept, "stub-redis");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    private int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    private String nextCommand() throws InterruptedException {
+      final String command = commands.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+      Assert.assertNotNull("No command received", command);
+      return command;
+    }
+
+    private void push(final String message) throws IOException {
+      write(listener, message);
+    }
+
+    private void disconnectClients() throws IOException {
+      for (final Socket client : clients) {
+        client.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+      disconnectClients();
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          final Socket client = serverSocket.accept();
+          clients.add(client);
+          final Thread handler = new Thread(() -> serve(client), "stub-redis-client");
+          handler.setDaemon(true);
+          handler.start();
+        }
+      } catch (final IOException e) {
+        // Closed
+      }
+    }
+
+    private void serve(final Socket client) {
+      try {
+        final InputStream in = new BufferedInputStream(client.getInputStream());
+        final OutputStream out = client.getOutputStream();
+        while (true) {
+          final List<String> args = readCommand(in);
+          final String command = String.join(" ", args);
+          commands.add(command);
+          if (command.startsWith("HELLO")) {
+            listener = out;
+            write(out, "%1\r\n$5\r\nproto\r\n:3\r\n");
+          } else if (command.equals("CLIENT ID")) {
+            write(out, ":42\r\n");
+          } else if (command.startsWith("CLIENT TRACKING")) {
+            write(out, "+OK\r\n");
+          } else if (command.equals("PING")) {
+            if (answerPings) {
+              write(out, "+PONG\r\n");
+            }
+          } else {
+            write(out, "-ERR unknown command\r\n");
+          }
+        }
+      } catch (final IOException e) {
+        // Disconnected
+      }
+    }
+
+    private static List<String> readCommand(final InputStream in) throws IOException {
+      final int count = Integer.parseInt(readLine(in).substring(1));
+      final List<String> args = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final byte[] arg = new byte[Integer.parseInt(readLine(in).substring(1))];
+        int read = 0;
+        while (read < arg.length) {
+          final int chunk = in.read(arg, read, arg.length - read);
+          if (chunk < 0) {
+            throw new IOException("Disconnected");
+          }
+          read += chunk;
+        }
+        readLine(in);
+        args.add(new String(arg, StandardCharsets.UTF_8));
+      }
+      return args;
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+      final StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = in.read()) != '\r') {
+        if (b < 0) {
+          throw new IOException("Disconnected");
+        }
+        line.append((char) b);
+      }
+      in.read();
+      return line.toString();
+    }
+
+    private static void write(final OutputStream out, final String message) throws IOException {
+      synchronized (out) {
+        out.write(message.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      }
+    }
+  }
+}
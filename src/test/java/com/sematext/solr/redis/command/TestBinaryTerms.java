@@ -0,0 +1,171 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TestBinaryTerms {
+  @Test
+  public void shouldDecodeVarintTerms() throws DeserializationException {
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    term(value, "b");
+    term(value, "");
+    term(value, "zażółć");
+
+    final ScoredTerms terms = BinaryTerms.decode("varint", new BytesRef(value.toByteArray()));
+
+    Assert.assertEquals(3, terms.size());
+    Assert.assertEquals("b", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("", terms.getTerm(1).utf8ToString());
+    Assert.assertEquals("zażółć", terms.getTerm(2).utf8ToString());
+    Assert.assertTrue(terms.isAllNaN());
+    Assert.assertFalse(terms.isSorted());
+  }
+
+  @Test
+  public void shouldDecodeScoredVarintTermsOfSlice() throws DeserializationException {
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    value.write(0x55);
+    term(value, "a");
+    weight(value, 1.5f);
+    term(value, "b");
+    weight(value, -2f);
+    value.write(0x55);
+    final byte[] bytes = value.toByteArray();
+
+    final ScoredTerms terms = BinaryTerms.decode("varint_scored", new BytesRef(bytes, 1, bytes.length - 2));
+
+    Assert.assertEquals(2, terms.size());
+    Assert.assertEquals("a", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals(1.5f, terms.getScore(0), 0);
+    Assert.assertEquals(-2f, terms.getScore(1), 0);
+  }
+
+  @Test
+  public void shouldDecodeSortedFrontCodedTerms() throws DeserializationException {
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    for (int i = 0; i < 200; i++) {
+      // Shares "term" with the previous term
+      final String term = String.format("term%03d", i);
+      value.write(i == 0 ? 0 : 4);
+      term(value, i == 0 ? term : term.substring(4));
+    }
+
+    final ScoredTerms terms = BinaryTerms.decode("front_coded", new BytesRef(value.toByteArray()));
+
+    Assert.assertEquals(200, terms.size());
+    Assert.assertEquals("term000", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("term123", terms.getTerm(123).utf8ToString());
+    Assert.assertEquals("term199", terms.getTerm(199).utf8ToString());
+    Assert.assertTrue(terms.isSorted());
+  }
+
+  @Test
+  public void shouldDecodeScoredFrontCodedTerms() throws DeserializationException {
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    value.write(0);
+    term(value, "apple");
+    weight(value, 3f);
+    value.write(2);
+    term(value, "ricot");
+    weight(value, 0.25f);
+
+    final ScoredTerms terms = BinaryTerms.decode("front_coded_scored", new BytesRef(value.toByteArray()));
+
+    Assert.assertEquals("apricot", terms.getTerm(1).utf8ToString());
+    Assert.assertEquals(3f, terms.getScore(0), 0);
+    Assert.assertEquals(0.25f, terms.getScore(1), 0);
+  }
+
+  @Test
+  public void shouldDecodePackedLongs() throws DeserializationException {
+    // 7, 5, 1000, Long.MIN_VALUE as zig-zag deltas
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    vlong(value, 14);
+    vlong(value, 3);
+    vlong(value, 1990);
+    vlong(value, ((Long.MIN_VALUE - 1000) << 1) ^ ((Long.MIN_VALUE - 1000) >> 63));
+
+    final ScoredTerms terms = BinaryTerms.decode("packed_longs", new BytesRef(value.toByteArray()));
+
+    Assert.assertEquals(4, terms.size());
+    Assert.assertEquals("7", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("5", terms.getTerm(1).utf8ToString());
+    Assert.assertEquals("1000", terms.getTerm(2).utf8ToString());
+    Assert.assertEquals(Long.toString(Long.MIN_VALUE), terms.getTerm(3).utf8ToString());
+  }
+
+  @Test
+  public void shouldDecodeScoredPackedLongs() throws DeserializationException {
+    final ByteArrayOutputStream value = new ByteArrayOutputStream();
+    vlong(value, 1);
+    weight(value, 0.5f);
+
+    final ScoredTerms terms = BinaryTerms.decode("packed_longs_scored", new BytesRef(value.toByteArray()));
+
+    Assert.assertEquals(1, terms.size());
+    Assert.assertEquals("-1", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals(0.5f, terms.getScore(0), 0);
+  }
+
+  @Test
+  public void shouldDecodeEmptyValue() throws DeserializationException {
+    Assert.assertEquals(0, BinaryTerms.decode("front_coded_scored", new BytesRef()).size());
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectTruncatedTerm() throws DeserializationException {
+    BinaryTerms.decode("varint", new BytesRef(new byte[] {5, 'a', 'b'}));
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectMissingWeight() throws DeserializationException {
+    BinaryTerms.decode("varint_scored", new BytesRef(new byte[] {1, 'a', 0, 0}));
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectPrefixLongerThanPreviousTerm() throws DeserializationException {
+    BinaryTerms.decode("front_coded", new BytesRef(new byte[] {0, 1, 'a', 2, 1, 'b'}));
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectTooLongVarint() throws DeserializationException {
+    final byte[] bytes = new byte[11];
+    Arrays.fill(bytes, (byte) 0x80);
+    BinaryTerms.decode("packed_longs", new BytesRef(bytes));
+  }
+
+  @Test
+  public void shouldRecognizeBinaryForms() {
+    Assert.assertTrue(BinaryTerms.isBinary("varint"));
+    Assert.assertTrue(BinaryTerms.isBinary("packed_longs_scored"));
+    Assert.assertFalse(BinaryTerms.isBinary("json"));
+    Assert.assertFalse(BinaryTerms.isBinary("_scored"));
+  }
+
+  private static void term(final ByteArrayOutputStream value, final String term) {
+    final byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+    vlong(value, bytes.length);
+    value.write(bytes, 0, bytes.length);
+  }
+
+  private static void weight(final ByteArrayOutputStream value, final float weight) {
+    final int bits = Float.floatToIntBits(weight);
+    for (int i = 0; i < Float.BYTES; i++) {
+      value.write(bits >>> (8 * i));
+    }
+  }
+
+  private static void vlong(final ByteArrayOutputStream value, final long number) {
+    long rest = number;
+    while ((rest & ~0x7FL) != 0) {
+      value.write((int) (rest & 0x7F) | 0x80);
+      rest >>>= 7;
+    }
+    value.write((int) rest);
+  }
+}
@@ -0,0 +1,105 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.stubbing.OngoingStubbing;
+import redis.clients.jedis.BinaryJedisCommands;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBitmap {
+  @Test
+  public void shouldFetchSmallBitmapInOneRoundTrip() throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final Jedis jedis = connection(sent, ":2\r\n$2\r\n@\u0001\r\n");
+
+    final RedisBitmap bitmap = new Bitmap().fetchIds(new RespConnection(jedis), params("key", "ids"));
+
+    Assert.assertEquals(2, bitmap.size());
+    Assert.assertTrue(bitmap.contains(1));
+    Assert.assertTrue(bitmap.contains(15));
+    Assert.assertEquals("*2\r\n$6\r\nSTRLEN\r\n$3\r\nids\r\n*4\r\n$8\r\nGETRANGE\r\n$3\r\nids\r\n$1\r\n0\r\n$7\r\n1048575\r\n",
+        new String(sent.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldFetchLargeBitmapInChunks() throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final Jedis jedis = connection(sent, ":5\r\n$2\r\n\u0080\u0000\r\n",
+        "$2\r\n\u0000\u0000\r\n$1\r\n\u0001\r\n");
+
+    final RedisBitmap bitmap = new Bitmap().fetchIds(new RespConnection(jedis),
+        params("key", "ids", "chunkSize", "2"));
+
+    Assert.assertEquals(2, bitmap.size());
+    Assert.assertEquals(0, bitmap.nextId(0));
+    Assert.assertEquals(39, bitmap.nextId(1));
+    final String commands = new String(sent.toByteArray(), StandardCharsets.UTF_8);
+    Assert.assertTrue(commands.contains("GETRANGE\r\n$3\r\nids\r\n$1\r\n2\r\n$1\r\n3\r\n"));
+    Assert.assertTrue(commands.endsWith("GETRANGE\r\n$3\r\nids\r\n$1\r\n4\r\n$1\r\n5\r\n"));
+  }
+
+  @Test
+  public void shouldFetchEmptyBitmapOfMissingKey() throws IOException {
+    final Jedis jedis = connection(new ByteArrayOutputStream(), ":0\r\n$0\r\n\r\n");
+
+    final RedisBitmap bitmap = new Bitmap().fetchIds(new RespConnection(jedis), params("key", "missing"));
+
+    Assert.assertEquals(0, bitmap.size());
+    Assert.assertEquals(-1, bitmap.nextId(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyChunks() throws IOException {
+    new Bitmap().fetchIds(new RespConnection(connection(new ByteArrayOutputStream(), "")),
+        params("key", "ids", "chunkSize", "0"));
+  }
+
+  @Test
+  public void shouldTurnBitmapIntoTermsWhenExecutedAsCommand() {
+    final BinaryJedisCommands client = mock(BinaryJedisCommands.class);
+    when(client.get(any(byte[].class))).thenReturn(new byte[] {0x20});
+
+    final ScoredTerms terms = new Bitmap().execute(client, params("key", "ids"));
+
+    Assert.assertEquals(1, terms.size());
+    Assert.assertEquals("2", terms.getTerm(0).utf8ToString());
+  }
+
+  private static Jedis connection(final ByteArrayOutputStream sent, final String... roundTrips) throws IOException {
+    final Socket socket = mock(Socket.class);
+    // Replies of a round trip only arrive once its commands have been sent
+    OngoingStubbing<InputStream> replies = when(socket.getInputStream());
+    for (final String roundTrip : roundTrips) {
+      replies = replies.thenReturn(new ByteArrayInputStream(roundTrip.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+    when(socket.getOutputStream()).thenReturn(sent);
+    final Client client = mock(Client.class);
+    when(client.isConnected()).thenReturn(true);
+    when(client.getSocket()).thenReturn(socket);
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.getClient()).thenReturn(client);
+    return jedis;
+  }
+
+  private static ModifiableSolrParams params(final String... nameValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      params.add(nameValues[i], nameValues[i + 1]);
+    }
+    return params;
+  }
+}
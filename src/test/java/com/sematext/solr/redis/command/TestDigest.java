@@ -0,0 +1,71 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDigest {
+  @Test
+  public void shouldRunScriptBySha1() {
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.evalsha(Digest.SHA1, 2, "first", "second")).thenReturn(Arrays.asList("aa", "3", "bb", "0"));
+
+    final ScoredTerms digests = new Digest().execute(jedis, params("key", "first", "key1", "second"));
+
+    Assert.assertEquals(4, digests.size());
+    Assert.assertEquals("aa", digests.getTerm(0).utf8ToString());
+    Assert.assertEquals("0", digests.getTerm(3).utf8ToString());
+    Assert.assertEquals(40, Digest.SHA1.length());
+    verify(jedis, never()).eval(anyString(), anyInt(), anyString());
+  }
+
+  @Test
+  public void shouldSendScriptWhenRedisDoesNotKnowIt() {
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.evalsha(Digest.SHA1, 1, "set")).thenThrow(
+        new JedisDataException("NOSCRIPT No matching script. Please use EVAL."));
+    when(jedis.eval(Digest.SCRIPT, 1, "set")).thenReturn(Arrays.asList("aa", "3"));
+
+    final ScoredTerms digests = new Digest().execute(jedis, params("key", "set"));
+
+    Assert.assertEquals("aa", digests.getTerm(0).utf8ToString());
+  }
+
+  @Test(expected = JedisDataException.class)
+  public void shouldRethrowOtherErrors() {
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.evalsha(Digest.SHA1, 1, "stream")).thenThrow(new JedisDataException("ERR Cannot digest stream key"));
+
+    new Digest().execute(jedis, params("key", "stream"));
+  }
+
+  @Test
+  public void shouldMergeDigestsInKeyGroupOrder() {
+    final ScoredTerms first = new ScoredTerms.Builder().add("aa").add("3").build();
+    final ScoredTerms second = new ScoredTerms.Builder().add("bb").add("0").build();
+
+    final ScoredTerms merged = new Digest().merge(Arrays.asList(first, null, second));
+
+    Assert.assertEquals(4, merged.size());
+    Assert.assertEquals("bb", merged.getTerm(2).utf8ToString());
+  }
+
+  private static ModifiableSolrParams params(final String... keysAndValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      params.set(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return params;
+  }
+}
@@ -0,0 +1,169 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.stubbing.OngoingStubbing;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestGet {
+  @Test
+  public void shouldFetchRoaringIds() throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final Jedis jedis = connection(sent, bulk(TestRoaringIds.arrayAndBitmap()));
+    final ModifiableSolrParams params = params("key", "ids", "serialization", "roaring");
+
+    final Get get = new Get(new ValueFilter());
+    final IdSet ids = get.fetchIds(new RespConnection(jedis), params);
+
+    Assert.assertTrue(get.fetchesIds(params));
+    Assert.assertEquals(3 + 4201, ids.size());
+    Assert.assertTrue(ids.contains(65535));
+    Assert.assertEquals("*2\r\n$3\r\nGET\r\n$3\r\nids\r\n", new String(sent.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldFetchUnionOfRoaringIdsOfSeveralKeys() throws IOException {
+    final ByteArrayOutputStream replies = new ByteArrayOutputStream();
+    replies.write(bulk(TestRoaringIds.arrayAndBitmap()));
+    replies.write("$-1\r\n$5\r\nnoise\r\n".getBytes(StandardCharsets.UTF_8));
+    final Jedis jedis = connection(new ByteArrayOutputStream(), replies.toByteArray());
+
+    final IdSet ids = new MGet(new ValueFilter()).fetchIds(new RespConnection(jedis),
+        params("key", "ids", "key1", "missing", "key2", "noise", "serialization", "roaring"));
+
+    // Missing keys and values which are no bitmaps are skipped
+    Assert.assertEquals(3 + 4201, ids.size());
+  }
+
+  @Test
+  public void shouldNotFetchIdsOfOtherSerializations() {
+    Assert.assertFalse(new Get(new ValueFilter()).fetchesIds(params("key", "ids")));
+    Assert.assertFalse(new MGet(new ValueFilter()).fetchesIds(params("key", "ids", "serialization", "json")));
+  }
+
+  @Test
+  public void shouldDeserializeEachValueOfMGet() {
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.mget(new byte[][] {"key1".getBytes(StandardCharsets.UTF_8), "key2".getBytes(StandardCharsets.UTF_8),
+        "key3".getBytes(StandardCharsets.UTF_8)})).thenReturn(Arrays.asList(new byte[] {1, 'a', 1, 'b'}, null,
+        new byte[] {1, 'b', 1, 'c'}));
+    final ModifiableSolrParams params = params("key", "key1", "key1", "key2", "key2", "key3",
+        "serialization", "varint");
+
+    final MGet mget = new MGet(new ValueFilter());
+    final ScoredTerms terms = mget.execute(jedis, params);
+
+    Assert.assertFalse(mget.isRespDecodable(params));
+    Assert.assertTrue(mget.isRespDecodable(params("key", "key1")));
+    Assert.assertEquals(3, terms.size());
+    Assert.assertEquals("a", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("c", terms.getTerm(2).utf8ToString());
+  }
+
+  @Test
+  public void shouldDecodeChunksOfChunkedValue() throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    // Replies of both MGETs arrive in a single round trip
+    final Jedis jedis = connection(sent, ("*4\r\n$2\r\n\u0001a\r\n$4\r\n\u0001b\u0001c\r\n$-1\r\n"
+        + "$4\r\n\u0001a\u0001d\r\n*2\r\n$2\r\n\u0001e\r\n$1\r\n\u00ff\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    when(jedis.get(bytes("big"))).thenReturn(bytes("6"));
+    final ModifiableSolrParams params = params("key", "big", "chunked", "true", "serialization", "varint");
+    final ExecutorService workers = ChunkedValue.createWorkers(2);
+
+    final ScoredTerms terms;
+    try {
+      terms = new Get(new ValueFilter(), workers).execute(jedis, params);
+    } finally {
+      workers.shutdown();
+    }
+
+    // Missing and malformed chunks are skipped, terms of all other chunks are merged in order
+    Assert.assertEquals(5, terms.size());
+    Assert.assertEquals("a", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("c", terms.getTerm(2).utf8ToString());
+    Assert.assertEquals("e", terms.getTerm(4).utf8ToString());
+    Assert.assertEquals("*5\r\n$4\r\nMGET\r\n$5\r\nbig:0\r\n$5\r\nbig:1\r\n$5\r\nbig:2\r\n$5\r\nbig:3\r\n"
+        + "*3\r\n$4\r\nMGET\r\n$5\r\nbig:4\r\n$5\r\nbig:5\r\n", new String(sent.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldSkipChunkedValueWithMalformedHeader() {
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.get(bytes("big"))).thenReturn(bytes("many"));
+
+    Assert.assertNull(new Get(new ValueFilter()).execute(jedis, params("key", "big", "chunked", "true")));
+  }
+
+  @Test
+  public void shouldNotQueueChunkedValue() {
+    Assert.assertNull(new Get(new ValueFilter()).queue(mock(Pipeline.class), params("key", "big", "chunked", "true")));
+  }
+
+  @Test
+  public void shouldFetchRoaringIdsOfChunks() throws IOException {
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+    chunks.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+    chunks.write(bulk(TestRoaringIds.arrayAndBitmap()));
+    final Jedis jedis = connection(sent, "$1\r\n2\r\n".getBytes(StandardCharsets.UTF_8), chunks.toByteArray());
+
+    final IdSet ids = new Get(new ValueFilter()).fetchIds(new RespConnection(jedis),
+        params("key", "ids", "chunked", "true", "serialization", "roaring"));
+
+    Assert.assertEquals(3 + 4201, ids.size());
+    Assert.assertTrue(new String(sent.toByteArray(), StandardCharsets.UTF_8).endsWith(
+        "*2\r\n$3\r\nGET\r\n$5\r\nids:0\r\n*2\r\n$3\r\nGET\r\n$5\r\nids:1\r\n"));
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] bulk(final byte[] value) throws IOException {
+    final ByteArrayOutputStream reply = new ByteArrayOutputStream();
+    reply.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+    reply.write(value);
+    reply.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    return reply.toByteArray();
+  }
+
+  private static Jedis connection(final ByteArrayOutputStream sent, final byte[]... roundTrips) throws IOException {
+    final Socket socket = mock(Socket.class);
+    // Replies of a round trip only arrive once its commands have been sent
+    OngoingStubbing<InputStream> replies = when(socket.getInputStream());
+    for (final byte[] roundTrip : roundTrips) {
+      replies = replies.thenReturn(new ByteArrayInputStream(roundTrip));
+    }
+    when(socket.getOutputStream()).thenReturn(sent);
+    final Client client = mock(Client.class);
+    when(client.isConnected()).thenReturn(true);
+    when(client.getSocket()).thenReturn(socket);
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.getClient()).thenReturn(client);
+    return jedis;
+  }
+
+  private static ModifiableSolrParams params(final String... nameValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      params.add(nameValues[i], nameValues[i + 1]);
+    }
+    return params;
+  }
+}
@@ -0,0 +1,119 @@
+package com.sematext.solr.redis.command;
+
+import com.sematext.solr.redis.resp.BytesRefSlab;
+import com.sematext.solr.redis.resp.RespConnection;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestMembershipCheck {
+  @Test
+  public void shouldMapCommandsToMembershipCommands() {
+    Assert.assertEquals("SMISMEMBER key", MembershipCheck.forCommand("smembers", params("key", "key")).toString());
+    Assert.assertEquals("HMGET key", MembershipCheck.forCommand("HKEYS", params("key", "key")).toString());
+    Assert.assertEquals("ZMSCORE key", MembershipCheck.forCommand("zrevrange", params("key", "key")).toString());
+    Assert.assertEquals("ZMSCORE key [(1, +inf]",
+        MembershipCheck.forCommand("zrangebyscore", params("key", "key", "min", "(1")).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectRangeOfRanks() {
+    MembershipCheck.forCommand("zrange", params("key", "key", "range_end", "10"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectCommandsWithoutMembershipCommand() {
+    MembershipCheck.forCommand("lrange", params("key", "key"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectWrongScoreBound() {
+    MembershipCheck.forCommand("zrangebyscore", params("key", "key", "max", "high"));
+  }
+
+  @Test
+  public void shouldCompareScoresWithBounds() {
+    final MembershipCheck check = MembershipCheck.forCommand("zrevrangebyscore",
+        params("key", "key", "min", "(1", "max", "5"));
+
+    Assert.assertFalse(check.isInRange(1));
+    Assert.assertTrue(check.isInRange(1.5));
+    Assert.assertTrue(check.isInRange(5));
+    Assert.assertFalse(check.isInRange(5.5));
+    Assert.assertFalse(check.isInRange(Double.NaN));
+    Assert.assertTrue(MembershipCheck.forCommand("zrange", params("key", "key")).isInRange(Double.NEGATIVE_INFINITY));
+  }
+
+  @Test
+  public void shouldPipelineMembersInChunks() throws IOException {
+    final int count = MembershipCheck.MAX_MEMBERS_PER_COMMAND * 2 + 1;
+    final BytesRefSlab members = new BytesRefSlab();
+    final StringBuilder replies = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      members.append(new BytesRef("m" + i));
+      if (i % MembershipCheck.MAX_MEMBERS_PER_COMMAND == 0) {
+        replies.append('*').append(Math.min(MembershipCheck.MAX_MEMBERS_PER_COMMAND, count - i)).append("\r\n");
+      }
+      replies.append(i % 3 == 0 ? ":1\r\n" : ":0\r\n");
+    }
+    final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    final Jedis jedis = connection(replies.toString(), sent);
+
+    final boolean[] flags = MembershipCheck.forCommand("smembers", params("key", "key"))
+        .execute(new RespConnection(jedis), members);
+
+    Assert.assertEquals(count, flags.length);
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(i % 3 == 0, flags[i]);
+    }
+    final String commands = new String(sent.toByteArray(), StandardCharsets.UTF_8);
+    Assert.assertTrue(commands.startsWith("*1002\r\n$10\r\nSMISMEMBER\r\n$3\r\nkey\r\n$2\r\nm0\r\n"));
+    Assert.assertTrue(commands.endsWith("*3\r\n$10\r\nSMISMEMBER\r\n$3\r\nkey\r\n$5\r\nm2000\r\n"));
+  }
+
+  @Test
+  public void shouldCheckScoresOfSortedSetMembers() throws IOException {
+    final BytesRefSlab members = new BytesRefSlab();
+    members.append(new BytesRef("a"));
+    members.append(new BytesRef("b"));
+    members.append(new BytesRef("c"));
+    final Jedis jedis = connection("*3\r\n$1\r\n2\r\n$-1\r\n$2\r\n10\r\n", new ByteArrayOutputStream());
+
+    final boolean[] flags = MembershipCheck.forCommand("zrangebyscore", params("key", "key", "max", "5"))
+        .execute(new RespConnection(jedis), members);
+
+    Assert.assertArrayEquals(new boolean[] {true, false, false}, flags);
+  }
+
+  private static Jedis connection(final String replies, final ByteArrayOutputStream sent) throws IOException {
+    final Socket socket = mock(Socket.class);
+    when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(replies.getBytes(StandardCharsets.UTF_8)));
+    when(socket.getOutputStream()).thenReturn(sent);
+    final Client client = mock(Client.class);
+    when(client.isConnected()).thenReturn(true);
+    when(client.getSocket()).thenReturn(socket);
+    final Jedis jedis = mock(Jedis.class);
+    when(jedis.getClient()).thenReturn(client);
+    return jedis;
+  }
+
+  private static ModifiableSolrParams params(final String... nameValues) {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    for (int i = 0; i < nameValues.length; i += 2) {
+      params.add(nameValues[i], nameValues[i + 1]);
+    }
+    return params;
+  }
+}
@@ -0,0 +1,56 @@
+package com.sematext.solr.redis.command;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRedisBitmap {
+  // Ids 0, 7, 9, 23 and 30
+  private final RedisBitmap bitmap = new RedisBitmap(new byte[] {(byte) 0x81, 0x40, 0x01, 0x02, 0, 0}, 6);
+
+  @Test
+  public void shouldTestIds() {
+    Assert.assertTrue(bitmap.contains(0));
+    Assert.assertTrue(bitmap.contains(7));
+    Assert.assertTrue(bitmap.contains(9));
+    Assert.assertTrue(bitmap.contains(23));
+    Assert.assertTrue(bitmap.contains(30));
+    Assert.assertFalse(bitmap.contains(1));
+    Assert.assertFalse(bitmap.contains(8));
+    Assert.assertFalse(bitmap.contains(-1));
+    Assert.assertFalse(bitmap.contains(48));
+    Assert.assertFalse(bitmap.contains(Long.MAX_VALUE));
+    Assert.assertEquals(5, bitmap.size());
+    Assert.assertEquals(48, bitmap.bitLength());
+  }
+
+  @Test
+  public void shouldIterateSetIds() {
+    Assert.assertEquals(0, bitmap.nextId(-5));
+    Assert.assertEquals(7, bitmap.nextId(1));
+    Assert.assertEquals(9, bitmap.nextId(8));
+    Assert.assertEquals(23, bitmap.nextId(10));
+    Assert.assertEquals(30, bitmap.nextId(24));
+    Assert.assertEquals(-1, bitmap.nextId(31));
+    Assert.assertEquals(-1, bitmap.nextId(1000));
+  }
+
+  @Test
+  public void shouldTurnIdsIntoTerms() {
+    final ScoredTerms terms = bitmap.toTerms();
+
+    Assert.assertEquals(5, terms.size());
+    Assert.assertEquals("0", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("30", terms.getTerm(4).utf8ToString());
+    Assert.assertTrue(terms.isAllNaN());
+  }
+
+  @Test
+  public void shouldEqualBitmapOfSameIds() {
+    final RedisBitmap trimmed = new RedisBitmap(new byte[] {(byte) 0x81, 0x40, 0x01, 0x02, 0x55}, 4);
+
+    Assert.assertEquals(bitmap, trimmed);
+    Assert.assertEquals(bitmap.hashCode(), trimmed.hashCode());
+    Assert.assertNotEquals(bitmap, new RedisBitmap(new byte[] {(byte) 0x81, 0x40, 0x01, 0x03}, 4));
+    Assert.assertEquals(new RedisBitmap(new byte[0], 0), new RedisBitmap(new byte[] {0, 0}, 2));
+  }
+}
@@ -0,0 +1,172 @@
+package com.sematext.solr.redis.command;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class TestRoaringIds {
+  private static final long HIGH = 2L << 16;
+
+  @Test
+  public void shouldReadArrayAndBitmapContainers() throws DeserializationException {
+    final RoaringIds ids = RoaringIds.wrap(arrayAndBitmap(), 0, arrayAndBitmap().length);
+
+    Assert.assertEquals(3 + 4201, ids.size());
+    Assert.assertTrue(ids.contains(1));
+    Assert.assertTrue(ids.contains(65535));
+    Assert.assertTrue(ids.contains(HIGH));
+    Assert.assertTrue(ids.contains(HIGH + 8400));
+    Assert.assertFalse(ids.contains(2));
+    Assert.assertFalse(ids.contains(HIGH + 1));
+    Assert.assertFalse(ids.contains(HIGH + 8402));
+    Assert.assertFalse(ids.contains(1L << 16));
+    Assert.assertFalse(ids.contains(-1));
+
+    Assert.assertEquals(1, ids.nextId(-3));
+    Assert.assertEquals(5, ids.nextId(2));
+    Assert.assertEquals(65535, ids.nextId(6));
+    Assert.assertEquals(HIGH, ids.nextId(65536));
+    Assert.assertEquals(HIGH + 10, ids.nextId(HIGH + 9));
+    Assert.assertEquals(-1, ids.nextId(HIGH + 8401));
+  }
+
+  @Test
+  public void shouldReadRunContainers() throws DeserializationException {
+    final ByteBuffer buffer = buffer(64);
+    buffer.putInt(RoaringIds.SERIAL_COOKIE | (2 - 1) << 16);
+    // Only the first container holds runs
+    buffer.put((byte) 0x01);
+    buffer.putShort((short) 1).putShort((short) (7 - 1));
+    buffer.putShort((short) 0xFFFF).putShort((short) 0);
+    buffer.putShort((short) 2).putShort((short) 10).putShort((short) 5).putShort((short) 100).putShort((short) 0);
+    buffer.putShort((short) 0xFFFF);
+    final RoaringIds ids = RoaringIds.wrap(buffer.array(), 0, buffer.position());
+
+    Assert.assertEquals(8, ids.size());
+    final long base = 1L << 16;
+    Assert.assertTrue(ids.contains(base + 10));
+    Assert.assertTrue(ids.contains(base + 15));
+    Assert.assertTrue(ids.contains(base + 100));
+    Assert.assertTrue(ids.contains(0xFFFFFFFFL));
+    Assert.assertFalse(ids.contains(base + 9));
+    Assert.assertFalse(ids.contains(base + 16));
+    Assert.assertFalse(ids.contains(1L << 32));
+
+    Assert.assertEquals(base + 10, ids.nextId(0));
+    Assert.assertEquals(base + 12, ids.nextId(base + 12));
+    Assert.assertEquals(base + 100, ids.nextId(base + 16));
+    Assert.assertEquals(0xFFFFFFFFL, ids.nextId(base + 101));
+    Assert.assertEquals(-1, ids.nextId(1L << 32));
+  }
+
+  @Test
+  public void shouldReadBitmapWithinLargerArray() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    final byte[] padded = new byte[bitmap.length + 7];
+    System.arraycopy(bitmap, 0, padded, 3, bitmap.length);
+
+    final RoaringIds ids = RoaringIds.wrap(padded, 3, bitmap.length);
+
+    Assert.assertEquals(RoaringIds.wrap(bitmap, 0, bitmap.length), ids);
+    Assert.assertEquals(RoaringIds.wrap(bitmap, 0, bitmap.length).hashCode(), ids.hashCode());
+    Assert.assertEquals(5, ids.nextId(2));
+  }
+
+  @Test
+  public void shouldReadEmptyBitmap() throws DeserializationException {
+    final ByteBuffer buffer = buffer(8);
+    buffer.putInt(RoaringIds.SERIAL_COOKIE_NO_RUNCONTAINER).putInt(0);
+
+    final RoaringIds ids = RoaringIds.wrap(buffer.array(), 0, 8);
+
+    Assert.assertEquals(0, ids.size());
+    Assert.assertEquals(-1, ids.nextId(0));
+    Assert.assertEquals(0, ids.toTerms().size());
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectTruncatedBitmap() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    RoaringIds.wrap(bitmap, 0, bitmap.length - 1);
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectUnknownCookie() throws DeserializationException {
+    RoaringIds.wrap("[\"1\"]".getBytes(), 0, 5);
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectUnsortedKeys() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    // Key of the second container below the key of the first one
+    bitmap[8] = 3;
+    RoaringIds.wrap(bitmap, 0, bitmap.length);
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectUnsortedArrayContainer() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    // 1, 5, 65535 becomes 6, 5, 65535
+    bitmap[8 + 2 * 8] = 6;
+    RoaringIds.wrap(bitmap, 0, bitmap.length);
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectWrongCardinalityOfBitmapContainer() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    bitmap[bitmap.length - 1] = 1;
+    RoaringIds.wrap(bitmap, 0, bitmap.length);
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldRejectOverlappingRuns() throws DeserializationException {
+    final ByteBuffer buffer = buffer(32);
+    buffer.putInt(RoaringIds.SERIAL_COOKIE);
+    buffer.put((byte) 0x01);
+    buffer.putShort((short) 0).putShort((short) (9 - 1));
+    // Runs 10 to 15 and 12 to 14
+    buffer.putShort((short) 2).putShort((short) 10).putShort((short) 5).putShort((short) 12).putShort((short) 2);
+    RoaringIds.wrap(buffer.array(), 0, buffer.position());
+  }
+
+  @Test
+  public void shouldMergeSets() throws DeserializationException {
+    final byte[] bitmap = arrayAndBitmap();
+    final IdSet union = IdSet.union(Arrays.asList(RoaringIds.wrap(bitmap, 0, bitmap.length),
+        new RedisBitmap(new byte[] {0x7F}, 1)));
+
+    Assert.assertEquals(3 + 4201 + 5, union.size());
+    Assert.assertTrue(union.contains(3));
+    Assert.assertTrue(union.contains(HIGH));
+    Assert.assertEquals(2, union.nextId(2));
+    Assert.assertEquals(65535, union.nextId(8));
+    final ScoredTerms terms = union.toTerms();
+    Assert.assertEquals("1", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("5", terms.getTerm(4).utf8ToString());
+  }
+
+  /**
+   * @return Bitmap of ids 1, 5, 65535 in an array container and every even id from 2^17 to 2^17 + 8400 in a bitmap
+   * container, without run containers
+   */
+  static byte[] arrayAndBitmap() {
+    final ByteBuffer buffer = buffer(8 + 2 * 8 + 3 * 2 + 8192);
+    buffer.putInt(RoaringIds.SERIAL_COOKIE_NO_RUNCONTAINER).putInt(2);
+    buffer.putShort((short) 0).putShort((short) (3 - 1));
+    buffer.putShort((short) 2).putShort((short) (4201 - 1));
+    buffer.putInt(8 + 2 * 8).putInt(8 + 2 * 8 + 3 * 2);
+    buffer.putShort((short) 1).putShort((short) 5).putShort((short) 0xFFFF);
+    final int bitmapStart = buffer.position();
+    for (int low = 0; low <= 8400; low += 2) {
+      buffer.put(bitmapStart + (low >>> 3), (byte) (buffer.get(bitmapStart + (low >>> 3)) | 1 << (low & 7)));
+    }
+    return buffer.array();
+  }
+
+  private static ByteBuffer buffer(final int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -0,0 +1,75 @@
+package com.sematext.solr.redis.command;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestScoredTerms {
+  @Test
+  public void shouldKeepOrderAndSkipNullTerms() {
+    final ScoredTerms terms = new ScoredTerms.Builder().add("b").add(null).add("a").add("żółw").build();
+
+    Assert.assertEquals(Arrays.asList("b", "a", "żółw"), toStrings(terms));
+    Assert.assertTrue(terms.isAllNaN());
+    Assert.assertFalse(terms.isSorted());
+    Assert.assertTrue(Float.isNaN(terms.getScore(0)));
+  }
+
+  @Test
+  public void shouldTrackScoresAndOrder() {
+    final ScoredTerms.Builder builder = new ScoredTerms.Builder(1).add("a");
+    for (int i = 0; i < 20; i++) {
+      builder.add("b" + (char) ('a' + i), i);
+    }
+    final ScoredTerms terms = builder.build();
+
+    Assert.assertEquals(21, terms.size());
+    Assert.assertFalse(terms.isAllNaN());
+    Assert.assertTrue(terms.isSorted());
+    Assert.assertTrue(Float.isNaN(terms.getScore(0)));
+    Assert.assertEquals(19F, terms.getScore(20), 0F);
+  }
+
+  @Test
+  public void shouldKeepFirstOccurrenceWhenDistinct() {
+    final ScoredTerms terms = new ScoredTerms.Builder()
+        .add("a", 1F).add("b", 2F).add("a", 3F).build().distinct();
+
+    Assert.assertEquals(Arrays.asList("a", "b"), toStrings(terms));
+    Assert.assertEquals(1F, terms.getScore(0), 0F);
+  }
+
+  @Test
+  public void shouldMergeResults() {
+    final ScoredTerms one = ResultUtil.stringIteratorToTerms(Arrays.asList("1", "2", "3"));
+    final ScoredTerms two = ResultUtil.stringIteratorToTerms(Arrays.asList("2", "3", "4"));
+
+    Assert.assertEquals(Arrays.asList("1", "2", "3", "4"), toStrings(ResultUtil.union(Arrays.asList(one, null, two))));
+    Assert.assertEquals(Arrays.asList("2", "3"), toStrings(ResultUtil.intersection(Arrays.asList(one, two))));
+    Assert.assertEquals(Arrays.asList("1"), toStrings(ResultUtil.difference(Arrays.asList(one, two))));
+    Assert.assertEquals(0, ResultUtil.intersection(Arrays.asList(one, null)).size());
+    Assert.assertNull(ResultUtil.union(Arrays.asList((ScoredTerms) null, null)));
+  }
+
+  @Test
+  public void shouldCopyBytesRefTerms() {
+    final BytesRef term = new BytesRef("abc");
+    final ScoredTerms terms = new ScoredTerms.Builder().add(term, 2F).build();
+    term.bytes[0] = 'x';
+
+    Assert.assertEquals("abc", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals(2F, terms.getScore(0), 0F);
+  }
+
+  private static List<String> toStrings(final ScoredTerms terms) {
+    final List<String> strings = new ArrayList<>();
+    for (int i = 0; i < terms.size(); i++) {
+      strings.add(terms.getTerm(i).utf8ToString());
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,309 @@
+package com.sematext.solr.redis.command;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+public class TestValueCodecs {
+  private static final String TEXT = "[\"term\", \"term\", \"term\", \"another term\", \"term\", \"another term\"]";
+
+  private final ValueCodecs codecs = new ValueCodecs();
+
+  @Test
+  public void shouldDecompressLz4Frame() throws IOException {
+    final BytesRef value = codecs.get("lz4").decompress(lz4(TEXT.getBytes(StandardCharsets.UTF_8)));
+
+    Assert.assertEquals(TEXT, value.utf8ToString());
+  }
+
+  @Test
+  public void shouldDecompressLz4BlocksWithChecksums() throws IOException {
+    // Several 64 KB blocks
+    final byte[] text = repeat(TEXT, 3000);
+    final byte[] frame = lz4(text, LZ4FrameOutputStream.FLG.Bits.BLOCK_CHECKSUM,
+        LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM, LZ4FrameOutputStream.FLG.Bits.CONTENT_SIZE);
+
+    Assert.assertEquals(new BytesRef(text), codecs.get("lz4").decompress(frame));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectLinkedLz4Blocks() throws IOException {
+    final byte[] frame = lz4(TEXT.getBytes(StandardCharsets.UTF_8));
+    frame[4] &= ~0x20;
+
+    codecs.get("lz4").decompress(frame);
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectMalformedLz4Block() throws IOException {
+    final byte[] frame = lz4(repeat(TEXT, 10));
+    // Header of 7 bytes and size of the first block, followed by its first token
+    frame[11] = (byte) 0xFF;
+    frame[12] = (byte) 0xFF;
+
+    codecs.get("lz4").decompress(frame);
+  }
+
+  @Test
+  public void shouldStreamLz4Frame() throws IOException {
+    final byte[] text = repeat(TEXT, 3000);
+
+    try (final InputStream stream = codecs.get("lz4").open(lz4(text))) {
+      Assert.assertArrayEquals(text, stream.readAllBytes());
+    }
+  }
+
+  @Test
+  public void shouldReuseBufferOfThread() throws IOException {
+    final byte[] frame = lz4(TEXT.getBytes(StandardCharsets.UTF_8));
+    final ValueCodec codec = codecs.get("lz4");
+
+    Assert.assertSame(codec.decompress(frame).bytes, codec.decompress(frame).bytes);
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectTruncatedLz4Frame() throws IOException {
+    final byte[] frame = lz4(TEXT.getBytes(StandardCharsets.UTF_8));
+
+    codecs.get("lz4").decompress(Arrays.copyOf(frame, frame.length - 3));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectLz4FrameOfWrongChecksum() throws IOException {
+    final byte[] frame = lz4(TEXT.getBytes(StandardCharsets.UTF_8), LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+    frame[frame.length - 1] ^= 1;
+
+    codecs.get("lz4").decompress(frame);
+  }
+
+  @Test
+  public void shouldDecompressSnappy() throws IOException {
+    // Literal "abcd", copy of 8 bytes at offset 4 with a 1 byte offset, copy of 3 bytes at offset 1 with a 2 byte
+    // offset repeating the last byte, literal "!"
+    final byte[] compressed = {16, 3 << 2, 'a', 'b', 'c', 'd', (byte) ((8 - 4) << 2 | 1), 4, (byte) ((3 - 1) << 2 | 2),
+        1, 0, 0, '!'};
+
+    final BytesRef value = codecs.get("snappy").decompress(compressed);
+
+    Assert.assertEquals("abcdabcdabcdddd!", value.utf8ToString());
+  }
+
+  @Test
+  public void shouldDecompressLongSnappyLiteral() throws IOException {
+    final byte[] text = new byte[300];
+    Arrays.fill(text, (byte) 'z');
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    compressed.write(new byte[] {(byte) (300 & 0x7F | 0x80), (byte) (300 >>> 7)});
+    // Literal length minus one in 2 extra bytes
+    compressed.write(new byte[] {(byte) (61 << 2), (byte) (299 & 0xFF), (byte) (299 >>> 8)});
+    compressed.write(text);
+
+    Assert.assertEquals(new BytesRef(text), codecs.get("snappy").decompress(compressed.toByteArray()));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectSnappyValueOfWrongLength() throws IOException {
+    codecs.get("snappy").decompress(new byte[] {5, 3 << 2, 'a', 'b', 'c', 'd'});
+  }
+
+  @Test
+  public void shouldDecompressZstdFrame() throws IOException {
+    final byte[] text = repeat(TEXT, 1000);
+
+    final BytesRef value = codecs.get("zstd").decompress(Zstd.compress(text, 3));
+
+    Assert.assertEquals(new BytesRef(text), value);
+  }
+
+  @Test
+  public void shouldDecompressZstdFrameWithoutContentSize() throws IOException {
+    final byte[] text = repeat(TEXT, 1000);
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (final ZstdOutputStreamNoFinalizer stream = new ZstdOutputStreamNoFinalizer(compressed)) {
+      // Written in pieces, so the frame doesn't know the size of its content
+      stream.write(text, 0, 100);
+      stream.flush();
+      stream.write(text, 100, text.length - 100);
+    }
+
+    Assert.assertEquals(new BytesRef(text), codecs.get("zstd").decompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void shouldDecompressZstdFrameWithDictionary() throws IOException {
+    final byte[] dictionary = TEXT.getBytes(StandardCharsets.UTF_8);
+    final Path path = Files.createTempFile("zstd", ".dict");
+    try {
+      Files.write(path, dictionary);
+      final NamedList<Object> args = new NamedList<>();
+      args.add(ValueCodecs.CLASS_ARG, ZstdCodec.class.getName());
+      args.add(ZstdCodec.DICTIONARY_ARG, path.toString());
+      final ValueCodec codec = codecs.register("zstd", args);
+      final byte[] compressed = Zstd.compress(dictionary, new ZstdDictCompress(dictionary, 3));
+
+      Assert.assertEquals(TEXT, codec.decompress(compressed).utf8ToString());
+      try (final InputStream stream = codec.open(compressed)) {
+        Assert.assertArrayEquals(dictionary, stream.readAllBytes());
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void shouldDecompressConcatenatedZstdFrames() throws IOException {
+    final byte[] first = Zstd.compress(TEXT.getBytes(StandardCharsets.UTF_8), 3);
+    // Larger than the buffer of the size of the first frame
+    final byte[] second = Zstd.compress(repeat(TEXT, 3000), 3);
+    final byte[] frames = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, frames, first.length, second.length);
+
+    final BytesRef value = codecs.get("zstd").decompress(frames);
+
+    Assert.assertEquals(TEXT + new String(repeat(TEXT, 3000), StandardCharsets.UTF_8), value.utf8ToString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMissingZstdDictionary() {
+    final NamedList<Object> args = new NamedList<>();
+    args.add(ValueCodecs.CLASS_ARG, ZstdCodec.class.getName());
+    args.add(ZstdCodec.DICTIONARY_ARG, "/nonexistent/zstd.dict");
+
+    codecs.register("zstd", args);
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectTruncatedZstdFrame() throws IOException {
+    final byte[] compressed = Zstd.compress(repeat(TEXT, 10), 3);
+
+    codecs.get("zstd").decompress(Arrays.copyOf(compressed, compressed.length - 5));
+  }
+
+  @Test
+  public void shouldStreamZstdFrameOfImplausibleContentSize() throws IOException {
+    // Zeros shrink far beyond the ratio trusted to size the buffer upfront
+    final byte[] zeros = new byte[1 << 20];
+
+    Assert.assertEquals(new BytesRef(zeros), codecs.get("zstd").decompress(Zstd.compress(zeros, 3)));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectZstdFrameLargerThanLimit() throws IOException {
+    new ValueCodecs(1000).get("zstd").decompress(Zstd.compress(repeat(TEXT, 100), 3));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectLz4FrameLargerThanLimit() throws IOException {
+    new ValueCodecs(1000).get("lz4").decompress(lz4(repeat(TEXT, 100)));
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectGzipValueLargerThanLimit() throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (final GZIPOutputStream stream = new GZIPOutputStream(compressed)) {
+      stream.write(new byte[1 << 20]);
+    }
+
+    new ValueCodecs(1 << 16).get("gzip").decompress(compressed.toByteArray());
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldRejectSnappyLengthImplausibleForValue() throws IOException {
+    // Claims 256 MB out of a literal of one byte
+    codecs.get("snappy").decompress(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1, 0, 'a'});
+  }
+
+  @Test
+  public void shouldConfigureLimitOfZstdCodec() throws IOException {
+    final NamedList<Object> args = new NamedList<>();
+    args.add(ValueCodecs.CLASS_ARG, ZstdCodec.class.getName());
+    args.add(ValueCodecs.MAX_DECOMPRESSED_BYTES_ARG, 1000);
+    final ValueCodec codec = codecs.register("zstd", args);
+
+    Assert.assertEquals(TEXT, codec.decompress(Zstd.compress(TEXT.getBytes(StandardCharsets.UTF_8), 3))
+        .utf8ToString());
+    try {
+      codec.decompress(Zstd.compress(repeat(TEXT, 100), 3));
+      Assert.fail("Value larger than the limit");
+    } catch (final IOException e) {
+      Assert.assertTrue(e.getMessage().contains("1000"));
+    }
+  }
+
+  @Test
+  public void shouldKeepCodecsOfEachRegistry() throws IOException {
+    codecs.register("reversing", new ReversingCodec());
+
+    Assert.assertNull(new ValueCodecs().get("reversing"));
+    Assert.assertNotNull(new ValueCodecs().get("zstd"));
+  }
+
+  @Test
+  public void shouldRegisterConfiguredCodec() throws IOException {
+    final NamedList<Object> args = new NamedList<>();
+    args.add(ValueCodecs.CLASS_ARG, ReversingCodec.class.getName());
+    args.add("suffix", "!");
+
+    codecs.register("reversing", args);
+
+    Assert.assertEquals("cba!", codecs.get("reversing").decompress("abc".getBytes(StandardCharsets.UTF_8))
+        .utf8ToString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectCodecOfOtherClass() {
+    final NamedList<Object> args = new NamedList<>();
+    args.add(ValueCodecs.CLASS_ARG, String.class.getName());
+
+    codecs.register("string", args);
+  }
+
+  public static final class ReversingCodec implements ValueCodec {
+    private String suffix = "";
+
+    @Override
+    public void init(final NamedList<?> args) {
+      suffix = (String) args.get("suffix");
+    }
+
+    @Override
+    public BytesRef decompress(final byte[] compressed) {
+      return new BytesRef(new StringBuilder(new String(compressed, StandardCharsets.UTF_8)).reverse().append(suffix));
+    }
+  }
+
+  private static byte[] lz4(final byte[] text, final LZ4FrameOutputStream.FLG.Bits... features) throws IOException {
+    final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    final Set<LZ4FrameOutputStream.FLG.Bits> flags = EnumSet.of(LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+    flags.addAll(Arrays.asList(features));
+    try (final LZ4FrameOutputStream stream = new LZ4FrameOutputStream(frame, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB,
+        text.length, flags.toArray(new LZ4FrameOutputStream.FLG.Bits[0]))) {
+      stream.write(text);
+    }
+    return frame.toByteArray();
+  }
+
+  private static byte[] repeat(final String text, final int count) {
+    final StringBuilder repeated = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      repeated.append(text).append(i);
+    }
+    return repeated.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -1,9 +1,15 @@
 package com.sematext.solr.redis.command;
 
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
 public class ValueFilterTest {
   private ValueFilter valueFilter;
 
@@ -29,4 +35,131 @@ public class ValueFilterTest {
 
     valueFilter.filterValue(params, new byte[]{});
   }
+
+  @Test
+  public void shouldDeserializeCompressedRoaringBitmap()
+      throws DeserializationException, UnsupportedAlgorithmException, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("serialization", "roaring");
+    params.set("compression", "gzip");
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream stream = new GZIPOutputStream(compressed)) {
+      stream.write(TestRoaringIds.arrayAndBitmap());
+    }
+
+    final ScoredTerms terms = valueFilter.filterValue(params, compressed.toByteArray());
+
+    Assert.assertEquals(3 + 4201, terms.size());
+    Assert.assertEquals("5", terms.getTerm(1).utf8ToString());
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldThrowExceptionOnMalformedRoaringBitmap()
+      throws DeserializationException, UnsupportedAlgorithmException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("serialization", "roaring");
+
+    valueFilter.filterIds(params, new byte[] {0x3A, 0x30, 0, 0, 1});
+  }
+
+  @Test
+  public void shouldKeepLineBreaksOfCompressedValue()
+      throws DeserializationException, UnsupportedAlgorithmException, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("compression", "gzip");
+
+    final ScoredTerms terms = valueFilter.filterValue(params, gzip("first\nsecond\n"));
+
+    Assert.assertEquals(1, terms.size());
+    Assert.assertEquals("first\nsecond\n", terms.getTerm(0).utf8ToString());
+  }
+
+  @Test
+  public void shouldStreamCompressedJsonArray()
+      throws DeserializationException, UnsupportedAlgorithmException, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("compression", "gzip");
+    params.set("serialization", "json");
+    final StringBuilder json = new StringBuilder("[\n");
+    for (int i = 0; i < 10000; i++) {
+      json.append("\"term").append(i).append("\",\n");
+    }
+    json.append("null, 42, \"zaż\u00f3łć\"]");
+
+    final ScoredTerms terms = valueFilter.filterValue(params, gzip(json.toString()));
+
+    Assert.assertEquals(10002, terms.size());
+    Assert.assertEquals("term0", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals("term9999", terms.getTerm(9999).utf8ToString());
+    Assert.assertEquals("42", terms.getTerm(10000).utf8ToString());
+    Assert.assertEquals("zażółć", terms.getTerm(10001).utf8ToString());
+  }
+
+  @Test
+  public void shouldUseMalformedJsonAsIs() throws DeserializationException, UnsupportedAlgorithmException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("serialization", "json");
+
+    final ScoredTerms terms = valueFilter.filterValue(params, "[\"a\", {\"b\": 1}]".getBytes(StandardCharsets.UTF_8));
+
+    Assert.assertEquals(1, terms.size());
+    Assert.assertEquals("[\"a\", {\"b\": 1}]", terms.getTerm(0).utf8ToString());
+  }
+
+  @Test
+  public void shouldDecodeCompressedBinaryTerms()
+      throws DeserializationException, UnsupportedAlgorithmException, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("compression", "gzip");
+    params.set("serialization", "front_coded");
+
+    final ScoredTerms terms = valueFilter.filterValue(params, gzip("\u0000\u0003abc\u0002\u0001d"));
+
+    Assert.assertEquals(2, terms.size());
+    Assert.assertEquals("abd", terms.getTerm(1).utf8ToString());
+    Assert.assertTrue(terms.isSorted());
+  }
+
+  @Test
+  public void shouldReadWeightsOfCompressedScoredJson()
+      throws DeserializationException, UnsupportedAlgorithmException, IOException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("compression", "gzip");
+    params.set("serialization", "json_scored");
+
+    final ScoredTerms terms = valueFilter.filterValue(params,
+        gzip("{\"b\": 1.5, \"a\": -2, \"c\": \"3\", \"d\": null}"));
+
+    Assert.assertEquals(4, terms.size());
+    Assert.assertEquals("b", terms.getTerm(0).utf8ToString());
+    Assert.assertEquals(1.5f, terms.getScore(0), 0);
+    Assert.assertEquals(-2f, terms.getScore(1), 0);
+    Assert.assertEquals(3f, terms.getScore(2), 0);
+    Assert.assertTrue(Float.isNaN(terms.getScore(3)));
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldThrowExceptionOnScoredJsonWithoutNumbers()
+      throws DeserializationException, UnsupportedAlgorithmException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("serialization", "json_scored");
+
+    valueFilter.filterValue(params, "{\"a\": \"high\"}".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = DeserializationException.class)
+  public void shouldThrowExceptionOnScoredJsonArray() throws DeserializationException, UnsupportedAlgorithmException {
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("serialization", "json_scored");
+
+    valueFilter.filterValue(params, "[\"a\"]".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static byte[] gzip(final String value) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream stream = new GZIPOutputStream(compressed)) {
+      stream.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return compressed.toByteArray();
+  }
 }
@@ -0,0 +1,70 @@
+package com.sematext.solr.redis.resp;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class TestBytesRefSet {
+  @Test
+  public void shouldContainOnlyMembers() {
+    final BytesRefSlab slab = new BytesRefSlab(4, 2);
+    for (int i = 0; i < 10000; i++) {
+      slab.append(new BytesRef("member" + i));
+    }
+    slab.append(new BytesRef("member1"));
+    slab.append(new BytesRef());
+    final BytesRefSet set = new BytesRefSet(slab);
+
+    Assert.assertEquals(10001, set.size());
+    for (int i = 0; i < 10000; i++) {
+      Assert.assertTrue(set.contains(new BytesRef("member" + i)));
+      Assert.assertFalse(set.contains(new BytesRef("other" + i)));
+    }
+    Assert.assertTrue(set.contains(new BytesRef()));
+    Assert.assertFalse(set.contains(new BytesRef("member")));
+  }
+
+  @Test
+  public void shouldCompareTermsWithOffset() {
+    final BytesRefSlab slab = new BytesRefSlab();
+    slab.append(new BytesRef("abc"));
+    final BytesRefSet set = new BytesRefSet(slab);
+
+    Assert.assertTrue(set.contains(new BytesRef(new byte[] {'x', 'a', 'b', 'c', 'y'}, 1, 3)));
+    Assert.assertFalse(set.contains(new BytesRef(new byte[] {'x', 'a', 'b', 'c', 'y'}, 1, 4)));
+  }
+
+  @Test
+  public void shouldIterateDistinctMembers() throws IOException {
+    final BytesRefSlab slab = new BytesRefSlab();
+    slab.append(new BytesRef("b"));
+    slab.append(new BytesRef("a"));
+    slab.append(new BytesRef("b"));
+    final Set<String> members = new HashSet<>();
+    int count = 0;
+
+    final BytesRefIterator iterator = new BytesRefSet(slab).iterator();
+    for (BytesRef member = iterator.next(); member != null; member = iterator.next()) {
+      members.add(member.utf8ToString());
+      count++;
+    }
+
+    Assert.assertEquals(2, count);
+    Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), members);
+  }
+
+  @Test
+  public void shouldHandleEmptySlab() {
+    final BytesRefSet set = new BytesRefSet(new BytesRefSlab());
+
+    Assert.assertEquals(0, set.size());
+    Assert.assertFalse(set.contains(new BytesRef("a")));
+    Assert.assertEquals(set, new BytesRefSet(new BytesRefSlab()));
+  }
+}
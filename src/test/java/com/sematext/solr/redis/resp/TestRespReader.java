@@ -0,0 +1,198 @@
+package com.sematext.solr.redis.resp;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestRespReader {
+  @Test
+  public void shouldFlattenArrayAndSkipNils() throws IOException {
+    final BytesRefSlab slab = new BytesRefSlab();
+    final int read = reader("*4\r\n$3\r\nfoo\r\n$-1\r\n$0\r\n\r\n*2\r\n$3\r\nbar\r\n:42\r\n").readMembers(slab);
+
+    Assert.assertEquals(4, read);
+    Assert.assertEquals(Arrays.asList("foo", "", "bar", "42"), toStrings(slab));
+  }
+
+  @Test
+  public void shouldReadSimpleStringAndEmptyArray() throws IOException {
+    final BytesRefSlab slab = new BytesRefSlab();
+    final RespReader reader = reader("+OK\r\n*0\r\n*-1\r\n");
+
+    Assert.assertEquals(1, reader.readMembers(slab));
+    Assert.assertEquals(0, reader.readMembers(slab));
+    Assert.assertEquals(0, reader.readMembers(slab));
+    Assert.assertEquals(Arrays.asList("OK"), toStrings(slab));
+  }
+
+  @Test
+  public void shouldReadBulkStringsLargerThanTheBuffer() throws IOException {
+    final char[] chars = new char[10000];
+    Arrays.fill(chars, 'x');
+    final String large = new String(chars);
+    final BytesRefSlab slab = new BytesRefSlab(4, 1);
+
+    new RespReader(stream("*2\r\n$10000\r\n" + large + "\r\n$3\r\nend\r\n"), 16).readMembers(slab);
+
+    Assert.assertEquals(Arrays.asList(large, "end"), toStrings(slab));
+  }
+
+  @Test
+  public void shouldKeepUtf8Bytes() throws IOException {
+    final BytesRefSlab slab = new BytesRefSlab();
+    final byte[] member = "zażółć".getBytes(StandardCharsets.UTF_8);
+
+    reader("*1\r\n$" + member.length + "\r\nzażółć\r\n").readMembers(slab);
+
+    Assert.assertEquals(new BytesRef(member), slab.get(0));
+  }
+
+  @Test
+  public void shouldThrowOnErrorReply() throws IOException {
+    try {
+      reader("-WRONGTYPE Operation against a key holding the wrong kind of value\r\n").readMembers(new BytesRefSlab());
+      Assert.fail("Expected a data exception");
+    } catch (final JedisDataException e) {
+      Assert.assertEquals("WRONGTYPE Operation against a key holding the wrong kind of value", e.getMessage());
+    }
+  }
+
+  @Test
+  public void shouldMapRedirections() throws IOException {
+    try {
+      reader("-MOVED 3999 127.0.0.1:6381\r\n").readMembers(new BytesRefSlab());
+      Assert.fail("Expected a MOVED exception");
+    } catch (final JedisMovedDataException e) {
+      Assert.assertEquals(3999, e.getSlot());
+      Assert.assertEquals(6381, e.getTargetNode().getPort());
+    }
+
+    try {
+      reader("-ASK 3999 127.0.0.1:6382\r\n").readMembers(new BytesRefSlab());
+      Assert.fail("Expected an ASK exception");
+    } catch (final JedisAskDataException e) {
+      Assert.assertEquals("127.0.0.1", e.getTargetNode().getHost());
+      Assert.assertEquals(6382, e.getTargetNode().getPort());
+    }
+  }
+
+  @Test
+  public void shouldReadFlagsOfMembershipReplies() throws IOException {
+    final boolean[] flags = new boolean[6];
+    final RespReader reader = new RespReader(stream("*3\r\n:1\r\n:0\r\n:1\r\n*3\r\n$-1\r\n$5\r\nvalue\r\n$0\r\n\r\n"),
+        4);
+
+    Assert.assertEquals(3, reader.readFlags(flags, 0));
+    Assert.assertEquals(3, reader.readFlags(flags, 3));
+    Assert.assertArrayEquals(new boolean[] {true, false, true, false, true, true}, flags);
+  }
+
+  @Test
+  public void shouldReadScoresOfMembershipReplies() throws IOException {
+    final double[] scores = new double[5];
+
+    Assert.assertEquals(5, reader("*5\r\n$3\r\n1.5\r\n$-1\r\n$3\r\ninf\r\n$4\r\n-inf\r\n:7\r\n")
+        .readScores(scores, 0));
+    Assert.assertArrayEquals(new double[] {1.5, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 7},
+        scores, 0);
+  }
+
+  @Test(expected = JedisDataException.class)
+  public void shouldThrowOnErrorReplyOfMembershipCommand() throws IOException {
+    reader("-ERR unknown command `SMISMEMBER`\r\n").readFlags(new boolean[1], 0);
+  }
+
+  @Test
+  public void shouldReadResp3Replies() throws IOException {
+    final BytesRefSlab slab = new BytesRefSlab();
+    final RespReader reader = reader("%2\r\n$6\r\nserver\r\n$5\r\nredis\r\n$5\r\nproto\r\n:3\r\n"
+        + "~2\r\n#t\r\n,1.5\r\n_\r\n(12345678901234567890\r\n=8\r\ntxt:text\r\n");
+
+    Assert.assertEquals(4, reader.readMembers(slab));
+    Assert.assertEquals(2, reader.readMembers(slab));
+    Assert.assertEquals(0, reader.readMembers(slab));
+    Assert.assertEquals(1, reader.readMembers(slab));
+    Assert.assertEquals(1, reader.readMembers(slab));
+    Assert.assertEquals(Arrays.asList("server", "redis", "proto", "3", "t", "1.5", "12345678901234567890",
+        "txt:text"), toStrings(slab));
+  }
+
+  @Test
+  public void shouldReadPushMessages() throws IOException {
+    final BytesRefSlab keys = new BytesRefSlab();
+    final BytesRefSlab flush = new BytesRefSlab();
+    final RespReader reader = reader(">2\r\n$10\r\ninvalidate\r\n*2\r\n$1\r\na\r\n$1\r\nb\r\n"
+        + ">2\r\n$10\r\ninvalidate\r\n_\r\n");
+
+    reader.readMembers(keys);
+    reader.readMembers(flush);
+
+    Assert.assertEquals(Arrays.asList("invalidate", "a", "b"), toStrings(keys));
+    Assert.assertEquals(Arrays.asList("invalidate"), toStrings(flush));
+  }
+
+  @Test
+  public void shouldThrowOnBlobErrorReply() throws IOException {
+    try {
+      reader("!21\r\nSYNTAX invalid syntax\r\n").readMembers(new BytesRefSlab());
+      Assert.fail("Expected a data exception");
+    } catch (final JedisDataException e) {
+      Assert.assertEquals("SYNTAX invalid syntax", e.getMessage());
+    }
+  }
+
+  @Test(expected = JedisConnectionException.class)
+  public void shouldThrowOnTruncatedReply() throws IOException {
+    reader("*2\r\n$3\r\nfoo\r\n$3\r\nb").readMembers(new BytesRefSlab());
+  }
+
+  @Test
+  public void shouldEncodeCommand() {
+    final byte[] command = RespReader.encodeCommand("SMEMBERS".getBytes(StandardCharsets.UTF_8),
+        "key".getBytes(StandardCharsets.UTF_8));
+
+    Assert.assertEquals("*2\r\n$8\r\nSMEMBERS\r\n$3\r\nkey\r\n", new String(command, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldKeepSlicesValidWhileSlabGrows() {
+    final BytesRefSlab slab = new BytesRefSlab(2, 1);
+    slab.append(new BytesRef("first"));
+    final BytesRef first = slab.get(0);
+    for (int i = 0; i < 100; i++) {
+      slab.append(new BytesRef("member" + i));
+    }
+
+    Assert.assertEquals(101, slab.size());
+    Assert.assertEquals("first", first.utf8ToString());
+    Assert.assertEquals("member99", slab.get(100).utf8ToString());
+  }
+
+  private static RespReader reader(final String reply) {
+    return new RespReader(stream(reply));
+  }
+
+  private static ByteArrayInputStream stream(final String reply) {
+    return new ByteArrayInputStream(reply.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> toStrings(final BytesRefSlab slab) {
+    final List<String> strings = new ArrayList<>();
+    final BytesRef scratch = new BytesRef();
+    for (int i = 0; i < slab.size(); i++) {
+      strings.add(slab.get(i, scratch).utf8ToString());
+    }
+    return strings;
+  }
+}